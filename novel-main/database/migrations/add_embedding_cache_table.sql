@@ -0,0 +1,13 @@
+-- 创建向量缓存表，章节重新保存时复用未改动分块的向量
+-- 执行时间：2026-10-17
+
+CREATE TABLE IF NOT EXISTS `embedding_cache` (
+  `id` bigint unsigned NOT NULL AUTO_INCREMENT COMMENT '缓存ID',
+  `content_hash` char(64) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '文本内容SHA-256摘要',
+  `model_id` varchar(128) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '向量模型ID',
+  `dimensions` int NOT NULL COMMENT '向量维度',
+  `embedding` mediumblob NOT NULL COMMENT '向量数据 (float32小端序)',
+  `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_embedding_cache_hash_model` (`content_hash`,`model_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='向量缓存表，按内容哈希和模型复用向量';
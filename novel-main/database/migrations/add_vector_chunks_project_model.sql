@@ -0,0 +1,7 @@
+-- 为向量分块清单表添加项目ID和模型ID，用于按项目统计索引规模和识别需要重新向量化的分块
+-- 执行时间：2026-10-17
+
+ALTER TABLE `vector_chunks`
+  ADD COLUMN `project_id` bigint DEFAULT NULL COMMENT '所属项目ID，模板、世界观等不属于单个项目的为NULL' AFTER `owner_id`,
+  ADD COLUMN `model_id` varchar(128) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '生成向量的模型ID' AFTER `doc_id`,
+  ADD KEY `idx_vector_chunks_project` (`project_id`);
@@ -0,0 +1,17 @@
+-- 创建向量分块清单表，章节重新索引时只写入变化的分块并按ID删除多余分块
+-- 执行时间：2026-10-17
+
+CREATE TABLE IF NOT EXISTS `vector_chunks` (
+  `id` bigint unsigned NOT NULL AUTO_INCREMENT COMMENT '分块ID',
+  `owner_type` varchar(32) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '所属对象类型，如 chapter',
+  `owner_id` bigint NOT NULL COMMENT '所属对象ID',
+  `chunk_index` int NOT NULL COMMENT '分块序号',
+  `start_offset` int NOT NULL COMMENT '分块在原文中的起始位置',
+  `end_offset` int NOT NULL COMMENT '分块在原文中的结束位置',
+  `content_hash` char(64) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '分块文本与元数据的SHA-256摘要',
+  `doc_id` varchar(128) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '向量库文档ID',
+  `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `updated_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_vector_chunks_owner_index` (`owner_type`,`owner_id`,`chunk_index`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='向量分块清单表，用于增量更新索引';
@@ -0,0 +1,6 @@
+-- 为向量化任务表添加批量任务ID，用于汇总批量导入的进度
+-- 执行时间：2026-10-17
+
+ALTER TABLE `vector_index_jobs`
+  ADD COLUMN `batch_id` varchar(64) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '批量任务ID，同一批提交的任务相同' AFTER `target_id`,
+  ADD KEY `idx_vector_index_jobs_batch` (`batch_id`);
@@ -0,0 +1,24 @@
+-- 创建向量化任务表，节点重启后其他节点可接管中断的任务并从检查点继续
+-- 执行时间：2026-10-17
+
+CREATE TABLE IF NOT EXISTS `vector_index_jobs` (
+  `id` bigint unsigned NOT NULL AUTO_INCREMENT COMMENT '任务ID',
+  `job_type` varchar(32) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '任务类型，如 TEMPLATE、CHAPTER',
+  `target_id` bigint NOT NULL COMMENT '被索引对象ID',
+  `status` varchar(16) COLLATE utf8mb4_unicode_ci NOT NULL DEFAULT 'PENDING' COMMENT '状态：PENDING/RUNNING/COMPLETED/FAILED',
+  `next_chunk` int NOT NULL DEFAULT 0 COMMENT '检查点：序号小于该值的分块均已写入',
+  `stored_chunks` int NOT NULL DEFAULT 0 COMMENT '已写入的分块数',
+  `attempts` int NOT NULL DEFAULT 0 COMMENT '已执行次数',
+  `max_attempts` int NOT NULL DEFAULT 5 COMMENT '最大执行次数',
+  `owner` varchar(128) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '持有租约的节点',
+  `lease_until` datetime DEFAULT NULL COMMENT '租约到期时间',
+  `heartbeat_at` datetime DEFAULT NULL COMMENT '最近一次心跳时间',
+  `next_run_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '最早可执行时间，用于延迟和重试退避',
+  `error_message` text COLLATE utf8mb4_unicode_ci COMMENT '最近一次失败原因',
+  `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `updated_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  `finished_at` datetime DEFAULT NULL COMMENT '结束时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_vector_index_jobs_status_run` (`status`,`next_run_at`),
+  KEY `idx_vector_index_jobs_target` (`job_type`,`target_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='向量化任务表，支持租约、心跳、检查点和失败重试';
@@ -0,0 +1,6 @@
+-- 为向量索引版本状态表添加影子集合写入失败次数和重建标记，各节点的双写失败都记录到这里，迁移切换前统一检查
+-- 执行时间：2026-10-17
+
+ALTER TABLE `vector_index_state`
+  ADD COLUMN `shadow_failures` int NOT NULL DEFAULT 0 COMMENT '各节点影子集合写入或删除失败的次数，不为0时不切换' AFTER `migrated_documents`,
+  ADD COLUMN `rebuild_pass` tinyint NOT NULL DEFAULT 0 COMMENT '是否为失败后的重建覆盖，重建时每个范围先清空影子集合中的旧文档' AFTER `shadow_failures`;
@@ -0,0 +1,23 @@
+-- 创建向量索引版本状态表，向量模型变更时在影子集合中重新向量化，完成后切换读取
+-- 执行时间：2026-10-17
+
+CREATE TABLE IF NOT EXISTS `vector_index_state` (
+  `id` bigint unsigned NOT NULL AUTO_INCREMENT COMMENT '主键',
+  `index_name` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '索引名称',
+  `status` varchar(16) COLLATE utf8mb4_unicode_ci NOT NULL DEFAULT 'ACTIVE' COMMENT '状态：ACTIVE/MIGRATING',
+  `active_model_id` varchar(128) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '读取使用的向量模型ID',
+  `active_collection` varchar(128) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '读取使用的集合',
+  `target_model_id` varchar(128) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '迁移目标模型ID',
+  `target_collection` varchar(128) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '迁移目标集合（影子集合）',
+  `migration_phase` varchar(16) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '迁移阶段：PROJECT/TEMPLATE',
+  `migration_cursor` bigint NOT NULL DEFAULT 0 COMMENT '当前阶段已迁移的最大对象ID',
+  `total_scopes` int NOT NULL DEFAULT 0 COMMENT '需要迁移的范围数（项目与模板）',
+  `migrated_scopes` int NOT NULL DEFAULT 0 COMMENT '已迁移的范围数',
+  `migrated_documents` bigint NOT NULL DEFAULT 0 COMMENT '已迁移的文档数',
+  `started_at` datetime DEFAULT NULL COMMENT '迁移开始时间',
+  `switched_at` datetime DEFAULT NULL COMMENT '最近一次切换读取集合的时间',
+  `error_message` text COLLATE utf8mb4_unicode_ci COMMENT '最近一次迁移失败原因',
+  `updated_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_vector_index_state_name` (`index_name`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='向量索引版本状态表，记录当前读取的模型集合和迁移进度';
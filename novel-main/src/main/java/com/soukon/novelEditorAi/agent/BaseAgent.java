@@ -23,6 +23,7 @@ import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.prompt.SystemPromptTemplate;
 import org.springframework.ai.tool.ToolCallback;
+import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -63,7 +64,7 @@ public abstract class BaseAgent {
 
     String planId = null;
 
-    private AgentState state = AgentState.NOT_STARTED;
+    private volatile AgentState state = AgentState.NOT_STARTED;
 
     protected LlmService llmService;
 
@@ -170,30 +171,41 @@ public abstract class BaseAgent {
         }
     }
 
-    public void run(Map<String, Object> stepData) {
-        currentStep = 0;
-        this.stepData = stepData;
-        if (state != AgentState.IN_PROGRESS) {
-            throw new IllegalStateException("Cannot run agent from state: " + state);
-        }
-
-        try {
-            while (currentStep < maxSteps && !state.equals(AgentState.COMPLETED)) {
-                log.info("正在运行计划 step {} of {}", currentStep + 1, maxSteps);
-                currentStep++;
-                step();
-            }
-            log.info("计划执行完成，当前状态: {} ，总步长：{}", state, currentStep - 1);
-        } catch (Exception e) {
-            log.error("Agent execution failed", e);
-            throw e; // 重新抛出异常，让上层调用者知道发生了错误
-        } finally {
-            state = AgentState.COMPLETED; // Reset state after execution
+    /**
+     * 以非阻塞方式执行计划：上一步返回的 Mono 完成后才调度下一步，
+     * 等待模型输出或前端消费期间不占用任何线程。
+     *
+     * @param stepData 步骤上下文数据
+     * @return 计划执行完成信号
+     */
+    public Mono<Void> run(Map<String, Object> stepData) {
+        return Mono.defer(() -> {
+                    currentStep = 0;
+                    this.stepData = stepData;
+                    if (state != AgentState.IN_PROGRESS) {
+                        return Mono.<Void>error(new IllegalStateException("Cannot run agent from state: " + state));
+                    }
+                    return runNextStep();
+                })
+                .doOnSuccess(ignored -> log.info("计划执行完成，当前状态: {} ，总步长：{}", state, currentStep))
+                .doOnError(e -> log.error("Agent execution failed", e))
+                // Reset state after execution
+                .doFinally(signal -> state = AgentState.COMPLETED);
+    }
 
+    private Mono<Void> runNextStep() {
+        if (currentStep >= maxSteps || state.equals(AgentState.COMPLETED)) {
+            return Mono.empty();
         }
+        log.info("正在运行计划 step {} of {}", currentStep + 1, maxSteps);
+        currentStep++;
+        return step().then(Mono.defer(this::runNextStep));
     }
 
-    protected abstract AgentExecResult step();
+    /**
+     * 执行单个步骤，返回的 Mono 完成即表示该步骤结束，实现方不应阻塞调用线程
+     */
+    protected abstract Mono<AgentExecResult> step();
 
 
 
@@ -15,7 +15,10 @@ import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.converter.BeanOutputConverter;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -44,6 +47,11 @@ public class EnhancedWritingAgent {
     private static final int MAX_SEGMENT_WORDS = 400;
     private static final double WORD_COUNT_TOLERANCE = 0.1; // 10%容错率
 
+    /**
+     * 等待前端消费一步输出的最长时间
+     */
+    private static final Duration CONSUMPTION_TIMEOUT = Duration.ofMinutes(5);
+
     public EnhancedWritingAgent(LlmService llmService, ChapterContentRequest request) {
         this.llmService = llmService;
         this.request = request;
@@ -55,61 +63,68 @@ public class EnhancedWritingAgent {
     }
 
     /**
-     * 执行写作计划
+     * 执行写作计划，各步骤依次执行，每一步等前端消费完毕再继续，等待期间不占用线程
      */
-    public void executeWritingPlan(List<PlanDetailRes> planSteps) {
+    public Mono<Void> executeWritingPlan(List<PlanDetailRes> planSteps) {
         PlanContext planContext = request.getPlanContext();
 
-        try {
-            planContext.setPlanState(PlanState.IN_PROGRESS);
-            planContext.setMessage("开始执行写作计划");
-            planContext.setProgress(10);
-
-            for (int i = 0; i < planSteps.size(); i++) {
-                PlanDetailRes step = planSteps.get(i);
-                int stepProgress = 10 + (i * 80 / planSteps.size());
-
-                planContext.setMessage("正在执行第" + (i + 1) + "步：" + step.getPlanContent());
-                planContext.setProgress(stepProgress);
-
-                executeWritingStep(step, i + 1, planSteps.size());
-
-                // 检查是否达到目标字数
-                if (isTargetWordCountReached()) {
-                    log.info("已达到目标字数 {}，提前结束写作", targetWordCount);
-                    break;
-                }
-            }
-
-            planContext.setPlanState(PlanState.COMPLETED);
-            planContext.setMessage("写作完成");
-            planContext.setProgress(100);
-
-        } catch (Exception e) {
-            log.error("写作执行失败", e);
-            planContext.setPlanState(PlanState.COMPLETED);
-            planContext.setMessage("写作失败：" + e.getMessage());
-            throw new RuntimeException("写作执行失败", e);
-        }
+        return Mono.fromRunnable(() -> {
+                    planContext.setPlanState(PlanState.IN_PROGRESS);
+                    planContext.setMessage("开始执行写作计划");
+                    planContext.setProgress(10);
+                })
+                .thenMany(Flux.range(0, planSteps.size())
+                        .concatMap(i -> Mono.defer(() -> {
+                            PlanDetailRes step = planSteps.get(i);
+                            int stepProgress = 10 + (i * 80 / planSteps.size());
+
+                            planContext.setMessage("正在执行第" + (i + 1) + "步：" + step.getPlanContent());
+                            planContext.setProgress(stepProgress);
+
+                            return executeWritingStep(step, i + 1, planSteps.size()).thenReturn(i);
+                        }))
+                        // 检查是否达到目标字数
+                        .takeUntil(i -> {
+                            if (isTargetWordCountReached()) {
+                                log.info("已达到目标字数 {}，提前结束写作", targetWordCount);
+                                return true;
+                            }
+                            return false;
+                        }))
+                .then(Mono.<Void>fromRunnable(() -> {
+                    planContext.setPlanState(PlanState.COMPLETED);
+                    planContext.setMessage("写作完成");
+                    planContext.setProgress(100);
+                }))
+                .onErrorResume(e -> {
+                    log.error("写作执行失败", e);
+                    planContext.setPlanState(PlanState.COMPLETED);
+                    planContext.setMessage("写作失败：" + e.getMessage());
+                    return Mono.error(new RuntimeException("写作执行失败", e));
+                });
     }
 
     /**
      * 执行单个写作步骤
      */
-    private void executeWritingStep(PlanDetailRes step, int stepNumber, int totalSteps) {
-        // 1. 创作前分析
-        WritingAnalysis analysis = analyzeWritingContext(step, stepNumber, totalSteps);
+    private Mono<Void> executeWritingStep(PlanDetailRes step, int stepNumber, int totalSteps) {
+        // 分析和生成是阻塞的模型调用，在弹性线程池中执行
+        return Mono.fromCallable(() -> {
+                    // 1. 创作前分析
+                    WritingAnalysis analysis = analyzeWritingContext(step, stepNumber, totalSteps);
 
-        // 2. 生成内容
-        String content = generateContent(step, analysis, stepNumber);
+                    // 2. 生成内容
+                    String content = generateContent(step, analysis, stepNumber);
 
-        log.info("生成内容：{}", content);
+                    log.info("生成内容：{}", content);
 
-        // 3. 更新状态
-        updateWritingState(content);
-
-        // 4. 流式输出给前端
-        streamContentToFrontend(content);
+                    // 3. 更新状态
+                    updateWritingState(content);
+                    return content;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                // 4. 流式输出给前端
+                .flatMap(this::streamContentToFrontend);
     }
 
     /**
@@ -271,31 +286,27 @@ public class EnhancedWritingAgent {
     }
 
     /**
-     * 流式输出内容给前端
+     * 流式输出内容给前端，前端确认消费或读完该步骤输出时完成，最多等待5分钟
      */
-    private void streamContentToFrontend(String content) {
+    private Mono<Void> streamContentToFrontend(String content) {
         PlanContext planContext = request.getPlanContext();
 
         // 创建内容流
         Flux<String> contentStream = Flux.just(content);
 
-        // 创建完成信号
-        CountDownLatch latch = new CountDownLatch(1);
-
-        planContext.setCompletionLatch(latch);
-        planContext.setPlanStream(contentStream);
         planContext.setPlanState(PlanState.GENERATING);
+        planContext.setPlanStream(contentStream);
 
-        try {
-            // 等待前端消费完成
-            latch.await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.error("等待前端消费被中断", e);
-        }
-
-        planContext.setPlanStream(null);
-        planContext.setPlanState(PlanState.IN_PROGRESS);
+        return planContext.awaitConsumption()
+                .timeout(CONSUMPTION_TIMEOUT, Mono.fromRunnable(() -> log.warn("等待前端消费超时")))
+                .onErrorResume(e -> {
+                    log.error("等待前端消费失败", e);
+                    return Mono.empty();
+                })
+                .then(Mono.fromRunnable(() -> {
+                    planContext.setPlanStream(null);
+                    planContext.setPlanState(PlanState.IN_PROGRESS);
+                }));
     }
 
     /**
@@ -0,0 +1,242 @@
+package com.soukon.novelEditorAi.agent;
+
+import com.soukon.novelEditorAi.agent.tool.WritingToolManager;
+import com.soukon.novelEditorAi.llm.LlmService;
+import com.soukon.novelEditorAi.model.chapter.PlanContext;
+import com.soukon.novelEditorAi.model.chapter.PlanState;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 写作计划注册表
+ * <p>
+ * 按最近访问顺序保存计划上下文，超过容量或空闲超时的计划会被淘汰；
+ * 计划进入 {@link PlanState#COMPLETED} 后立即释放其 ChatClient 和工具状态，
+ * 上下文只再保留一小段时间供前端查询最终进度。
+ */
+@Component
+@Slf4j
+public class PlanRegistry {
+
+    @Value("${novel.plan.max-live-plans:200}")
+    private int maxLivePlans;
+
+    @Value("${novel.plan.idle-ttl-minutes:30}")
+    private long idleTtlMinutes;
+
+    @Value("${novel.plan.completed-ttl-minutes:5}")
+    private long completedTtlMinutes;
+
+    @Value("${novel.plan.expired-history-size:1000}")
+    private int expiredHistorySize;
+
+    private final LlmService llmService;
+    private final WritingToolManager writingToolManager;
+
+    /**
+     * 访问顺序的计划表，所有读写都在 this 上同步
+     */
+    private final LinkedHashMap<String, PlanEntry> plans = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 最近被淘汰的计划ID，用于给进度查询返回"已过期"而不是"不存在"
+     */
+    private final LinkedHashMap<String, Boolean> expiredPlanIds = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > expiredHistorySize;
+        }
+    };
+
+    private final AtomicLong registeredCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong evictedExpiredCount = new AtomicLong();
+    private final AtomicLong evictedCapacityCount = new AtomicLong();
+
+    private ScheduledExecutorService sweeper;
+
+    public PlanRegistry(LlmService llmService, WritingToolManager writingToolManager) {
+        this.llmService = llmService;
+        this.writingToolManager = writingToolManager;
+    }
+
+    @PostConstruct
+    public void start() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "plan-registry-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::evictExpired, 1, 1, TimeUnit.MINUTES);
+        log.info("计划注册表启动，最大计划数: {}，空闲超时: {} 分钟", maxLivePlans, idleTtlMinutes);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * 注册新的计划，超出容量时淘汰最久未访问的计划
+     */
+    public void register(PlanContext planContext) {
+        List<PlanEntry> evicted = new ArrayList<>();
+        PlanEntry entry = new PlanEntry(planContext);
+        synchronized (this) {
+            while (plans.size() >= maxLivePlans) {
+                Iterator<PlanEntry> eldest = plans.values().iterator();
+                PlanEntry victim = eldest.next();
+                eldest.remove();
+                expiredPlanIds.put(victim.context.getPlanId(), Boolean.TRUE);
+                evicted.add(victim);
+            }
+            plans.put(planContext.getPlanId(), entry);
+        }
+        registeredCount.incrementAndGet();
+        planContext.setStateListener(this::onStateChanged);
+
+        for (PlanEntry victim : evicted) {
+            evictedCapacityCount.incrementAndGet();
+            log.warn("计划注册表已满，淘汰最久未访问的计划: {}", victim.context.getPlanId());
+            release(victim.context);
+        }
+    }
+
+    /**
+     * 获取计划上下文并刷新其访问时间
+     *
+     * @return 计划上下文，不存在或已淘汰时返回null
+     */
+    public PlanContext get(String planId) {
+        PlanEntry entry;
+        synchronized (this) {
+            entry = plans.get(planId);
+        }
+        if (entry == null) {
+            return null;
+        }
+        entry.touch();
+        return entry.context;
+    }
+
+    /**
+     * 判断计划是否因超时或容量限制被淘汰
+     */
+    public synchronized boolean isExpired(String planId) {
+        return expiredPlanIds.containsKey(planId);
+    }
+
+    /**
+     * 获取注册表统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (this) {
+            stats.put("livePlans", plans.size());
+            stats.put("completedPlansRetained", plans.values().stream().filter(e -> e.completedAt > 0).count());
+        }
+        stats.put("maxLivePlans", maxLivePlans);
+        stats.put("registered", registeredCount.get());
+        stats.put("completed", completedCount.get());
+        stats.put("evictedExpired", evictedExpiredCount.get());
+        stats.put("evictedCapacity", evictedCapacityCount.get());
+        stats.put("agentChatClients", llmService.getAgentChatClientCount());
+        stats.put("planToolStates", writingToolManager.getActivePlanCount());
+        return stats;
+    }
+
+    private void onStateChanged(PlanContext planContext) {
+        PlanEntry entry;
+        synchronized (this) {
+            entry = plans.get(planContext.getPlanId());
+        }
+        if (entry == null) {
+            return;
+        }
+        entry.touch();
+        if (planContext.getPlanState() == PlanState.COMPLETED && entry.completedAt == 0) {
+            entry.completedAt = System.currentTimeMillis();
+            completedCount.incrementAndGet();
+            // 计划已结束，ChatClient和工具状态不再需要；生成内容仍保留在上下文中供前端读取
+            llmService.removeAgentChatClient(planContext.getPlanId());
+            planContext.setToolCacheStats(writingToolManager.getToolCacheStats(planContext.getPlanId()));
+            writingToolManager.cleanupPlan(planContext.getPlanId());
+        }
+    }
+
+    /**
+     * 淘汰空闲超时或已完成且超过保留期的计划
+     */
+    void evictExpired() {
+        long now = System.currentTimeMillis();
+        long idleTtlMillis = TimeUnit.MINUTES.toMillis(idleTtlMinutes);
+        long completedTtlMillis = TimeUnit.MINUTES.toMillis(completedTtlMinutes);
+        List<PlanEntry> evicted = new ArrayList<>();
+        int remaining;
+        synchronized (this) {
+            Iterator<PlanEntry> iterator = plans.values().iterator();
+            while (iterator.hasNext()) {
+                PlanEntry entry = iterator.next();
+                boolean idle = now - entry.lastAccessAt > idleTtlMillis;
+                boolean completedExpired = entry.completedAt > 0 && now - entry.completedAt > completedTtlMillis;
+                if (idle || completedExpired) {
+                    iterator.remove();
+                    expiredPlanIds.put(entry.context.getPlanId(), Boolean.TRUE);
+                    evicted.add(entry);
+                }
+            }
+            remaining = plans.size();
+        }
+        for (PlanEntry entry : evicted) {
+            evictedExpiredCount.incrementAndGet();
+            release(entry.context);
+        }
+        if (!evicted.isEmpty()) {
+            log.info("淘汰过期计划 {} 个，当前计划数: {}", evicted.size(), remaining);
+        }
+    }
+
+    private void release(PlanContext planContext) {
+        try {
+            planContext.setStateListener(null);
+            // 唤醒仍在等待前端消费的代理，使其尽快结束
+            planContext.notifyConsumptionCompleted();
+            planContext.setPlanStream(null);
+            planContext.getStreamBuffer().complete();
+            llmService.removeAgentChatClient(planContext.getPlanId());
+            writingToolManager.cleanupPlan(planContext.getPlanId());
+        } catch (Exception e) {
+            log.warn("释放计划 {} 的资源失败: {}", planContext.getPlanId(), e.getMessage());
+        }
+    }
+
+    private static class PlanEntry {
+        private final PlanContext context;
+        private volatile long lastAccessAt = System.currentTimeMillis();
+        private volatile long completedAt = 0;
+
+        PlanEntry(PlanContext context) {
+            this.context = context;
+        }
+
+        void touch() {
+            lastAccessAt = System.currentTimeMillis();
+        }
+    }
+}
@@ -18,10 +18,12 @@ import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.converter.BeanOutputConverter;
 import org.springframework.ai.tool.ToolCallback;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * 集成RAG和函数调用的增强写作代理
@@ -69,27 +71,24 @@ public class RagEnhancedWritingAgent extends BaseAgent {
     }
     
     @Override
-    protected AgentExecResult step() {
-        try {
+    protected Mono<AgentExecResult> step() {
+        return Mono.defer(() -> {
             if (planSteps == null || currentStepIndex >= planSteps.size()) {
-                return new AgentExecResult("所有写作步骤已完成", AgentState.COMPLETED);
+                return Mono.just(new AgentExecResult("所有写作步骤已完成", AgentState.COMPLETED));
             }
             
             PlanDetailRes currentStep = planSteps.get(currentStepIndex);
             log.info("[RAG增强写作] 执行步骤 {}: {}", currentStepIndex + 1, 
                     currentStep.getPlanContent() != null ? currentStep.getPlanContent() : "写作任务");
             
-            // 获取所有可用的工具
+            // 准备本计划的工具状态
             toolManager.initializeForPlan(planId);
-            List<Object> tools = toolManager.getAllTools();
             
             // 构建增强的系统提示词
             String enhancedSystemPrompt = buildEnhancedSystemPrompt();
             
-            // 创建带工具的ChatClient
-            ChatClient toolEnabledClient = chatClient.mutate()
-                    .defaultTools(tools.toArray())
-                    .build();
+            // 获取预先构建的带工具ChatClient
+            ChatClient toolEnabledClient = toolManager.toolEnabledClient(chatClient);
             
             // 构建任务描述
             String taskDescription = buildTaskDescription(currentStep);
@@ -99,27 +98,30 @@ public class RagEnhancedWritingAgent extends BaseAgent {
             messages.add(new SystemMessage(enhancedSystemPrompt));
             messages.add(new UserMessage(taskDescription));
             
-            String stepContent = toolEnabledClient.prompt()
+            // 收集流式响应，等待模型期间不占用线程
+            return toolEnabledClient.prompt()
                     .messages(messages)
-                    .call()
-                    .content();
-            
-            // 累积内容
-            accumulatedContent.append(stepContent);
-            
-            // 移动到下一步
-            currentStepIndex++;
-            
-            if (currentStepIndex >= planSteps.size()) {
-                return new AgentExecResult("写作完成: " + stepContent, AgentState.COMPLETED);
-            } else {
-                return new AgentExecResult("步骤完成: " + stepContent, AgentState.IN_PROGRESS);
-            }
-            
-        } catch (Exception e) {
+                    .toolContext(toolManager.toolContext(planId))
+                    .stream()
+                    .content()
+                    .collect(Collectors.joining())
+                    .map(stepContent -> {
+                        // 累积内容
+                        accumulatedContent.append(stepContent);
+                        
+                        // 移动到下一步
+                        currentStepIndex++;
+                        
+                        if (currentStepIndex >= planSteps.size()) {
+                            return new AgentExecResult("写作完成: " + stepContent, AgentState.COMPLETED);
+                        } else {
+                            return new AgentExecResult("步骤完成: " + stepContent, AgentState.IN_PROGRESS);
+                        }
+                    });
+        }).onErrorResume(e -> {
             log.error("[RAG增强写作] 步骤执行失败", e);
-            return new AgentExecResult("步骤执行失败: " + e.getMessage(), AgentState.FAILED);
-        }
+            return Mono.just(new AgentExecResult("步骤执行失败: " + e.getMessage(), AgentState.FAILED));
+        });
     }
     
     /**
@@ -139,20 +141,14 @@ public class RagEnhancedWritingAgent extends BaseAgent {
             try {
                 log.info("[RAG增强写作] 开始执行写作计划，计划ID: {}", planId);
                 
-                // 初始化工具状态
+                // 准备本计划的工具状态，调用工具时计划ID通过 ToolContext 传入
                 toolManager.initializeForPlan(planId);
                 
-                // 获取所有可用的工具
-                List<Object> tools = toolManager.getAllTools();
-                log.info("[RAG增强写作] 加载了 {} 个工具", tools.size());
-                
                 // 构建增强的系统提示词
                 String enhancedSystemPrompt = buildEnhancedSystemPrompt();
                 
-                // 创建带工具的ChatClient
-                ChatClient toolEnabledClient = chatClient.mutate()
-                        .defaultTools(tools.toArray())
-                        .build();
+                // 获取预先构建的带工具ChatClient
+                ChatClient toolEnabledClient = toolManager.toolEnabledClient(chatClient);
                 
                 // 执行写作流程
                 executeWritingSteps(toolEnabledClient, enhancedSystemPrompt, planMessages, sink);
@@ -222,6 +218,7 @@ public class RagEnhancedWritingAgent extends BaseAgent {
             // 使用流式生成
             Flux<String> contentStream = toolEnabledClient.prompt()
                     .messages(messages)
+                    .toolContext(toolManager.toolContext(planId))
                     .stream()
                     .content();
             
@@ -237,8 +234,7 @@ public class RagEnhancedWritingAgent extends BaseAgent {
                     },
                     () -> {
                         log.info("[RAG增强写作] 内容生成完成");
-                        // 清理工具资源
-                        toolManager.cleanupPlan(planId);
+                        // 工具状态由计划注册表在计划完成时记录缓存统计后清理
                         sink.complete();
                     }
             );
@@ -19,6 +19,7 @@ import com.soukon.novelEditorAi.llm.LlmService;
 import com.soukon.novelEditorAi.model.chapter.ChapterContentRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
 
 /**
  * ReAct（Reasoning + Acting）模式的智能体基类 实现了思考(Reasoning)和行动(Acting)交替执行的智能体模式
@@ -43,9 +44,9 @@ public abstract class ReActAgent extends BaseAgent {
      * <p>
      * 示例实现： - 如果需要调用工具，返回true - 如果当前步骤已完成，返回false
      *
-     * @return true表示需要执行行动，false表示当前不需要行动
+     * @return 发出true表示需要执行行动，false表示当前不需要行动
      */
-    protected abstract boolean think();
+    protected abstract Mono<Boolean> think();
 
     /**
      * 执行具体的行动
@@ -54,9 +55,9 @@ public abstract class ReActAgent extends BaseAgent {
      * <p>
      * 示例实现： - ToolCallAgent：执行选定的工具调用 - BrowserAgent：执行浏览器操作
      *
-     * @return 行动执行的结果描述
+     * @return 行动执行的结果描述，等待期间不占用线程
      */
-    protected abstract AgentExecResult act();
+    protected abstract Mono<AgentExecResult> act();
 
     /**
      * 执行一个完整的思考-行动步骤
@@ -64,16 +65,16 @@ public abstract class ReActAgent extends BaseAgent {
      * @return 如果不需要行动则返回思考完成的消息，否则返回行动的执行结果
      */
     @Override
-    public AgentExecResult step() {
-
-        boolean shouldAct = think();
-        if (!shouldAct) {
-            AgentExecResult result = new AgentExecResult("Thinking complete - no action needed",
-                    AgentState.IN_PROGRESS);
-            this.setState(AgentState.COMPLETED);
-            return result;
-        }
-        return act();
+    public Mono<AgentExecResult> step() {
+        return think().flatMap(shouldAct -> {
+            if (!shouldAct) {
+                AgentExecResult result = new AgentExecResult("Thinking complete - no action needed",
+                        AgentState.IN_PROGRESS);
+                this.setState(AgentState.COMPLETED);
+                return Mono.just(result);
+            }
+            return act();
+        });
     }
 
 }
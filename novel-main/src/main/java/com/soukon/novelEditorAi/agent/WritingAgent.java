@@ -33,12 +33,15 @@ import org.springframework.ai.chat.prompt.SystemPromptTemplate;
 import org.springframework.ai.converter.BeanOutputConverter;
 import org.springframework.ai.tool.ToolCallbackProvider;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 
 public class WritingAgent extends ReActAgent {
@@ -46,6 +49,11 @@ public class WritingAgent extends ReActAgent {
 
     private static final Logger log = LoggerFactory.getLogger(WritingAgent.class);
 
+    /**
+     * 等待前端消费单步生成内容的最长时间
+     */
+    private static final Duration CONSUMPTION_TIMEOUT = Duration.ofMinutes(5);
+
 
 //    private final String reactSystemPrompt = """
 //            你是一个专业小说写作助手，使用ReAct（思考+行动）模式工作，严格遵循以下流程：
@@ -256,6 +264,7 @@ public class WritingAgent extends ReActAgent {
     private String mood = "自然流畅";
     private StringBuilder generatedContent = new StringBuilder();
     private String previousContent = "无前文";
+    private Duration consumptionTimeout = CONSUMPTION_TIMEOUT;
 
 
     public WritingAgent(LlmService llmService, ChapterContentRequest request) {
@@ -384,17 +393,17 @@ public class WritingAgent extends ReActAgent {
     }
 
     @Override
-    public void run(Map<String, Object> stepData) {
+    public Mono<Void> run(Map<String, Object> stepData) {
         currentWordCount = 0;
         currentStepNumber = 1;
-        super.run(stepData);
+        return super.run(stepData);
     }
 
     @Override
-    protected boolean think() {
-        try {
+    protected Mono<Boolean> think() {
+        return Mono.defer(() -> {
             if (currentWordCount >= (Integer) stepData.get("goalWordCount")) {
-                return false;
+                return Mono.just(false);
             }
             PromptTemplate promptTemplate = new PromptTemplate(thinkPromptTemplate);
             PlanContext planContext = this.chapterContentRequest.getPlanContext();
@@ -408,29 +417,31 @@ public class WritingAgent extends ReActAgent {
             addThinkPrompt(messageList);
             messageList.add(thinkMessage);
             log.info("[Thinking] 正在思考：{}，已完成字数：{}，总字数：{}", messageList, currentWordCount, stepData.get("goalWordCount"));
-            String content = llmService.getAgentChatClient(planId)
+            // 收集流式响应而不是阻塞在call()上，等待模型期间不占用线程
+            return llmService.getAgentChatClient(planId)
                     .getChatClient()
-                    .prompt(new Prompt(messageList)).call().content();
-            log.info("[Thinking] 思考结束：{}", content);
-            ThinkRes convert = converter.convert(content);
-            currentThink = convert.toString();
-            if (convert.getQuestions() != null && !convert.getQuestions().isEmpty() && !convert.getCompleted()) {
-                return true;
-            }
-
-        } catch (Exception e) {
+                    .prompt(new Prompt(messageList)).stream().content()
+                    .collect(Collectors.joining())
+                    .map(content -> {
+                        log.info("[Thinking] 思考结束：{}", content);
+                        ThinkRes convert = converter.convert(content);
+                        currentThink = convert.toString();
+                        return convert.getQuestions() != null && !convert.getQuestions().isEmpty() && !convert.getCompleted();
+                    });
+        }).onErrorResume(e -> {
             log.error("思考阶段执行失败: {}", e.getMessage(), e);
-        }
-        return false;
+            return Mono.just(false);
+        });
     }
 
     @Override
-    protected AgentExecResult act() {
+    protected Mono<AgentExecResult> act() {
 
         PromptTemplate promptTemplate = new PromptTemplate(actionPromptTemplate);
         stepData.put("previousContent", previousContent);
         stepData.put("currentThink", currentThink);
-        this.chapterContentRequest.getPlanContext().setMessage("正在思考：" + currentThink);
+        PlanContext planContext = this.chapterContentRequest.getPlanContext();
+        planContext.setMessage("正在思考：" + currentThink);
         Message actionMessage = promptTemplate.createMessage(stepData);
         // 调用LLM生成行动结果
         Prompt prompt = new Prompt(List.of(actionMessage));
@@ -441,9 +452,6 @@ public class WritingAgent extends ReActAgent {
                 .prompt(prompt).stream().content();
         log.info("[Acting] llm调用完成");
 
-        // 创建完成信号
-        java.util.concurrent.CountDownLatch consumptionLatch = new java.util.concurrent.CountDownLatch(1);
-
         // 创建一个StringBuilder来保存完整内容
         StringBuilder fullContent = new StringBuilder();
 
@@ -466,28 +474,25 @@ public class WritingAgent extends ReActAgent {
                     log.error("[Acting] Error in content stream: {}", error.getMessage(), error);
                 });
 
-        // 将等待信号保存到PlanContext
-        this.chapterContentRequest.getPlanContext().setCompletionLatch(consumptionLatch);
-        this.chapterContentRequest.getPlanContext().setPlanStream(contentWithCapture);
-        this.chapterContentRequest.getPlanContext().setPlanState(PlanState.GENERATING);
-
-        try {
-            // 等待前端完成消费（前端需要主动调用countDown）
-            log.info("[Acting] 等待前端消费完毕...");
-            consumptionLatch.await(5, java.util.concurrent.TimeUnit.MINUTES);  // 添加超时，最多等待5分钟
-            log.info("[Acting] 前端消费完毕或等待超时，继续执行");
-        } catch (InterruptedException e) {
-            log.error("[Acting] 等待前端消费过程被中断", e);
-            Thread.currentThread().interrupt();
-        }
-
-        this.chapterContentRequest.getPlanContext().setPlanState(PlanState.IN_PROGRESS);
-        this.chapterContentRequest.getPlanContext().setPlanStream(null);
-        currentWordCount = currentWordCount + fullContent.length();
-        previousContent = fullContent.toString();
-        log.info("[Acting] Total captured content length: {} characters", fullContent.length());
-        // 返回已完成的内容
-        return new AgentExecResult(fullContent.toString(), AgentState.IN_PROGRESS);
+        // 由计划的回放缓冲区订阅一次，前端确认消费或读完该步骤输出时触发完成信号
+        planContext.setPlanState(PlanState.GENERATING);
+        planContext.setPlanStream(contentWithCapture);
+        Mono<Void> consumed = planContext.awaitConsumption();
+
+        // 等待前端消费完毕，默认最多等待5分钟；等待期间不占用线程
+        log.info("[Acting] 等待前端消费完毕...");
+        return consumed
+                .timeout(consumptionTimeout, Mono.fromRunnable(() -> log.warn("[Acting] 等待前端消费超时")))
+                .then(Mono.fromCallable(() -> {
+                    log.info("[Acting] 前端消费完毕或等待超时，继续执行");
+                    planContext.setPlanState(PlanState.IN_PROGRESS);
+                    planContext.setPlanStream(null);
+                    currentWordCount = currentWordCount + fullContent.length();
+                    previousContent = fullContent.toString();
+                    log.info("[Acting] Total captured content length: {} characters", fullContent.length());
+                    // 返回已完成的内容
+                    return new AgentExecResult(fullContent.toString(), AgentState.IN_PROGRESS);
+                }));
     }
 
     @Override
@@ -521,4 +526,11 @@ public class WritingAgent extends ReActAgent {
     public String getPlanId() {
         return this.planId;
     }
+
+    /**
+     * 设置等待前端消费单步内容的最长时间，超时后继续执行下一步
+     */
+    void setConsumptionTimeout(Duration consumptionTimeout) {
+        this.consumptionTimeout = consumptionTimeout;
+    }
 }
@@ -5,6 +5,7 @@ import com.alibaba.fastjson2.TypeReference;
 import com.soukon.novelEditorAi.entities.Character;
 import com.soukon.novelEditorAi.mapper.CharacterMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ToolContext;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.function.FunctionToolCallback;
 import org.springframework.ai.tool.annotation.Tool;
@@ -23,8 +24,6 @@ import java.util.stream.Collectors;
 public class CharacterQueryTool {
     
     private final CharacterMapper characterMapper;
-    private String planId;
-    private String lastQueryResult = "";
     
     public CharacterQueryTool(CharacterMapper characterMapper) {
         this.characterMapper = characterMapper;
@@ -39,11 +38,12 @@ public class CharacterQueryTool {
             Long projectId,
             String characterName,
             Long characterId,
-            String queryType) {
+            String queryType,
+            ToolContext toolContext) {
         
         try {
-            log.info("角色查询工具调用: queryType={}, projectId={}, characterName={}, characterId={}", 
-                    queryType, projectId, characterName, characterId);
+            log.info("角色查询工具调用: planId={}, queryType={}, projectId={}, characterName={}, characterId={}", 
+                    WritingToolManager.planIdOf(toolContext), queryType, projectId, characterName, characterId);
             
             List<Character> characters;
             
@@ -66,14 +66,13 @@ public class CharacterQueryTool {
             }
             
             String result = formatCharacterInfo(characters);
-            lastQueryResult = result;
             
             log.info("角色查询结果: 找到 {} 个角色", characters.size());
             return result;
             
         } catch (Exception e) {
             log.error("角色查询工具执行失败", e);
-            return "查询失败: " + e.getMessage();
+            return WritingToolManager.QUERY_FAILED + e.getMessage();
         }
     }
     
@@ -142,17 +141,4 @@ public class CharacterQueryTool {
         
         return result.toString();
     }
-    
-    public void setPlanId(String planId) {
-        this.planId = planId;
-    }
-    
-    public String getCurrentToolState() {
-        return "最后查询结果: " + (lastQueryResult.length() > 100 ? 
-                lastQueryResult.substring(0, 100) + "..." : lastQueryResult);
-    }
-    
-    public void cleanup(String planId) {
-        this.lastQueryResult = "";
-    }
-} 
\ No newline at end of file
+}
@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.soukon.novelEditorAi.entities.Plot;
 import com.soukon.novelEditorAi.service.PlotService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ToolContext;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.stereotype.Component;
 
@@ -18,8 +19,6 @@ import java.util.List;
 public class PlotQueryTool {
     
     private final PlotService plotService;
-    private String planId;
-    private String lastQueryResult = "";
     
     public PlotQueryTool(PlotService plotService) {
         this.plotService = plotService;
@@ -35,11 +34,12 @@ public class PlotQueryTool {
             Long chapterId,
             String plotTitle,
             Long plotId,
-            String queryType) {
+            String queryType,
+            ToolContext toolContext) {
         
         try {
-            log.info("情节查询工具调用: queryType={}, projectId={}, chapterId={}, plotTitle={}, plotId={}", 
-                    queryType, projectId, chapterId, plotTitle, plotId);
+            log.info("情节查询工具调用: planId={}, queryType={}, projectId={}, chapterId={}, plotTitle={}, plotId={}", 
+                    WritingToolManager.planIdOf(toolContext), queryType, projectId, chapterId, plotTitle, plotId);
             
             List<Plot> plots;
             
@@ -66,14 +66,13 @@ public class PlotQueryTool {
             }
             
             String result = formatPlotInfo(plots);
-            lastQueryResult = result;
             
             log.info("情节查询结果: 找到 {} 个情节", plots.size());
             return result;
             
         } catch (Exception e) {
             log.error("情节查询工具执行失败", e);
-            return "查询失败: " + e.getMessage();
+            return WritingToolManager.QUERY_FAILED + e.getMessage();
         }
     }
     
@@ -162,17 +161,4 @@ public class PlotQueryTool {
         
         return result.toString();
     }
-    
-    public void setPlanId(String planId) {
-        this.planId = planId;
-    }
-    
-    public String getCurrentToolState() {
-        return "最后查询结果: " + (lastQueryResult.length() > 100 ? 
-                lastQueryResult.substring(0, 100) + "..." : lastQueryResult);
-    }
-    
-    public void cleanup(String planId) {
-        this.lastQueryResult = "";
-    }
-} 
\ No newline at end of file
+}
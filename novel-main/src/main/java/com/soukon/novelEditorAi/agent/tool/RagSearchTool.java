@@ -2,6 +2,7 @@ package com.soukon.novelEditorAi.agent.tool;
 
 import com.soukon.novelEditorAi.service.RagService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ToolContext;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.document.Document;
 import org.springframework.stereotype.Component;
@@ -20,8 +21,6 @@ public class RagSearchTool {
 //    类型: 世界观,章节,情节,内容,大纲,模板
     
     private final RagService ragService;
-    private String planId;
-    private String lastSearchResult = "";
     
     public RagSearchTool(RagService ragService) {
         this.ragService = ragService;
@@ -36,11 +35,12 @@ public class RagSearchTool {
             Long projectId,
             String query,
             Integer maxResults,
-            String searchType) {
+            String searchType,
+            ToolContext toolContext) {
         
         try {
-            log.info("RAG搜索工具调用: projectId={}, query={}, maxResults={}, searchType={}", 
-                    projectId, query, maxResults, searchType);
+            log.info("RAG搜索工具调用: planId={}, projectId={}, query={}, maxResults={}, searchType={}", 
+                    WritingToolManager.planIdOf(toolContext), projectId, query, maxResults, searchType);
             
             // 设置默认值
             if (maxResults == null || maxResults <= 0) {
@@ -55,7 +55,6 @@ public class RagSearchTool {
                     projectId, query, maxResults);
             
             String result = formatSearchResults(documents, query);
-            lastSearchResult = result;
             
             log.info("RAG搜索结果: 找到 {} 个相关文档片段", documents.size());
             return result;
@@ -117,17 +116,4 @@ public class RagSearchTool {
         
         return result.toString();
     }
-    
-    public void setPlanId(String planId) {
-        this.planId = planId;
-    }
-    
-    public String getCurrentToolState() {
-        return "最后搜索结果: " + (lastSearchResult.length() > 100 ? 
-                lastSearchResult.substring(0, 100) + "..." : lastSearchResult);
-    }
-    
-    public void cleanup(String planId) {
-        this.lastSearchResult = "";
-    }
-} 
\ No newline at end of file
+}
@@ -1,104 +1,399 @@
 package com.soukon.novelEditorAi.agent.tool;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.soukon.novelEditorAi.entities.Character;
+import com.soukon.novelEditorAi.entities.Plot;
+import com.soukon.novelEditorAi.event.EntityChangeEvent;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 /**
  * 写作工具管理器
- * 管理所有可用的写作工具
+ * <p>
+ * 工具本身是无状态的单例，计划相关的信息只在计划注册表中。工具回调在启动时解析一次，
+ * 所有计划共用；调用工具时从 ToolContext 中读取计划ID，并把结果记录到该计划的工具状态中。
+ * 多个计划同时写作时互不覆盖，清理一个计划也不会影响其他计划。
+ * <p>
+ * 带工具的 ChatClient 按基础 ChatClient 各构建一次并缓存，写作的每一步不再重复反射扫描工具方法、
+ * 生成参数结构；每次请求通过 {@link #toolContext(String)} 传入计划ID。
+ * <p>
+ * 同一计划中以相同参数重复调用角色和情节查询时直接返回上次的结果。缓存按计划隔离，
+ * 相关实体发生写入时（{@link EntityChangeEvent}）丢弃依赖该实体的结果。
  */
 @Component
 @Slf4j
 public class WritingToolManager {
-    
+
+    /**
+     * ToolContext 中计划ID的键
+     */
+    public static final String PLAN_ID = "planId";
+
+    /**
+     * 查询工具执行失败时返回内容的前缀，失败的结果不缓存
+     */
+    public static final String QUERY_FAILED = "查询失败: ";
+
+    private static final int STATE_PREVIEW_LENGTH = 100;
+
+    private static final Map<String, String> TOOL_DISPLAY_NAMES = Map.of(
+            "character_query", "角色查询工具",
+            "plot_query", "情节查询工具",
+            "rag_search", "RAG搜索工具");
+
+    /**
+     * 结果可以在计划内复用的工具及其结果依赖的实体。RAG搜索依赖异步更新的索引，
+     * 实体写入时结果尚未变化，不在此缓存，由检索结果缓存按索引版本处理
+     */
+    private static final Map<String, Set<Class<?>>> MEMOIZED_TOOLS = Map.of(
+            "character_query", Set.of(Character.class),
+            "plot_query", Set.of(Plot.class));
+
+    /**
+     * 缓存结果依赖的全部实体，其他实体（如索引任务心跳、分块清单）的写入不影响工具缓存
+     */
+    private static final Set<Class<?>> MEMOIZED_DEPENDENCIES = MEMOIZED_TOOLS.values().stream()
+            .flatMap(Set::stream)
+            .collect(Collectors.toUnmodifiableSet());
+
+    @Value("${novel.plan.tool-cache.enabled:true}")
+    private boolean toolCacheEnabled = true;
+
+    @Value("${novel.plan.tool-cache.max-entries:100}")
+    private int toolCacheMaxEntries = 100;
+
     private final CharacterQueryTool characterQueryTool;
     private final PlotQueryTool plotQueryTool;
     private final RagSearchTool ragSearchTool;
-    
-    private final ConcurrentHashMap<String, String> planToolStates = new ConcurrentHashMap<>();
-    
+
+    /**
+     * 启动时解析的工具回调，不可修改，所有计划共用
+     */
+    private final List<ToolCallback> toolCallbacks;
+
+    /**
+     * 计划ID到该计划工具状态的映射
+     */
+    private final ConcurrentHashMap<String, PlanTools> planTools = new ConcurrentHashMap<>();
+
+    /**
+     * 基础 ChatClient 到带工具 ChatClient 的映射。ChatClient 未重写 equals，按实例区分；
+     * 基础 ChatClient 应是长期存在的单例，不要为每个计划新建后传入
+     */
+    private final ConcurrentHashMap<ChatClient, ChatClient> toolEnabledClients = new ConcurrentHashMap<>();
+
     public WritingToolManager(CharacterQueryTool characterQueryTool,
                              PlotQueryTool plotQueryTool,
                              RagSearchTool ragSearchTool) {
         this.characterQueryTool = characterQueryTool;
         this.plotQueryTool = plotQueryTool;
         this.ragSearchTool = ragSearchTool;
-        
-        log.info("写作工具管理器初始化完成，加载了 3 个工具");
+
+        List<ToolCallback> callbacks = new ArrayList<>();
+        for (ToolCallback callback : ToolCallbacks.from(characterQueryTool, plotQueryTool, ragSearchTool)) {
+            callbacks.add(new PlanToolCallback(callback));
+        }
+        this.toolCallbacks = List.copyOf(callbacks);
+
+        log.info("写作工具管理器初始化完成，加载了 {} 个工具", toolCallbacks.size());
+    }
+
+    /**
+     * 从 ToolContext 中读取计划ID
+     */
+    public static String planIdOf(ToolContext toolContext) {
+        if (toolContext == null) {
+            return null;
+        }
+        Object planId = toolContext.getContext().get(PLAN_ID);
+        return planId != null ? planId.toString() : null;
+    }
+
+    /**
+     * 获取工具回调并为计划准备工具状态。回调为所有计划共用的不可修改列表，
+     * 调用时需通过 {@link #toolContext(String)} 传入计划ID
+     */
+    public List<ToolCallback> getAllToolCallbacks(String planId) {
+        initializeForPlan(planId);
+        return toolCallbacks;
+    }
+
+    /**
+     * 获取带全部写作工具的 ChatClient，每个基础 ChatClient 只构建一次
+     */
+    public ChatClient toolEnabledClient(ChatClient chatClient) {
+        return toolEnabledClients.computeIfAbsent(chatClient,
+                client -> client.mutate().defaultToolCallbacks(toolCallbacks).build());
     }
-    
+
     /**
-     * 获取所有工具实例
+     * 请求的工具上下文，携带计划ID
      */
-    public List<Object> getAllTools() {
-        return List.of(characterQueryTool, plotQueryTool, ragSearchTool);
+    public Map<String, Object> toolContext(String planId) {
+        return Map.of(PLAN_ID, planId);
     }
-    
+
     /**
-     * 为特定计划设置工具状态
+     * 为特定计划准备工具状态
      */
     public void initializeForPlan(String planId) {
-        try {
-            characterQueryTool.setPlanId(planId);
-            plotQueryTool.setPlanId(planId);
-            ragSearchTool.setPlanId(planId);
-            
+        if (planTools.putIfAbsent(planId, new PlanTools()) == null) {
             log.info("为计划 {} 初始化工具状态", planId);
-        } catch (Exception e) {
-            log.error("初始化计划 {} 的工具状态失败", planId, e);
         }
     }
-    
+
     /**
      * 获取工具状态摘要
      */
     public String getToolStateSummary(String planId) {
         StringBuilder summary = new StringBuilder();
         summary.append("=== 工具状态摘要 ===\n");
-        
-        try {
-            summary.append("角色查询工具: ").append(characterQueryTool.getCurrentToolState()).append("\n");
-            summary.append("情节查询工具: ").append(plotQueryTool.getCurrentToolState()).append("\n");
-            summary.append("RAG搜索工具: ").append(ragSearchTool.getCurrentToolState()).append("\n");
-        } catch (Exception e) {
-            log.warn("获取工具状态摘要失败", e);
-            summary.append("获取状态失败: ").append(e.getMessage()).append("\n");
+
+        PlanTools tools = planTools.get(planId);
+        for (Map.Entry<String, String> tool : TOOL_DISPLAY_NAMES.entrySet()) {
+            String lastResult = tools != null ? tools.lastResults.getOrDefault(tool.getKey(), "") : "";
+            summary.append(tool.getValue()).append(": 最后查询结果: ")
+                    .append(lastResult.length() > STATE_PREVIEW_LENGTH
+                            ? lastResult.substring(0, STATE_PREVIEW_LENGTH) + "..." : lastResult)
+                    .append("\n");
         }
-        
+
         return summary.toString();
     }
-    
+
     /**
      * 清理计划相关的工具状态
      */
     public void cleanupPlan(String planId) {
-        try {
-            characterQueryTool.cleanup(planId);
-            plotQueryTool.cleanup(planId);
-            ragSearchTool.cleanup(planId);
-            
-            planToolStates.remove(planId);
-            
+        if (planTools.remove(planId) != null) {
             log.info("清理计划 {} 的工具状态完成", planId);
-        } catch (Exception e) {
-            log.error("清理计划 {} 的工具状态失败", planId, e);
         }
     }
-    
+
+    /**
+     * 获取计划的工具调用缓存统计
+     *
+     * @return 统计信息，计划不存在或已清理时返回null
+     */
+    public Map<String, Object> getToolCacheStats(String planId) {
+        PlanTools tools = planTools.get(planId);
+        return tools != null ? tools.getStats() : null;
+    }
+
+    /**
+     * 实体发生写入，所有计划中依赖该实体的工具结果失效；与缓存结果无关的实体直接忽略
+     */
+    @EventListener
+    public void onEntityChange(EntityChangeEvent event) {
+        if (!MEMOIZED_DEPENDENCIES.contains(event.getEntityType())) {
+            return;
+        }
+        for (PlanTools tools : planTools.values()) {
+            tools.invalidate(event.getEntityType());
+        }
+    }
+
+    /**
+     * 当前持有工具状态的计划数
+     */
+    public int getActivePlanCount() {
+        return planTools.size();
+    }
+
     /**
      * 获取工具数量
      */
     public int getToolCount() {
         return 3;
     }
-    
+
     /**
      * 检查工具是否可用
      */
     public boolean isToolsAvailable() {
         return characterQueryTool != null && plotQueryTool != null && ragSearchTool != null;
     }
-} 
\ No newline at end of file
+
+    /**
+     * 规范化工具参数：去掉空值和字符串首尾空白，按参数名排序，参数写法不同但含义相同的调用共用缓存
+     *
+     * @return 缓存键，参数无法解析时返回null
+     */
+    static String cacheKey(String toolName, String toolInput) {
+        try {
+            JSONObject arguments = JSON.parseObject(toolInput);
+            TreeMap<String, Object> normalized = new TreeMap<>();
+            if (arguments != null) {
+                for (Map.Entry<String, Object> argument : arguments.entrySet()) {
+                    Object value = argument.getValue();
+                    if (value instanceof String text) {
+                        value = text.trim();
+                    }
+                    if (value != null && !"".equals(value)) {
+                        normalized.put(argument.getKey(), value);
+                    }
+                }
+            }
+            return toolName + "|" + JSON.toJSONString(normalized);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static boolean isFailure(String result) {
+        // 工具返回的字符串经过JSON转换，带有引号
+        return result.startsWith(QUERY_FAILED) || result.startsWith("\"" + QUERY_FAILED);
+    }
+
+    /**
+     * 一个计划中各工具最近一次的结果和工具调用缓存
+     */
+    private class PlanTools {
+        private final Map<String, String> lastResults = new ConcurrentHashMap<>();
+
+        /**
+         * 缓存键到工具结果，按写入顺序淘汰，读写都在自身上同步
+         */
+        private final LinkedHashMap<String, String> results = new LinkedHashMap<>();
+
+        /**
+         * 缓存结果依赖的实体每次写入加一，调用前后版本不一致说明期间实体有写入，结果不再缓存
+         */
+        private long version;
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong invalidations = new AtomicLong();
+
+        synchronized long version() {
+            return version;
+        }
+
+        synchronized String lookup(String key) {
+            String result = results.get(key);
+            (result != null ? hits : misses).incrementAndGet();
+            return result;
+        }
+
+        synchronized void store(String key, String result, long expectedVersion) {
+            if (version != expectedVersion) {
+                return;
+            }
+            results.put(key, result);
+            while (results.size() > toolCacheMaxEntries) {
+                results.remove(results.keySet().iterator().next());
+            }
+        }
+
+        synchronized void invalidate(Class<?> entityType) {
+            boolean removed = false;
+            Iterator<String> iterator = results.keySet().iterator();
+            while (iterator.hasNext()) {
+                String key = iterator.next();
+                Set<Class<?>> dependencies = MEMOIZED_TOOLS.get(key.substring(0, key.indexOf('|')));
+                if (dependencies != null && dependencies.contains(entityType)) {
+                    iterator.remove();
+                    removed = true;
+                }
+            }
+            if (removed) {
+                invalidations.incrementAndGet();
+            }
+            version++;
+        }
+
+        Map<String, Object> getStats() {
+            long hitCount = hits.get();
+            long total = hitCount + misses.get();
+            Map<String, Object> stats = new HashMap<>();
+            synchronized (this) {
+                stats.put("entries", results.size());
+            }
+            stats.put("hits", hitCount);
+            stats.put("misses", misses.get());
+            stats.put("hitRatio", total == 0 ? 0.0 : (double) hitCount / total);
+            stats.put("invalidations", invalidations.get());
+            return stats;
+        }
+    }
+
+    /**
+     * 工具回调包装：从 ToolContext 中读取计划ID，把结果记录到该计划的工具状态中
+     */
+    private class PlanToolCallback implements ToolCallback {
+
+        private final ToolCallback delegate;
+
+        PlanToolCallback(ToolCallback delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return delegate.getToolDefinition();
+        }
+
+        @Override
+        public ToolMetadata getToolMetadata() {
+            return delegate.getToolMetadata();
+        }
+
+        @Override
+        public String call(String toolInput) {
+            return call(toolInput, null);
+        }
+
+        @Override
+        public String call(String toolInput, ToolContext toolContext) {
+            String planId = planIdOf(toolContext);
+            if (planId == null) {
+                throw new IllegalStateException("工具 " + delegate.getToolDefinition().name()
+                        + " 调用缺少计划ID，请求需通过 toolContext 传入");
+            }
+            String toolName = delegate.getToolDefinition().name();
+            PlanTools tools = planTools.get(planId);
+            String key = tools != null && toolCacheEnabled && MEMOIZED_TOOLS.containsKey(toolName)
+                    ? cacheKey(toolName, toolInput) : null;
+            long version = 0;
+            if (key != null) {
+                String cached = tools.lookup(key);
+                if (cached != null) {
+                    log.debug("计划 {} 复用工具 {} 的缓存结果", planId, toolName);
+                    tools.lastResults.put(toolName, cached);
+                    return cached;
+                }
+                version = tools.version();
+            }
+
+            String result = delegate.call(toolInput, toolContext);
+            if (tools != null && result != null) {
+                tools.lastResults.put(toolName, result);
+                if (key != null && !isFailure(result)) {
+                    tools.store(key, result, version);
+                }
+            }
+            return result;
+        }
+    }
+}
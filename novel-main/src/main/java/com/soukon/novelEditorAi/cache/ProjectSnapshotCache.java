@@ -0,0 +1,181 @@
+package com.soukon.novelEditorAi.cache;
+
+import com.soukon.novelEditorAi.entities.Character;
+import com.soukon.novelEditorAi.entities.CharacterRelationship;
+import com.soukon.novelEditorAi.entities.Project;
+import com.soukon.novelEditorAi.entities.World;
+import com.soukon.novelEditorAi.event.EntityChangeEvent;
+import com.soukon.novelEditorAi.mapper.CharacterMapper;
+import com.soukon.novelEditorAi.mapper.ProjectMapper;
+import com.soukon.novelEditorAi.mapper.WorldMapper;
+import com.soukon.novelEditorAi.service.CharacterRelationshipService;
+import com.soukon.novelEditorAi.utils.LatencyHistogram;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 项目上下文快照缓存
+ * <p>
+ * 章节生成需要的项目级数据（项目、世界观、角色、角色关系及其提示词）在同一项目的多次生成之间不变，
+ * 按项目缓存为只读快照。项目、世界观、角色、角色关系发生写入时（{@link EntityChangeEvent}）
+ * 全局版本号加一，之前的快照全部失效；快照记录加载前的版本号，加载期间发生的写入同样使其失效。
+ * 实体变更事件只在本节点发布，其他节点的写入依靠过期时间兜底。
+ * <p>
+ * 快照中的实体被多次生成共享，使用方不得修改。
+ */
+@Slf4j
+@Component
+public class ProjectSnapshotCache {
+
+    /**
+     * 写入后会改变快照内容的实体
+     */
+    private static final Set<Class<?>> SNAPSHOT_ENTITIES = Set.of(
+            Project.class, World.class, Character.class, CharacterRelationship.class);
+
+    @Value("${novel.context.snapshot.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${novel.context.snapshot.max-projects:100}")
+    private int maxProjects = 100;
+
+    @Value("${novel.context.snapshot.ttl-minutes:10}")
+    private long ttlMinutes = 10;
+
+    @Autowired
+    private ProjectMapper projectMapper;
+
+    @Autowired
+    private WorldMapper worldMapper;
+
+    @Autowired
+    private CharacterMapper characterMapper;
+
+    @Autowired
+    private CharacterRelationshipService characterRelationshipService;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+
+    /**
+     * 获取项目快照，未缓存或已失效时从数据库加载
+     *
+     * @throws IllegalArgumentException 项目不存在
+     */
+    public Snapshot get(Long projectId) {
+        if (enabled) {
+            synchronized (entries) {
+                Entry entry = entries.get(projectId);
+                if (entry != null) {
+                    if (entry.version == version.get() && entry.expiresAt > System.currentTimeMillis()) {
+                        hitCount.incrementAndGet();
+                        return entry.snapshot;
+                    }
+                    entries.remove(projectId);
+                }
+            }
+        }
+        missCount.incrementAndGet();
+
+        long loadVersion = version.get();
+        long start = System.nanoTime();
+        Snapshot snapshot = load(projectId);
+        loadLatency.record(System.nanoTime() - start);
+
+        if (enabled) {
+            Entry entry = new Entry(snapshot, loadVersion, System.currentTimeMillis() + ttlMinutes * 60_000);
+            synchronized (entries) {
+                entries.put(projectId, entry);
+                while (entries.size() > maxProjects) {
+                    entries.remove(entries.keySet().iterator().next());
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    @EventListener
+    public void onEntityChange(EntityChangeEvent event) {
+        if (SNAPSHOT_ENTITIES.contains(event.getEntityType())) {
+            version.incrementAndGet();
+            invalidationCount.incrementAndGet();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long hits = hitCount.get();
+        long misses = missCount.get();
+        long total = hits + misses;
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (entries) {
+            stats.put("projects", entries.size());
+        }
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) hits / total);
+        stats.put("invalidations", invalidationCount.get());
+        stats.put("loadLatency", loadLatency.getStats());
+        return stats;
+    }
+
+    private Snapshot load(Long projectId) {
+        Project project = projectMapper.selectById(projectId);
+        if (project == null) {
+            throw new IllegalArgumentException("找不到指定的项目: " + projectId);
+        }
+        World world = project.getWorldId() != null ? worldMapper.selectById(project.getWorldId()) : null;
+
+        List<Character> characters = characterMapper.selectListByProjectId(projectId);
+        characters = characters != null ? List.copyOf(characters) : List.of();
+        Map<Long, Character> charactersById = new HashMap<>();
+        for (Character character : characters) {
+            charactersById.put(character.getId(), character);
+        }
+
+        List<CharacterRelationship> relationships = characterRelationshipService.getByProjectId(projectId);
+        relationships = relationships != null ? List.copyOf(relationships) : List.of();
+        List<String> relationshipPrompts = new ArrayList<>(relationships.size());
+        for (CharacterRelationship relationship : relationships) {
+            relationshipPrompts.add(characterRelationshipService.toPrompt(relationship));
+        }
+
+        log.debug("加载项目 {} 的上下文快照：{} 个角色，{} 条角色关系", projectId, characters.size(), relationships.size());
+        return new Snapshot(project, world, characters, Map.copyOf(charactersById), relationships,
+                List.copyOf(relationshipPrompts));
+    }
+
+    private record Entry(Snapshot snapshot, long version, long expiresAt) {
+    }
+
+    /**
+     * 项目上下文快照
+     *
+     * @param world               项目的世界观，未设置时为null
+     * @param charactersById      角色ID到角色的映射
+     * @param relationshipPrompts 与 relationships 一一对应的角色关系提示词
+     */
+    public record Snapshot(Project project,
+                           World world,
+                           List<Character> characters,
+                           Map<Long, Character> charactersById,
+                           List<CharacterRelationship> relationships,
+                           List<String> relationshipPrompts) {
+    }
+}
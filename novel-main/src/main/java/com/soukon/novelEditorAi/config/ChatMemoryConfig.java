@@ -0,0 +1,44 @@
+package com.soukon.novelEditorAi.config;
+
+import com.soukon.novelEditorAi.llm.memory.BoundedChatMemoryRepository;
+import com.soukon.novelEditorAi.llm.memory.RedisChatMemoryRepository;
+import com.soukon.novelEditorAi.llm.memory.TokenBudgetChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+
+/**
+ * 对话记忆配置
+ * novel.chat.memory.store=redis 时对话记忆保存在Redis中供多个节点共享，否则保存在进程内
+ */
+@Configuration
+public class ChatMemoryConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "novel.chat.memory.store", havingValue = "memory", matchIfMissing = true)
+    public ChatMemoryRepository boundedChatMemoryRepository(
+            @Value("${novel.chat.memory.max-conversations:1000}") int maxConversations,
+            @Value("${novel.chat.memory.idle-ttl-minutes:30}") long idleTtlMinutes) {
+        return new BoundedChatMemoryRepository(maxConversations, Duration.ofMinutes(idleTtlMinutes).toMillis());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "novel.chat.memory.store", havingValue = "redis")
+    public ChatMemoryRepository redisChatMemoryRepository(
+            StringRedisTemplate stringRedisTemplate,
+            @Value("${novel.chat.memory.idle-ttl-minutes:30}") long idleTtlMinutes) {
+        return new RedisChatMemoryRepository(stringRedisTemplate, Duration.ofMinutes(idleTtlMinutes));
+    }
+
+    @Bean
+    public TokenBudgetChatMemory chatMemory(ChatMemoryRepository chatMemoryRepository,
+                                            @Value("${novel.chat.memory.max-tokens:2000}") int maxTokens,
+                                            @Value("${novel.chat.memory.max-messages:20}") int maxMessages) {
+        return new TokenBudgetChatMemory(chatMemoryRepository, maxTokens, maxMessages);
+    }
+}
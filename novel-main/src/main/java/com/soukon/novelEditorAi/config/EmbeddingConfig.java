@@ -0,0 +1,28 @@
+package com.soukon.novelEditorAi.config;
+
+import com.soukon.novelEditorAi.llm.CachingEmbeddingModel;
+import com.soukon.novelEditorAi.mapper.EmbeddingCacheMapper;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * 向量模型配置
+ * 在自动配置的向量模型外包装一层持久化缓存，向量库和业务代码注入的都是带缓存的模型
+ */
+@Configuration
+public class EmbeddingConfig {
+
+    @Bean
+    @Primary
+    public CachingEmbeddingModel cachingEmbeddingModel(OpenAiEmbeddingModel openAiEmbeddingModel,
+                                                       EmbeddingCacheMapper embeddingCacheMapper,
+                                                       @Value("${spring.ai.openai.embedding.options.model:text-embedding-ada-002}") String modelId,
+                                                       @Value("${novel.embedding.cache.memory-entries:2048}") int memoryEntries,
+                                                       @Value("${novel.embedding.max-concurrent-requests:4}") int maxConcurrentRequests) {
+        return new CachingEmbeddingModel(openAiEmbeddingModel, embeddingCacheMapper, modelId, memoryEntries,
+                maxConcurrentRequests);
+    }
+}
@@ -0,0 +1,33 @@
+package com.soukon.novelEditorAi.config;
+
+import com.soukon.novelEditorAi.rag.hnsw.HnswVectorStore;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * 进程内HNSW向量库配置
+ * 设置 spring.ai.vectorstore.type=hnsw 时启用，同时会关闭Chroma的自动配置；
+ * 启用版本化向量库时改由 VersionedVectorStoreConfig 按模型创建
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "hnsw")
+public class HnswVectorStoreConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "novel.vectorstore.versioned.enabled", havingValue = "false", matchIfMissing = true)
+    public HnswVectorStore vectorStore(EmbeddingModel embeddingModel,
+                                       @Value("${novel.vectorstore.hnsw.path:./data/hnsw}") String path,
+                                       @Value("${novel.vectorstore.hnsw.m:16}") int m,
+                                       @Value("${novel.vectorstore.hnsw.ef-construction:200}") int efConstruction,
+                                       @Value("${novel.vectorstore.hnsw.ef-search:64}") int efSearch,
+                                       @Value("${novel.vectorstore.hnsw.brute-force-threshold:2000}") int bruteForceThreshold,
+                                       @Value("${novel.vectorstore.hnsw.flush-interval-seconds:10}") long flushIntervalSeconds) {
+        return new HnswVectorStore(embeddingModel, Paths.get(path), m, efConstruction, efSearch,
+                bruteForceThreshold, flushIntervalSeconds);
+    }
+}
@@ -0,0 +1,108 @@
+package com.soukon.novelEditorAi.config;
+
+import com.soukon.novelEditorAi.llm.CachingEmbeddingModel;
+import com.soukon.novelEditorAi.rag.hnsw.HnswVectorStore;
+import com.soukon.novelEditorAi.rag.versioned.VectorStoreFactory;
+import com.soukon.novelEditorAi.rag.versioned.VersionedVectorStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chroma.vectorstore.ChromaApi;
+import org.springframework.ai.chroma.vectorstore.ChromaVectorStore;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 版本化向量库配置
+ * 设置 novel.vectorstore.versioned.enabled=true 时启用：每个向量模型使用独立的集合，
+ * 更换向量模型后由 IndexMigrationService 在后台迁移，迁移完成前检索仍使用原集合
+ */
+@Configuration
+@ConditionalOnProperty(name = "novel.vectorstore.versioned.enabled", havingValue = "true")
+@Slf4j
+public class VersionedVectorStoreConfig {
+
+    @Bean
+    @Primary
+    public VersionedVectorStore vectorStore(VectorStoreFactory vectorStoreFactory,
+                                            CachingEmbeddingModel cachingEmbeddingModel) {
+        return new VersionedVectorStore(vectorStoreFactory, cachingEmbeddingModel);
+    }
+
+    /**
+     * Chroma：每个模型一个Chroma集合
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "chroma", matchIfMissing = true)
+    public VectorStoreFactory chromaVectorStoreFactory(ChromaApi chromaApi,
+                                                       @Value("${spring.ai.vectorstore.chroma.collection-name:SpringAiCollection}") String collectionName) {
+        return new VectorStoreFactory() {
+            @Override
+            public String defaultCollection() {
+                return collectionName;
+            }
+
+            @Override
+            public VectorStore create(String collection, EmbeddingModel embeddingModel) {
+                ChromaVectorStore store = ChromaVectorStore.builder(chromaApi, embeddingModel)
+                        .collectionName(collection)
+                        .initializeSchema(true)
+                        .build();
+                try {
+                    store.afterPropertiesSet();
+                } catch (Exception e) {
+                    throw new IllegalStateException("初始化Chroma集合 " + collection + " 失败", e);
+                }
+                return store;
+            }
+        };
+    }
+
+    /**
+     * 进程内HNSW：每个模型一个数据目录，与配置的目录同级
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "hnsw")
+    public VectorStoreFactory hnswVectorStoreFactory(@Value("${novel.vectorstore.hnsw.path:./data/hnsw}") String path,
+                                                     @Value("${novel.vectorstore.hnsw.m:16}") int m,
+                                                     @Value("${novel.vectorstore.hnsw.ef-construction:200}") int efConstruction,
+                                                     @Value("${novel.vectorstore.hnsw.ef-search:64}") int efSearch,
+                                                     @Value("${novel.vectorstore.hnsw.brute-force-threshold:2000}") int bruteForceThreshold,
+                                                     @Value("${novel.vectorstore.hnsw.flush-interval-seconds:10}") long flushIntervalSeconds) {
+        Path base = Paths.get(path).toAbsolutePath().normalize();
+        return new VectorStoreFactory() {
+            @Override
+            public String defaultCollection() {
+                return base.getFileName().toString();
+            }
+
+            @Override
+            public VectorStore create(String collection, EmbeddingModel embeddingModel) {
+                Path directory = collection.equals(defaultCollection()) ? base : base.resolveSibling(collection);
+                HnswVectorStore store = new HnswVectorStore(embeddingModel, directory, m, efConstruction, efSearch,
+                        bruteForceThreshold, flushIntervalSeconds);
+                try {
+                    store.open();
+                } catch (Exception e) {
+                    throw new IllegalStateException("打开HNSW目录 " + directory + " 失败", e);
+                }
+                return store;
+            }
+
+            @Override
+            public void release(VectorStore store) {
+                try {
+                    ((HnswVectorStore) store).close();
+                } catch (Exception e) {
+                    log.warn("关闭HNSW向量库失败: {}", e.getMessage());
+                }
+            }
+        };
+    }
+}
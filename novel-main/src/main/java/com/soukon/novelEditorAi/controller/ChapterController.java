@@ -2,6 +2,7 @@ package com.soukon.novelEditorAi.controller;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.soukon.novelEditorAi.agent.tool.WritingToolManager;
 import com.soukon.novelEditorAi.common.Result;
 import com.soukon.novelEditorAi.entities.Chapter;
 import com.soukon.novelEditorAi.model.chapter.ChapterListDTO;
@@ -9,19 +10,26 @@ import com.soukon.novelEditorAi.service.ChapterService;
 import com.soukon.novelEditorAi.model.chapter.ChapterContentRequest;
 import com.soukon.novelEditorAi.model.chapter.PlanContext;
 import com.soukon.novelEditorAi.model.chapter.PlanState;
+import com.soukon.novelEditorAi.model.chapter.PlanStreamBuffer;
 import com.soukon.novelEditorAi.service.ChapterContentService;
+import com.soukon.novelEditorAi.service.RagService;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import com.alibaba.fastjson.JSONObject;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * 章节控制器
@@ -37,6 +45,14 @@ public class ChapterController {
 
     private final ChapterContentService chapterContentService;
 
+    @Autowired
+    private RagService ragService;
+
+    @Autowired
+    private WritingToolManager writingToolManager;
+
+    @Value("${novel.rag.enabled:true}")
+    private Boolean ragEnabled;
 
     @Value("${novel.chapter.default-words-count:5000}")
     private Integer defaultWordsCount;
@@ -252,6 +268,9 @@ public class ChapterController {
         }
 
         chapterService.removeById(id);
+        if (ragEnabled) {
+            ragService.removeChapterIndex(id);
+        }
         return Result.success("Chapter deleted successfully", null);
     }
 
@@ -268,6 +287,9 @@ public class ChapterController {
         }
 
         chapterService.removeByIds(ids);
+        if (ragEnabled) {
+            ids.forEach(ragService::removeChapterIndex);
+        }
         return Result.success("批量删除成功", null);
     }
 
@@ -321,8 +343,11 @@ public class ChapterController {
         log.info("查询章节生成进度，计划ID: {}", planId);
 
         // 从章节内容服务中获取计划上下文
-        PlanContext planContext = chapterContentService.getPlanContextMap().get(planId);
+        PlanContext planContext = chapterContentService.getPlanRegistry().get(planId);
         if (planContext == null) {
+            if (chapterContentService.getPlanRegistry().isExpired(planId)) {
+                return Result.error(410, "计划已过期，相关资源已回收，请重新发起生成");
+            }
             return Result.error("计划不存在，请检查计划ID是否正确");
         }
 
@@ -340,23 +365,81 @@ public class ChapterController {
         progressInfo.put("state", planState.getCode());
         progressInfo.put("stateMessage", planState.getMessage());
         progressInfo.put("hasContent", planContext.getPlanStream() != null);
+        progressInfo.put("bufferedOffset", planContext.getStreamBuffer().getNextOffset());
+        progressInfo.put("oldestOffset", planContext.getStreamBuffer().getOldestOffset());
         progressInfo.put("progress", progressRate);
         progressInfo.put("message", message);
+        // 计划结束后工具状态已释放，使用结束时保存的统计
+        Map<String, Object> toolCacheStats = writingToolManager.getToolCacheStats(planId);
+        progressInfo.put("toolCache", toolCacheStats != null ? toolCacheStats : planContext.getToolCacheStats());
 
         return Result.success(planState.getMessage(), progressInfo);
     }
 
+    /**
+     * 查询章节上下文组装的统计信息
+     * @return 组装耗时直方图（含p50/p90/p99）、项目快照缓存命中率，以及各查询分支的耗时和超时、失败次数
+     */
+    @GetMapping("/generate/context-stats")
+    public Result<Map<String, Object>> getContextStats() {
+        return Result.success(chapterContentService.getContextStats());
+    }
+
     //    查询文章内容
     @GetMapping("/generate/content")
-    public Flux<String> getGenerateContent(@RequestParam("planId") String planId) {
-        log.info("查询章节生成内容，计划ID: {}", planId);
+    public Flux<String> getGenerateContent(@RequestParam("planId") String planId,
+                                           @RequestParam(value = "offset", required = false, defaultValue = "0") Long offset) {
+        log.info("查询章节生成内容，计划ID: {}，已读片段数: {}", planId, offset);
 
         // 从章节内容服务中获取计划上下文
-        PlanContext planContext = chapterContentService.getPlanContextMap().get(planId);
+        PlanContext planContext = chapterContentService.getPlanRegistry().get(planId);
+        if (planContext == null) {
+            return Flux.error(new RuntimeException("计划不存在或已过期，请检查计划ID是否正确"));
+        }
+        if (planContext.getPlanStream() == null) {
+            return Flux.empty();
+        }
+        // 当前步骤的共享输出，offset为本步骤已收到的片段数，用于断线续传；已被淘汰时返回410
+        Flux<String> content = offset > 0 ? planContext.getStreamBuffer().currentStepView(offset) : planContext.getPlanStream();
+        return content.onErrorMap(PlanStreamBuffer.OffsetExpiredException.class,
+                e -> new ResponseStatusException(HttpStatus.GONE, e.getMessage(), e));
+    }
+
+    /**
+     * 以SSE方式订阅整个计划的输出，事件ID为片段偏移量，
+     * 重连时通过 Last-Event-ID 或 offset 续传，不会重复调用模型；续传位置已被淘汰时返回410
+     */
+    @GetMapping(value = "/generate/content/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> streamGenerateContent(@RequestParam("planId") String planId,
+                                                               @RequestParam(value = "offset", required = false) Long offset,
+                                                               @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        PlanContext planContext = chapterContentService.getPlanRegistry().get(planId);
         if (planContext == null) {
-            return Flux.error(new RuntimeException("计划不存在，请检查计划ID是否正确"));
+            return Flux.error(new RuntimeException("计划不存在或已过期，请检查计划ID是否正确"));
         }
-        return planContext.getPlanStream();
+        long fromOffset = offset != null ? offset : 0L;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            try {
+                fromOffset = Long.parseLong(lastEventId.trim()) + 1;
+            } catch (NumberFormatException e) {
+                log.warn("无效的Last-Event-ID: {}", lastEventId);
+            }
+        }
+        log.info("订阅计划输出，计划ID: {}，起始偏移量: {}", planId, fromOffset);
+        return planContext.getStreamBuffer().planView(fromOffset)
+                .map(event -> ServerSentEvent.<String>builder(event.content())
+                        .id(String.valueOf(event.offset()))
+                        .build())
+                .onErrorMap(PlanStreamBuffer.OffsetExpiredException.class,
+                        e -> new ResponseStatusException(HttpStatus.GONE, e.getMessage(), e));
+    }
+
+    /**
+     * 查询计划注册表统计信息（存活、完成、淘汰的计划数）
+     */
+    @GetMapping("/generate/plans/stats")
+    public Result<Map<String, Object>> getPlanStats() {
+        return Result.success(chapterContentService.getPlanRegistry().getStats());
     }
 
     /**
@@ -367,9 +450,9 @@ public class ChapterController {
         log.info("前端通知内容已消费完毕，计划ID: {}", planId);
 
         // 从章节内容服务中获取计划上下文
-        PlanContext planContext = chapterContentService.getPlanContextMap().get(planId);
+        PlanContext planContext = chapterContentService.getPlanRegistry().get(planId);
         if (planContext == null) {
-            return ResponseEntity.badRequest().body("计划不存在，请检查计划ID是否正确");
+            return ResponseEntity.badRequest().body("计划不存在或已过期，请检查计划ID是否正确");
         }
 
         // 通知完成消费
@@ -0,0 +1,148 @@
+package com.soukon.novelEditorAi.controller;
+
+import com.soukon.novelEditorAi.common.Result;
+import com.soukon.novelEditorAi.llm.CachingEmbeddingModel;
+import com.soukon.novelEditorAi.model.rag.ProjectIndexSizeDTO;
+import com.soukon.novelEditorAi.model.rag.ProjectReindexProgressDTO;
+import com.soukon.novelEditorAi.rag.IndexJobWorker;
+import com.soukon.novelEditorAi.rag.IndexingScheduler;
+import com.soukon.novelEditorAi.rag.LexicalIndex;
+import com.soukon.novelEditorAi.rag.ProjectIndexJobHandler;
+import com.soukon.novelEditorAi.rag.RetrievalCache;
+import com.soukon.novelEditorAi.rag.SemanticAnswerCache;
+import com.soukon.novelEditorAi.rag.VectorProgressPublisher;
+import com.soukon.novelEditorAi.rag.versioned.IndexMigrationService;
+import com.soukon.novelEditorAi.service.RagService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * RAG索引控制器
+ */
+@RestController
+@RequestMapping("/rag")
+@Slf4j
+public class RagController {
+
+    @Autowired
+    private CachingEmbeddingModel cachingEmbeddingModel;
+
+    @Autowired
+    private IndexingScheduler indexingScheduler;
+
+    @Autowired
+    private IndexJobWorker indexJobWorker;
+
+    @Autowired
+    private LexicalIndex lexicalIndex;
+
+    @Autowired
+    private RetrievalCache retrievalCache;
+
+    @Autowired
+    private SemanticAnswerCache answerCache;
+
+    @Autowired
+    private VectorProgressPublisher vectorProgressPublisher;
+
+    @Autowired
+    private RagService ragService;
+
+    @Autowired
+    private ProjectIndexJobHandler projectIndexJobHandler;
+
+    @Autowired(required = false)
+    private IndexMigrationService indexMigrationService;
+
+    /**
+     * 查询索引相关统计信息
+     * @return 向量缓存命中率、索引队列深度、词法索引规模等统计
+     */
+    @GetMapping("/stats")
+    public Result<Map<String, Object>> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("embeddingCache", cachingEmbeddingModel.getStats());
+        stats.put("indexing", indexingScheduler.getStats());
+        stats.put("jobs", indexJobWorker.getStats());
+        stats.put("lexical", lexicalIndex.getStats());
+        stats.put("retrievalCache", retrievalCache.getStats());
+        stats.put("answerCache", answerCache.getStats());
+        stats.put("progressStreams", vectorProgressPublisher.getStats());
+        return Result.success(stats);
+    }
+
+    /**
+     * 查询项目的索引规模，按分块清单统计，不查询向量库
+     * @param projectId 项目ID
+     * @return 各类对象的分块数、模型分布等
+     */
+    @GetMapping("/projects/{projectId}/index/size")
+    public Result<ProjectIndexSizeDTO> getProjectIndexSize(@PathVariable(name = "projectId") Long projectId) {
+        try {
+            return Result.success(ragService.getProjectIndexSize(projectId));
+        } catch (Exception e) {
+            log.error("查询项目 {} 索引规模失败: {}", projectId, e.getMessage(), e);
+            return Result.error("查询失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 重建整个项目的索引：项目信息、全部章节、角色和引用的世界观，作为后台任务并行执行。
+     * 未变化的内容不会重新向量化，重复调用的开销很小
+     * @param projectId 项目ID
+     * @return 任务ID，项目已有未结束的重建任务时返回该任务
+     */
+    @PostMapping("/projects/{projectId}/reindex")
+    public Result<Long> reindexProject(@PathVariable(name = "projectId") Long projectId) {
+        try {
+            return Result.success("已提交项目重建索引任务", projectIndexJobHandler.submit(projectId));
+        } catch (Exception e) {
+            log.error("提交项目 {} 重建索引任务失败: {}", projectId, e.getMessage(), e);
+            return Result.error("提交失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询项目最近一次重建索引的进度和吞吐量
+     * @param projectId 项目ID
+     * @return 重建进度
+     */
+    @GetMapping("/projects/{projectId}/reindex")
+    public Result<ProjectReindexProgressDTO> getReindexProgress(@PathVariable(name = "projectId") Long projectId) {
+        try {
+            ProjectReindexProgressDTO progress = projectIndexJobHandler.getProgress(projectId);
+            if (progress == null) {
+                return Result.error("项目没有重建索引任务");
+            }
+            return Result.success(progress);
+        } catch (Exception e) {
+            log.error("查询项目 {} 重建索引进度失败: {}", projectId, e.getMessage(), e);
+            return Result.error("查询失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询向量索引版本状态：当前读取的模型与集合、迁移进度及本节点的双写统计
+     * @return 索引状态
+     */
+    @GetMapping("/index/state")
+    public Result<Map<String, Object>> getIndexState() {
+        if (indexMigrationService == null) {
+            return Result.error("未启用版本化向量库");
+        }
+        try {
+            return Result.success(indexMigrationService.getStatus());
+        } catch (Exception e) {
+            log.error("查询向量索引状态失败: {}", e.getMessage(), e);
+            return Result.error("查询失败: " + e.getMessage());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.soukon.novelEditorAi.controller;
 
 import com.soukon.novelEditorAi.common.Result;
 import com.soukon.novelEditorAi.model.template.TemplateRequest;
+import com.soukon.novelEditorAi.model.template.TemplateBatchVectorProgressDTO;
 import com.soukon.novelEditorAi.model.template.TemplateVectorProgressDTO;
 import com.soukon.novelEditorAi.service.TemplateVectorService;
 import com.soukon.novelEditorAi.utils.VectorStoreDebugUtil;
@@ -86,14 +87,36 @@ public class TemplateVectorController {
     /**
      * 批量导入模板到向量数据库
      * @param request 包含模板ID列表的请求对象
-     * @return 导入结果
+     * @return 批量任务ID
      */
     @PostMapping("/batch/index")
-    public Result<Boolean> batchIndexTemplates(@RequestBody TemplateRequest request) {
+    public Result<String> batchIndexTemplates(@RequestBody TemplateRequest request) {
         log.info("批量导入模板到向量数据库请求, IDs: {}", request.getIds());
         return templateVectorService.batchIndexTemplates(request.getIds());
     }
 
+    /**
+     * 查询批量向量化进度
+     * @param batchId 批量任务ID
+     * @return 整体进度
+     */
+    @GetMapping("/batch/{batchId}/progress")
+    public Result<TemplateBatchVectorProgressDTO> getBatchProgress(@PathVariable(name = "batchId") String batchId) {
+        log.info("查询批量向量化进度请求, batchId: {}", batchId);
+        return templateVectorService.getBatchProgress(batchId);
+    }
+
+    /**
+     * 流式获取批量向量化进度 (SSE)
+     * @param batchId 批量任务ID
+     * @return 进度流
+     */
+    @GetMapping(value = "/batch/{batchId}/progress/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<TemplateBatchVectorProgressDTO> getBatchProgressStream(@PathVariable(name = "batchId") String batchId) {
+        log.info("流式获取批量向量化进度请求, batchId: {}", batchId);
+        return templateVectorService.getBatchProgressStream(batchId);
+    }
+
     /**
      * 调试模板向量存储
      * @param id 模板ID
@@ -0,0 +1,42 @@
+package com.soukon.novelEditorAi.entities;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 向量缓存实体类
+ * 以文本内容哈希和向量模型ID为键，保存已经计算过的向量
+ */
+@Data
+@TableName("embedding_cache")
+public class EmbeddingCacheEntry {
+
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 文本内容的SHA-256摘要
+     */
+    private String contentHash;
+
+    /**
+     * 向量模型ID
+     */
+    private String modelId;
+
+    /**
+     * 向量维度
+     */
+    private Integer dimensions;
+
+    /**
+     * 向量数据，float32小端序
+     */
+    private byte[] embedding;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,69 @@
+package com.soukon.novelEditorAi.entities;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 向量分块清单实体类
+ * 记录每个已写入向量库的分块，用于增量更新索引
+ */
+@Data
+@TableName("vector_chunks")
+public class VectorChunk {
+
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 分块所属对象类型，如 chapter、template
+     */
+    private String ownerType;
+
+    /**
+     * 分块所属对象ID
+     */
+    private Long ownerId;
+
+    /**
+     * 所属项目ID，模板、世界观等不属于单个项目的为null
+     */
+    private Long projectId;
+
+    /**
+     * 分块序号，从0开始
+     */
+    private Integer chunkIndex;
+
+    /**
+     * 分块在原文中的起始位置（包含）
+     */
+    private Integer startOffset;
+
+    /**
+     * 分块在原文中的结束位置（不包含）
+     */
+    private Integer endOffset;
+
+    /**
+     * 分块文本与元数据的SHA-256摘要，用于判断分块是否需要重新写入
+     */
+    private String contentHash;
+
+    /**
+     * 向量库中的文档ID
+     */
+    private String docId;
+
+    /**
+     * 生成向量的模型ID，与当前模型不一致的分块需要重新写入
+     */
+    private String modelId;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+}
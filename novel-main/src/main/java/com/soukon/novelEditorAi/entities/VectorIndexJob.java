@@ -0,0 +1,91 @@
+package com.soukon.novelEditorAi.entities;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 向量化任务实体类
+ * 任务由持有租约的节点执行，节点失联后租约到期，其他节点可接管并从检查点继续
+ */
+@Data
+@TableName("vector_index_jobs")
+public class VectorIndexJob {
+
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 任务类型，如 TEMPLATE、CHAPTER
+     */
+    private String jobType;
+
+    /**
+     * 被索引对象ID
+     */
+    private Long targetId;
+
+    /**
+     * 批量任务ID，同一批提交的任务相同，用于汇总进度
+     */
+    private String batchId;
+
+    /**
+     * 任务状态，见 {@link com.soukon.novelEditorAi.enums.IndexJobStatus}
+     */
+    private String status;
+
+    /**
+     * 检查点：序号小于该值的分块均已写入向量库
+     */
+    private Integer nextChunk;
+
+    /**
+     * 已写入的分块数
+     */
+    private Integer storedChunks;
+
+    /**
+     * 已执行次数
+     */
+    private Integer attempts;
+
+    /**
+     * 最大执行次数
+     */
+    private Integer maxAttempts;
+
+    /**
+     * 持有租约的节点
+     */
+    private String owner;
+
+    /**
+     * 租约到期时间
+     */
+    private LocalDateTime leaseUntil;
+
+    /**
+     * 最近一次心跳时间
+     */
+    private LocalDateTime heartbeatAt;
+
+    /**
+     * 最早可执行时间
+     */
+    private LocalDateTime nextRunAt;
+
+    /**
+     * 最近一次失败原因
+     */
+    private String errorMessage;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+
+    private LocalDateTime finishedAt;
+}
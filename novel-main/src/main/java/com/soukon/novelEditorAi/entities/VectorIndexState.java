@@ -0,0 +1,102 @@
+package com.soukon.novelEditorAi.entities;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 向量索引版本状态实体类
+ * 记录当前读取的模型与集合；向量模型变更时记录影子集合及迁移进度
+ */
+@Data
+@TableName("vector_index_state")
+public class VectorIndexState {
+
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 索引名称
+     */
+    private String indexName;
+
+    /**
+     * 状态，见 {@link com.soukon.novelEditorAi.enums.VectorIndexStateStatus}
+     */
+    private String status;
+
+    /**
+     * 读取使用的向量模型ID
+     */
+    private String activeModelId;
+
+    /**
+     * 读取使用的集合
+     */
+    private String activeCollection;
+
+    /**
+     * 迁移目标模型ID
+     */
+    private String targetModelId;
+
+    /**
+     * 迁移目标集合（影子集合）
+     */
+    private String targetCollection;
+
+    /**
+     * 迁移阶段：PROJECT、TEMPLATE
+     */
+    private String migrationPhase;
+
+    /**
+     * 当前阶段已迁移的最大对象ID
+     */
+    private Long migrationCursor;
+
+    /**
+     * 需要迁移的范围数（项目与模板）
+     */
+    private Integer totalScopes;
+
+    /**
+     * 已迁移的范围数
+     */
+    private Integer migratedScopes;
+
+    /**
+     * 已迁移的文档数
+     */
+    private Long migratedDocuments;
+
+    /**
+     * 各节点影子集合写入或删除失败的次数，不为0时不切换
+     */
+    private Integer shadowFailures;
+
+    /**
+     * 是否为失败后的重建覆盖，重建时每个范围先清空影子集合中的旧文档
+     */
+    private Boolean rebuildPass;
+
+    /**
+     * 迁移开始时间
+     */
+    private LocalDateTime startedAt;
+
+    /**
+     * 最近一次切换读取集合的时间
+     */
+    private LocalDateTime switchedAt;
+
+    /**
+     * 最近一次迁移失败原因
+     */
+    private String errorMessage;
+
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,42 @@
+package com.soukon.novelEditorAi.enums;
+
+/**
+ * 向量化任务状态枚举
+ */
+public enum IndexJobStatus {
+    /**
+     * 等待执行（含等待重试）
+     */
+    PENDING("PENDING", "等待执行"),
+
+    /**
+     * 执行中，由持有租约的节点执行
+     */
+    RUNNING("RUNNING", "执行中"),
+
+    /**
+     * 已完成
+     */
+    COMPLETED("COMPLETED", "已完成"),
+
+    /**
+     * 重试耗尽后失败
+     */
+    FAILED("FAILED", "已失败");
+
+    private final String code;
+    private final String description;
+
+    IndexJobStatus(String code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,32 @@
+package com.soukon.novelEditorAi.enums;
+
+/**
+ * 向量索引版本状态枚举
+ */
+public enum VectorIndexStateStatus {
+    /**
+     * 读写同一个集合
+     */
+    ACTIVE("ACTIVE", "正常"),
+
+    /**
+     * 正在向影子集合迁移，写入同时进入两个集合，读取仍使用当前集合
+     */
+    MIGRATING("MIGRATING", "迁移中");
+
+    private final String code;
+    private final String description;
+
+    VectorIndexStateStatus(String code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,37 @@
+package com.soukon.novelEditorAi.event;
+
+import lombok.Getter;
+import lombok.ToString;
+import org.apache.ibatis.mapping.SqlCommandType;
+
+/**
+ * 实体变更事件
+ * <p>
+ * 通过 Mapper 写入数据库并提交后发布，只说明哪类实体发生了何种写入，不携带具体的行，
+ * 供缓存按实体类型失效使用。
+ */
+@Getter
+@ToString
+public class EntityChangeEvent {
+
+    /**
+     * 发生变更的实体类，即 Mapper 对应的 BaseMapper 泛型参数
+     */
+    private final Class<?> entityType;
+
+    /**
+     * 写入类型：INSERT、UPDATE 或 DELETE
+     */
+    private final SqlCommandType operation;
+
+    /**
+     * 执行写入的 Mapper 语句ID
+     */
+    private final String statementId;
+
+    public EntityChangeEvent(Class<?> entityType, SqlCommandType operation, String statementId) {
+        this.entityType = entityType;
+        this.operation = operation;
+        this.statementId = statementId;
+    }
+}
@@ -0,0 +1,86 @@
+package com.soukon.novelEditorAi.event;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实体变更拦截器
+ * <p>
+ * 拦截所有 Mapper 的写入语句，影响行数不为0时发布 {@link EntityChangeEvent}。
+ * 在事务中执行的写入等事务提交后再发布，避免缓存在提交前失效、随即又读入旧数据；
+ * 没有事务时写入后立即发布。不是 BaseMapper 的 Mapper 无法确定实体类型，不发布事件。
+ */
+@Slf4j
+@Component
+@Intercepts(@Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}))
+public class EntityChangeInterceptor implements Interceptor {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Mapper 命名空间到实体类的映射
+     */
+    private final Map<String, Optional<Class<?>>> entityTypes = new ConcurrentHashMap<>();
+
+    public EntityChangeInterceptor(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        if (result instanceof Integer rows && rows == 0) {
+            return result;
+        }
+        MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+        String statementId = statement.getId();
+        int lastDot = statementId.lastIndexOf('.');
+        if (lastDot < 0) {
+            return result;
+        }
+        Optional<Class<?>> entityType = entityTypes.computeIfAbsent(statementId.substring(0, lastDot),
+                EntityChangeInterceptor::resolveEntityType);
+        if (entityType.isPresent()) {
+            publish(new EntityChangeEvent(entityType.get(), statement.getSqlCommandType(), statementId));
+        }
+        return result;
+    }
+
+    private void publish(EntityChangeEvent event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eventPublisher.publishEvent(event);
+                }
+            });
+        } else {
+            eventPublisher.publishEvent(event);
+        }
+    }
+
+    private static Optional<Class<?>> resolveEntityType(String namespace) {
+        try {
+            Class<?> mapperClass = Class.forName(namespace);
+            return Optional.ofNullable(ResolvableType.forClass(mapperClass).as(BaseMapper.class).resolveGeneric(0));
+        } catch (ClassNotFoundException e) {
+            log.debug("无法加载 Mapper {}，不发布其实体变更事件", namespace);
+            return Optional.empty();
+        }
+    }
+}
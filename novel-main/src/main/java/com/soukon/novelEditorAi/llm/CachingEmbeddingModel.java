@@ -0,0 +1,271 @@
+package com.soukon.novelEditorAi.llm;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.soukon.novelEditorAi.entities.EmbeddingCacheEntry;
+import com.soukon.novelEditorAi.mapper.EmbeddingCacheMapper;
+import com.soukon.novelEditorAi.utils.HashUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.openai.OpenAiEmbeddingOptions;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带持久化缓存的向量模型
+ * <p>
+ * 以"文本SHA-256 + 模型ID"为键缓存向量，调用底层模型前先查缓存，
+ * 只有未命中的文本才会真正请求向量服务。章节重新保存时未改动的分块直接复用已有向量。
+ * 数据库缓存前还有一层进程内LRU缓存，同一次生成中反复出现的检索问句不再访问数据库。
+ * 对向量服务的并发请求数有上限，批量索引的多个任务同时执行时不会超出服务商的速率限制。
+ * 请求选项中指定了模型时按该模型生成和缓存向量，索引迁移期间新旧两个模型可以同时使用。
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    /**
+     * 单次查询缓存的最大哈希数，避免IN条件过长
+     */
+    private static final int LOOKUP_BATCH_SIZE = 500;
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCacheMapper cacheMapper;
+    private final String modelId;
+
+    /**
+     * 进程内缓存：模型ID|文本哈希 -> 向量，按访问顺序淘汰
+     */
+    private final Map<String, float[]> memoryCache;
+
+    /**
+     * 限制本节点同时发往向量服务的请求数
+     */
+    private final Semaphore requestPermits;
+    private final int maxConcurrentRequests;
+
+    private final AtomicLong memoryHitCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong delegateCallCount = new AtomicLong();
+    private final AtomicLong throttledCallCount = new AtomicLong();
+    private final AtomicLong throttledWaitMillis = new AtomicLong();
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, EmbeddingCacheMapper cacheMapper, String modelId,
+                                 int memoryEntries, int maxConcurrentRequests) {
+        this.delegate = delegate;
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        this.requestPermits = new Semaphore(this.maxConcurrentRequests, true);
+        this.cacheMapper = cacheMapper;
+        this.modelId = modelId;
+        this.memoryCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > memoryEntries;
+            }
+        });
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        String requestModelId = request.getOptions() != null && request.getOptions().getModel() != null
+                ? request.getOptions().getModel() : modelId;
+        String memoryPrefix = requestModelId + "|";
+        List<String> texts = request.getInstructions();
+        List<String> hashes = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            hashes.add(HashUtils.sha256Hex(text));
+        }
+
+        Map<String, float[]> vectors = new HashMap<>();
+        List<String> notInMemory = new ArrayList<>();
+        for (String hash : hashes) {
+            float[] vector = memoryCache.get(memoryPrefix + hash);
+            if (vector != null) {
+                vectors.put(hash, vector);
+            } else {
+                notInMemory.add(hash);
+            }
+        }
+        memoryHitCount.addAndGet(hashes.size() - notInMemory.size());
+        if (!notInMemory.isEmpty()) {
+            Map<String, float[]> stored = lookup(requestModelId, notInMemory);
+            stored.forEach((hash, vector) -> memoryCache.put(memoryPrefix + hash, vector));
+            vectors.putAll(stored);
+        }
+
+        // 收集未命中的文本，同一请求内重复的文本只请求一次
+        Map<String, String> missing = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (!vectors.containsKey(hashes.get(i))) {
+                missing.putIfAbsent(hashes.get(i), texts.get(i));
+            }
+        }
+        hitCount.addAndGet(texts.size() - missing.size());
+        missCount.addAndGet(missing.size());
+
+        EmbeddingResponse delegateResponse = null;
+        if (!missing.isEmpty()) {
+            List<String> missingHashes = new ArrayList<>(missing.keySet());
+            delegateCallCount.incrementAndGet();
+            delegateResponse = callDelegate(new EmbeddingRequest(new ArrayList<>(missing.values()), request.getOptions()));
+            List<Embedding> results = delegateResponse.getResults();
+            for (int i = 0; i < results.size() && i < missingHashes.size(); i++) {
+                float[] vector = results.get(i).getOutput();
+                vectors.put(missingHashes.get(i), vector);
+                memoryCache.put(memoryPrefix + missingHashes.get(i), vector);
+                store(requestModelId, missingHashes.get(i), vector);
+            }
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings.add(new Embedding(vectors.get(hashes.get(i)), i));
+        }
+        if (delegateResponse != null && missing.size() == texts.size()) {
+            return new EmbeddingResponse(embeddings, delegateResponse.getMetadata());
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    public String getModelId() {
+        return modelId;
+    }
+
+    /**
+     * 固定使用指定模型的视图，忽略调用方传入的请求选项
+     *
+     * @param targetModelId 模型ID
+     * @return 指定模型与当前配置的模型相同时返回自身
+     */
+    public EmbeddingModel forModel(String targetModelId) {
+        if (modelId.equals(targetModelId)) {
+            return this;
+        }
+        OpenAiEmbeddingOptions options = OpenAiEmbeddingOptions.builder().model(targetModelId).build();
+        return new EmbeddingModel() {
+            @Override
+            public EmbeddingResponse call(EmbeddingRequest request) {
+                return CachingEmbeddingModel.this.call(new EmbeddingRequest(request.getInstructions(), options));
+            }
+
+            @Override
+            public float[] embed(Document document) {
+                return embed(document.getText());
+            }
+        };
+    }
+
+    /**
+     * 获取缓存命中统计
+     */
+    public Map<String, Object> getStats() {
+        long hits = hitCount.get();
+        long misses = missCount.get();
+        long total = hits + misses;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("modelId", modelId);
+        stats.put("hits", hits);
+        stats.put("memoryHits", memoryHitCount.get());
+        stats.put("memoryEntries", memoryCache.size());
+        stats.put("misses", misses);
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) hits / total);
+        stats.put("embeddingCalls", delegateCallCount.get());
+        stats.put("maxConcurrentRequests", maxConcurrentRequests);
+        stats.put("inFlightRequests", maxConcurrentRequests - requestPermits.availablePermits());
+        stats.put("queuedRequests", requestPermits.getQueueLength());
+        stats.put("throttledCalls", throttledCallCount.get());
+        stats.put("throttledWaitMs", throttledWaitMillis.get());
+        return stats;
+    }
+
+    /**
+     * 在并发上限内调用向量服务，没有空闲名额时排队等待
+     */
+    private EmbeddingResponse callDelegate(EmbeddingRequest request) {
+        if (!requestPermits.tryAcquire()) {
+            long start = System.currentTimeMillis();
+            try {
+                requestPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待向量服务请求名额时被中断", e);
+            }
+            throttledCallCount.incrementAndGet();
+            throttledWaitMillis.addAndGet(System.currentTimeMillis() - start);
+        }
+        try {
+            return delegate.call(request);
+        } finally {
+            requestPermits.release();
+        }
+    }
+
+    private Map<String, float[]> lookup(String requestModelId, List<String> hashes) {
+        Map<String, float[]> vectors = new HashMap<>();
+        List<String> distinct = hashes.stream().distinct().toList();
+        try {
+            for (int from = 0; from < distinct.size(); from += LOOKUP_BATCH_SIZE) {
+                List<String> batch = distinct.subList(from, Math.min(from + LOOKUP_BATCH_SIZE, distinct.size()));
+                List<EmbeddingCacheEntry> entries = cacheMapper.selectList(new LambdaQueryWrapper<EmbeddingCacheEntry>()
+                        .eq(EmbeddingCacheEntry::getModelId, requestModelId)
+                        .in(EmbeddingCacheEntry::getContentHash, batch));
+                for (EmbeddingCacheEntry entry : entries) {
+                    vectors.put(entry.getContentHash(), decode(entry.getEmbedding()));
+                }
+            }
+        } catch (Exception e) {
+            // 缓存不可用时直接走向量服务，不影响索引
+            log.warn("查询向量缓存失败，将直接调用向量模型: {}", e.getMessage());
+        }
+        return vectors;
+    }
+
+    private void store(String requestModelId, String hash, float[] vector) {
+        try {
+            EmbeddingCacheEntry entry = new EmbeddingCacheEntry();
+            entry.setContentHash(hash);
+            entry.setModelId(requestModelId);
+            entry.setDimensions(vector.length);
+            entry.setEmbedding(encode(vector));
+            entry.setCreatedAt(LocalDateTime.now());
+            cacheMapper.insertIgnore(entry);
+        } catch (Exception e) {
+            log.warn("写入向量缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private static byte[] encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    private static float[] decode(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
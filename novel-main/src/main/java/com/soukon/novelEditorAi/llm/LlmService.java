@@ -362,6 +362,10 @@ public class LlmService {
         }
     }
 
+    public int getAgentChatClientCount() {
+        return agentClients.size();
+    }
+
     public ChatClient getPlanningChatClient() {
         return planningChatClient;
     }
@@ -0,0 +1,115 @@
+package com.soukon.novelEditorAi.llm.memory;
+
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的对话记忆存储
+ * <p>
+ * 按对话ID保存消息，对话数量有上限，超出时淘汰最久未访问的对话；
+ * 空闲超过指定时间的对话在下一次访问存储时清除，不需要额外的清理线程。
+ */
+public class BoundedChatMemoryRepository implements ChatMemoryRepository {
+
+    private final int maxConversations;
+    private final long idleTtlMillis;
+
+    /**
+     * 按访问顺序排列，最久未访问的对话在最前面
+     */
+    private final LinkedHashMap<String, Conversation> conversations;
+
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    private static class Conversation {
+        private final List<Message> messages;
+        private long lastAccess;
+
+        Conversation(List<Message> messages, long lastAccess) {
+            this.messages = messages;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    public BoundedChatMemoryRepository(int maxConversations, long idleTtlMillis) {
+        this.maxConversations = maxConversations;
+        this.idleTtlMillis = idleTtlMillis;
+        this.conversations = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Conversation> eldest) {
+                if (size() > BoundedChatMemoryRepository.this.maxConversations) {
+                    evictedCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public synchronized List<String> findConversationIds() {
+        removeExpired(System.currentTimeMillis());
+        return new ArrayList<>(conversations.keySet());
+    }
+
+    @Override
+    public synchronized List<Message> findByConversationId(String conversationId) {
+        long now = System.currentTimeMillis();
+        removeExpired(now);
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            return List.of();
+        }
+        conversation.lastAccess = now;
+        return conversation.messages;
+    }
+
+    @Override
+    public synchronized void saveAll(String conversationId, List<Message> messages) {
+        long now = System.currentTimeMillis();
+        removeExpired(now);
+        conversations.put(conversationId, new Conversation(List.copyOf(messages), now));
+    }
+
+    @Override
+    public synchronized void deleteByConversationId(String conversationId) {
+        conversations.remove(conversationId);
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        int messages = 0;
+        for (Conversation conversation : conversations.values()) {
+            messages += conversation.messages.size();
+        }
+        stats.put("conversations", conversations.size());
+        stats.put("maxConversations", maxConversations);
+        stats.put("messages", messages);
+        stats.put("evicted", evictedCount.get());
+        stats.put("expired", expiredCount.get());
+        return stats;
+    }
+
+    /**
+     * 从最久未访问的对话开始清除空闲超时的对话，遇到未超时的即停止
+     */
+    private void removeExpired(long now) {
+        Iterator<Conversation> iterator = conversations.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().lastAccess < idleTtlMillis) {
+                return;
+            }
+            iterator.remove();
+            expiredCount.incrementAndGet();
+        }
+    }
+}
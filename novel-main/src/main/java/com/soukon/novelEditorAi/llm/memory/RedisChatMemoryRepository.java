@@ -0,0 +1,110 @@
+package com.soukon.novelEditorAi.llm.memory;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Redis中的对话记忆存储，多节点部署时同一对话的请求可以落到任意节点
+ * <p>
+ * 每个对话一个键，值为消息列表的JSON，每次写入刷新过期时间，空闲超时后由Redis自动删除。
+ * 只保存用户、助手和系统消息的文本，工具调用消息不保存。
+ */
+@Slf4j
+public class RedisChatMemoryRepository implements ChatMemoryRepository {
+
+    private static final String KEY_PREFIX = "novel:chat:memory:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration idleTtl;
+
+    public RedisChatMemoryRepository(StringRedisTemplate redisTemplate, Duration idleTtl) {
+        this.redisTemplate = redisTemplate;
+        this.idleTtl = idleTtl;
+    }
+
+    /**
+     * 使用KEYS命令，只用于管理和排查，业务流程中不调用
+     */
+    @Override
+    public List<String> findConversationIds() {
+        Set<String> keys = redisTemplate.keys(KEY_PREFIX + "*");
+        List<String> ids = new ArrayList<>();
+        if (keys != null) {
+            for (String key : keys) {
+                ids.add(key.substring(KEY_PREFIX.length()));
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        String json = redisTemplate.opsForValue().get(KEY_PREFIX + conversationId);
+        if (json == null) {
+            return List.of();
+        }
+        List<Message> messages = new ArrayList<>();
+        try {
+            JSONArray array = JSON.parseArray(json);
+            for (int i = 0; i < array.size(); i++) {
+                JSONObject item = array.getJSONObject(i);
+                Message message = toMessage(item.getString("type"), item.getString("text"));
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("对话 {} 的记忆无法解析，按空记忆处理: {}", conversationId, e.getMessage());
+            return List.of();
+        }
+        return messages;
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        JSONArray array = new JSONArray(messages.size());
+        for (Message message : messages) {
+            MessageType type = message.getMessageType();
+            if (type == MessageType.TOOL) {
+                continue;
+            }
+            JSONObject item = new JSONObject();
+            item.put("type", type.getValue());
+            item.put("text", message.getText());
+            array.add(item);
+        }
+        redisTemplate.opsForValue().set(KEY_PREFIX + conversationId, array.toJSONString(), idleTtl);
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        redisTemplate.delete(KEY_PREFIX + conversationId);
+    }
+
+    private static Message toMessage(String type, String text) {
+        if (MessageType.USER.getValue().equals(type)) {
+            return new UserMessage(text);
+        }
+        if (MessageType.ASSISTANT.getValue().equals(type)) {
+            return new AssistantMessage(text);
+        }
+        if (MessageType.SYSTEM.getValue().equals(type)) {
+            return new SystemMessage(text);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,75 @@
+package com.soukon.novelEditorAi.llm.memory;
+
+import com.soukon.novelEditorAi.rag.TextChunker;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按token预算裁剪的对话记忆
+ * <p>
+ * 每次写入后只保留最近的消息，使历史的估算token数不超过预算、条数不超过上限，
+ * 对话再长，带入提示词的历史和存储占用也都有上限。最新一条消息总是保留；
+ * 裁剪后开头的助手消息一并丢弃，历史总是从用户的提问开始。
+ */
+public class TokenBudgetChatMemory implements ChatMemory {
+
+    private final ChatMemoryRepository repository;
+    private final int maxTokens;
+    private final int maxMessages;
+
+    public TokenBudgetChatMemory(ChatMemoryRepository repository, int maxTokens, int maxMessages) {
+        if (maxTokens <= 0 || maxMessages <= 0) {
+            throw new IllegalArgumentException("对话记忆的token预算和消息条数上限必须为正数");
+        }
+        this.repository = repository;
+        this.maxTokens = maxTokens;
+        this.maxMessages = maxMessages;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        List<Message> history = new ArrayList<>(repository.findByConversationId(conversationId));
+        history.addAll(messages);
+        repository.saveAll(conversationId, trim(history));
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        return repository.findByConversationId(conversationId);
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        repository.deleteByConversationId(conversationId);
+    }
+
+    private List<Message> trim(List<Message> history) {
+        int from = history.size() - 1;
+        int tokens = estimateTokens(history.get(from));
+        while (from > 0 && history.size() - from < maxMessages) {
+            int previous = estimateTokens(history.get(from - 1));
+            if (tokens + previous > maxTokens) {
+                break;
+            }
+            tokens += previous;
+            from--;
+        }
+        while (from < history.size() - 1 && history.get(from).getMessageType() == MessageType.ASSISTANT) {
+            from++;
+        }
+        return from == 0 ? history : new ArrayList<>(history.subList(from, history.size()));
+    }
+
+    private static int estimateTokens(Message message) {
+        String text = message.getText();
+        return text == null ? 0 : TextChunker.estimateTokens(text);
+    }
+}
@@ -0,0 +1,22 @@
+package com.soukon.novelEditorAi.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.soukon.novelEditorAi.entities.EmbeddingCacheEntry;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * 向量缓存Mapper
+ */
+@Mapper
+public interface EmbeddingCacheMapper extends BaseMapper<EmbeddingCacheEntry> {
+
+    /**
+     * 写入向量缓存，相同内容和模型的记录已存在时忽略
+     * @param entry 缓存记录
+     * @return 影响行数
+     */
+    @Insert("INSERT IGNORE INTO embedding_cache (content_hash, model_id, dimensions, embedding, created_at) " +
+            "VALUES (#{contentHash}, #{modelId}, #{dimensions}, #{embedding}, #{createdAt})")
+    int insertIgnore(EmbeddingCacheEntry entry);
+}
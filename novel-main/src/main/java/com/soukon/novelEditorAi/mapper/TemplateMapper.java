@@ -7,6 +7,7 @@ import com.soukon.novelEditorAi.model.template.TemplateListDTO;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
 import java.util.List;
 
@@ -64,4 +65,31 @@ public interface TemplateMapper extends BaseMapper<Template> {
      */
     @Select("SELECT id, name, tags FROM templates WHERE tags LIKE CONCAT('%', #{tag}, '%')")
     List<TemplateListDTO> selectByTagWithoutContent(@Param("tag") String tag);
-} 
\ No newline at end of file
+
+    /**
+     * 查询模板内容长度（字符数）
+     * @param id 模板ID
+     * @return 内容长度，内容为空时返回null
+     */
+    @Select("SELECT CHAR_LENGTH(content) FROM templates WHERE id = #{id}")
+    Long selectContentLength(@Param("id") Long id);
+
+    /**
+     * 分段读取模板内容
+     * @param id 模板ID
+     * @param start 起始位置，从1开始
+     * @param length 读取的字符数
+     * @return 内容片段
+     */
+    @Select("SELECT SUBSTRING(content, #{start}, #{length}) FROM templates WHERE id = #{id}")
+    String selectContentSlice(@Param("id") Long id, @Param("start") long start, @Param("length") int length);
+
+    /**
+     * 在模板内容末尾追加一段，上传文件时分段写入
+     * @param id 模板ID
+     * @param slice 内容片段
+     * @return 影响行数
+     */
+    @Update("UPDATE templates SET content = CONCAT(IFNULL(content, ''), #{slice}) WHERE id = #{id}")
+    int appendContent(@Param("id") Long id, @Param("slice") String slice);
+}
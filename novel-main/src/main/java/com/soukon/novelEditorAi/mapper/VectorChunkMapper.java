@@ -0,0 +1,55 @@
+package com.soukon.novelEditorAi.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.soukon.novelEditorAi.entities.VectorChunk;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 向量分块清单Mapper
+ */
+@Mapper
+public interface VectorChunkMapper extends BaseMapper<VectorChunk> {
+
+    /**
+     * 批量写入清单，同一对象同一序号的分块已存在时覆盖，任务从检查点重做时可重复执行
+     * @param rows 清单记录
+     * @return 影响行数
+     */
+    @Insert("<script>" +
+            "INSERT INTO vector_chunks (owner_type, owner_id, project_id, chunk_index, start_offset, end_offset, " +
+            "content_hash, doc_id, model_id, created_at, updated_at) VALUES " +
+            "<foreach collection='rows' item='row' separator=','>" +
+            "(#{row.ownerType}, #{row.ownerId}, #{row.projectId}, #{row.chunkIndex}, #{row.startOffset}, #{row.endOffset}, " +
+            "#{row.contentHash}, #{row.docId}, #{row.modelId}, #{row.createdAt}, #{row.updatedAt})" +
+            "</foreach>" +
+            " ON DUPLICATE KEY UPDATE project_id = VALUES(project_id), start_offset = VALUES(start_offset), " +
+            "end_offset = VALUES(end_offset), content_hash = VALUES(content_hash), doc_id = VALUES(doc_id), " +
+            "model_id = VALUES(model_id), updated_at = VALUES(updated_at)" +
+            "</script>")
+    int upsertBatch(@Param("rows") List<VectorChunk> rows);
+
+    /**
+     * 按对象类型和模型统计项目的索引规模
+     * @param projectId 项目ID
+     * @return 每行包含 ownerType、modelId、chunks、owners、lastIndexedAt
+     */
+    @Select("SELECT owner_type AS ownerType, model_id AS modelId, COUNT(*) AS chunks, " +
+            "COUNT(DISTINCT owner_id) AS owners, MAX(updated_at) AS lastIndexedAt " +
+            "FROM vector_chunks WHERE project_id = #{projectId} GROUP BY owner_type, model_id")
+    List<Map<String, Object>> summarizeProject(@Param("projectId") Long projectId);
+
+    /**
+     * 索引迁移完成后，全部分块改为由新模型生成，已是新模型的分块不更新
+     * @param modelId 新模型ID
+     * @return 影响行数
+     */
+    @Update("UPDATE vector_chunks SET model_id = #{modelId} WHERE model_id IS NULL OR model_id <> #{modelId}")
+    int updateModelId(@Param("modelId") String modelId);
+}
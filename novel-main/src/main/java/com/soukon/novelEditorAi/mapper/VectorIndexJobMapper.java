@@ -0,0 +1,109 @@
+package com.soukon.novelEditorAi.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.soukon.novelEditorAi.entities.VectorIndexJob;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
+
+/**
+ * 向量化任务Mapper
+ * 租约时间统一使用数据库时间计算，避免各节点时钟不一致
+ */
+@Mapper
+public interface VectorIndexJobMapper extends BaseMapper<VectorIndexJob> {
+
+    /**
+     * 查询可领取的任务：到期的等待任务，以及租约已过期的执行中任务
+     * @param limit 最大数量
+     * @return 任务ID列表
+     */
+    @Select("SELECT id FROM vector_index_jobs " +
+            "WHERE (status = 'PENDING' AND next_run_at <= NOW()) OR (status = 'RUNNING' AND lease_until < NOW()) " +
+            "ORDER BY next_run_at LIMIT #{limit}")
+    List<Long> selectClaimableIds(@Param("limit") int limit);
+
+    /**
+     * 领取任务，条件更新保证同一时刻只有一个节点领取成功
+     * @param id 任务ID
+     * @param owner 节点标识
+     * @param leaseSeconds 租约时长（秒）
+     * @param ignoreSchedule 为true时不等待next_run_at，用于本节点立即执行刚提交的任务
+     * @return 影响行数，1表示领取成功
+     */
+    @Update("<script>" +
+            "UPDATE vector_index_jobs SET status = 'RUNNING', owner = #{owner}, attempts = attempts + 1, " +
+            "lease_until = DATE_ADD(NOW(), INTERVAL #{leaseSeconds} SECOND), heartbeat_at = NOW() " +
+            "WHERE id = #{id} AND ((status = 'PENDING'" +
+            "<if test='!ignoreSchedule'> AND next_run_at &lt;= NOW()</if>" +
+            ") OR (status = 'RUNNING' AND lease_until &lt; NOW()))" +
+            "</script>")
+    int claim(@Param("id") Long id, @Param("owner") String owner, @Param("leaseSeconds") int leaseSeconds,
+              @Param("ignoreSchedule") boolean ignoreSchedule);
+
+    /**
+     * 续约
+     * @return 影响行数，0表示租约已被其他节点接管
+     */
+    @Update("UPDATE vector_index_jobs SET lease_until = DATE_ADD(NOW(), INTERVAL #{leaseSeconds} SECOND), " +
+            "heartbeat_at = NOW() WHERE id = #{id} AND owner = #{owner} AND status = 'RUNNING'")
+    int heartbeat(@Param("id") Long id, @Param("owner") String owner, @Param("leaseSeconds") int leaseSeconds);
+
+    /**
+     * 记录检查点并续约
+     * @return 影响行数，0表示租约已被其他节点接管
+     */
+    @Update("UPDATE vector_index_jobs SET next_chunk = #{nextChunk}, stored_chunks = #{storedChunks}, " +
+            "lease_until = DATE_ADD(NOW(), INTERVAL #{leaseSeconds} SECOND), heartbeat_at = NOW() " +
+            "WHERE id = #{id} AND owner = #{owner} AND status = 'RUNNING'")
+    int checkpoint(@Param("id") Long id, @Param("owner") String owner, @Param("nextChunk") int nextChunk,
+                   @Param("storedChunks") int storedChunks, @Param("leaseSeconds") int leaseSeconds);
+
+    /**
+     * 标记任务完成
+     */
+    @Update("UPDATE vector_index_jobs SET status = 'COMPLETED', owner = NULL, lease_until = NULL, " +
+            "error_message = NULL, finished_at = NOW() WHERE id = #{id} AND owner = #{owner} AND status = 'RUNNING'")
+    int complete(@Param("id") Long id, @Param("owner") String owner);
+
+    /**
+     * 标记任务失败，不再重试
+     */
+    @Update("UPDATE vector_index_jobs SET status = 'FAILED', owner = NULL, lease_until = NULL, " +
+            "error_message = #{error}, finished_at = NOW() WHERE id = #{id} AND owner = #{owner} AND status = 'RUNNING'")
+    int fail(@Param("id") Long id, @Param("owner") String owner, @Param("error") String error);
+
+    /**
+     * 释放任务，延迟后重新等待领取，检查点保留
+     */
+    @Update("UPDATE vector_index_jobs SET status = 'PENDING', owner = NULL, lease_until = NULL, " +
+            "error_message = #{error}, next_run_at = DATE_ADD(NOW(), INTERVAL #{delaySeconds} SECOND) " +
+            "WHERE id = #{id} AND owner = #{owner} AND status = 'RUNNING'")
+    int release(@Param("id") Long id, @Param("owner") String owner, @Param("delaySeconds") long delaySeconds,
+                @Param("error") String error);
+
+    /**
+     * 取消对象未结束的任务，执行中的任务在下次检查点或续约时停止
+     * @return 影响行数
+     */
+    @Update("UPDATE vector_index_jobs SET status = 'FAILED', owner = NULL, lease_until = NULL, " +
+            "error_message = #{reason}, finished_at = NOW() " +
+            "WHERE job_type = #{jobType} AND target_id = #{targetId} AND status IN ('PENDING', 'RUNNING')")
+    int cancelActive(@Param("jobType") String jobType, @Param("targetId") Long targetId, @Param("reason") String reason);
+
+    /**
+     * 推迟等待中任务的执行时间，用于合并短时间内的重复提交
+     */
+    @Update("UPDATE vector_index_jobs SET next_run_at = DATE_ADD(NOW(), INTERVAL #{delaySeconds} SECOND) " +
+            "WHERE id = #{id} AND status = 'PENDING'")
+    int reschedule(@Param("id") Long id, @Param("delaySeconds") long delaySeconds);
+
+    /**
+     * 将等待中的任务归入批次，合并提交时使用
+     */
+    @Update("UPDATE vector_index_jobs SET batch_id = #{batchId} WHERE id = #{id} AND status = 'PENDING'")
+    int assignBatch(@Param("id") Long id, @Param("batchId") String batchId);
+}
@@ -0,0 +1,99 @@
+package com.soukon.novelEditorAi.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.soukon.novelEditorAi.entities.VectorIndexState;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+/**
+ * 向量索引版本状态Mapper
+ * 状态变更均为条件更新，多个节点同时启动时只有一个节点生效
+ */
+@Mapper
+public interface VectorIndexStateMapper extends BaseMapper<VectorIndexState> {
+
+    /**
+     * 首次启用时登记当前读取的模型与集合，记录已存在时忽略
+     */
+    @Insert("INSERT IGNORE INTO vector_index_state (index_name, status, active_model_id, active_collection) " +
+            "VALUES (#{indexName}, 'ACTIVE', #{modelId}, #{collection})")
+    int initialize(@Param("indexName") String indexName, @Param("modelId") String modelId,
+                   @Param("collection") String collection);
+
+    /**
+     * 开始向目标模型迁移；已在迁移到其他模型时重新开始
+     * @return 影响行数，0表示已在迁移到该模型或该模型已是当前模型
+     */
+    @Update("UPDATE vector_index_state SET status = 'MIGRATING', target_model_id = #{targetModelId}, " +
+            "target_collection = #{targetCollection}, migration_phase = 'PROJECT', migration_cursor = 0, " +
+            "total_scopes = #{totalScopes}, migrated_scopes = 0, migrated_documents = 0, shadow_failures = 0, " +
+            "rebuild_pass = 0, started_at = NOW(), " +
+            "error_message = NULL WHERE index_name = #{indexName} AND active_model_id <> #{targetModelId} " +
+            "AND (status = 'ACTIVE' OR target_model_id IS NULL OR target_model_id <> #{targetModelId})")
+    int startMigration(@Param("indexName") String indexName, @Param("targetModelId") String targetModelId,
+                       @Param("targetCollection") String targetCollection, @Param("totalScopes") int totalScopes);
+
+    /**
+     * 记录一个范围迁移完成
+     * @return 影响行数，0表示迁移已被取消或目标已改变
+     */
+    @Update("UPDATE vector_index_state SET migration_phase = #{phase}, migration_cursor = #{cursor}, " +
+            "migrated_scopes = migrated_scopes + 1, migrated_documents = migrated_documents + #{documents} " +
+            "WHERE index_name = #{indexName} AND status = 'MIGRATING' AND target_model_id = #{targetModelId}")
+    int advance(@Param("indexName") String indexName, @Param("targetModelId") String targetModelId,
+                @Param("phase") String phase, @Param("cursor") long cursor, @Param("documents") int documents);
+
+    /**
+     * 进入下一阶段
+     */
+    @Update("UPDATE vector_index_state SET migration_phase = #{phase}, migration_cursor = 0 " +
+            "WHERE index_name = #{indexName} AND status = 'MIGRATING' AND target_model_id = #{targetModelId}")
+    int nextPhase(@Param("indexName") String indexName, @Param("targetModelId") String targetModelId,
+                  @Param("phase") String phase);
+
+    /**
+     * 迁移完成，读取切换到目标集合；任一节点记录过双写失败时不切换
+     * @return 影响行数，0表示已由其他节点切换或有未处理的双写失败
+     */
+    @Update("UPDATE vector_index_state SET status = 'ACTIVE', active_model_id = target_model_id, " +
+            "active_collection = target_collection, target_model_id = NULL, target_collection = NULL, " +
+            "migration_phase = NULL, rebuild_pass = 0, switched_at = NOW(), error_message = NULL " +
+            "WHERE index_name = #{indexName} AND status = 'MIGRATING' AND target_model_id = #{targetModelId} " +
+            "AND shadow_failures = 0")
+    int switchActive(@Param("indexName") String indexName, @Param("targetModelId") String targetModelId);
+
+    /**
+     * 配置改回当前模型时取消迁移，影子集合中的数据保留
+     */
+    @Update("UPDATE vector_index_state SET status = 'ACTIVE', target_model_id = NULL, target_collection = NULL, " +
+            "migration_phase = NULL WHERE index_name = #{indexName} AND status = 'MIGRATING' " +
+            "AND active_model_id = #{modelId}")
+    int cancelMigration(@Param("indexName") String indexName, @Param("modelId") String modelId);
+
+    /**
+     * 记录影子集合写入或删除失败，任一节点的失败都会阻止切换
+     * @return 影响行数，0表示迁移已结束或目标集合已改变
+     */
+    @Update("UPDATE vector_index_state SET shadow_failures = shadow_failures + #{failures} " +
+            "WHERE index_name = #{indexName} AND status = 'MIGRATING' AND target_collection = #{targetCollection}")
+    int addShadowFailures(@Param("indexName") String indexName, @Param("targetCollection") String targetCollection,
+                          @Param("failures") long failures);
+
+    /**
+     * 双写有失败时从头重建一遍：扣除已处理的失败次数，每个范围先清空影子集合中的旧文档再写入，
+     * 已写入的文档重新写入时命中向量缓存
+     */
+    @Update("UPDATE vector_index_state SET migration_phase = 'PROJECT', migration_cursor = 0, migrated_scopes = 0, " +
+            "total_scopes = #{totalScopes}, shadow_failures = shadow_failures - #{failures}, rebuild_pass = 1 " +
+            "WHERE index_name = #{indexName} AND status = 'MIGRATING' AND target_model_id = #{targetModelId}")
+    int restartPass(@Param("indexName") String indexName, @Param("targetModelId") String targetModelId,
+                    @Param("totalScopes") int totalScopes, @Param("failures") long failures);
+
+    /**
+     * 记录迁移失败原因，迁移状态保留，可从游标继续
+     */
+    @Update("UPDATE vector_index_state SET error_message = #{error} WHERE index_name = #{indexName}")
+    int recordError(@Param("indexName") String indexName, @Param("error") String error);
+}
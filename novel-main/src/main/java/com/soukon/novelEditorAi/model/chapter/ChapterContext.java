@@ -13,6 +13,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 章节上下文信息
@@ -52,6 +53,16 @@ public class ChapterContext {
      * 项目的角色关系
      */
     private List<CharacterRelationship> characterRelationships;
+
+    /**
+     * 与角色关系一一对应的提示词，随项目快照生成
+     */
+    private List<String> characterRelationshipPrompts;
+
+    /**
+     * 角色ID到角色的映射
+     */
+    private Map<Long, Character> charactersById;
     
     /**
      * 项目的情节点
@@ -62,7 +73,17 @@ public class ChapterContext {
      * 关联章节的情节
      */
     private List<Plot> chapterPlots;
-    
+
+    /**
+     * 章节中第一个未完成的情节
+     */
+    private Plot currentPlot;
+
+    /**
+     * 组装上下文时预取的RAG相关背景信息，检索超时或失败时为null
+     */
+    private String relevantInfo;
+
     /**
      * 本章节的摘要或目标
      */
@@ -2,29 +2,109 @@ package com.soukon.novelEditorAi.model.chapter;
 
 import lombok.Data;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
-import java.util.concurrent.CountDownLatch;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @Data
 public class PlanContext {
     private PlanState planState;
     private String planId;
+    /**
+     * 当前步骤的输出视图，由回放缓冲区提供，多个订阅者共享同一次模型调用
+     */
     private Flux<String> planStream;
-    private CountDownLatch completionLatch;
+    /**
+     * 整个计划的有界回放缓冲区
+     */
+    private final PlanStreamBuffer streamBuffer;
+    /**
+     * 当前生成步骤的消费完成信号，前端确认或流被消费完毕时触发
+     */
+    private volatile Sinks.Empty<Void> consumptionSignal;
+    private int consumptionStep;
     private String message;
     //进度
     private Integer progress;
+    /**
+     * 计划状态变化监听，由计划注册表设置
+     */
+    private Consumer<PlanContext> stateListener;
+    /**
+     * 计划结束释放工具状态时保存的工具调用缓存统计
+     */
+    private Map<String, Object> toolCacheStats;
 
     public PlanContext(String planId) {
+        this(planId, PlanStreamBuffer.DEFAULT_CAPACITY);
+    }
+
+    public PlanContext(String planId, int bufferCapacity) {
         this.planId = planId;
+        this.streamBuffer = new PlanStreamBuffer(bufferCapacity, this::onStepDrained);
+    }
+
+    /**
+     * 发布一个步骤的模型流：缓冲区立即订阅一次，前端通过 {@link #getPlanStream()} 读取共享输出。
+     * 同时为该步骤创建新的消费完成信号，调用方随后通过 {@link #awaitConsumption()} 等待。
+     *
+     * @param stepStream 模型流，传入null表示当前步骤已无内容可读
+     */
+    public void setPlanStream(Flux<String> stepStream) {
+        if (stepStream == null) {
+            this.planStream = null;
+            return;
+        }
+        synchronized (this) {
+            this.consumptionSignal = Sinks.empty();
+            this.consumptionStep = streamBuffer.getCurrentStep() + 1;
+        }
+        streamBuffer.append(stepStream);
+        this.planStream = streamBuffer.currentStepView(0);
+    }
+
+    public void setPlanState(PlanState planState) {
+        this.planState = planState;
+        if (planState == PlanState.COMPLETED) {
+            streamBuffer.complete();
+        }
+        Consumer<PlanContext> listener = this.stateListener;
+        if (listener != null) {
+            listener.accept(this);
+        }
+    }
+
+    /**
+     * 等待当前步骤的消费完成信号
+     *
+     * @return 前端完成消费（或流被消费完毕）时完成的Mono
+     */
+    public Mono<Void> awaitConsumption() {
+        Sinks.Empty<Void> signal = this.consumptionSignal;
+        return signal == null ? Mono.empty() : signal.asMono();
+    }
+
+    private void onStepDrained(int step) {
+        Sinks.Empty<Void> signal;
+        synchronized (this) {
+            // 只有当前步骤被读完才算消费完成，重放旧步骤不影响正在等待的代理
+            if (step != consumptionStep) {
+                return;
+            }
+            signal = this.consumptionSignal;
+        }
+        signal.tryEmitEmpty();
     }
 
     /**
      * 通知服务器前端已完成流的消费
      */
     public void notifyConsumptionCompleted() {
-        if (this.completionLatch != null) {
-            this.completionLatch.countDown();
+        Sinks.Empty<Void> signal = this.consumptionSignal;
+        if (signal != null) {
+            signal.tryEmitEmpty();
         }
     }
 
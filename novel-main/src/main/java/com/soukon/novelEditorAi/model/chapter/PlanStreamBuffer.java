@@ -0,0 +1,211 @@
+package com.soukon.novelEditorAi.model.chapter;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * 计划输出的有界回放缓冲区
+ * <p>
+ * 每个生成步骤的模型流只被缓冲区订阅一次，所有前端订阅者共享同一份输出。
+ * 每个内容片段带有计划内全局递增的偏移量，断线重连时可以从偏移量续传，
+ * 不会再次触发模型调用。缓冲区只保留最近 capacity 个事件，
+ * 续传位置已被淘汰时以 {@link OffsetExpiredException} 结束，不会跳过中间的内容。
+ */
+@Slf4j
+public class PlanStreamBuffer {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * 缓冲区事件：内容片段或步骤结束标记
+     *
+     * @param offset  片段的全局偏移量；结束标记的偏移量为该步骤之后的下一个偏移量
+     * @param step    步骤序号，从1开始
+     * @param index   片段在步骤内的序号；结束标记为该步骤的片段数
+     * @param content 片段内容，结束标记为null
+     * @param stepEnd 是否为步骤结束标记
+     */
+    public record StreamEvent(long offset, int step, long index, String content, boolean stepEnd) {
+    }
+
+    /**
+     * 请求的续传位置已被淘汰出缓冲区
+     */
+    public static class OffsetExpiredException extends RuntimeException {
+        public OffsetExpiredException(String message) {
+            super(message);
+        }
+    }
+
+    private final Sinks.Many<StreamEvent> sink;
+
+    /**
+     * 与回放缓冲区保留相同的最近 capacity 个事件，用于判断续传位置是否已被淘汰
+     */
+    private final StreamEvent[] retained;
+    private long emitted = 0;
+
+    /**
+     * 未结束的步骤 -> 已写入的片段数
+     */
+    private final Map<Integer, Long> openSteps = new HashMap<>();
+
+    /**
+     * 计划已结束，最后一个步骤写入结束标记后关闭缓冲区
+     */
+    private boolean completing = false;
+
+    /**
+     * 订阅者读到某个步骤的结束标记时回调，参数为步骤序号
+     */
+    private final IntConsumer drainListener;
+
+    private long nextOffset = 0;
+
+    private volatile int currentStep = 0;
+
+    public PlanStreamBuffer(int capacity, IntConsumer drainListener) {
+        this.sink = Sinks.many().replay().limit(capacity);
+        this.retained = new StreamEvent[capacity];
+        this.drainListener = drainListener;
+    }
+
+    /**
+     * 追加一个步骤的模型流，由缓冲区立即订阅
+     *
+     * @return 步骤序号
+     */
+    public synchronized int append(Flux<String> stepStream) {
+        int step = ++currentStep;
+        openSteps.put(step, 0L);
+        stepStream.subscribe(
+                chunk -> emitChunk(step, chunk),
+                error -> {
+                    log.warn("计划输出步骤 {} 异常结束: {}", step, error.getMessage());
+                    emitStepEnd(step);
+                },
+                () -> emitStepEnd(step));
+        return step;
+    }
+
+    /**
+     * 当前步骤的输出视图，读到步骤结束标记时完成
+     *
+     * @param skip 步骤内已收到的片段数，从该序号的片段续传
+     */
+    public Flux<String> currentStepView(long skip) {
+        int step = currentStep;
+        if (step == 0) {
+            return Flux.empty();
+        }
+        StreamEvent oldest = oldestRetained();
+        if (oldest != null && (oldest.step() > step || (oldest.step() == step && oldest.index() > skip))) {
+            return Flux.error(expired("步骤 " + step + " 的第 " + skip + " 个片段"));
+        }
+        return sink.asFlux()
+                .filter(event -> event.step() == step)
+                // 订阅前可能又有事件被淘汰，以实际回放的第一个事件为准
+                .switchOnFirst((first, events) -> first.hasValue() && first.get().index() > skip
+                        ? Flux.error(expired("步骤 " + step + " 的第 " + skip + " 个片段"))
+                        : events)
+                .doOnNext(this::onDelivered)
+                .takeWhile(event -> !event.stepEnd())
+                .filter(event -> event.index() >= skip)
+                .map(StreamEvent::content);
+    }
+
+    /**
+     * 整个计划的输出视图，从指定偏移量开始，计划结束时完成
+     *
+     * @param fromOffset 起始偏移量（包含）
+     */
+    public Flux<StreamEvent> planView(long fromOffset) {
+        if (fromOffset < getOldestOffset()) {
+            return Flux.error(expired("偏移量 " + fromOffset));
+        }
+        return sink.asFlux()
+                .switchOnFirst((first, events) -> first.hasValue() && first.get().offset() > fromOffset
+                        ? Flux.error(expired("偏移量 " + fromOffset))
+                        : events)
+                .doOnNext(this::onDelivered)
+                .filter(event -> !event.stepEnd() && event.offset() >= fromOffset);
+    }
+
+    /**
+     * 计划结束，不再追加步骤；仍有步骤在输出时等其结束标记写入后再关闭
+     */
+    public synchronized void complete() {
+        completing = true;
+        if (openSteps.isEmpty()) {
+            emitComplete();
+        }
+    }
+
+    /**
+     * 缓冲区中最早可续传的偏移量，更早的片段已被淘汰
+     */
+    public synchronized long getOldestOffset() {
+        StreamEvent oldest = oldestRetained();
+        return oldest == null ? 0 : oldest.offset();
+    }
+
+    public synchronized long getNextOffset() {
+        return nextOffset;
+    }
+
+    public int getCurrentStep() {
+        return currentStep;
+    }
+
+    private synchronized void emitChunk(int step, String chunk) {
+        long index = openSteps.merge(step, 1L, Long::sum) - 1;
+        emit(new StreamEvent(nextOffset++, step, index, chunk, false));
+    }
+
+    private synchronized void emitStepEnd(int step) {
+        Long chunks = openSteps.remove(step);
+        emit(new StreamEvent(nextOffset, step, chunks == null ? 0 : chunks, null, true));
+        if (completing && openSteps.isEmpty()) {
+            emitComplete();
+        }
+    }
+
+    private void emit(StreamEvent event) {
+        Sinks.EmitResult result = sink.tryEmitNext(event);
+        if (result.isFailure()) {
+            log.warn("计划输出写入缓冲区失败，偏移量: {}，原因: {}", event.offset(), result);
+            return;
+        }
+        retained[(int) (emitted++ % retained.length)] = event;
+    }
+
+    private void emitComplete() {
+        Sinks.EmitResult result = sink.tryEmitComplete();
+        if (result.isFailure() && result != Sinks.EmitResult.FAIL_TERMINATED) {
+            log.warn("计划输出缓冲区关闭失败，原因: {}", result);
+        }
+    }
+
+    private synchronized StreamEvent oldestRetained() {
+        if (emitted == 0) {
+            return null;
+        }
+        return emitted < retained.length ? retained[0] : retained[(int) (emitted % retained.length)];
+    }
+
+    private OffsetExpiredException expired(String position) {
+        return new OffsetExpiredException(position + " 已超出输出缓冲区的保留范围，最早可续传的偏移量为 "
+                + getOldestOffset());
+    }
+
+    private void onDelivered(StreamEvent event) {
+        if (event.stepEnd() && drainListener != null) {
+            drainListener.accept(event.step());
+        }
+    }
+}
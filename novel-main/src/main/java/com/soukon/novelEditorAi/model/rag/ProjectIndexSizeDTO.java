@@ -0,0 +1,59 @@
+package com.soukon.novelEditorAi.model.rag;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 项目索引规模DTO，按分块清单统计，不查询向量库
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProjectIndexSizeDTO {
+
+    /**
+     * 项目ID
+     */
+    private Long projectId;
+
+    /**
+     * 项目的分块总数，不含被多个项目共享的世界观
+     */
+    private Long totalChunks;
+
+    /**
+     * 各类对象的分块数，如 chapter、character、project
+     */
+    private Map<String, Long> chunksByType;
+
+    /**
+     * 各类对象中已索引的对象数
+     */
+    private Map<String, Long> ownersByType;
+
+    /**
+     * 各模型生成的分块数
+     */
+    private Map<String, Long> chunksByModel;
+
+    /**
+     * 当前向量模型ID
+     */
+    private String currentModelId;
+
+    /**
+     * 由其他模型生成、下次索引时需要重新写入的分块数
+     */
+    private Long staleChunks;
+
+    /**
+     * 最近一次写入分块的时间
+     */
+    private LocalDateTime lastIndexedAt;
+}
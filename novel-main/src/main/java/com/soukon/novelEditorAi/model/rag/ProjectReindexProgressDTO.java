@@ -0,0 +1,93 @@
+package com.soukon.novelEditorAi.model.rag;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 项目整体重建索引进度DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProjectReindexProgressDTO {
+
+    /**
+     * 任务ID
+     */
+    private Long jobId;
+
+    /**
+     * 项目ID
+     */
+    private Long projectId;
+
+    /**
+     * 任务状态，见 IndexJobStatus
+     */
+    private String status;
+
+    /**
+     * 需要索引的对象数：项目信息、章节、角色和引用的世界观
+     */
+    private Integer totalEntities;
+
+    /**
+     * 已处理的对象数
+     */
+    private Integer processedEntities;
+
+    /**
+     * 索引失败的对象数
+     */
+    private Integer failedEntities;
+
+    /**
+     * 已处理的文档（分块）数，含未变化而跳过的
+     */
+    private Long documents;
+
+    /**
+     * 实际写入向量库的文档数
+     */
+    private Long writtenDocuments;
+
+    /**
+     * 内容和模型未变化、跳过写入的文档数
+     */
+    private Long unchangedDocuments;
+
+    /**
+     * 删除的过期文档数
+     */
+    private Long removedDocuments;
+
+    /**
+     * 已执行时间（毫秒）
+     */
+    private Long elapsedMs;
+
+    /**
+     * 吞吐量：每秒处理的文档数
+     */
+    private Double documentsPerSecond;
+
+    /**
+     * 开始时间
+     */
+    private LocalDateTime startedAt;
+
+    /**
+     * 结束时间
+     */
+    private LocalDateTime finishedAt;
+
+    /**
+     * 最后一次失败原因
+     */
+    private String errorMessage;
+}
@@ -0,0 +1,63 @@
+package com.soukon.novelEditorAi.model.template;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 模板批量向量化进度DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TemplateBatchVectorProgressDTO {
+
+    /**
+     * 批量任务ID
+     */
+    private String batchId;
+
+    /**
+     * 批次内的模板数
+     */
+    private Integer total;
+
+    /**
+     * 等待执行的模板数
+     */
+    private Integer pending;
+
+    /**
+     * 正在向量化的模板数
+     */
+    private Integer running;
+
+    /**
+     * 向量化完成的模板数
+     */
+    private Integer completed;
+
+    /**
+     * 向量化失败的模板数
+     */
+    private Integer failed;
+
+    /**
+     * 整体进度百分比 (0-100)，按各模板进度平均
+     */
+    private Integer progress;
+
+    /**
+     * 批次内的任务是否全部结束
+     */
+    private Boolean finished;
+
+    /**
+     * 各模板的进度
+     */
+    private List<TemplateVectorProgressDTO> templates;
+}
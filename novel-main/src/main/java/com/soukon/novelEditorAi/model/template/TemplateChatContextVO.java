@@ -3,6 +3,8 @@ package com.soukon.novelEditorAi.model.template;
 import com.soukon.novelEditorAi.annotation.SelectField;
 import lombok.Data;
 
+import java.time.LocalDateTime;
+
 /**
  * 模板对话上下文VO
  * 用于对话功能中获取模板基本信息
@@ -21,6 +23,9 @@ public class TemplateChatContextVO {
     
     @SelectField(description = "向量化状态")
     private String vectorStatus;
+
+    @SelectField(description = "向量化完成时间，用作答案缓存的索引版本")
+    private LocalDateTime vectorEndTime;
     
     // 排除content字段和其他向量化进度字段，只保留对话需要的基本信息
 } 
\ No newline at end of file
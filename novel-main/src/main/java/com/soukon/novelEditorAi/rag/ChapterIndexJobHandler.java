@@ -0,0 +1,31 @@
+package com.soukon.novelEditorAi.rag;
+
+import com.soukon.novelEditorAi.entities.VectorIndexJob;
+import com.soukon.novelEditorAi.service.RagService;
+import org.springframework.stereotype.Component;
+
+/**
+ * 章节索引任务处理器
+ * 章节索引按分块清单增量写入，中断后重新执行只会写入尚未写入的分块，因此不需要额外的检查点
+ */
+@Component
+public class ChapterIndexJobHandler implements IndexJobHandler {
+
+    private final RagService ragService;
+
+    public ChapterIndexJobHandler(RagService ragService) {
+        this.ragService = ragService;
+    }
+
+    @Override
+    public String jobType() {
+        return IndexJobQueue.TYPE_CHAPTER;
+    }
+
+    @Override
+    public void execute(VectorIndexJob job, IndexJobContext context) {
+        if (!ragService.indexChapter(job.getTargetId())) {
+            throw new IllegalStateException("章节 " + job.getTargetId() + " 索引失败");
+        }
+    }
+}
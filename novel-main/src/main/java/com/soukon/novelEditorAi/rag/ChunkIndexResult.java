@@ -0,0 +1,16 @@
+package com.soukon.novelEditorAi.rag;
+
+/**
+ * 一次增量索引的结果
+ *
+ * @param added     新增的分块数
+ * @param updated   内容变化后重新写入的分块数
+ * @param unchanged 未变化、跳过的分块数
+ * @param removed   删除的分块数
+ */
+public record ChunkIndexResult(int added, int updated, int unchanged, int removed) {
+
+    public int written() {
+        return added + updated;
+    }
+}
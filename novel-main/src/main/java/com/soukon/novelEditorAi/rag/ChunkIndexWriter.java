@@ -0,0 +1,290 @@
+package com.soukon.novelEditorAi.rag;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.soukon.novelEditorAi.entities.VectorChunk;
+import com.soukon.novelEditorAi.mapper.VectorChunkMapper;
+import com.soukon.novelEditorAi.utils.HashUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * 分块索引写入器
+ * <p>
+ * 为每个被索引的对象维护一份分块清单（序号、偏移量、摘要、文档ID、模型ID、所属项目）。
+ * 重新索引时与清单比对，只写入内容变化或由其他模型生成的分块，并按文档ID删除多余的分块，
+ * 向量库中的分块数量始终与当前文本一致。删除、校验和按项目统计索引规模都只读清单，不查询向量库。
+ */
+@Component
+@Slf4j
+public class ChunkIndexWriter {
+
+    public static final String OWNER_CHAPTER = "chapter";
+    public static final String OWNER_TEMPLATE = "template";
+    public static final String OWNER_PROJECT = "project";
+    public static final String OWNER_CHARACTER = "character";
+    public static final String OWNER_WORLD = "world";
+
+    /**
+     * 单次删除的最大文档数
+     */
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    private final VectorStore vectorStore;
+    private final VectorChunkMapper vectorChunkMapper;
+
+    /**
+     * 当前向量模型ID，与向量缓存使用同一配置
+     */
+    private final String modelId;
+
+    public ChunkIndexWriter(VectorStore vectorStore, VectorChunkMapper vectorChunkMapper,
+                            @Value("${spring.ai.openai.embedding.options.model:text-embedding-ada-002}") String modelId) {
+        this.vectorStore = vectorStore;
+        this.vectorChunkMapper = vectorChunkMapper;
+        this.modelId = modelId;
+    }
+
+    /**
+     * 按分块清单增量更新对象的索引
+     *
+     * @param ownerType       对象类型
+     * @param ownerId         对象ID
+     * @param projectId       所属项目ID，不属于单个项目时为null
+     * @param chunks          当前文本的分块
+     * @param documentFactory 由分块创建向量文档，文档ID需稳定
+     * @param legacyFilter    对象还没有清单时，用于清理旧版本索引的过滤表达式，可为null
+     * @return 增量索引结果
+     */
+    public ChunkIndexResult sync(String ownerType, Long ownerId, Long projectId, List<TextChunk> chunks,
+                                 Function<TextChunk, Document> documentFactory, String legacyFilter) {
+        List<VectorChunk> manifest = loadManifest(ownerType, ownerId);
+        if (manifest.isEmpty() && legacyFilter != null) {
+            // 清单出现之前写入的分块无法按ID定位，只在首次增量索引时按条件清理一次
+            deleteLegacy(ownerType, ownerId, legacyFilter);
+        }
+
+        Map<Integer, VectorChunk> previous = new HashMap<>();
+        for (VectorChunk row : manifest) {
+            previous.put(row.getChunkIndex(), row);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Document> upserts = new ArrayList<>();
+        List<VectorChunk> changedRows = new ArrayList<>();
+        int added = 0;
+        int updated = 0;
+        int unchanged = 0;
+
+        for (TextChunk chunk : chunks) {
+            Document document = documentFactory.apply(chunk);
+            String hash = fingerprint(document);
+            VectorChunk row = previous.remove(chunk.index());
+
+            if (row != null && hash.equals(row.getContentHash()) && document.getId().equals(row.getDocId())
+                    && modelId.equals(row.getModelId())) {
+                unchanged++;
+                // 内容未变但位置或所属项目变化时只更新清单，不重新写入向量
+                if (row.getStartOffset() != chunk.start() || row.getEndOffset() != chunk.end()
+                        || !Objects.equals(row.getProjectId(), projectId)) {
+                    row.setStartOffset(chunk.start());
+                    row.setEndOffset(chunk.end());
+                    row.setProjectId(projectId);
+                    row.setUpdatedAt(now);
+                    changedRows.add(row);
+                }
+                continue;
+            }
+
+            if (row == null) {
+                row = new VectorChunk();
+                row.setOwnerType(ownerType);
+                row.setOwnerId(ownerId);
+                row.setChunkIndex(chunk.index());
+                row.setCreatedAt(now);
+                added++;
+            } else {
+                updated++;
+            }
+            row.setProjectId(projectId);
+            row.setStartOffset(chunk.start());
+            row.setEndOffset(chunk.end());
+            row.setContentHash(hash);
+            row.setDocId(document.getId());
+            row.setModelId(modelId);
+            row.setUpdatedAt(now);
+            changedRows.add(row);
+            upserts.add(document);
+        }
+
+        List<VectorChunk> removedRows = new ArrayList<>(previous.values());
+
+        // 先更新向量库再更新清单：清单写入失败时下次索引会重做这些分块，结果不变
+        if (!upserts.isEmpty()) {
+            vectorStore.add(upserts);
+        }
+        if (!removedRows.isEmpty()) {
+            deleteDocuments(removedRows);
+        }
+
+        for (VectorChunk row : changedRows) {
+            if (row.getId() == null) {
+                vectorChunkMapper.insert(row);
+            } else {
+                vectorChunkMapper.updateById(row);
+            }
+        }
+        if (!removedRows.isEmpty()) {
+            vectorChunkMapper.delete(new LambdaQueryWrapper<VectorChunk>()
+                    .in(VectorChunk::getId, removedRows.stream().map(VectorChunk::getId).toList()));
+        }
+
+        ChunkIndexResult result = new ChunkIndexResult(added, updated, unchanged, removedRows.size());
+        log.info("增量索引 {}-{}：新增 {}，更新 {}，未变 {}，删除 {}",
+                ownerType, ownerId, added, updated, unchanged, removedRows.size());
+        return result;
+    }
+
+    /**
+     * 按分块清单更新只有一个文档的对象（项目、角色、世界观），内容和模型都未变化时不重新写入
+     *
+     * @param ownerType 对象类型
+     * @param ownerId   对象ID
+     * @param projectId 所属项目ID，不属于单个项目时为null
+     * @param document  对象的文档，文档ID需稳定
+     * @return 增量索引结果
+     */
+    public ChunkIndexResult syncDocument(String ownerType, Long ownerId, Long projectId, Document document) {
+        String text = document.getText() == null ? "" : document.getText();
+        return sync(ownerType, ownerId, projectId, List.of(new TextChunk(0, 0, text.length(), text)),
+                chunk -> document, null);
+    }
+
+    /**
+     * 记录已由其他途径（如批量向量化管道）写入向量库的分块，同一序号的记录被覆盖。
+     * 分块序号和偏移量取自文档元数据 chunkIndex、startOffset、endOffset。
+     *
+     * @param ownerType 对象类型
+     * @param ownerId   对象ID
+     * @param projectId 所属项目ID，不属于单个项目时为null
+     * @param documents 已写入向量库的文档
+     */
+    public void record(String ownerType, Long ownerId, Long projectId, List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<VectorChunk> rows = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            VectorChunk row = new VectorChunk();
+            row.setOwnerType(ownerType);
+            row.setOwnerId(ownerId);
+            row.setProjectId(projectId);
+            row.setChunkIndex(intMetadata(document, "chunkIndex"));
+            row.setStartOffset(intMetadata(document, "startOffset"));
+            row.setEndOffset(intMetadata(document, "endOffset"));
+            row.setContentHash(fingerprint(document));
+            row.setDocId(document.getId());
+            row.setModelId(modelId);
+            row.setCreatedAt(now);
+            row.setUpdatedAt(now);
+            rows.add(row);
+        }
+        vectorChunkMapper.upsertBatch(rows);
+    }
+
+    /**
+     * 清单中对象的分块数，用于确认写入是否完整
+     */
+    public long count(String ownerType, Long ownerId) {
+        return vectorChunkMapper.selectCount(new LambdaQueryWrapper<VectorChunk>()
+                .eq(VectorChunk::getOwnerType, ownerType)
+                .eq(VectorChunk::getOwnerId, ownerId));
+    }
+
+    /**
+     * 按清单统计项目的索引规模
+     *
+     * @return 每行包含 ownerType、modelId、chunks、owners、lastIndexedAt
+     */
+    public List<Map<String, Object>> summarizeProject(Long projectId) {
+        return vectorChunkMapper.summarizeProject(projectId);
+    }
+
+    public String getModelId() {
+        return modelId;
+    }
+
+    /**
+     * 删除对象的全部分块及其清单
+     *
+     * @param ownerType    对象类型
+     * @param ownerId      对象ID
+     * @param legacyFilter 对象还没有清单时，用于清理旧版本索引的过滤表达式，可为null
+     * @return 删除的分块数
+     */
+    public int remove(String ownerType, Long ownerId, String legacyFilter) {
+        List<VectorChunk> manifest = loadManifest(ownerType, ownerId);
+        if (manifest.isEmpty()) {
+            if (legacyFilter != null) {
+                deleteLegacy(ownerType, ownerId, legacyFilter);
+            }
+            return 0;
+        }
+        deleteDocuments(manifest);
+        vectorChunkMapper.delete(new LambdaQueryWrapper<VectorChunk>()
+                .eq(VectorChunk::getOwnerType, ownerType)
+                .eq(VectorChunk::getOwnerId, ownerId));
+        log.info("已删除 {}-{} 的 {} 个分块", ownerType, ownerId, manifest.size());
+        return manifest.size();
+    }
+
+    /**
+     * 按文档ID分批删除，避免单次请求过大
+     */
+    private void deleteDocuments(List<VectorChunk> rows) {
+        List<String> ids = rows.stream().map(VectorChunk::getDocId).toList();
+        for (int from = 0; from < ids.size(); from += DELETE_BATCH_SIZE) {
+            vectorStore.delete(ids.subList(from, Math.min(from + DELETE_BATCH_SIZE, ids.size())));
+        }
+    }
+
+    private static int intMetadata(Document document, String key) {
+        Object value = document.getMetadata().get(key);
+        return value instanceof Number number ? number.intValue() : 0;
+    }
+
+    private List<VectorChunk> loadManifest(String ownerType, Long ownerId) {
+        return vectorChunkMapper.selectList(new LambdaQueryWrapper<VectorChunk>()
+                .eq(VectorChunk::getOwnerType, ownerType)
+                .eq(VectorChunk::getOwnerId, ownerId));
+    }
+
+    private void deleteLegacy(String ownerType, Long ownerId, String legacyFilter) {
+        try {
+            vectorStore.delete(legacyFilter);
+            log.info("已清理 {}-{} 的旧版本索引", ownerType, ownerId);
+        } catch (Exception e) {
+            // 旧索引不存在时部分向量库会抛出异常，不影响后续写入
+            log.debug("清理 {}-{} 的旧版本索引失败: {}", ownerType, ownerId, e.getMessage());
+        }
+    }
+
+    /**
+     * 分块指纹：文本和元数据任一变化都需要重新写入
+     */
+    private static String fingerprint(Document document) {
+        return HashUtils.sha256Hex(document.getText() + "\u0000" + new TreeMap<>(document.getMetadata()));
+    }
+}
@@ -0,0 +1,193 @@
+package com.soukon.novelEditorAi.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量向量化管道
+ * <p>
+ * 将文档按批次向量化并写入向量库，同时进行的批次数有上限。
+ * 每个批次独立重试，重试耗尽的批次只记为失败，不影响其他批次；
+ * 进度按已写入向量库的分块数回调。批次结果按输入顺序汇总，
+ * 因此可以回调"此前所有分块均已写入"的检查点，用于中断后从检查点继续。
+ */
+@Component
+@Slf4j
+public class EmbeddingPipeline {
+
+    @Value("${novel.rag.embedding.batch-size:32}")
+    private int batchSize;
+
+    @Value("${novel.rag.embedding.max-in-flight:4}")
+    private int maxInFlight;
+
+    @Value("${novel.rag.embedding.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${novel.rag.embedding.retry-backoff-ms:500}")
+    private long retryBackoffMs;
+
+    private final VectorStore vectorStore;
+
+    public EmbeddingPipeline(VectorStore vectorStore) {
+        this.vectorStore = vectorStore;
+    }
+
+    /**
+     * 进度回调
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * @param processed 已处理（写入或失败）的分块数
+         * @param stored    已写入向量库的分块数
+         */
+        void onProgress(int processed, int stored);
+    }
+
+    /**
+     * 检查点回调
+     */
+    @FunctionalInterface
+    public interface CheckpointListener {
+        /**
+         * @param lastStored 已写入的最后一个文档，输入中位于它之前的文档均已写入
+         * @param stored     已写入向量库的分块数
+         */
+        void onCheckpoint(Document lastStored, int stored);
+    }
+
+    /**
+     * 批次写入回调
+     */
+    @FunctionalInterface
+    public interface BatchListener {
+        /**
+         * @param batch 写入成功的批次，在同一批次的检查点回调之前调用
+         */
+        void onBatchStored(List<Document> batch);
+    }
+
+    /**
+     * 管道执行结果
+     *
+     * @param stored    写入成功的分块数
+     * @param failed    重试后仍失败的分块数
+     * @param elapsedMs 耗时（毫秒）
+     */
+    public record PipelineResult(int stored, int failed, long elapsedMs) {
+
+        public boolean isSuccess() {
+            return failed == 0;
+        }
+    }
+
+    /**
+     * 向量化并写入文档，阻塞直到所有批次处理完毕
+     *
+     * @param documents 待写入的文档
+     * @param listener  进度回调，可为null
+     * @return 执行结果
+     */
+    public PipelineResult process(Flux<Document> documents, ProgressListener listener) {
+        return process(documents, listener, null);
+    }
+
+    /**
+     * 向量化并写入文档，阻塞直到所有批次处理完毕
+     *
+     * @param documents          待写入的文档
+     * @param listener           进度回调，可为null
+     * @param checkpointListener 检查点回调，可为null；出现失败批次后不再推进检查点
+     * @return 执行结果
+     */
+    public PipelineResult process(Flux<Document> documents, ProgressListener listener,
+                                  CheckpointListener checkpointListener) {
+        return process(documents, listener, checkpointListener, null);
+    }
+
+    /**
+     * 向量化并写入文档，阻塞直到所有批次处理完毕
+     *
+     * @param documents          待写入的文档
+     * @param listener           进度回调，可为null
+     * @param checkpointListener 检查点回调，可为null；出现失败批次后不再推进检查点
+     * @param batchListener      批次写入回调，可为null；每个写入成功的批次都会回调，不受失败批次影响
+     * @return 执行结果
+     */
+    public PipelineResult process(Flux<Document> documents, ProgressListener listener,
+                                  CheckpointListener checkpointListener, BatchListener batchListener) {
+        long start = System.currentTimeMillis();
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger stored = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        // flatMapSequential 并发写入，但按输入顺序输出结果
+        documents.buffer(batchSize)
+                .flatMapSequential(batch -> storeBatch(batch, failed), maxInFlight)
+                .doOnNext(outcome -> {
+                    processed.addAndGet(outcome.size());
+                    stored.addAndGet(outcome.stored());
+                    if (listener != null) {
+                        listener.onProgress(processed.get(), stored.get());
+                    }
+                    if (batchListener != null && outcome.stored() > 0) {
+                        batchListener.onBatchStored(outcome.batch());
+                    }
+                    if (checkpointListener != null && failed.get() == 0) {
+                        checkpointListener.onCheckpoint(outcome.last(), stored.get());
+                    }
+                })
+                .blockLast();
+
+        PipelineResult result = new PipelineResult(stored.get(), failed.get(), System.currentTimeMillis() - start);
+        log.info("向量化管道完成：写入 {} 个分块，失败 {} 个，耗时 {} ms", result.stored(), result.failed(), result.elapsedMs());
+        return result;
+    }
+
+    /**
+     * 批次结果
+     *
+     * @param batch  批次中的文档
+     * @param stored 写入成功的文档数
+     */
+    private record BatchOutcome(List<Document> batch, int stored) {
+
+        Document last() {
+            return batch.get(batch.size() - 1);
+        }
+
+        int size() {
+            return batch.size();
+        }
+    }
+
+    /**
+     * 写入一个批次
+     */
+    private Mono<BatchOutcome> storeBatch(List<Document> batch, AtomicInteger failed) {
+        return Mono.fromRunnable(() -> vectorStore.add(batch))
+                .subscribeOn(Schedulers.boundedElastic())
+                .retryWhen(Retry.backoff(maxRetries, Duration.ofMillis(retryBackoffMs))
+                        .doBeforeRetry(signal -> log.warn("批次写入失败，第 {} 次重试，首个文档: {}，原因: {}",
+                                signal.totalRetries() + 1, batch.get(0).getId(), signal.failure().getMessage())))
+                .then(Mono.just(new BatchOutcome(batch, batch.size())))
+                .onErrorResume(e -> {
+                    failed.addAndGet(batch.size());
+                    log.error("批次写入重试耗尽，跳过 {} 个分块，首个文档: {}，原因: {}",
+                            batch.size(), batch.get(0).getId(), e.getMessage());
+                    return Mono.just(new BatchOutcome(batch, 0));
+                });
+    }
+}
@@ -0,0 +1,69 @@
+package com.soukon.novelEditorAi.rag;
+
+import com.soukon.novelEditorAi.entities.VectorIndexJob;
+import com.soukon.novelEditorAi.mapper.VectorIndexJobMapper;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 任务执行上下文
+ * 负责记录检查点，并在租约丢失时通知处理器停止
+ */
+@Slf4j
+public class IndexJobContext {
+
+    private final VectorIndexJob job;
+    private final String owner;
+    private final int leaseSeconds;
+    private final VectorIndexJobMapper jobMapper;
+
+    private volatile boolean cancelled = false;
+
+    IndexJobContext(VectorIndexJob job, String owner, int leaseSeconds, VectorIndexJobMapper jobMapper) {
+        this.job = job;
+        this.owner = owner;
+        this.leaseSeconds = leaseSeconds;
+        this.jobMapper = jobMapper;
+    }
+
+    /**
+     * 记录检查点并续约
+     *
+     * @param nextChunk    序号小于该值的分块均已写入
+     * @param storedChunks 累计写入的分块数
+     * @return 租约仍然有效时返回true
+     */
+    public boolean checkpoint(int nextChunk, int storedChunks) {
+        if (cancelled) {
+            return false;
+        }
+        if (jobMapper.checkpoint(job.getId(), owner, nextChunk, storedChunks, leaseSeconds) == 0) {
+            cancel();
+            return false;
+        }
+        job.setNextChunk(nextChunk);
+        job.setStoredChunks(storedChunks);
+        return true;
+    }
+
+    /**
+     * 租约是否已丢失
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void cancel() {
+        if (!cancelled) {
+            cancelled = true;
+            log.warn("向量化任务 {} 的租约已被接管，停止执行", job.getId());
+        }
+    }
+
+    VectorIndexJob getJob() {
+        return job;
+    }
+
+    String getOwner() {
+        return owner;
+    }
+}
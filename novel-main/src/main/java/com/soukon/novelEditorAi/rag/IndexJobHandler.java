@@ -0,0 +1,35 @@
+package com.soukon.novelEditorAi.rag;
+
+import com.soukon.novelEditorAi.entities.VectorIndexJob;
+
+/**
+ * 向量化任务处理器
+ * <p>
+ * 每种任务类型一个实现，由 {@link IndexJobWorker} 在领取任务后调用。
+ * 处理器应从任务的检查点继续，并在每批分块写入后记录检查点；
+ * 检查点失败说明租约已被其他节点接管，应尽快停止。
+ */
+public interface IndexJobHandler {
+
+    /**
+     * 处理的任务类型
+     */
+    String jobType();
+
+    /**
+     * 执行任务，抛出异常时按退避策略重试
+     *
+     * @param job     任务，nextChunk 为上次执行提交的检查点
+     * @param context 执行上下文
+     */
+    void execute(VectorIndexJob job, IndexJobContext context) throws Exception;
+
+    /**
+     * 重试耗尽、任务最终失败时调用
+     *
+     * @param job          任务
+     * @param errorMessage 最后一次失败原因
+     */
+    default void onFailed(VectorIndexJob job, String errorMessage) {
+    }
+}
@@ -0,0 +1,183 @@
+package com.soukon.novelEditorAi.rag;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.soukon.novelEditorAi.entities.VectorIndexJob;
+import com.soukon.novelEditorAi.enums.IndexJobStatus;
+import com.soukon.novelEditorAi.mapper.VectorIndexJobMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 向量化任务队列
+ * <p>
+ * 任务持久化在 vector_index_jobs 表中，节点重启不会丢失。同一对象已有等待中的任务时，
+ * 新的提交只推迟其执行时间，不会重复创建。
+ */
+@Component
+@Slf4j
+public class IndexJobQueue {
+
+    public static final String TYPE_TEMPLATE = "TEMPLATE";
+    public static final String TYPE_CHAPTER = "CHAPTER";
+    public static final String TYPE_PROJECT = "PROJECT";
+    public static final String TYPE_MIGRATION = "INDEX_MIGRATION";
+
+    @Value("${novel.rag.jobs.max-attempts:5}")
+    private int maxAttempts;
+
+    private final VectorIndexJobMapper jobMapper;
+
+    /**
+     * 新任务提交时的通知，用于唤醒执行器
+     */
+    private final List<Runnable> submitListeners = new CopyOnWriteArrayList<>();
+
+    public IndexJobQueue(VectorIndexJobMapper jobMapper) {
+        this.jobMapper = jobMapper;
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param jobType  任务类型
+     * @param targetId 被索引对象ID
+     * @param delayMs  延迟执行时间（毫秒）
+     * @return 任务ID
+     */
+    public Long submit(String jobType, Long targetId, long delayMs) {
+        return submit(jobType, targetId, delayMs, null);
+    }
+
+    /**
+     * 提交属于某个批次的任务
+     *
+     * @param jobType  任务类型
+     * @param targetId 被索引对象ID
+     * @param delayMs  延迟执行时间（毫秒）
+     * @param batchId  批量任务ID，为null时不属于任何批次
+     * @return 任务ID
+     */
+    public Long submit(String jobType, Long targetId, long delayMs, String batchId) {
+        long delaySeconds = (delayMs + 999) / 1000;
+        VectorIndexJob pending = jobMapper.selectOne(new LambdaQueryWrapper<VectorIndexJob>()
+                .eq(VectorIndexJob::getJobType, jobType)
+                .eq(VectorIndexJob::getTargetId, targetId)
+                .eq(VectorIndexJob::getStatus, IndexJobStatus.PENDING.getCode())
+                .orderByDesc(VectorIndexJob::getId)
+                .last("LIMIT 1"));
+        if (pending != null && jobMapper.reschedule(pending.getId(), delaySeconds) > 0) {
+            if (batchId != null) {
+                jobMapper.assignBatch(pending.getId(), batchId);
+            }
+            log.debug("合并向量化任务 {}，类型: {}，对象: {}", pending.getId(), jobType, targetId);
+            return pending.getId();
+        }
+
+        VectorIndexJob job = new VectorIndexJob();
+        job.setJobType(jobType);
+        job.setTargetId(targetId);
+        job.setBatchId(batchId);
+        job.setStatus(IndexJobStatus.PENDING.getCode());
+        job.setNextChunk(0);
+        job.setStoredChunks(0);
+        job.setAttempts(0);
+        job.setMaxAttempts(maxAttempts);
+        // next_run_at 使用数据库默认的当前时间，延迟也按数据库时间计算
+        jobMapper.insert(job);
+        if (delaySeconds > 0) {
+            jobMapper.reschedule(job.getId(), delaySeconds);
+        }
+        log.info("已提交向量化任务 {}，类型: {}，对象: {}", job.getId(), jobType, targetId);
+        notifySubmitted();
+        return job.getId();
+    }
+
+    /**
+     * 唤醒执行器；在事务中提交时等事务提交后再唤醒，否则执行器读不到新任务
+     */
+    private void notifySubmitted() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            submitListeners.forEach(Runnable::run);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                submitListeners.forEach(Runnable::run);
+            }
+        });
+    }
+
+    /**
+     * 查询对象未结束（等待中或执行中）的任务
+     */
+    public VectorIndexJob findActive(String jobType, Long targetId) {
+        return jobMapper.selectOne(new LambdaQueryWrapper<VectorIndexJob>()
+                .eq(VectorIndexJob::getJobType, jobType)
+                .eq(VectorIndexJob::getTargetId, targetId)
+                .in(VectorIndexJob::getStatus, IndexJobStatus.PENDING.getCode(), IndexJobStatus.RUNNING.getCode())
+                .orderByDesc(VectorIndexJob::getId)
+                .last("LIMIT 1"));
+    }
+
+    /**
+     * 查询对象最近一次提交的任务，不论状态
+     */
+    public VectorIndexJob findLatest(String jobType, Long targetId) {
+        return jobMapper.selectOne(new LambdaQueryWrapper<VectorIndexJob>()
+                .eq(VectorIndexJob::getJobType, jobType)
+                .eq(VectorIndexJob::getTargetId, targetId)
+                .orderByDesc(VectorIndexJob::getId)
+                .last("LIMIT 1"));
+    }
+
+    /**
+     * 取消对象未结束的任务
+     *
+     * @return 取消的任务数
+     */
+    public int cancelActive(String jobType, Long targetId, String reason) {
+        int cancelled = jobMapper.cancelActive(jobType, targetId, reason);
+        if (cancelled > 0) {
+            log.info("已取消 {} 个向量化任务，类型: {}，对象: {}，原因: {}", cancelled, jobType, targetId, reason);
+        }
+        return cancelled;
+    }
+
+    public VectorIndexJob getById(Long jobId) {
+        return jobMapper.selectById(jobId);
+    }
+
+    /**
+     * 查询批次内的全部任务
+     */
+    public List<VectorIndexJob> findByBatch(String batchId) {
+        return jobMapper.selectList(new LambdaQueryWrapper<VectorIndexJob>()
+                .eq(VectorIndexJob::getBatchId, batchId)
+                .orderByAsc(VectorIndexJob::getId));
+    }
+
+    void addSubmitListener(Runnable listener) {
+        submitListeners.add(listener);
+    }
+
+    /**
+     * 各状态的任务数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        for (IndexJobStatus status : IndexJobStatus.values()) {
+            stats.put(status.getCode().toLowerCase(), jobMapper.selectCount(new LambdaQueryWrapper<VectorIndexJob>()
+                    .eq(VectorIndexJob::getStatus, status.getCode())));
+        }
+        return stats;
+    }
+}
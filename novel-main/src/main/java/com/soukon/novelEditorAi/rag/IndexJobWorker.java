@@ -0,0 +1,237 @@
+package com.soukon.novelEditorAi.rag;
+
+import com.soukon.novelEditorAi.entities.VectorIndexJob;
+import com.soukon.novelEditorAi.mapper.VectorIndexJobMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 向量化任务执行器
+ * <p>
+ * 定期从任务表领取到期的任务和租约过期（节点失联）的任务，在本节点的线程池中执行。
+ * 执行期间定期续约，处理器每写入一批分块记录一次检查点；续约或检查点失败说明任务已被其他节点接管，
+ * 本节点停止执行。失败的任务按指数退避重新排队，超过最大次数后标记为失败。
+ * 节点正常关闭时释放持有的任务，其他节点可以立即接管。
+ */
+@Component
+@Slf4j
+public class IndexJobWorker {
+
+    @Value("${novel.rag.jobs.poll-interval-ms:5000}")
+    private long pollIntervalMs;
+
+    @Value("${novel.rag.jobs.lease-seconds:60}")
+    private int leaseSeconds;
+
+    @Value("${novel.rag.jobs.max-concurrency:2}")
+    private int maxConcurrency;
+
+    @Value("${novel.rag.jobs.retry-backoff-seconds:10}")
+    private long retryBackoffSeconds;
+
+    @Value("${novel.rag.jobs.max-backoff-seconds:600}")
+    private long maxBackoffSeconds;
+
+    private final VectorIndexJobMapper jobMapper;
+    private final IndexJobQueue jobQueue;
+    private final Map<String, IndexJobHandler> handlers = new HashMap<>();
+
+    /**
+     * 节点标识：主机名@进程号 + 随机后缀，重启后不会与旧的租约混淆
+     */
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName() + "-"
+            + UUID.randomUUID().toString().substring(0, 8);
+
+    /**
+     * 本节点正在执行的任务
+     */
+    private final Map<Long, IndexJobContext> running = new ConcurrentHashMap<>();
+
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong retriedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong takenOverCount = new AtomicLong();
+
+    private ScheduledExecutorService timer;
+    private ThreadPoolExecutor workers;
+
+    public IndexJobWorker(VectorIndexJobMapper jobMapper, IndexJobQueue jobQueue, List<IndexJobHandler> handlers) {
+        this.jobMapper = jobMapper;
+        this.jobQueue = jobQueue;
+        for (IndexJobHandler handler : handlers) {
+            this.handlers.put(handler.jobType(), handler);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("index-job-timer"));
+        workers = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("index-job-worker"));
+        timer.scheduleWithFixedDelay(this::poll, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        long heartbeatSeconds = Math.max(1, leaseSeconds / 3);
+        timer.scheduleWithFixedDelay(this::heartbeat, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        jobQueue.addSubmitListener(this::wakeUp);
+        log.info("向量化任务执行器启动，节点: {}，并发数: {}，租约: {} 秒，任务类型: {}",
+                nodeId, maxConcurrency, leaseSeconds, handlers.keySet());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+        // 释放本节点持有的任务，检查点保留，其他节点可立即接管
+        for (IndexJobContext context : running.values()) {
+            context.cancel();
+            try {
+                jobMapper.release(context.getJob().getId(), nodeId, 0, "节点关闭，任务已释放");
+            } catch (Exception e) {
+                log.warn("释放向量化任务 {} 失败，将在租约到期后被接管: {}", context.getJob().getId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 在调用线程中立即执行指定任务，任务已被其他节点领取时直接返回
+     *
+     * @param jobId 任务ID
+     */
+    public void runNow(Long jobId) {
+        if (jobMapper.claim(jobId, nodeId, leaseSeconds, true) == 0) {
+            log.debug("向量化任务 {} 已被领取或已结束", jobId);
+            return;
+        }
+        execute(jobId);
+    }
+
+    /**
+     * 获取执行统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>(jobQueue.getStats());
+        stats.put("node", nodeId);
+        stats.put("runningOnNode", running.size());
+        stats.put("maxConcurrency", maxConcurrency);
+        stats.put("completedOnNode", completedCount.get());
+        stats.put("retriedOnNode", retriedCount.get());
+        stats.put("failedOnNode", failedCount.get());
+        stats.put("takenOverFromNode", takenOverCount.get());
+        return stats;
+    }
+
+    private void wakeUp() {
+        if (timer != null && !timer.isShutdown()) {
+            timer.execute(this::poll);
+        }
+    }
+
+    private void poll() {
+        try {
+            int available = maxConcurrency - running.size() - workers.getQueue().size();
+            if (available <= 0) {
+                return;
+            }
+            for (Long jobId : jobMapper.selectClaimableIds(available)) {
+                if (jobMapper.claim(jobId, nodeId, leaseSeconds, false) > 0) {
+                    workers.execute(() -> execute(jobId));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("领取向量化任务失败: {}", e.getMessage());
+        }
+    }
+
+    private void heartbeat() {
+        for (IndexJobContext context : running.values()) {
+            try {
+                if (jobMapper.heartbeat(context.getJob().getId(), nodeId, leaseSeconds) == 0) {
+                    takenOverCount.incrementAndGet();
+                    context.cancel();
+                }
+            } catch (Exception e) {
+                // 数据库暂时不可用时不取消任务，租约到期前还有机会续约
+                log.warn("向量化任务 {} 续约失败: {}", context.getJob().getId(), e.getMessage());
+            }
+        }
+    }
+
+    private void execute(Long jobId) {
+        VectorIndexJob job = jobMapper.selectById(jobId);
+        if (job == null) {
+            return;
+        }
+        IndexJobContext context = new IndexJobContext(job, nodeId, leaseSeconds, jobMapper);
+        running.put(jobId, context);
+        try {
+            IndexJobHandler handler = handlers.get(job.getJobType());
+            if (handler == null) {
+                jobMapper.fail(jobId, nodeId, "未知的任务类型: " + job.getJobType());
+                failedCount.incrementAndGet();
+                return;
+            }
+            log.info("开始执行向量化任务 {}，类型: {}，对象: {}，第 {} 次，从分块 {} 继续",
+                    jobId, job.getJobType(), job.getTargetId(), job.getAttempts(), job.getNextChunk());
+            try {
+                handler.execute(job, context);
+                if (context.isCancelled()) {
+                    return;
+                }
+                jobMapper.complete(jobId, nodeId);
+                completedCount.incrementAndGet();
+                log.info("向量化任务 {} 执行完成", jobId);
+            } catch (Exception e) {
+                if (context.isCancelled()) {
+                    return;
+                }
+                String error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+                if (job.getAttempts() >= job.getMaxAttempts()) {
+                    jobMapper.fail(jobId, nodeId, error);
+                    failedCount.incrementAndGet();
+                    log.error("向量化任务 {} 已执行 {} 次，标记为失败: {}", jobId, job.getAttempts(), error);
+                    handler.onFailed(job, error);
+                } else {
+                    long delay = Math.min(maxBackoffSeconds, retryBackoffSeconds << Math.min(20, job.getAttempts() - 1));
+                    jobMapper.release(jobId, nodeId, delay, error);
+                    retriedCount.incrementAndGet();
+                    log.warn("向量化任务 {} 第 {} 次执行失败，{} 秒后从分块 {} 重试: {}",
+                            jobId, job.getAttempts(), delay, job.getNextChunk(), error);
+                }
+            }
+        } catch (Exception e) {
+            log.error("更新向量化任务 {} 状态失败，将在租约到期后重新执行: {}", jobId, e.getMessage());
+        } finally {
+            running.remove(jobId);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,220 @@
+package com.soukon.novelEditorAi.rag;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 索引任务调度器
+ * <p>
+ * 按文档键合并索引任务：同一个键在防抖时间内的多次提交只执行最后一次，
+ * 任务执行期间的新提交会在本次结束后再执行一次，同一个键不会并发索引。
+ * 任务在固定大小的线程池中执行，向量服务变慢或积压增多时自动延长防抖时间，
+ * 等待中的键超过上限时拒绝新键。
+ */
+@Component
+@Slf4j
+public class IndexingScheduler {
+
+    @Value("${novel.rag.indexing.debounce-ms:2000}")
+    private long debounceMs;
+
+    @Value("${novel.rag.indexing.max-debounce-ms:30000}")
+    private long maxDebounceMs;
+
+    @Value("${novel.rag.indexing.max-concurrency:2}")
+    private int maxConcurrency;
+
+    @Value("${novel.rag.indexing.max-pending:500}")
+    private int maxPending;
+
+    /**
+     * 每个键的调度状态，所有读写都在 this 上同步
+     */
+    private final Map<String, KeyState> states = new HashMap<>();
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * 最近任务耗时的指数移动平均（毫秒）
+     */
+    private volatile double avgDurationMs = 0;
+
+    private ScheduledExecutorService timer;
+    private ThreadPoolExecutor workers;
+
+    @PostConstruct
+    public void start() {
+        timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("rag-index-timer"));
+        workers = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("rag-indexer"));
+        log.info("索引调度器启动，防抖: {} ms，并发数: {}，最大等待键数: {}", debounceMs, maxConcurrency, maxPending);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * 提交索引任务
+     *
+     * @param key 文档键，如 chapter-1
+     * @param job 索引任务，执行时应读取文档的最新内容
+     * @return 是否被接受；等待中的键过多时拒绝新键
+     */
+    public boolean submit(String key, Runnable job) {
+        synchronized (this) {
+            KeyState state = states.get(key);
+            if (state == null) {
+                if (states.size() >= maxPending) {
+                    rejectedCount.incrementAndGet();
+                    log.warn("索引任务积压 {} 个，拒绝新的索引任务: {}", states.size(), key);
+                    return false;
+                }
+                state = new KeyState();
+                states.put(key, state);
+            }
+            state.job = job;
+            submittedCount.incrementAndGet();
+
+            if (state.running) {
+                // 正在索引旧版本，结束后按最新版本再执行一次
+                state.rerun = true;
+                coalescedCount.incrementAndGet();
+                return true;
+            }
+            if (state.pending != null) {
+                state.pending.cancel(false);
+                coalescedCount.incrementAndGet();
+            }
+            state.pending = timer.schedule(() -> dispatch(key), currentDelayMs(), TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * 获取调度统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        int debouncing = 0;
+        int running = 0;
+        synchronized (this) {
+            for (KeyState state : states.values()) {
+                if (state.running) {
+                    running++;
+                } else if (state.pending != null) {
+                    debouncing++;
+                }
+            }
+            stats.put("pendingKeys", states.size());
+        }
+        stats.put("debouncing", debouncing);
+        stats.put("running", running);
+        stats.put("queueDepth", workers.getQueue().size());
+        stats.put("maxConcurrency", maxConcurrency);
+        stats.put("currentDebounceMs", currentDelayMs());
+        stats.put("avgDurationMs", Math.round(avgDurationMs));
+        stats.put("submitted", submittedCount.get());
+        stats.put("coalesced", coalescedCount.get());
+        stats.put("rejected", rejectedCount.get());
+        stats.put("completed", completedCount.get());
+        stats.put("failed", failedCount.get());
+        return stats;
+    }
+
+    private void dispatch(String key) {
+        synchronized (this) {
+            KeyState state = states.get(key);
+            if (state == null || state.running) {
+                return;
+            }
+            state.pending = null;
+            state.running = true;
+        }
+        workers.execute(() -> runJob(key));
+    }
+
+    private void runJob(String key) {
+        Runnable job;
+        synchronized (this) {
+            KeyState state = states.get(key);
+            job = state.job;
+            state.rerun = false;
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            job.run();
+            completedCount.incrementAndGet();
+        } catch (Throwable e) {
+            failedCount.incrementAndGet();
+            log.error("索引任务 {} 执行失败: {}", key, e.getMessage());
+        }
+        recordDuration(System.currentTimeMillis() - start);
+
+        synchronized (this) {
+            KeyState state = states.get(key);
+            state.running = false;
+            if (state.rerun) {
+                state.pending = timer.schedule(() -> dispatch(key), currentDelayMs(), TimeUnit.MILLISECONDS);
+            } else {
+                states.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 当前防抖时间：向量服务越慢、排队越多，等待越久，以便合并更多提交
+     */
+    private long currentDelayMs() {
+        int queued = workers == null ? 0 : workers.getQueue().size();
+        long adaptive = (long) (avgDurationMs * (queued + 1) / Math.max(1, maxConcurrency));
+        return Math.min(maxDebounceMs, Math.max(debounceMs, adaptive));
+    }
+
+    private void recordDuration(long durationMs) {
+        double previous = avgDurationMs;
+        avgDurationMs = previous == 0 ? durationMs : previous * 0.8 + durationMs * 0.2;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class KeyState {
+        private Runnable job;
+        private ScheduledFuture<?> pending;
+        private boolean running;
+        private boolean rerun;
+    }
+}
@@ -0,0 +1,360 @@
+package com.soukon.novelEditorAi.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 词法倒排索引（BM25）
+ * <p>
+ * 中文按相邻两字切分（二元组），英文和数字按单词切分，作者输入的人名、物品名等专有名词能被精确命中，
+ * 弥补向量检索对字面匹配不敏感的问题。索引按范围（项目、模板）分区保存在内存中，
+ * 首次查询某个范围时由调用方从数据库加载，之后随索引写入增量更新；最多保留若干个最近使用的范围。
+ * 不依赖向量化服务，向量化服务不可用时可以单独回答查询。
+ */
+@Component
+@Slf4j
+public class LexicalIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    @Value("${novel.rag.lexical.max-scopes:64}")
+    private int maxScopes = 64;
+
+    /**
+     * 范围 -> 分区，按访问顺序排列，超出容量时淘汰最久未使用的分区
+     */
+    private final LinkedHashMap<String, Partition> partitions = new LinkedHashMap<>(16, 0.75f, true);
+
+    public static String projectScope(Long projectId) {
+        return "project-" + projectId;
+    }
+
+    public static String templateScope(Long templateId) {
+        return "template-" + templateId;
+    }
+
+    /**
+     * 检索范围内与查询最相关的文档，范围未加载时先调用加载器
+     *
+     * @param scope  检索范围
+     * @param loader 范围未加载时提供该范围全部文档
+     * @param query  查询文本
+     * @param topK   返回数量
+     * @return 按BM25得分降序排列的文档，得分写入score
+     */
+    public List<Document> search(String scope, Supplier<List<Document>> loader, String query, int topK) {
+        return partition(scope, loader).search(query, topK);
+    }
+
+    /**
+     * 写入或覆盖文档，范围未加载时忽略（加载时会从数据库读到最新内容）
+     */
+    public void put(String scope, List<Document> documents) {
+        Partition partition = loaded(scope);
+        if (partition != null) {
+            partition.put(documents);
+        }
+    }
+
+    /**
+     * 在所有已加载的范围中删除ID满足条件的文档
+     */
+    public void removeIf(Predicate<String> idMatcher) {
+        for (Partition partition : loadedPartitions()) {
+            partition.removeIf(idMatcher);
+        }
+    }
+
+    /**
+     * 在所有已包含该文档的范围中更新文档，用于被多个项目共享的世界观
+     */
+    public void refresh(Document document) {
+        for (Partition partition : loadedPartitions()) {
+            partition.replaceIfPresent(document);
+        }
+    }
+
+    /**
+     * 丢弃范围的索引，下次查询时重新加载
+     */
+    public void invalidate(String scope) {
+        synchronized (partitions) {
+            partitions.remove(scope);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        int documents = 0;
+        int terms = 0;
+        List<Partition> loaded = loadedPartitions();
+        for (Partition partition : loaded) {
+            synchronized (partition) {
+                documents += partition.liveCount;
+                terms += partition.postings.size();
+            }
+        }
+        stats.put("scopes", loaded.size());
+        stats.put("documents", documents);
+        stats.put("terms", terms);
+        return stats;
+    }
+
+    /**
+     * 切分文本：连续的汉字取相邻二元组（单个汉字取本身），字母数字串取小写单词
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int cp = text.codePointAt(i);
+            if (isHan(cp)) {
+                int runStart = i;
+                List<Integer> run = new ArrayList<>();
+                while (i < length && isHan(cp = text.codePointAt(i))) {
+                    run.add(i);
+                    i += Character.charCount(cp);
+                }
+                if (run.size() == 1) {
+                    tokens.add(text.substring(runStart, i));
+                } else {
+                    for (int j = 0; j + 1 < run.size(); j++) {
+                        int end = j + 2 < run.size() ? run.get(j + 2) : i;
+                        tokens.add(text.substring(run.get(j), end));
+                    }
+                }
+            } else if (Character.isLetterOrDigit(cp)) {
+                int wordStart = i;
+                while (i < length && Character.isLetterOrDigit(cp = text.codePointAt(i)) && !isHan(cp)) {
+                    i += Character.charCount(cp);
+                }
+                tokens.add(text.substring(wordStart, i).toLowerCase());
+            } else {
+                i += Character.charCount(cp);
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isHan(int codePoint) {
+        return Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HAN;
+    }
+
+    private Partition partition(String scope, Supplier<List<Document>> loader) {
+        Partition partition = loaded(scope);
+        if (partition != null) {
+            return partition;
+        }
+        // 加载在锁外进行，并发加载同一范围时以先完成的为准
+        long start = System.currentTimeMillis();
+        Partition created = new Partition();
+        created.put(loader.get());
+        synchronized (partitions) {
+            Partition existing = partitions.get(scope);
+            if (existing != null) {
+                return existing;
+            }
+            partitions.put(scope, created);
+            while (partitions.size() > maxScopes) {
+                String eldest = partitions.keySet().iterator().next();
+                partitions.remove(eldest);
+            }
+        }
+        log.info("已加载范围 {} 的词法索引，共 {} 个文档，耗时 {} ms",
+                scope, created.liveCount, System.currentTimeMillis() - start);
+        return created;
+    }
+
+    private Partition loaded(String scope) {
+        synchronized (partitions) {
+            return partitions.get(scope);
+        }
+    }
+
+    private List<Partition> loadedPartitions() {
+        synchronized (partitions) {
+            return new ArrayList<>(partitions.values());
+        }
+    }
+
+    /**
+     * 一个范围的倒排索引
+     * <p>
+     * 文档按序号存储，删除只留下空位，倒排表中的失效记录在检索时跳过，空位过多时整体重建。
+     */
+    private static class Partition {
+
+        private final List<Entry> entries = new ArrayList<>();
+        private final Map<String, Integer> idToOrdinal = new HashMap<>();
+        private final Map<String, Postings> postings = new HashMap<>();
+        private long totalLength = 0;
+        private int liveCount = 0;
+
+        synchronized void put(List<Document> documents) {
+            for (Document document : documents) {
+                if (document.getText() == null) {
+                    continue;
+                }
+                remove(document.getId());
+                add(document);
+            }
+        }
+
+        synchronized void replaceIfPresent(Document document) {
+            if (idToOrdinal.containsKey(document.getId())) {
+                remove(document.getId());
+                add(document);
+            }
+        }
+
+        synchronized void removeIf(Predicate<String> idMatcher) {
+            List<String> matched = idToOrdinal.keySet().stream().filter(idMatcher).toList();
+            for (String id : matched) {
+                remove(id);
+            }
+            compactIfNeeded();
+        }
+
+        synchronized List<Document> search(String query, int topK) {
+            if (liveCount == 0 || topK <= 0) {
+                return List.of();
+            }
+            double averageLength = (double) totalLength / liveCount;
+            Map<Integer, Double> scores = new HashMap<>();
+            for (String term : new HashSet<>(tokenize(query))) {
+                Postings list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                // 文档频率按有效记录计算
+                int documentFrequency = 0;
+                for (int i = 0; i < list.size; i++) {
+                    if (entries.get(list.ordinals[i]) != null) {
+                        documentFrequency++;
+                    }
+                }
+                if (documentFrequency == 0) {
+                    continue;
+                }
+                double idf = Math.log(1 + (liveCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+                for (int i = 0; i < list.size; i++) {
+                    Entry entry = entries.get(list.ordinals[i]);
+                    if (entry == null) {
+                        continue;
+                    }
+                    int tf = list.frequencies[i];
+                    double norm = tf + K1 * (1 - B + B * entry.length / averageLength);
+                    scores.merge(list.ordinals[i], idf * tf * (K1 + 1) / norm, Double::sum);
+                }
+            }
+
+            PriorityQueue<Map.Entry<Integer, Double>> top = new PriorityQueue<>(Map.Entry.comparingByValue());
+            for (Map.Entry<Integer, Double> score : scores.entrySet()) {
+                top.add(score);
+                if (top.size() > topK) {
+                    top.poll();
+                }
+            }
+            List<Document> results = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                Map.Entry<Integer, Double> score = top.poll();
+                Entry entry = entries.get(score.getKey());
+                results.add(Document.builder()
+                        .id(entry.id)
+                        .text(entry.text)
+                        .metadata(new HashMap<>(entry.metadata))
+                        .score(score.getValue())
+                        .build());
+            }
+            Collections.reverse(results);
+            return results;
+        }
+
+        private void add(Document document) {
+            List<String> tokens = tokenize(document.getText());
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String token : tokens) {
+                frequencies.merge(token, 1, Integer::sum);
+            }
+            int ordinal = entries.size();
+            entries.add(new Entry(document.getId(), document.getText(), new HashMap<>(document.getMetadata()), tokens.size()));
+            idToOrdinal.put(document.getId(), ordinal);
+            for (Map.Entry<String, Integer> frequency : frequencies.entrySet()) {
+                postings.computeIfAbsent(frequency.getKey(), k -> new Postings()).add(ordinal, frequency.getValue());
+            }
+            totalLength += tokens.size();
+            liveCount++;
+        }
+
+        private void remove(String id) {
+            Integer ordinal = idToOrdinal.remove(id);
+            if (ordinal == null) {
+                return;
+            }
+            Entry entry = entries.set(ordinal, null);
+            totalLength -= entry.length;
+            liveCount--;
+        }
+
+        /**
+         * 空位超过一半时按有效文档重建，回收倒排表中的失效记录
+         */
+        private void compactIfNeeded() {
+            int dead = entries.size() - liveCount;
+            if (dead < 1000 || dead < liveCount) {
+                return;
+            }
+            List<Entry> live = entries.stream().filter(Objects::nonNull).toList();
+            entries.clear();
+            idToOrdinal.clear();
+            postings.clear();
+            totalLength = 0;
+            liveCount = 0;
+            for (Entry entry : live) {
+                add(new Document(entry.id, entry.text, entry.metadata));
+            }
+        }
+    }
+
+    private record Entry(String id, String text, Map<String, Object> metadata, int length) {
+    }
+
+    /**
+     * 紧凑的倒排表：文档序号与词频两个并列数组
+     */
+    private static class Postings {
+        private int[] ordinals = new int[4];
+        private int[] frequencies = new int[4];
+        private int size = 0;
+
+        void add(int ordinal, int frequency) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            ordinals[size] = ordinal;
+            frequencies[size] = frequency;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.soukon.novelEditorAi.rag;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.soukon.novelEditorAi.entities.Chapter;
+import com.soukon.novelEditorAi.entities.Character;
+import com.soukon.novelEditorAi.entities.Project;
+import com.soukon.novelEditorAi.entities.VectorIndexJob;
+import com.soukon.novelEditorAi.enums.IndexJobStatus;
+import com.soukon.novelEditorAi.mapper.ChapterMapper;
+import com.soukon.novelEditorAi.mapper.CharacterMapper;
+import com.soukon.novelEditorAi.mapper.ProjectMapper;
+import com.soukon.novelEditorAi.model.rag.ProjectReindexProgressDTO;
+import com.soukon.novelEditorAi.service.RagService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 项目整体重建索引任务处理器
+ * <p>
+ * 依次索引项目信息、全部章节、角色和项目引用的世界观。章节和角色按ID分页读取，
+ * 每页在共享的线程池中并行分块和向量化，并发数受线程池大小限制，多个项目同时重建时也不会超出。
+ * 写入按分块清单增量进行，未变化的分块不重新向量化，变化的分块也先查向量缓存，
+ * 因此重复执行的开销很小，中断后从头重新执行即可，不需要额外的检查点。
+ */
+@Component
+@Slf4j
+public class ProjectIndexJobHandler implements IndexJobHandler {
+
+    @Value("${novel.rag.reindex.concurrency:4}")
+    private int concurrency;
+
+    @Value("${novel.rag.reindex.page-size:100}")
+    private int pageSize;
+
+    private final RagService ragService;
+    private final IndexJobQueue jobQueue;
+    private final ProjectMapper projectMapper;
+    private final ChapterMapper chapterMapper;
+    private final CharacterMapper characterMapper;
+
+    /**
+     * 项目ID -> 本节点最近一次重建的进度
+     */
+    private final Map<Long, ReindexProgress> progresses = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+
+    public ProjectIndexJobHandler(RagService ragService, IndexJobQueue jobQueue, ProjectMapper projectMapper,
+                                  ChapterMapper chapterMapper, CharacterMapper characterMapper) {
+        this.ragService = ragService;
+        this.jobQueue = jobQueue;
+        this.projectMapper = projectMapper;
+        this.chapterMapper = chapterMapper;
+        this.characterMapper = characterMapper;
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+            Thread thread = new Thread(r, "project-reindex-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public String jobType() {
+        return IndexJobQueue.TYPE_PROJECT;
+    }
+
+    /**
+     * 提交项目重建索引任务，项目已有未结束的任务时直接返回该任务
+     *
+     * @return 任务ID
+     */
+    public Long submit(Long projectId) {
+        VectorIndexJob active = jobQueue.findActive(IndexJobQueue.TYPE_PROJECT, projectId);
+        if (active != null) {
+            return active.getId();
+        }
+        return jobQueue.submit(IndexJobQueue.TYPE_PROJECT, projectId, 0);
+    }
+
+    /**
+     * 查询项目最近一次重建的进度：本节点执行过时返回内存中的详细进度，否则按任务记录估算
+     *
+     * @return 项目没有重建任务时返回null
+     */
+    public ProjectReindexProgressDTO getProgress(Long projectId) {
+        VectorIndexJob job = jobQueue.findLatest(IndexJobQueue.TYPE_PROJECT, projectId);
+        if (job == null) {
+            return null;
+        }
+        ReindexProgress progress = progresses.get(projectId);
+        if (progress != null && progress.jobId.equals(job.getId())) {
+            ProjectReindexProgressDTO dto = progress.toDTO();
+            dto.setStatus(job.getStatus());
+            dto.setErrorMessage(job.getErrorMessage());
+            return dto;
+        }
+        return ProjectReindexProgressDTO.builder()
+                .jobId(job.getId())
+                .projectId(projectId)
+                .status(job.getStatus())
+                .processedEntities(job.getNextChunk())
+                .writtenDocuments(job.getStoredChunks() == null ? 0L : job.getStoredChunks().longValue())
+                .finishedAt(job.getFinishedAt())
+                .errorMessage(job.getErrorMessage())
+                .build();
+    }
+
+    @Override
+    public void execute(VectorIndexJob job, IndexJobContext context) throws Exception {
+        Long projectId = job.getTargetId();
+        Project project = projectMapper.selectById(projectId);
+        if (project == null) {
+            log.warn("项目 {} 已不存在，跳过重建索引", projectId);
+            return;
+        }
+
+        long chapterCount = chapterMapper.selectCount(new LambdaQueryWrapper<Chapter>()
+                .eq(Chapter::getProjectId, projectId));
+        long characterCount = characterMapper.selectCount(new LambdaQueryWrapper<Character>()
+                .eq(Character::getProjectId, projectId));
+        int total = (int) (1 + chapterCount + characterCount + (project.getWorldId() == null ? 0 : 1));
+        ReindexProgress progress = new ReindexProgress(job.getId(), projectId, total);
+        progresses.put(projectId, progress);
+        log.info("开始重建项目 {} 的索引，共 {} 个对象，并发数 {}", projectId, total, concurrency);
+
+        progress.record(ragService.sync(ChunkIndexWriter.OWNER_PROJECT, projectId));
+
+        long cursor = 0;
+        for (List<Chapter> page = nextChapters(projectId, cursor); !page.isEmpty(); page = nextChapters(projectId, cursor)) {
+            if (!syncPage(ChunkIndexWriter.OWNER_CHAPTER, page, Chapter::getId, ragService::sync, progress, context)) {
+                return;
+            }
+            cursor = page.get(page.size() - 1).getId();
+        }
+
+        cursor = 0;
+        for (List<Character> page = nextCharacters(projectId, cursor); !page.isEmpty(); page = nextCharacters(projectId, cursor)) {
+            if (!syncPage(ChunkIndexWriter.OWNER_CHARACTER, page, Character::getId, ragService::sync, progress, context)) {
+                return;
+            }
+            cursor = page.get(page.size() - 1).getId();
+        }
+
+        if (project.getWorldId() != null) {
+            progress.record(ragService.sync(ChunkIndexWriter.OWNER_WORLD, project.getWorldId()));
+        }
+        progress.finish();
+
+        log.info("项目 {} 索引重建完成：{} 个对象，{} 个文档（写入 {}，跳过 {}，删除 {}），耗时 {} 毫秒，{} 文档/秒",
+                projectId, progress.processed.get(), progress.documents.get(), progress.written.get(),
+                progress.unchanged.get(), progress.removed.get(), progress.elapsedMs(),
+                String.format("%.1f", progress.documentsPerSecond()));
+        if (progress.failed.get() > 0) {
+            throw new IllegalStateException(progress.failed.get() + " 个对象索引失败");
+        }
+    }
+
+    /**
+     * 并行索引一页已读取的对象，全部完成后记录检查点
+     *
+     * @param sync 按已读取的对象增量同步索引
+     * @return 租约仍然有效时返回true
+     */
+    private <T> boolean syncPage(String ownerType, List<T> page, Function<T, Long> idGetter,
+                                 Function<T, ChunkIndexResult> sync, ReindexProgress progress,
+                                 IndexJobContext context) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(page.size());
+        for (T entity : page) {
+            Long id = idGetter.apply(entity);
+            futures.add(CompletableFuture.runAsync(() -> {
+                if (context.isCancelled()) {
+                    return;
+                }
+                try {
+                    progress.record(sync.apply(entity));
+                } catch (Exception e) {
+                    progress.failed.incrementAndGet();
+                    progress.processed.incrementAndGet();
+                    log.warn("重建索引时 {} {} 索引失败: {}", ownerType, id, e.getMessage());
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        return context.checkpoint(progress.processed.get(), (int) Math.min(Integer.MAX_VALUE, progress.written.get()));
+    }
+
+    private List<Chapter> nextChapters(Long projectId, long cursor) {
+        // 整页读取完整的章节，索引时不再逐个查询
+        return chapterMapper.selectList(new LambdaQueryWrapper<Chapter>()
+                .eq(Chapter::getProjectId, projectId)
+                .gt(Chapter::getId, cursor)
+                .orderByAsc(Chapter::getId)
+                .last("LIMIT " + pageSize));
+    }
+
+    private List<Character> nextCharacters(Long projectId, long cursor) {
+        return characterMapper.selectList(new LambdaQueryWrapper<Character>()
+                .eq(Character::getProjectId, projectId)
+                .gt(Character::getId, cursor)
+                .orderByAsc(Character::getId)
+                .last("LIMIT " + pageSize));
+    }
+
+    /**
+     * 一次重建的累计统计，多个线程同时更新
+     */
+    private static class ReindexProgress {
+        private final Long jobId;
+        private final Long projectId;
+        private final int total;
+        private final long startNanos = System.nanoTime();
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private volatile LocalDateTime finishedAt;
+        private volatile long finishedNanos;
+
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicLong documents = new AtomicLong();
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicLong unchanged = new AtomicLong();
+        private final AtomicLong removed = new AtomicLong();
+
+        ReindexProgress(Long jobId, Long projectId, int total) {
+            this.jobId = jobId;
+            this.projectId = projectId;
+            this.total = total;
+        }
+
+        void record(ChunkIndexResult result) {
+            documents.addAndGet(result.written() + result.unchanged());
+            written.addAndGet(result.written());
+            unchanged.addAndGet(result.unchanged());
+            removed.addAndGet(result.removed());
+            processed.incrementAndGet();
+        }
+
+        void finish() {
+            finishedNanos = System.nanoTime();
+            finishedAt = LocalDateTime.now();
+        }
+
+        long elapsedMs() {
+            long end = finishedAt == null ? System.nanoTime() : finishedNanos;
+            return (end - startNanos) / 1_000_000;
+        }
+
+        double documentsPerSecond() {
+            long elapsed = elapsedMs();
+            return elapsed == 0 ? 0 : documents.get() * 1000.0 / elapsed;
+        }
+
+        ProjectReindexProgressDTO toDTO() {
+            return ProjectReindexProgressDTO.builder()
+                    .jobId(jobId)
+                    .projectId(projectId)
+                    .status(finishedAt == null ? IndexJobStatus.RUNNING.getCode() : IndexJobStatus.COMPLETED.getCode())
+                    .totalEntities(total)
+                    .processedEntities(processed.get())
+                    .failedEntities(failed.get())
+                    .documents(documents.get())
+                    .writtenDocuments(written.get())
+                    .unchangedDocuments(unchanged.get())
+                    .removedDocuments(removed.get())
+                    .elapsedMs(elapsedMs())
+                    .documentsPerSecond(Math.round(documentsPerSecond() * 10) / 10.0)
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.soukon.novelEditorAi.rag;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 倒数排名融合（Reciprocal Rank Fusion）
+ * <p>
+ * 每个文档的融合得分为它在各路结果中 1 / (k + 排名) 之和，只依赖排名，
+ * 不需要把BM25得分与余弦相似度换算到同一尺度。
+ */
+public final class RankFusion {
+
+    /**
+     * 常用的平滑常数，削弱头部排名之间的差距
+     */
+    public static final int DEFAULT_K = 60;
+
+    private RankFusion() {
+    }
+
+    /**
+     * 融合多路检索结果
+     *
+     * @param rankings 各路按相关度降序排列的结果，文档按ID合并
+     * @param k        平滑常数
+     * @param limit    返回数量
+     * @return 按融合得分降序排列的文档，融合得分写入score
+     */
+    public static List<Document> fuse(List<List<Document>> rankings, int k, int limit) {
+        Map<String, Double> scores = new HashMap<>();
+        // 同一文档保留第一次出现时的内容与元数据
+        Map<String, Document> documents = new LinkedHashMap<>();
+        for (List<Document> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                scores.merge(document.getId(), 1.0 / (k + rank + 1), Double::sum);
+                documents.putIfAbsent(document.getId(), document);
+            }
+        }
+
+        List<String> ids = new ArrayList<>(documents.keySet());
+        ids.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+        List<Document> fused = new ArrayList<>(Math.min(limit, ids.size()));
+        for (String id : ids.subList(0, Math.min(limit, ids.size()))) {
+            Document document = documents.get(id);
+            fused.add(Document.builder()
+                    .id(id)
+                    .text(document.getText())
+                    .metadata(document.getMetadata())
+                    .score(scores.get(id))
+                    .build());
+        }
+        return fused;
+    }
+}
@@ -0,0 +1,146 @@
+package com.soukon.novelEditorAi.rag;
+
+import com.soukon.novelEditorAi.utils.HashUtils;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 检索结果缓存
+ * <p>
+ * 以"范围 + 查询摘要 + topK + 附加条件"为键缓存检索结果。每个范围（项目、模板）有一个索引版本号，
+ * 该范围每次写入索引时版本号加一，缓存条目记录写入时的版本号，版本不一致即视为失效；
+ * 被多个项目共享的数据（如世界观）变化时递增全局版本号，使全部条目失效。
+ * 同一计划中工具反复发起的相同检索因此不再调用向量服务。
+ * <p>
+ * 版本号只保存在本节点内存中，只有本节点执行的索引写入会使条目失效。章节和模板的索引任务由领取任务的节点执行，
+ * 其他节点上的条目在过期前（novel.rag.result-cache.ttl-seconds，默认600秒）仍可能返回写入之前的检索结果。
+ */
+@Component
+public class RetrievalCache {
+
+    @Value("${novel.rag.result-cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${novel.rag.result-cache.max-entries:1000}")
+    private int maxEntries = 1000;
+
+    @Value("${novel.rag.result-cache.ttl-seconds:600}")
+    private long ttlSeconds = 600;
+
+    private final Map<String, AtomicLong> scopeVersions = new ConcurrentHashMap<>();
+    private final AtomicLong globalVersion = new AtomicLong();
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * 规范化查询文本：去掉首尾空白并合并连续空白，写法上仅有空白差异的查询共用缓存
+     */
+    public static String normalizeQuery(String query) {
+        return query == null ? "" : query.trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * 生成缓存键，同时记录当前的索引版本号。应在检索之前调用，
+     * 这样检索期间发生的写入会使本次写入的条目在下次读取时失效。
+     *
+     * @param scope     检索范围
+     * @param query     规范化后的查询文本
+     * @param topK      返回数量
+     * @param condition 影响结果的其他条件，如排除的章节
+     */
+    public Key key(String scope, String query, int topK, String condition) {
+        return new Key(scope + "|" + HashUtils.sha256Hex(query) + "|" + topK + "|" + condition,
+                version(scope).get(), globalVersion.get());
+    }
+
+    /**
+     * 读取缓存
+     *
+     * @return 缓存的结果，未命中或已失效时返回null
+     */
+    public List<Document> lookup(Key key) {
+        if (!enabled) {
+            return null;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key.value());
+            if (entry != null) {
+                if (entry.scopeVersion == key.scopeVersion() && entry.globalVersion == key.globalVersion()
+                        && entry.expiresAt > System.currentTimeMillis()) {
+                    hitCount.incrementAndGet();
+                    return new ArrayList<>(entry.documents);
+                }
+                entries.remove(key.value());
+            }
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    public void put(Key key, List<Document> documents) {
+        if (!enabled) {
+            return;
+        }
+        Entry entry = new Entry(List.copyOf(documents), key.scopeVersion(), key.globalVersion(),
+                System.currentTimeMillis() + ttlSeconds * 1000);
+        synchronized (entries) {
+            entries.put(key.value(), entry);
+            while (entries.size() > maxEntries) {
+                entries.remove(entries.keySet().iterator().next());
+            }
+        }
+    }
+
+    /**
+     * 范围内的索引发生写入
+     */
+    public void invalidate(String scope) {
+        version(scope).incrementAndGet();
+    }
+
+    /**
+     * 共享数据发生写入，全部缓存失效
+     */
+    public void invalidateAll() {
+        globalVersion.incrementAndGet();
+    }
+
+    public Map<String, Object> getStats() {
+        long hits = hitCount.get();
+        long misses = missCount.get();
+        long total = hits + misses;
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (entries) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) hits / total);
+        return stats;
+    }
+
+    private AtomicLong version(String scope) {
+        return scopeVersions.computeIfAbsent(scope, s -> new AtomicLong());
+    }
+
+    /**
+     * 缓存键及生成时的索引版本号
+     */
+    public record Key(String value, long scopeVersion, long globalVersion) {
+    }
+
+    private record Entry(List<Document> documents, long scopeVersion, long globalVersion, long expiresAt) {
+    }
+}
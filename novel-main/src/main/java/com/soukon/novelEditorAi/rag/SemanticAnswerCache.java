@@ -0,0 +1,245 @@
+package com.soukon.novelEditorAi.rag;
+
+import com.soukon.novelEditorAi.llm.CachingEmbeddingModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模板对话的语义答案缓存
+ * <p>
+ * 按模板保存已回答过的问题向量和答案。新问题向量化后与同一模板下的历史问题比较余弦相似度，
+ * 达到阈值即直接返回历史答案，不再检索和调用大模型。每个模板记录写入时的索引版本
+ * （向量化完成时间），模板重新向量化后版本变化，该模板的缓存整体丢弃。
+ * 问题向量走 CachingEmbeddingModel，完全相同的问题不会重复调用向量服务。
+ */
+@Slf4j
+@Component
+public class SemanticAnswerCache {
+
+    @Value("${novel.template.chat.answer-cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${novel.template.chat.answer-cache.similarity-threshold:0.92}")
+    private double similarityThreshold = 0.92;
+
+    @Value("${novel.template.chat.answer-cache.max-entries-per-template:200}")
+    private int maxEntriesPerTemplate = 200;
+
+    @Value("${novel.template.chat.answer-cache.max-templates:200}")
+    private int maxTemplates = 200;
+
+    @Value("${novel.template.chat.answer-cache.ttl-minutes:1440}")
+    private long ttlMinutes = 1440;
+
+    @Autowired
+    private CachingEmbeddingModel embeddingModel;
+
+    /**
+     * 按访问顺序排列，超出模板数上限时淘汰最久未访问的模板
+     */
+    private final LinkedHashMap<Long, Bucket> buckets = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong storeCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final AtomicLong latencySavedMs = new AtomicLong();
+
+    private static class Bucket {
+        private final String indexVersion;
+        /**
+         * 最新写入的条目在末尾
+         */
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+        Bucket(String indexVersion) {
+            this.indexVersion = indexVersion;
+        }
+    }
+
+    private record Entry(String question, float[] vector, String answer, long latencyMs, long expiresAt) {
+    }
+
+    /**
+     * 查找语义相近的已回答问题
+     *
+     * @param templateId   模板ID
+     * @param indexVersion 模板当前的索引版本，与缓存中的不一致时丢弃该模板的缓存
+     * @param question     用户问题
+     * @return 查找结果，包含问题向量供未命中时写入；缓存关闭时返回null
+     */
+    public Lookup lookup(Long templateId, String indexVersion, String question) {
+        if (!enabled) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        float[] vector;
+        try {
+            vector = normalize(embeddingModel.embed(question));
+        } catch (Exception e) {
+            log.warn("答案缓存向量化问题失败，跳过缓存: {}", e.getMessage());
+            missCount.incrementAndGet();
+            return new Lookup(null, null);
+        }
+
+        Entry best = null;
+        double bestSimilarity = similarityThreshold;
+        synchronized (buckets) {
+            Bucket bucket = buckets.get(templateId);
+            if (bucket != null && !Objects.equals(bucket.indexVersion, indexVersion)) {
+                buckets.remove(templateId);
+                invalidationCount.incrementAndGet();
+                bucket = null;
+            }
+            if (bucket != null) {
+                long now = System.currentTimeMillis();
+                Iterator<Entry> iterator = bucket.entries.iterator();
+                while (iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    if (entry.expiresAt <= now) {
+                        iterator.remove();
+                        continue;
+                    }
+                    if (entry.vector.length != vector.length) {
+                        continue;
+                    }
+                    double similarity = dot(entry.vector, vector);
+                    if (similarity >= bestSimilarity) {
+                        best = entry;
+                        bestSimilarity = similarity;
+                    }
+                }
+            }
+        }
+
+        if (best == null) {
+            missCount.incrementAndGet();
+            return new Lookup(vector, null);
+        }
+        long saved = Math.max(0, best.latencyMs - (System.currentTimeMillis() - start));
+        hitCount.incrementAndGet();
+        latencySavedMs.addAndGet(saved);
+        log.info("模板 {} 答案缓存命中，相似度 {}，原问题: {}", templateId,
+                String.format("%.4f", bestSimilarity), best.question);
+        return new Lookup(vector, new Hit(best.question, best.answer, bestSimilarity, saved));
+    }
+
+    /**
+     * 保存本次回答
+     *
+     * @param lookup    回答前的查找结果
+     * @param latencyMs 本次回答的耗时，命中时据此计算节省的时间
+     */
+    public void put(Long templateId, String indexVersion, Lookup lookup, String question,
+                    String answer, long latencyMs) {
+        if (!enabled || lookup == null || lookup.vector() == null || answer == null || answer.isBlank()) {
+            return;
+        }
+        Entry entry = new Entry(question, lookup.vector(), answer, latencyMs,
+                System.currentTimeMillis() + ttlMinutes * 60_000);
+        synchronized (buckets) {
+            Bucket bucket = buckets.get(templateId);
+            if (bucket == null || !Objects.equals(bucket.indexVersion, indexVersion)) {
+                bucket = new Bucket(indexVersion);
+                buckets.put(templateId, bucket);
+                while (buckets.size() > maxTemplates) {
+                    buckets.remove(buckets.keySet().iterator().next());
+                }
+            }
+            bucket.entries.addLast(entry);
+            while (bucket.entries.size() > maxEntriesPerTemplate) {
+                bucket.entries.removeFirst();
+            }
+        }
+        storeCount.incrementAndGet();
+    }
+
+    /**
+     * 丢弃模板的全部缓存答案
+     */
+    public void invalidate(Long templateId) {
+        synchronized (buckets) {
+            if (buckets.remove(templateId) != null) {
+                invalidationCount.incrementAndGet();
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long hits = hitCount.get();
+        long misses = missCount.get();
+        long total = hits + misses;
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (buckets) {
+            int entries = 0;
+            for (Bucket bucket : buckets.values()) {
+                entries += bucket.entries.size();
+            }
+            stats.put("templates", buckets.size());
+            stats.put("entries", entries);
+        }
+        stats.put("enabled", enabled);
+        stats.put("similarityThreshold", similarityThreshold);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) hits / total);
+        stats.put("stores", storeCount.get());
+        stats.put("invalidations", invalidationCount.get());
+        stats.put("latencySavedMs", latencySavedMs.get());
+        stats.put("avgLatencySavedMs", hits == 0 ? 0 : latencySavedMs.get() / hits);
+        return stats;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 查找结果
+     *
+     * @param vector 归一化后的问题向量，向量化失败时为null
+     * @param hit    命中的缓存答案，未命中时为null
+     */
+    public record Lookup(float[] vector, Hit hit) {
+    }
+
+    /**
+     * 命中的缓存答案
+     *
+     * @param question   原问题
+     * @param similarity 与原问题的余弦相似度
+     * @param savedMs    本次节省的耗时（原回答耗时减去查找耗时）
+     */
+    public record Hit(String question, String answer, double similarity, long savedMs) {
+    }
+}
@@ -0,0 +1,65 @@
+package com.soukon.novelEditorAi.rag;
+
+import com.soukon.novelEditorAi.mapper.TemplateMapper;
+
+import java.io.Reader;
+
+/**
+ * 分段读取模板内容的字符流
+ * <p>
+ * 每次从数据库读取一段内容，避免把整个模板加载到内存中。
+ */
+public class TemplateContentReader extends Reader {
+
+    /**
+     * 每次从数据库读取的字符数
+     */
+    public static final int SLICE_SIZE = 64 * 1024;
+
+    private final TemplateMapper templateMapper;
+    private final Long templateId;
+    private final long length;
+
+    /**
+     * 下一段在全文中的起始位置，从0开始
+     */
+    private long position = 0;
+    private String slice = "";
+    private int slicePos = 0;
+
+    public TemplateContentReader(TemplateMapper templateMapper, Long templateId, long length) {
+        this.templateMapper = templateMapper;
+        this.templateId = templateId;
+        this.length = length;
+    }
+
+    @Override
+    public int read(char[] buffer, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (slicePos >= slice.length()) {
+            if (position >= length) {
+                return -1;
+            }
+            // SUBSTRING 的起始位置从1开始
+            String next = templateMapper.selectContentSlice(templateId, position + 1, SLICE_SIZE);
+            if (next == null || next.isEmpty()) {
+                return -1;
+            }
+            slice = next;
+            slicePos = 0;
+            position += next.length();
+        }
+        int count = Math.min(len, slice.length() - slicePos);
+        slice.getChars(slicePos, slicePos + count, buffer, off);
+        slicePos += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+        slice = "";
+        slicePos = 0;
+    }
+}
@@ -0,0 +1,12 @@
+package com.soukon.novelEditorAi.rag;
+
+/**
+ * 文本分块
+ *
+ * @param index 分块序号，从0开始
+ * @param start 在原文中的起始位置（包含）
+ * @param end   在原文中的结束位置（不包含）
+ * @param text  分块文本
+ */
+public record TextChunk(int index, int start, int end, String text) {
+}
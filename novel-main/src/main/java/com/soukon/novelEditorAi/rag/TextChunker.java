@@ -0,0 +1,419 @@
+package com.soukon.novelEditorAi.rag;
+
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 文本分块器
+ * <p>
+ * 章节和模板共用的分块规则：按字符数或估算的token数确定分块长度，在长度附近寻找句子边界切分，
+ * 相邻分块保留指定长度的重叠。句子边界识别中英文句末标点、省略号和换行，句末紧跟的引号、括号并入前一个分块；
+ * 优先选择不在对话引号内的边界，尽量不把一句对话拆到两个分块中。
+ * <p>
+ * 分块器不保存状态，可以复用。内存中的文本直接在原字符序列上查找边界，每个分块只复制一次文本；
+ * 字符流只在内存中保留当前分块附近的窗口，占用与文本总长度无关。
+ */
+public final class TextChunker {
+
+    /**
+     * 分块长度的计量方式
+     */
+    public enum Mode {
+        /**
+         * 按字符数
+         */
+        CHARACTERS,
+        /**
+         * 按估算的token数
+         */
+        TOKENS
+    }
+
+    /**
+     * 寻找句子边界时向前/向后搜索的最大字符数
+     */
+    private static final int SEARCH_LIMIT = 50;
+
+    private static final int READ_SIZE = 8192;
+
+    /**
+     * token估算的精度：以1/4个token为单位
+     */
+    private static final int TOKEN_SCALE = 4;
+
+    private final Mode mode;
+
+    /**
+     * 分块长度和重叠长度，按字符计量时为字符数，按token计量时为1/4个token的个数
+     */
+    private final int budget;
+    private final int overlap;
+
+    private TextChunker(Mode mode, int budget, int overlap) {
+        if (budget <= 0 || overlap < 0 || overlap >= budget) {
+            throw new IllegalArgumentException("分块大小必须为正数且大于重叠长度");
+        }
+        this.mode = mode;
+        this.budget = budget;
+        this.overlap = overlap;
+    }
+
+    /**
+     * 按字符数分块
+     *
+     * @param chunkSize 分块大小（字符数）
+     * @param overlap   分块重叠长度（字符数）
+     */
+    public static TextChunker characters(int chunkSize, int overlap) {
+        return new TextChunker(Mode.CHARACTERS, chunkSize, overlap);
+    }
+
+    /**
+     * 按估算的token数分块，用于受向量模型输入长度限制的场景
+     *
+     * @param maxTokens     分块大小（token数）
+     * @param overlapTokens 分块重叠长度（token数）
+     */
+    public static TextChunker tokens(int maxTokens, int overlapTokens) {
+        return new TextChunker(Mode.TOKENS, maxTokens * TOKEN_SCALE, overlapTokens * TOKEN_SCALE);
+    }
+
+    /**
+     * 按配置创建分块器
+     *
+     * @param mode      characters 或 tokens，不区分大小写
+     * @param chunkSize 分块大小
+     * @param overlap   分块重叠长度
+     */
+    public static TextChunker of(String mode, int chunkSize, int overlap) {
+        return Mode.TOKENS.name().equalsIgnoreCase(mode)
+                ? tokens(chunkSize, overlap)
+                : characters(chunkSize, overlap);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * 估算文本的token数：汉字等全角字符约1.5个token，ASCII字符约4个一个token
+     */
+    public static int estimateTokens(CharSequence text) {
+        long weight = 0;
+        for (int i = 0; i < text.length(); i++) {
+            weight += weight(text.charAt(i));
+        }
+        return (int) ((weight + TOKEN_SCALE - 1) / TOKEN_SCALE);
+    }
+
+    /**
+     * 对内存中的文本分块
+     */
+    public List<TextChunk> split(CharSequence text) {
+        List<TextChunk> chunks = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return chunks;
+        }
+        Cursor cursor = open(text);
+        try {
+            for (TextChunk chunk = cursor.next(); chunk != null; chunk = cursor.next()) {
+                chunks.add(chunk);
+            }
+        } catch (IOException e) {
+            // 内存中的文本不会读取失败
+            throw new UncheckedIOException(e);
+        }
+        return chunks;
+    }
+
+    /**
+     * 逐个读取内存中文本的分块
+     */
+    public Cursor open(CharSequence text) {
+        return new Cursor(text, null);
+    }
+
+    /**
+     * 逐个读取字符流的分块，调用方负责关闭字符流
+     */
+    public Cursor open(Reader reader) {
+        return new Cursor(new StringBuilder(), reader);
+    }
+
+    /**
+     * 以Flux形式按需产生分块，订阅结束时关闭字符流
+     *
+     * @param readerSupplier 字符流提供者，每次订阅调用一次
+     */
+    public Flux<TextChunk> chunks(Supplier<Reader> readerSupplier) {
+        return Flux.using(readerSupplier::get,
+                reader -> {
+                    Cursor cursor = open(reader);
+                    return Flux.<TextChunk>generate(sink -> {
+                        try {
+                            TextChunk chunk = cursor.next();
+                            if (chunk == null) {
+                                sink.complete();
+                            } else {
+                                sink.next(chunk);
+                            }
+                        } catch (IOException e) {
+                            sink.error(new UncheckedIOException(e));
+                        }
+                    });
+                },
+                reader -> {
+                    try {
+                        reader.close();
+                    } catch (IOException ignored) {
+                        // 关闭失败不影响已产生的分块
+                    }
+                });
+    }
+
+    /**
+     * 一次分块的读取位置
+     */
+    public final class Cursor {
+
+        /**
+         * 内存中的文本，或字符流当前窗口的内容；bufferStart为其第一个字符在全文中的位置
+         */
+        private final CharSequence buffer;
+        private final StringBuilder window;
+        private final Reader reader;
+        private final char[] readBuffer;
+        private int bufferStart = 0;
+        private boolean eof;
+
+        private int start = 0;
+        private int index = 0;
+        private boolean finished = false;
+
+        private Cursor(CharSequence buffer, Reader reader) {
+            this.buffer = buffer;
+            this.reader = reader;
+            this.window = reader == null ? null : (StringBuilder) buffer;
+            this.readBuffer = reader == null ? null : new char[READ_SIZE];
+            this.eof = reader == null;
+        }
+
+        /**
+         * 读取下一个分块
+         *
+         * @return 分块，文本读完时返回null
+         */
+        public TextChunk next() throws IOException {
+            if (finished) {
+                return null;
+            }
+            int available = ensure(start + 1);
+            if (start >= available) {
+                finished = true;
+                return null;
+            }
+
+            int end = budgetEnd();
+            available = ensure(end + SEARCH_LIMIT);
+            boolean last = eof && end == available;
+            if (!last) {
+                int boundary = findBoundary(end, Math.min(SEARCH_LIMIT, end - start), available);
+                if (boundary > start) {
+                    end = boundary;
+                }
+                last = eof && end == available;
+            }
+
+            String text = buffer.subSequence(start - bufferStart, end - bufferStart).toString();
+            TextChunk chunk = new TextChunk(index++, start, end, text);
+
+            if (last) {
+                finished = true;
+            } else {
+                int nextStart = overlapStart(end);
+                start = nextStart <= start ? end : nextStart;
+                if (window != null) {
+                    // 丢弃窗口中已经不再需要的内容
+                    window.delete(0, start - bufferStart);
+                    bufferStart = start;
+                }
+            }
+            return chunk;
+        }
+
+        /**
+         * 从当前起点按长度预算计算的结束位置，不超过已读入的内容
+         */
+        private int budgetEnd() throws IOException {
+            if (mode == Mode.CHARACTERS) {
+                return Math.min(start + budget, ensure(start + budget));
+            }
+            int used = 0;
+            int position = start;
+            while (position < ensure(position + 1)) {
+                used += weight(charAt(position));
+                if (used > budget && position > start) {
+                    break;
+                }
+                position++;
+            }
+            return position;
+        }
+
+        /**
+         * 下一个分块的起点：从结束位置向前保留重叠长度
+         */
+        private int overlapStart(int end) {
+            if (mode == Mode.CHARACTERS) {
+                return end - overlap;
+            }
+            int used = 0;
+            int position = end;
+            while (position > start + 1 && used < overlap) {
+                position--;
+                used += weight(charAt(position));
+            }
+            return position;
+        }
+
+        /**
+         * 在 position 前后 searchLimit 范围内寻找句子边界。
+         * 优先级：向后第一个不在引号内的边界、向前最近的不在引号内的边界、向后第一个边界、向前最近的边界。
+         * 引号按当前分块内的配对判断，换行视为段落结束，未闭合的引号不延续到下一段。
+         */
+        private int findBoundary(int position, int searchLimit, int available) {
+            int lo = Math.max(position - searchLimit, start);
+            int hi = Math.min(position + searchLimit, available);
+            int forwardFree = -1;
+            int forwardAny = -1;
+            int backwardFree = -1;
+            int backwardAny = -1;
+
+            int depth = 0;
+            for (int i = start; i < hi; i++) {
+                char c = charAt(i);
+                depth = quoteDepth(depth, c);
+                if (i < lo || !isSentenceEnd(c, i, available)) {
+                    continue;
+                }
+                // 句末连续的标点和收尾的引号、括号并入当前句子
+                int boundary = i + 1;
+                int boundaryDepth = depth;
+                while (boundary < available) {
+                    char next = charAt(boundary);
+                    if (!isSentenceEnd(next, boundary, available) && !isCloser(next)) {
+                        break;
+                    }
+                    boundaryDepth = quoteDepth(boundaryDepth, next);
+                    boundary++;
+                }
+                if (boundary <= start) {
+                    continue;
+                }
+                if (i >= position) {
+                    if (forwardAny < 0) {
+                        forwardAny = boundary;
+                    }
+                    if (forwardFree < 0 && boundaryDepth == 0) {
+                        forwardFree = boundary;
+                    }
+                } else {
+                    backwardAny = boundary;
+                    if (boundaryDepth == 0) {
+                        backwardFree = boundary;
+                    }
+                }
+            }
+
+            if (forwardFree > 0) {
+                return forwardFree;
+            }
+            if (backwardFree > 0) {
+                return backwardFree;
+            }
+            if (forwardAny > 0) {
+                return forwardAny;
+            }
+            return backwardAny > 0 ? backwardAny : position;
+        }
+
+        /**
+         * 确保全文中 position 之前的内容已读入
+         *
+         * @return 已读入内容的结束位置
+         */
+        private int ensure(int position) throws IOException {
+            while (!eof && bufferStart + window.length() < position) {
+                int read = reader.read(readBuffer);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    window.append(readBuffer, 0, read);
+                }
+            }
+            return bufferStart + buffer.length();
+        }
+
+        private char charAt(int position) {
+            return buffer.charAt(position - bufferStart);
+        }
+
+        /**
+         * 英文句点后紧跟字母或数字时（小数、缩写）不视为句末
+         */
+        private boolean isSentenceEnd(char c, int position, int available) {
+            switch (c) {
+                case '。', '！', '？', '!', '?', '…', '\n':
+                    return true;
+                case '.':
+                    return position + 1 >= available || !Character.isLetterOrDigit(charAt(position + 1));
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static boolean isCloser(char c) {
+        switch (c) {
+            case '”', '’', '」', '』', '）', ')', '》', '】', '"', '\'', '\r':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int quoteDepth(int depth, char c) {
+        switch (c) {
+            case '“', '「', '『':
+                return depth + 1;
+            case '”', '」', '』':
+                return Math.max(0, depth - 1);
+            case '"':
+                return depth > 0 ? depth - 1 : 1;
+            case '\n':
+                return 0;
+            default:
+                return depth;
+        }
+    }
+
+    /**
+     * 单个字符估算的token数，以1/4个token为单位
+     */
+    private static int weight(char c) {
+        if (c < 0x80) {
+            return 1;
+        }
+        if ((c >= 0x2E80 && c <= 0x9FFF) || (c >= 0xAC00 && c <= 0xD7AF)
+                || (c >= 0xF900 && c <= 0xFAFF) || (c >= 0xFF00 && c <= 0xFFEF)) {
+            return 6;
+        }
+        return 2;
+    }
+}
@@ -0,0 +1,141 @@
+package com.soukon.novelEditorAi.rag;
+
+import com.soukon.novelEditorAi.enums.VectorStatus;
+import com.soukon.novelEditorAi.model.template.TemplateVectorProgressDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模板向量化进度推送
+ * <p>
+ * 向量化管道每写入一批分块发布一次进度，按模板分别多播给所有订阅者，
+ * 新订阅者立即收到最近一次进度。进度只在本节点内存中流转，数据库仍只在检查点更新；
+ * 任务在其他节点执行时，订阅方依靠心跳时读取的数据库进度获知变化。
+ */
+@Component
+@Slf4j
+public class VectorProgressPublisher {
+
+    /**
+     * 模板ID -> 进度多播，只回放最近一次进度
+     */
+    private final Map<Long, Sinks.Many<TemplateVectorProgressDTO>> sinks = new ConcurrentHashMap<>();
+
+    /**
+     * 本节点正在向量化的模板的最新进度
+     */
+    private final Map<Long, TemplateVectorProgressDTO> latest = new ConcurrentHashMap<>();
+
+    private final AtomicLong publishedCount = new AtomicLong();
+
+    /**
+     * 发布进度，与上一次相同的进度不重复发布。
+     * 非索引中的状态视为结束：推送后完成该模板的进度流，并清除本节点的进度。
+     */
+    public void publish(TemplateVectorProgressDTO progress) {
+        Long templateId = progress.getTemplateId();
+        boolean terminal = !VectorStatus.INDEXING.getCode().equals(progress.getVectorStatus());
+        TemplateVectorProgressDTO snapshot = copyOf(progress);
+        if (terminal) {
+            latest.remove(templateId);
+        } else if (Objects.equals(latest.put(templateId, snapshot), snapshot)) {
+            return;
+        }
+
+        Sinks.Many<TemplateVectorProgressDTO> sink = terminal ? sinks.remove(templateId) : sink(templateId);
+        if (sink == null) {
+            return;
+        }
+        synchronized (sink) {
+            emit(sink, snapshot);
+            if (terminal) {
+                sink.tryEmitComplete();
+            }
+        }
+        publishedCount.incrementAndGet();
+    }
+
+    /**
+     * 本节点不再执行该模板的向量化（任务被接管或等待重试），清除本节点的进度，
+     * 进度流保持打开，订阅方通过心跳读取数据库中的进度
+     */
+    public void forget(Long templateId) {
+        if (latest.remove(templateId) != null) {
+            release(templateId);
+        }
+    }
+
+    /**
+     * 本节点记录的最新进度
+     *
+     * @return 模板不在本节点向量化时返回null
+     */
+    public TemplateVectorProgressDTO latest(Long templateId) {
+        TemplateVectorProgressDTO progress = latest.get(templateId);
+        return progress == null ? null : copyOf(progress);
+    }
+
+    /**
+     * 订阅模板的进度变化，模板向量化结束时完成
+     */
+    public Flux<TemplateVectorProgressDTO> subscribe(Long templateId) {
+        return Flux.defer(() -> sink(templateId).asFlux())
+                .doFinally(signal -> release(templateId));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        int subscribers = 0;
+        for (Sinks.Many<TemplateVectorProgressDTO> sink : sinks.values()) {
+            subscribers += sink.currentSubscriberCount();
+        }
+        stats.put("streams", sinks.size());
+        stats.put("subscribers", subscribers);
+        stats.put("indexingTemplates", latest.size());
+        stats.put("published", publishedCount.get());
+        return stats;
+    }
+
+    private Sinks.Many<TemplateVectorProgressDTO> sink(Long templateId) {
+        return sinks.computeIfAbsent(templateId, id -> Sinks.many().replay().latest());
+    }
+
+    /**
+     * 最后一个订阅者离开且本节点没有在向量化该模板时丢弃多播
+     */
+    private void release(Long templateId) {
+        sinks.computeIfPresent(templateId, (id, sink) ->
+                sink.currentSubscriberCount() == 0 && !latest.containsKey(id) ? null : sink);
+    }
+
+    private void emit(Sinks.Many<TemplateVectorProgressDTO> sink, TemplateVectorProgressDTO progress) {
+        Sinks.EmitResult result = sink.tryEmitNext(progress);
+        if (result.isFailure() && result != Sinks.EmitResult.FAIL_TERMINATED) {
+            log.warn("推送模板 {} 向量化进度失败，原因: {}", progress.getTemplateId(), result);
+        }
+    }
+
+    /**
+     * 订阅者拿到的是快照，发布方后续修改不影响已推送的事件
+     */
+    private static TemplateVectorProgressDTO copyOf(TemplateVectorProgressDTO progress) {
+        return TemplateVectorProgressDTO.builder()
+                .templateId(progress.getTemplateId())
+                .templateName(progress.getTemplateName())
+                .vectorStatus(progress.getVectorStatus())
+                .vectorProgress(progress.getVectorProgress())
+                .vectorStartTime(progress.getVectorStartTime())
+                .vectorEndTime(progress.getVectorEndTime())
+                .vectorErrorMessage(progress.getVectorErrorMessage())
+                .canChat(progress.getCanChat())
+                .build();
+    }
+}
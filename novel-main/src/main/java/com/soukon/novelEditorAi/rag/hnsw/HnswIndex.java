@@ -0,0 +1,317 @@
+package com.soukon.novelEditorAi.rag.hnsw;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * HNSW（分层可导航小世界）图索引
+ * <p>
+ * 节点编号即向量存储的槽位，相似度为归一化向量的点积。
+ * 删除的节点保留在图中用于导航，只在搜索结果中过滤掉。
+ * 该类不是线程安全的，由 {@link HnswVectorStore} 的读写锁保护。
+ */
+class HnswIndex {
+
+    /**
+     * 搜索结果候选
+     *
+     * @param node       节点编号
+     * @param similarity 与查询向量的相似度
+     */
+    record Candidate(int node, double similarity) {
+    }
+
+    private static final Comparator<Candidate> BY_SIMILARITY = Comparator.comparingDouble(Candidate::similarity);
+
+    private final MappedVectorStorage vectors;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+
+    private int[] levels = new int[1024];
+    /**
+     * links[node][level] 为该层的邻居数组，第0个元素为邻居数量
+     */
+    private int[][][] links = new int[1024][][];
+    private int size = 0;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    HnswIndex(MappedVectorStorage vectors, int m, int efConstruction) {
+        this.vectors = vectors;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 插入节点，节点编号必须等于当前节点数
+     */
+    void insert(int node) {
+        if (node != size) {
+            throw new IllegalStateException("节点必须按顺序插入，期望 " + size + "，实际 " + node);
+        }
+        ensureCapacity(node + 1);
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        levels[node] = level;
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[maxConnections(l) + 1];
+        }
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        IntToDoubleFunction similarity = other -> vectors.dot(node, other);
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(current, similarity, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> nearest = searchLayer(current, similarity, efConstruction, l, null, 0);
+            int[] neighbors = selectNeighbors(nearest, maxConnections(l));
+            setLinks(node, l, neighbors);
+            for (int neighbor : neighbors) {
+                connect(neighbor, node, l);
+            }
+            current = nearest.get(0).node();
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * 搜索与查询向量最相似的节点
+     *
+     * @param query  归一化后的查询向量
+     * @param k      返回数量
+     * @param ef     搜索宽度
+     * @param accept 结果过滤条件，被拒绝的节点仍参与导航
+     * @return 按相似度降序排列的结果，最多k个
+     */
+    List<Candidate> search(float[] query, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0) {
+            return List.of();
+        }
+        IntToDoubleFunction similarity = node -> vectors.dot(node, query);
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(current, similarity, l);
+        }
+        return searchLayer(current, similarity, Math.max(ef, k), 0, accept, k);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int node = 0; node < size; node++) {
+            out.writeInt(levels[node]);
+            for (int l = 0; l <= levels[node]; l++) {
+                int[] nodeLinks = links[node][l];
+                int count = nodeLinks[0];
+                out.writeInt(count);
+                for (int i = 1; i <= count; i++) {
+                    out.writeInt(nodeLinks[i]);
+                }
+            }
+        }
+    }
+
+    void read(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        entryPoint = in.readInt();
+        maxLevel = in.readInt();
+        ensureCapacity(count);
+        for (int node = 0; node < count; node++) {
+            int level = in.readInt();
+            levels[node] = level;
+            links[node] = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                int[] nodeLinks = new int[maxConnections(l) + 1];
+                int linkCount = in.readInt();
+                nodeLinks[0] = linkCount;
+                for (int i = 1; i <= linkCount; i++) {
+                    nodeLinks[i] = in.readInt();
+                }
+                links[node][l] = nodeLinks;
+            }
+        }
+        size = count;
+    }
+
+    private int greedyClosest(int start, IntToDoubleFunction similarity, int level) {
+        int current = start;
+        double best = similarity.applyAsDouble(current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] nodeLinks = links[current][level];
+            for (int i = 1; i <= nodeLinks[0]; i++) {
+                int neighbor = nodeLinks[i];
+                double sim = similarity.applyAsDouble(neighbor);
+                if (sim > best) {
+                    best = sim;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在指定层上做宽度为ef的最佳优先搜索
+     *
+     * @param accept 非null时只把通过过滤的节点放入结果，结果最多limit个
+     * @return 按相似度降序排列的结果
+     */
+    private List<Candidate> searchLayer(int entry, IntToDoubleFunction similarity, int ef, int level,
+                                        IntPredicate accept, int limit) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(BY_SIMILARITY.reversed());
+        // 导航用的最近ef个节点（最小堆）
+        PriorityQueue<Candidate> nearest = new PriorityQueue<>(BY_SIMILARITY);
+        // 通过过滤的结果（最小堆）
+        PriorityQueue<Candidate> accepted = new PriorityQueue<>(BY_SIMILARITY);
+        int acceptedLimit = accept == null ? ef : Math.max(limit, 1);
+
+        Candidate first = new Candidate(entry, similarity.applyAsDouble(entry));
+        visited.set(entry);
+        candidates.add(first);
+        nearest.add(first);
+        offer(accepted, first, accept, acceptedLimit);
+
+        while (!candidates.isEmpty()) {
+            Candidate current = candidates.poll();
+            if (nearest.size() >= ef && current.similarity() < nearest.peek().similarity()) {
+                break;
+            }
+            int[] nodeLinks = links[current.node()][level];
+            for (int i = 1; i <= nodeLinks[0]; i++) {
+                int neighbor = nodeLinks[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                double sim = similarity.applyAsDouble(neighbor);
+                if (nearest.size() < ef || sim > nearest.peek().similarity()) {
+                    Candidate candidate = new Candidate(neighbor, sim);
+                    candidates.add(candidate);
+                    nearest.add(candidate);
+                    if (nearest.size() > ef) {
+                        nearest.poll();
+                    }
+                    offer(accepted, candidate, accept, acceptedLimit);
+                }
+            }
+        }
+
+        List<Candidate> result = new ArrayList<>(accepted);
+        result.sort(BY_SIMILARITY.reversed());
+        return result;
+    }
+
+    private static void offer(PriorityQueue<Candidate> heap, Candidate candidate, IntPredicate accept, int limit) {
+        if (accept != null && !accept.test(candidate.node())) {
+            return;
+        }
+        heap.add(candidate);
+        if (heap.size() > limit) {
+            heap.poll();
+        }
+    }
+
+    /**
+     * 启发式选择邻居：候选与已选邻居的相似度高于与基准节点的相似度时跳过，使邻居分布在不同方向
+     *
+     * @param candidates 按相似度降序排列的候选
+     */
+    private int[] selectNeighbors(List<Candidate> candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.size())];
+        int count = 0;
+        List<Candidate> skipped = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (count >= max) {
+                break;
+            }
+            boolean diverse = true;
+            for (int i = 0; i < count; i++) {
+                if (vectors.dot(candidate.node(), selected[i]) > candidate.similarity()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = candidate.node();
+            } else {
+                skipped.add(candidate);
+            }
+        }
+        // 多样性不足时用被跳过的候选补足
+        for (int i = 0; i < skipped.size() && count < selected.length; i++) {
+            selected[count++] = skipped.get(i).node();
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private void connect(int node, int newNeighbor, int level) {
+        int[] nodeLinks = links[node][level];
+        int count = nodeLinks[0];
+        int max = maxConnections(level);
+        if (count < max) {
+            nodeLinks[count + 1] = newNeighbor;
+            nodeLinks[0] = count + 1;
+            return;
+        }
+        // 邻居已满，重新选择
+        List<Candidate> candidates = new ArrayList<>(count + 1);
+        candidates.add(new Candidate(newNeighbor, vectors.dot(node, newNeighbor)));
+        for (int i = 1; i <= count; i++) {
+            candidates.add(new Candidate(nodeLinks[i], vectors.dot(node, nodeLinks[i])));
+        }
+        candidates.sort(BY_SIMILARITY.reversed());
+        setLinks(node, level, selectNeighbors(candidates, max));
+    }
+
+    private void setLinks(int node, int level, int[] neighbors) {
+        int[] nodeLinks = links[node][level];
+        nodeLinks[0] = neighbors.length;
+        System.arraycopy(neighbors, 0, nodeLinks, 1, neighbors.length);
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > levels.length) {
+            int newCapacity = Math.max(capacity, levels.length * 2);
+            levels = Arrays.copyOf(levels, newCapacity);
+            links = Arrays.copyOf(links, newCapacity);
+        }
+    }
+}
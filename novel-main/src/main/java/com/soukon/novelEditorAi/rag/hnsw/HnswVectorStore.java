@@ -0,0 +1,499 @@
+package com.soukon.novelEditorAi.rag.hnsw;
+
+import com.alibaba.fastjson.JSON;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * 进程内HNSW向量库
+ * <p>
+ * 单机部署或测试时替代Chroma：向量保存在内存映射的分段文件中，HNSW图和文档元数据定期快照到磁盘。
+ * 带过滤条件的检索先用元数据倒排表得到候选集，候选较少时直接精确扫描，否则在图上带过滤搜索。
+ * <p>
+ * 文件布局（均位于数据目录下）：vectors-NNNN.seg 向量分段、documents.dat 文档快照、graph.dat 图快照。
+ * 快照之后写入的数据在进程异常退出时会丢失，需要重新索引。
+ */
+@Slf4j
+public class HnswVectorStore implements VectorStore {
+
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String DOCUMENTS_FILE = "documents.dat";
+    private static final String GRAPH_FILE = "graph.dat";
+    private static final String COMPACT_DIR = "compact-old";
+
+    /**
+     * 已删除节点比例超过该值时，启动时重建索引
+     */
+    private static final double COMPACT_RATIO = 0.3;
+
+    private final EmbeddingModel embeddingModel;
+    private final Path directory;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final int bruteForceThreshold;
+    private final long flushIntervalSeconds;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private MappedVectorStorage vectors;
+    private HnswIndex index;
+    private final List<StoredDocument> slots = new ArrayList<>();
+    private final Map<String, Integer> idToSlot = new HashMap<>();
+    private final BitSet live = new BitSet();
+    private final MetadataIndex metadataIndex = new MetadataIndex();
+
+    private volatile boolean dirty = false;
+    private ScheduledExecutorService flusher;
+
+    private record StoredDocument(String id, String text, Map<String, Object> metadata) {
+    }
+
+    public HnswVectorStore(EmbeddingModel embeddingModel, Path directory, int m, int efConstruction,
+                           int efSearch, int bruteForceThreshold, long flushIntervalSeconds) {
+        this.embeddingModel = embeddingModel;
+        this.directory = directory;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.bruteForceThreshold = bruteForceThreshold;
+        this.flushIntervalSeconds = flushIntervalSeconds;
+    }
+
+    /**
+     * 打开数据目录并加载快照
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        load();
+        if (flushIntervalSeconds > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "hnsw-vector-store-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+        }
+        log.info("HNSW向量库已打开，目录: {}，文档数: {}", directory, live.cardinality());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        flush();
+        lock.writeLock().lock();
+        try {
+            if (vectors != null) {
+                vectors.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "HnswVectorStore";
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        // 向量化在锁外进行，避免阻塞检索
+        List<float[]> embeddings = embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                float[] vector = normalize(embeddings.get(i));
+                if (vectors == null) {
+                    vectors = new MappedVectorStorage(directory, vector.length);
+                    index = new HnswIndex(vectors, m, efConstruction);
+                }
+                // 相同ID覆盖写入
+                removeById(document.getId());
+                int slot = slots.size();
+                vectors.write(slot, vector);
+                Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+                slots.add(new StoredDocument(document.getId(), document.getText(), metadata));
+                idToSlot.put(document.getId(), slot);
+                live.set(slot);
+                metadataIndex.add(slot, metadata);
+                index.insert(slot);
+            }
+            dirty = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入向量失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idList) {
+                removeById(id);
+            }
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        lock.writeLock().lock();
+        try {
+            BitSet matched = matchingSlots(filterExpression);
+            for (int slot = matched.nextSetBit(0); slot >= 0; slot = matched.nextSetBit(slot + 1)) {
+                removeById(slots.get(slot).id());
+            }
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = normalize(embeddingModel.embed(request.getQuery()));
+        Filter.Expression filter = request.hasFilterExpression() ? request.getFilterExpression() : null;
+        int topK = request.getTopK();
+
+        lock.readLock().lock();
+        try {
+            if (index == null || live.isEmpty()) {
+                return List.of();
+            }
+            List<HnswIndex.Candidate> hits;
+            if (filter == null) {
+                hits = index.search(query, topK, efSearch, live::get);
+            } else {
+                BitSet candidates = metadataIndex.candidates(filter);
+                if (candidates != null) {
+                    candidates.and(live);
+                }
+                IntPredicate accept = slot -> live.get(slot)
+                        && (candidates == null || candidates.get(slot))
+                        && MetadataIndex.matches(filter, slots.get(slot).metadata());
+                if (candidates != null && candidates.cardinality() <= bruteForceThreshold) {
+                    hits = bruteForce(query, topK, candidates, accept);
+                } else {
+                    hits = index.search(query, topK, efSearch, accept);
+                    if (hits.size() < topK) {
+                        // 过滤条件很严格时图搜索可能找不满，退回精确扫描
+                        hits = bruteForce(query, topK, candidates != null ? candidates : live, accept);
+                    }
+                }
+            }
+
+            List<Document> results = new ArrayList<>(hits.size());
+            for (HnswIndex.Candidate hit : hits) {
+                if (hit.similarity() < request.getSimilarityThreshold()) {
+                    continue;
+                }
+                StoredDocument stored = slots.get(hit.node());
+                Map<String, Object> metadata = new HashMap<>(stored.metadata());
+                metadata.put("distance", (float) (1 - hit.similarity()));
+                results.add(Document.builder()
+                        .id(stored.id())
+                        .text(stored.text())
+                        .metadata(metadata)
+                        .score(hit.similarity())
+                        .build());
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 当前文档数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 将图和文档快照写入磁盘
+     */
+    public void flush() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            dirty = false;
+            if (vectors == null) {
+                return;
+            }
+            vectors.force();
+            writeAtomically(DOCUMENTS_FILE, out -> {
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(vectors.dimensions());
+                out.writeInt(slots.size());
+                for (int slot = 0; slot < slots.size(); slot++) {
+                    StoredDocument stored = slots.get(slot);
+                    boolean alive = live.get(slot);
+                    out.writeBoolean(alive);
+                    if (alive) {
+                        writeString(out, stored.id());
+                        writeString(out, stored.text());
+                        writeString(out, JSON.toJSONString(stored.metadata()));
+                    }
+                }
+            });
+            writeAtomically(GRAPH_FILE, index::write);
+        } catch (IOException e) {
+            dirty = true;
+            throw e;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("HNSW向量库快照写入失败: {}", e.getMessage());
+        }
+    }
+
+    private void load() throws IOException {
+        Path compactDir = directory.resolve(COMPACT_DIR);
+        if (Files.exists(compactDir)) {
+            log.warn("检测到未完成的HNSW向量库压缩，清空数据目录，需要重新索引: {}", directory);
+            deleteDirectory(compactDir);
+            try (var files = Files.list(directory)) {
+                for (Path file : files.filter(p -> p.getFileName().toString().endsWith(".seg")).toList()) {
+                    Files.delete(file);
+                }
+            }
+            return;
+        }
+        Path documentsFile = directory.resolve(DOCUMENTS_FILE);
+        Path graphFile = directory.resolve(GRAPH_FILE);
+        if (!Files.exists(documentsFile) || !Files.exists(graphFile)) {
+            return;
+        }
+        int dimensions;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(documentsFile)))) {
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("不支持的快照版本: " + version);
+            }
+            dimensions = in.readInt();
+            int count = in.readInt();
+            for (int slot = 0; slot < count; slot++) {
+                if (in.readBoolean()) {
+                    String id = readString(in);
+                    String text = readString(in);
+                    Map<String, Object> metadata = new HashMap<>(JSON.parseObject(readString(in)));
+                    slots.add(new StoredDocument(id, text, metadata));
+                    idToSlot.put(id, slot);
+                    live.set(slot);
+                    metadataIndex.add(slot, metadata);
+                } else {
+                    slots.add(null);
+                }
+            }
+        }
+        vectors = new MappedVectorStorage(directory, dimensions);
+        index = new HnswIndex(vectors, m, efConstruction);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(graphFile)))) {
+            index.read(in);
+        }
+        if (index.size() != slots.size()) {
+            throw new IOException("图快照与文档快照不一致，节点数 " + index.size() + "，文档槽位数 " + slots.size());
+        }
+
+        int deleted = slots.size() - live.cardinality();
+        if (deleted > 0 && (double) deleted / slots.size() > COMPACT_RATIO) {
+            compact();
+        }
+    }
+
+    /**
+     * 丢弃已删除的节点，按存活文档重建向量分段和图
+     */
+    private void compact() throws IOException {
+        long start = System.currentTimeMillis();
+        int dimensions = vectors.dimensions();
+        Path oldDir = directory.resolve(COMPACT_DIR);
+        Files.createDirectories(oldDir);
+        // 先删除快照：压缩中途退出时下次启动得到空库，而不是不一致的索引
+        Files.deleteIfExists(directory.resolve(DOCUMENTS_FILE));
+        Files.deleteIfExists(directory.resolve(GRAPH_FILE));
+        vectors.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.filter(p -> p.getFileName().toString().endsWith(".seg")).toList()) {
+                Files.move(file, oldDir.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        MappedVectorStorage oldVectors = new MappedVectorStorage(oldDir, dimensions);
+        List<StoredDocument> oldSlots = new ArrayList<>(slots);
+        BitSet oldLive = (BitSet) live.clone();
+        slots.clear();
+        idToSlot.clear();
+        live.clear();
+        metadataIndex.clear();
+        vectors = new MappedVectorStorage(directory, dimensions);
+        index = new HnswIndex(vectors, m, efConstruction);
+
+        for (int oldSlot = oldLive.nextSetBit(0); oldSlot >= 0; oldSlot = oldLive.nextSetBit(oldSlot + 1)) {
+            StoredDocument stored = oldSlots.get(oldSlot);
+            int slot = slots.size();
+            vectors.write(slot, oldVectors.read(oldSlot));
+            slots.add(stored);
+            idToSlot.put(stored.id(), slot);
+            live.set(slot);
+            metadataIndex.add(slot, stored.metadata());
+            index.insert(slot);
+        }
+        oldVectors.close();
+        deleteDirectory(oldDir);
+
+        dirty = true;
+        flush();
+        log.info("HNSW向量库压缩完成，清理已删除节点 {} 个，耗时 {} ms",
+                oldSlots.size() - slots.size(), System.currentTimeMillis() - start);
+    }
+
+    private void removeById(String id) {
+        Integer slot = idToSlot.remove(id);
+        if (slot == null) {
+            return;
+        }
+        live.clear(slot);
+        metadataIndex.remove(slot, slots.get(slot).metadata());
+        // 槽位保留在图中用于导航，文本和元数据可以释放
+        slots.set(slot, null);
+    }
+
+    private BitSet matchingSlots(Filter.Expression filter) {
+        BitSet candidates = metadataIndex.candidates(filter);
+        BitSet scope = candidates != null ? candidates : (BitSet) live.clone();
+        scope.and(live);
+        BitSet matched = new BitSet();
+        for (int slot = scope.nextSetBit(0); slot >= 0; slot = scope.nextSetBit(slot + 1)) {
+            if (MetadataIndex.matches(filter, slots.get(slot).metadata())) {
+                matched.set(slot);
+            }
+        }
+        return matched;
+    }
+
+    private List<HnswIndex.Candidate> bruteForce(float[] query, int topK, BitSet scope, IntPredicate accept) {
+        PriorityQueue<HnswIndex.Candidate> heap = new PriorityQueue<>(Comparator.comparingDouble(HnswIndex.Candidate::similarity));
+        for (int slot = scope.nextSetBit(0); slot >= 0; slot = scope.nextSetBit(slot + 1)) {
+            if (!accept.test(slot)) {
+                continue;
+            }
+            heap.add(new HnswIndex.Candidate(slot, vectors.dot(slot, query)));
+            if (heap.size() > topK) {
+                heap.poll();
+            }
+        }
+        List<HnswIndex.Candidate> result = new ArrayList<>(heap);
+        result.sort(Comparator.comparingDouble(HnswIndex.Candidate::similarity).reversed());
+        return result;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    @FunctionalInterface
+    private interface SnapshotWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void writeAtomically(String fileName, SnapshotWriter writer) throws IOException {
+        Path target = directory.resolve(fileName);
+        Path temp = directory.resolve(fileName + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            writer.write(out);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (var files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,142 @@
+package com.soukon.novelEditorAi.rag.hnsw;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 内存映射的向量存储
+ * <p>
+ * 向量按槽位顺序写入固定大小的分段文件（vectors-0000.seg ...），每个分段整体映射到内存，
+ * 由操作系统负责换页，堆内不保存向量。向量写入前已归一化，点积即余弦相似度。
+ */
+class MappedVectorStorage implements Closeable {
+
+    /**
+     * 每个分段文件容纳的向量数
+     */
+    static final int SEGMENT_VECTORS = 8192;
+
+    private final Path directory;
+    private final int dimensions;
+    private final List<FileChannel> channels = new ArrayList<>();
+    private final List<MappedByteBuffer> mapped = new ArrayList<>();
+    private final List<FloatBuffer> segments = new ArrayList<>();
+
+    /**
+     * 计算点积用的线程私有缓冲区，检索在读锁下可能并发进行
+     */
+    private final ThreadLocal<float[]> scratchA;
+    private final ThreadLocal<float[]> scratchB;
+
+    MappedVectorStorage(Path directory, int dimensions) throws IOException {
+        this.directory = directory;
+        this.dimensions = dimensions;
+        this.scratchA = ThreadLocal.withInitial(() -> new float[dimensions]);
+        this.scratchB = ThreadLocal.withInitial(() -> new float[dimensions]);
+        Files.createDirectories(directory);
+        // 打开已有的分段
+        while (Files.exists(segmentPath(segments.size()))) {
+            mapSegment(segments.size());
+        }
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    void write(int slot, float[] vector) throws IOException {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("向量维度不一致，期望 " + dimensions + "，实际 " + vector.length);
+        }
+        int segment = slot / SEGMENT_VECTORS;
+        while (segments.size() <= segment) {
+            mapSegment(segments.size());
+        }
+        segments.get(segment).put((slot % SEGMENT_VECTORS) * dimensions, vector, 0, dimensions);
+    }
+
+    float[] read(int slot) {
+        float[] vector = new float[dimensions];
+        load(slot, vector);
+        return vector;
+    }
+
+    /**
+     * 槽位向量与查询向量的点积
+     */
+    float dot(int slot, float[] query) {
+        float[] vector = scratchA.get();
+        load(slot, vector);
+        return dot(vector, query);
+    }
+
+    /**
+     * 两个槽位向量的点积
+     */
+    float dot(int a, int b) {
+        float[] vectorA = scratchA.get();
+        float[] vectorB = scratchB.get();
+        load(a, vectorA);
+        load(b, vectorB);
+        return dot(vectorA, vectorB);
+    }
+
+    /**
+     * 批量复制槽位向量到数组，比逐个读取映射缓冲区快得多
+     */
+    private void load(int slot, float[] target) {
+        segments.get(slot / SEGMENT_VECTORS).get((slot % SEGMENT_VECTORS) * dimensions, target, 0, dimensions);
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 将修改刷写到磁盘
+     */
+    void force() {
+        for (MappedByteBuffer buffer : mapped) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        for (FileChannel channel : channels) {
+            channel.close();
+        }
+        channels.clear();
+        mapped.clear();
+        segments.clear();
+    }
+
+    private void mapSegment(int index) throws IOException {
+        long size = (long) SEGMENT_VECTORS * dimensions * Float.BYTES;
+        FileChannel channel = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        channels.add(channel);
+        mapped.add(buffer);
+        segments.add(buffer.asFloatBuffer());
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("vectors-%04d.seg", index));
+    }
+}
@@ -0,0 +1,236 @@
+package com.soukon.novelEditorAi.rag.hnsw;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.math.BigDecimal;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 元数据过滤索引
+ * <p>
+ * 为常用过滤字段（projectId、templateId、type）维护"值 -> 槽位位图"的倒排表，
+ * 过滤表达式中能由倒排表回答的部分直接得到候选位图，其余条件再逐条校验元数据。
+ * 数值统一按字符串形式比较，因此 projectId == 5 与 templateId == '5' 都能匹配 Long 类型的元数据。
+ */
+class MetadataIndex {
+
+    static final Set<String> INDEXED_KEYS = Set.of("projectId", "templateId", "type");
+
+    private final Map<String, Map<String, BitSet>> postings = new HashMap<>();
+
+    void add(int slot, Map<String, Object> metadata) {
+        for (String key : INDEXED_KEYS) {
+            Object value = metadata.get(key);
+            if (value != null) {
+                postings.computeIfAbsent(key, k -> new HashMap<>())
+                        .computeIfAbsent(normalize(value), v -> new BitSet())
+                        .set(slot);
+            }
+        }
+    }
+
+    void clear() {
+        postings.clear();
+    }
+
+    void remove(int slot, Map<String, Object> metadata) {
+        for (String key : INDEXED_KEYS) {
+            Object value = metadata.get(key);
+            if (value == null) {
+                continue;
+            }
+            Map<String, BitSet> byValue = postings.get(key);
+            if (byValue == null) {
+                continue;
+            }
+            String normalized = normalize(value);
+            BitSet bits = byValue.get(normalized);
+            if (bits != null) {
+                bits.clear(slot);
+                if (bits.isEmpty()) {
+                    byValue.remove(normalized);
+                }
+            }
+        }
+    }
+
+    /**
+     * 由倒排表计算候选槽位
+     *
+     * @return 满足表达式的槽位的超集；表达式无法由倒排表缩小范围时返回null
+     */
+    BitSet candidates(Filter.Expression expression) {
+        Filter.Operand left = expression.left();
+        Filter.Operand right = expression.right();
+        switch (expression.type()) {
+            case EQ:
+                if (left instanceof Filter.Key key && right instanceof Filter.Value value && isIndexed(key)) {
+                    return copyOf(keyName(key), normalize(value.value()));
+                }
+                return null;
+            case IN:
+                if (left instanceof Filter.Key key && right instanceof Filter.Value value && isIndexed(key)
+                        && value.value() instanceof List<?> values) {
+                    BitSet result = new BitSet();
+                    for (Object item : values) {
+                        result.or(copyOf(keyName(key), normalize(item)));
+                    }
+                    return result;
+                }
+                return null;
+            case AND: {
+                BitSet a = operandCandidates(left);
+                BitSet b = operandCandidates(right);
+                if (a == null) {
+                    return b;
+                }
+                if (b != null) {
+                    a.and(b);
+                }
+                return a;
+            }
+            case OR: {
+                BitSet a = operandCandidates(left);
+                BitSet b = operandCandidates(right);
+                if (a == null || b == null) {
+                    return null;
+                }
+                a.or(b);
+                return a;
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 判断元数据是否满足过滤表达式
+     */
+    static boolean matches(Filter.Expression expression, Map<String, Object> metadata) {
+        Filter.Operand left = expression.left();
+        Filter.Operand right = expression.right();
+        switch (expression.type()) {
+            case AND:
+                return operandMatches(left, metadata) && operandMatches(right, metadata);
+            case OR:
+                return operandMatches(left, metadata) || operandMatches(right, metadata);
+            case NOT:
+                return !operandMatches(left, metadata);
+            case IN:
+            case NIN: {
+                Object actual = metadata.get(keyName((Filter.Key) left));
+                boolean found = false;
+                if (actual != null && ((Filter.Value) right).value() instanceof List<?> values) {
+                    String normalized = normalize(actual);
+                    for (Object item : values) {
+                        if (normalized.equals(normalize(item))) {
+                            found = true;
+                            break;
+                        }
+                    }
+                }
+                return expression.type() == Filter.ExpressionType.IN ? found : !found;
+            }
+            case EQ:
+            case NE:
+            case GT:
+            case GTE:
+            case LT:
+            case LTE: {
+                Object actual = metadata.get(keyName((Filter.Key) left));
+                Object expected = ((Filter.Value) right).value();
+                if (actual == null) {
+                    return expression.type() == Filter.ExpressionType.NE;
+                }
+                int cmp = compare(actual, expected);
+                return switch (expression.type()) {
+                    case EQ -> cmp == 0;
+                    case NE -> cmp != 0;
+                    case GT -> cmp > 0;
+                    case GTE -> cmp >= 0;
+                    case LT -> cmp < 0;
+                    default -> cmp <= 0;
+                };
+            }
+            default:
+                throw new UnsupportedOperationException("不支持的过滤操作: " + expression.type());
+        }
+    }
+
+    private BitSet operandCandidates(Filter.Operand operand) {
+        if (operand instanceof Filter.Expression expression) {
+            return candidates(expression);
+        }
+        if (operand instanceof Filter.Group group) {
+            return candidates(group.content());
+        }
+        return null;
+    }
+
+    private static boolean operandMatches(Filter.Operand operand, Map<String, Object> metadata) {
+        if (operand instanceof Filter.Group group) {
+            return matches(group.content(), metadata);
+        }
+        return matches((Filter.Expression) operand, metadata);
+    }
+
+    private BitSet copyOf(String key, String value) {
+        Map<String, BitSet> byValue = postings.get(key);
+        BitSet bits = byValue == null ? null : byValue.get(value);
+        return bits == null ? new BitSet() : (BitSet) bits.clone();
+    }
+
+    private static boolean isIndexed(Filter.Key key) {
+        return INDEXED_KEYS.contains(keyName(key));
+    }
+
+    /**
+     * 过滤表达式中的键可能带引号
+     */
+    private static String keyName(Filter.Key key) {
+        String name = key.key();
+        if (name.length() >= 2 && (name.startsWith("'") || name.startsWith("\""))) {
+            return name.substring(1, name.length() - 1);
+        }
+        return name;
+    }
+
+    private static int compare(Object actual, Object expected) {
+        BigDecimal a = toNumber(actual);
+        BigDecimal b = toNumber(expected);
+        if (a != null && b != null) {
+            return a.compareTo(b);
+        }
+        return normalize(actual).compareTo(normalize(expected));
+    }
+
+    private static BigDecimal toNumber(Object value) {
+        if (value instanceof Number) {
+            return new BigDecimal(value.toString());
+        }
+        if (value instanceof String text) {
+            try {
+                return new BigDecimal(text);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 值的规范形式：整数去掉小数部分，其余取字符串
+     */
+    static String normalize(Object value) {
+        BigDecimal number = value instanceof Number ? new BigDecimal(value.toString()) : null;
+        if (number != null) {
+            BigDecimal stripped = number.stripTrailingZeros();
+            return stripped.scale() <= 0 ? stripped.toBigInteger().toString() : stripped.toPlainString();
+        }
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,461 @@
+package com.soukon.novelEditorAi.rag.versioned;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.soukon.novelEditorAi.entities.Project;
+import com.soukon.novelEditorAi.entities.Template;
+import com.soukon.novelEditorAi.entities.VectorChunk;
+import com.soukon.novelEditorAi.entities.VectorIndexJob;
+import com.soukon.novelEditorAi.entities.VectorIndexState;
+import com.soukon.novelEditorAi.enums.VectorIndexStateStatus;
+import com.soukon.novelEditorAi.enums.VectorStatus;
+import com.soukon.novelEditorAi.mapper.ProjectMapper;
+import com.soukon.novelEditorAi.mapper.TemplateMapper;
+import com.soukon.novelEditorAi.mapper.VectorChunkMapper;
+import com.soukon.novelEditorAi.mapper.VectorIndexStateMapper;
+import com.soukon.novelEditorAi.rag.ChunkIndexWriter;
+import com.soukon.novelEditorAi.rag.IndexJobContext;
+import com.soukon.novelEditorAi.rag.IndexJobHandler;
+import com.soukon.novelEditorAi.rag.IndexJobQueue;
+import com.soukon.novelEditorAi.rag.RetrievalCache;
+import com.soukon.novelEditorAi.service.RagService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 向量模型变更时的后台迁移
+ * <p>
+ * 索引状态保存在 vector_index_state 表中。节点启动时如果配置的向量模型与当前读取的模型不同，
+ * 登记一次迁移并提交迁移任务；各节点定期读取状态，迁移期间向目标集合双写，迁移完成后切换读取。
+ * 迁移按项目、模板两个阶段依次进行，每完成一个项目或模板记录一次游标，中断后从游标继续。
+ * 已有内容重新向量化时命中向量缓存的部分不会重复请求模型。
+ * <p>
+ * 双写期间其他节点可能在本节点读取某个范围之后重新索引其中的文档，本节点随后写入的就是旧内容。
+ * 每个范围读取前后各读一次分块清单（vector_chunks），写入后清单有变化的文档重新读取后补写，
+ * 已被删除的从影子集合删除，直到范围内没有变化再推进游标。
+ * <p>
+ * 任一节点的影子集合写入或删除失败都累加到 vector_index_state.shadow_failures，切换只在其为0时生效。
+ * 有失败时从头重建一遍：每个范围写入前先从影子集合删除该范围的全部文档，失败的删除留下的旧文档随之清除。
+ */
+@Component
+@ConditionalOnProperty(name = "novel.vectorstore.versioned.enabled", havingValue = "true")
+@Slf4j
+public class IndexMigrationService implements IndexJobHandler {
+
+    public static final String INDEX_NAME = "default";
+    public static final String PHASE_PROJECT = "PROJECT";
+    public static final String PHASE_TEMPLATE = "TEMPLATE";
+
+    private static final int SCOPE_PAGE_SIZE = 100;
+
+    @Value("${spring.ai.openai.embedding.options.model:text-embedding-ada-002}")
+    private String modelId;
+
+    @Value("${novel.vectorstore.versioned.state-poll-seconds:30}")
+    private long statePollSeconds;
+
+    @Value("${novel.vectorstore.migration.batch-size:32}")
+    private int batchSize;
+
+    @Value("${novel.vectorstore.migration.batch-pause-ms:200}")
+    private long batchPauseMs;
+
+    /**
+     * 一个范围写入后按清单补写的最多轮数，仍有变化时任务稍后重试，游标不推进
+     */
+    @Value("${novel.vectorstore.migration.verify-rounds:3}")
+    private int verifyRounds;
+
+    private final VectorIndexStateMapper stateMapper;
+    private final VersionedVectorStore vectorStore;
+    private final VectorStoreFactory vectorStoreFactory;
+    private final IndexJobQueue jobQueue;
+    private final RagService ragService;
+    private final ProjectMapper projectMapper;
+    private final TemplateMapper templateMapper;
+    private final VectorChunkMapper vectorChunkMapper;
+    private final RetrievalCache retrievalCache;
+
+    /**
+     * 尚未记录到数据库的影子集合失败次数，集合名称 -> 次数，记录出错时留待下次轮询
+     */
+    private final Map<String, Long> unreportedFailures = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService timer;
+
+    public IndexMigrationService(VectorIndexStateMapper stateMapper, VersionedVectorStore vectorStore,
+                                 VectorStoreFactory vectorStoreFactory, IndexJobQueue jobQueue,
+                                 RagService ragService, ProjectMapper projectMapper, TemplateMapper templateMapper,
+                                 VectorChunkMapper vectorChunkMapper, RetrievalCache retrievalCache) {
+        this.stateMapper = stateMapper;
+        this.vectorStore = vectorStore;
+        this.vectorStoreFactory = vectorStoreFactory;
+        this.jobQueue = jobQueue;
+        this.ragService = ragService;
+        this.projectMapper = projectMapper;
+        this.templateMapper = templateMapper;
+        this.vectorChunkMapper = vectorChunkMapper;
+        this.retrievalCache = retrievalCache;
+    }
+
+    /**
+     * 启动时登记状态并按配置的模型决定是否开始迁移，之后定期跟随数据库中的状态
+     */
+    @PostConstruct
+    public void start() {
+        vectorStore.setFailureListener(this::recordShadowFailure);
+        stateMapper.initialize(INDEX_NAME, modelId, vectorStoreFactory.defaultCollection());
+        VectorIndexState state = loadState();
+        if (modelId.equals(state.getActiveModelId())) {
+            if (VectorIndexStateStatus.MIGRATING.getCode().equals(state.getStatus())
+                    && stateMapper.cancelMigration(INDEX_NAME, modelId) > 0) {
+                log.info("配置的向量模型已改回 {}，取消向 {} 的迁移", modelId, state.getTargetModelId());
+            }
+        } else if (stateMapper.startMigration(INDEX_NAME, modelId, vectorStoreFactory.collectionFor(modelId),
+                countScopes()) > 0) {
+            log.info("向量模型由 {} 变更为 {}，开始后台迁移", state.getActiveModelId(), modelId);
+        }
+        follow(loadState());
+
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vector-index-state-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::followQuietly, statePollSeconds, statePollSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    @Override
+    public String jobType() {
+        return IndexJobQueue.TYPE_MIGRATION;
+    }
+
+    @Override
+    public void execute(VectorIndexJob job, IndexJobContext context) throws Exception {
+        VectorIndexState state = loadState();
+        if (!VectorIndexStateStatus.MIGRATING.getCode().equals(state.getStatus())) {
+            return;
+        }
+        String targetModelId = state.getTargetModelId();
+        vectorStore.activate(state.getActiveModelId(), state.getActiveCollection());
+        vectorStore.beginShadow(targetModelId, state.getTargetCollection());
+
+        String phase = state.getMigrationPhase() == null ? PHASE_PROJECT : state.getMigrationPhase();
+        long cursor = state.getMigrationCursor() == null ? 0 : state.getMigrationCursor();
+        int scopes = state.getMigratedScopes() == null ? 0 : state.getMigratedScopes();
+        long documents = state.getMigratedDocuments() == null ? 0 : state.getMigratedDocuments();
+        boolean rebuild = Boolean.TRUE.equals(state.getRebuildPass());
+        log.info("向量索引迁移到 {}，从 {} 阶段游标 {} 继续{}", targetModelId, phase, cursor, rebuild ? "（重建）" : "");
+
+        FilterExpressionBuilder filters = new FilterExpressionBuilder();
+        if (PHASE_PROJECT.equals(phase)) {
+            if (rebuild && cursor == 0) {
+                // 世界观可被多个项目引用，重建开始时统一清空，随引用它的项目重新写入
+                vectorStore.purgeShadow(filters.eq("type", "world").build()).get();
+            }
+            for (List<Project> page = nextProjects(cursor); !page.isEmpty(); page = nextProjects(cursor)) {
+                for (Project project : page) {
+                    int migrated = migrateScope("项目 " + project.getId(),
+                            rebuild ? filters.eq("projectId", project.getId()).build() : null,
+                            () -> ragService.exportProjectDocuments(project.getId()),
+                            () -> projectManifest(project), context, scopes, documents);
+                    if (migrated < 0 || stateMapper.advance(INDEX_NAME, targetModelId, PHASE_PROJECT,
+                            project.getId(), migrated) == 0) {
+                        return;
+                    }
+                    cursor = project.getId();
+                    scopes++;
+                    documents += migrated;
+                }
+            }
+            if (stateMapper.nextPhase(INDEX_NAME, targetModelId, PHASE_TEMPLATE) == 0) {
+                return;
+            }
+            cursor = 0;
+        }
+
+        for (List<Template> page = nextTemplates(cursor); !page.isEmpty(); page = nextTemplates(cursor)) {
+            for (Template template : page) {
+                int migrated = migrateScope("模板 " + template.getId(),
+                        rebuild ? filters.eq("templateId", template.getId()).build() : null,
+                        () -> ragService.exportTemplateDocuments(template.getId()),
+                        () -> templateManifest(template.getId()), context, scopes, documents);
+                if (migrated < 0 || stateMapper.advance(INDEX_NAME, targetModelId, PHASE_TEMPLATE,
+                        template.getId(), migrated) == 0) {
+                    return;
+                }
+                cursor = template.getId();
+                scopes++;
+                documents += migrated;
+            }
+        }
+
+        vectorStore.awaitShadowWrites();
+        flushShadowFailures();
+        if (stateMapper.switchActive(INDEX_NAME, targetModelId) > 0) {
+            vectorChunkMapper.updateModelId(targetModelId);
+            vectorStore.promote();
+            retrievalCache.invalidateAll();
+            log.info("向量索引迁移完成，共迁移 {} 个范围、{} 个文档，读取已切换到模型 {}",
+                    scopes, documents, targetModelId);
+            return;
+        }
+
+        // 未切换：迁移已结束或被改变，或者有节点记录了双写失败
+        VectorIndexState latest = loadState();
+        int failures = latest.getShadowFailures() == null ? 0 : latest.getShadowFailures();
+        if (failures > 0 && VectorIndexStateStatus.MIGRATING.getCode().equals(latest.getStatus())
+                && targetModelId.equals(latest.getTargetModelId())) {
+            stateMapper.restartPass(INDEX_NAME, targetModelId, countScopes(), failures);
+            throw new IllegalStateException("迁移期间影子集合写入失败 " + failures + " 次，重建影子集合");
+        }
+    }
+
+    @Override
+    public void onFailed(VectorIndexJob job, String errorMessage) {
+        stateMapper.recordError(INDEX_NAME, errorMessage);
+    }
+
+    /**
+     * 迁移状态及本节点的双写统计
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        VectorIndexState state = loadState();
+        status.put("status", state.getStatus());
+        status.put("configuredModelId", modelId);
+        status.put("activeModelId", state.getActiveModelId());
+        status.put("activeCollection", state.getActiveCollection());
+        status.put("targetModelId", state.getTargetModelId());
+        status.put("targetCollection", state.getTargetCollection());
+        status.put("migrationPhase", state.getMigrationPhase());
+        status.put("migrationCursor", state.getMigrationCursor());
+        status.put("totalScopes", state.getTotalScopes());
+        status.put("migratedScopes", state.getMigratedScopes());
+        status.put("migratedDocuments", state.getMigratedDocuments());
+        status.put("shadowFailures", state.getShadowFailures());
+        status.put("rebuildPass", state.getRebuildPass());
+        status.put("startedAt", state.getStartedAt());
+        status.put("switchedAt", state.getSwitchedAt());
+        status.put("errorMessage", state.getErrorMessage());
+        status.put("local", vectorStore.getStats());
+        return status;
+    }
+
+    /**
+     * 按数据库中的状态调整本节点的读写集合。
+     * 定期执行时只跟随状态，不发起或取消迁移，滚动发布期间仍使用旧配置的节点不会打断迁移。
+     */
+    private void follow(VectorIndexState state) {
+        if (VectorIndexStateStatus.MIGRATING.getCode().equals(state.getStatus())) {
+            vectorStore.activate(state.getActiveModelId(), state.getActiveCollection());
+            vectorStore.beginShadow(state.getTargetModelId(), state.getTargetCollection());
+            if (modelId.equals(state.getTargetModelId())
+                    && jobQueue.findActive(IndexJobQueue.TYPE_MIGRATION, state.getId()) == null) {
+                // 延迟两个轮询周期执行，确保所有节点都已开始双写，迁移期间的写入不会遗漏
+                jobQueue.submit(IndexJobQueue.TYPE_MIGRATION, state.getId(),
+                        TimeUnit.SECONDS.toMillis(statePollSeconds * 2));
+            }
+            return;
+        }
+
+        VersionedVectorStore.Generation active = vectorStore.getActive();
+        boolean switched = active != null && !Objects.equals(active.collection(), state.getActiveCollection());
+        vectorStore.activate(state.getActiveModelId(), state.getActiveCollection());
+        vectorStore.dropShadow();
+        if (switched) {
+            retrievalCache.invalidateAll();
+        }
+    }
+
+    private void followQuietly() {
+        try {
+            flushShadowFailures();
+            follow(loadState());
+        } catch (Exception e) {
+            log.warn("同步向量索引状态失败: {}", e.getMessage());
+        }
+    }
+
+    private void recordShadowFailure(String targetCollection) {
+        unreportedFailures.merge(targetCollection, 1L, Long::sum);
+        flushShadowFailures();
+    }
+
+    /**
+     * 把本节点的影子集合失败次数累加到索引状态，所有节点的失败在切换前统一检查
+     */
+    private void flushShadowFailures() {
+        for (String collection : List.copyOf(unreportedFailures.keySet())) {
+            Long failures = unreportedFailures.remove(collection);
+            if (failures == null) {
+                continue;
+            }
+            try {
+                if (stateMapper.addShadowFailures(INDEX_NAME, collection, failures) == 0) {
+                    log.warn("集合 {} 已不是迁移目标，忽略 {} 次影子写入失败", collection, failures);
+                }
+            } catch (Exception e) {
+                unreportedFailures.merge(collection, failures, Long::sum);
+                log.warn("记录影子集合 {} 的 {} 次写入失败出错，稍后重试: {}", collection, failures, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 迁移一个范围：读取文档前记下分块清单，写入后与清单比对，
+     * 期间被其他节点重新索引或删除的文档重新读取后补写或从影子集合删除
+     *
+     * @param scope    范围名称，用于日志
+     * @param purge    重建时先从影子集合删除的范围内文档，不重建时为null
+     * @param exporter 从数据库读取范围内的全部文档
+     * @param manifest 读取范围内文档的清单摘要，文档ID -> 内容摘要
+     * @return 写入的文档数，租约丢失时返回-1
+     */
+    private int migrateScope(String scope, Filter.Expression purge, Supplier<List<Document>> exporter,
+                             Supplier<Map<String, String>> manifest,
+                             IndexJobContext context, int scopes, long documents) throws Exception {
+        if (purge != null) {
+            vectorStore.purgeShadow(purge).get();
+        }
+        Map<String, String> before = manifest.get();
+        List<Document> written = exporter.get();
+        int migrated = writeScope(written, context, scopes, documents);
+        for (int round = 0; migrated >= 0; round++) {
+            Map<String, String> after = manifest.get();
+            Set<String> changed = new HashSet<>();
+            for (Document document : written) {
+                if (!Objects.equals(before.get(document.getId()), after.get(document.getId()))) {
+                    changed.add(document.getId());
+                }
+            }
+            if (changed.isEmpty()) {
+                return migrated;
+            }
+            if (round >= verifyRounds) {
+                throw new IllegalStateException(scope + " 迁移期间持续被重新索引，稍后重试");
+            }
+            log.info("{} 有 {} 个文档在迁移期间被重新索引，重新读取后补写", scope, changed.size());
+
+            before = after;
+            written = exporter.get().stream()
+                    .filter(document -> changed.contains(document.getId()))
+                    .toList();
+            for (Document document : written) {
+                changed.remove(document.getId());
+            }
+            // 重新读取后已不存在的文档，本节点可能在删除之后又写回了影子集合
+            if (!changed.isEmpty()) {
+                vectorStore.removeFromShadow(List.copyOf(changed)).get();
+            }
+            int rewritten = writeScope(written, context, scopes, documents + migrated);
+            migrated = rewritten < 0 ? -1 : migrated + rewritten;
+        }
+        return -1;
+    }
+
+    /**
+     * 分批写入文档，每批记录一次检查点
+     *
+     * @return 写入的文档数，租约丢失时返回-1
+     */
+    private int writeScope(List<Document> scopeDocuments, IndexJobContext context,
+                           int scopes, long documents) throws Exception {
+        long seq = vectorStore.writeSequence();
+        int migrated = 0;
+        for (int from = 0; from < scopeDocuments.size(); from += batchSize) {
+            List<Document> batch = scopeDocuments.subList(from, Math.min(scopeDocuments.size(), from + batchSize));
+            migrated += vectorStore.migrate(batch, seq).get();
+            if (!context.checkpoint(scopes, (int) Math.min(Integer.MAX_VALUE, documents + migrated))) {
+                return -1;
+            }
+            if (batchPauseMs > 0) {
+                Thread.sleep(batchPauseMs);
+            }
+        }
+        return migrated;
+    }
+
+    /**
+     * 项目范围的分块清单：项目内的对象及项目引用的世界观
+     */
+    private Map<String, String> projectManifest(Project project) {
+        LambdaQueryWrapper<VectorChunk> wrapper = new LambdaQueryWrapper<VectorChunk>()
+                .select(VectorChunk::getDocId, VectorChunk::getContentHash)
+                .eq(VectorChunk::getProjectId, project.getId());
+        if (project.getWorldId() != null) {
+            wrapper.or(w -> w.eq(VectorChunk::getOwnerType, ChunkIndexWriter.OWNER_WORLD)
+                    .eq(VectorChunk::getOwnerId, project.getWorldId()));
+        }
+        return toManifest(vectorChunkMapper.selectList(wrapper));
+    }
+
+    private Map<String, String> templateManifest(Long templateId) {
+        return toManifest(vectorChunkMapper.selectList(new LambdaQueryWrapper<VectorChunk>()
+                .select(VectorChunk::getDocId, VectorChunk::getContentHash)
+                .eq(VectorChunk::getOwnerType, ChunkIndexWriter.OWNER_TEMPLATE)
+                .eq(VectorChunk::getOwnerId, templateId)));
+    }
+
+    private static Map<String, String> toManifest(List<VectorChunk> rows) {
+        Map<String, String> manifest = new HashMap<>(rows.size() * 2);
+        for (VectorChunk row : rows) {
+            manifest.put(row.getDocId(), row.getContentHash());
+        }
+        return manifest;
+    }
+
+    private List<Project> nextProjects(long cursor) {
+        return projectMapper.selectList(new LambdaQueryWrapper<Project>()
+                .select(Project::getId, Project::getWorldId)
+                .gt(Project::getId, cursor)
+                .orderByAsc(Project::getId)
+                .last("LIMIT " + SCOPE_PAGE_SIZE));
+    }
+
+    private List<Template> nextTemplates(long cursor) {
+        return templateMapper.selectList(new LambdaQueryWrapper<Template>()
+                .select(Template::getId)
+                .in(Template::getVectorStatus, VectorStatus.INDEXED.getCode(), VectorStatus.INDEXING.getCode())
+                .gt(Template::getId, cursor)
+                .orderByAsc(Template::getId)
+                .last("LIMIT " + SCOPE_PAGE_SIZE));
+    }
+
+    private int countScopes() {
+        long projects = projectMapper.selectCount(null);
+        long templates = templateMapper.selectCount(new LambdaQueryWrapper<Template>()
+                .in(Template::getVectorStatus, VectorStatus.INDEXED.getCode(), VectorStatus.INDEXING.getCode()));
+        return (int) (projects + templates);
+    }
+
+    private VectorIndexState loadState() {
+        return stateMapper.selectOne(new LambdaQueryWrapper<VectorIndexState>()
+                .eq(VectorIndexState::getIndexName, INDEX_NAME));
+    }
+}
@@ -0,0 +1,40 @@
+package com.soukon.novelEditorAi.rag.versioned;
+
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.VectorStore;
+
+/**
+ * 按集合名称创建向量库，每个向量模型使用独立的集合
+ */
+public interface VectorStoreFactory {
+
+    /**
+     * 启用版本化索引之前使用的集合，即配置中的集合
+     */
+    String defaultCollection();
+
+    /**
+     * 创建并初始化集合对应的向量库
+     *
+     * @param collection     集合名称
+     * @param embeddingModel 写入和检索该集合使用的向量模型
+     */
+    VectorStore create(String collection, EmbeddingModel embeddingModel);
+
+    /**
+     * 释放不再使用的向量库，集合中的数据保留
+     */
+    default void release(VectorStore store) {
+    }
+
+    /**
+     * 模型对应的集合名称：默认集合名加模型ID，只保留字母、数字和下划线
+     */
+    default String collectionFor(String modelId) {
+        String name = defaultCollection() + "_" + modelId.toLowerCase().replaceAll("[^a-z0-9]+", "_");
+        if (name.length() > 63) {
+            name = name.substring(0, 63);
+        }
+        return name.replaceAll("_+$", "");
+    }
+}
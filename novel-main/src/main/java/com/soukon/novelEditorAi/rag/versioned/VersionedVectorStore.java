@@ -0,0 +1,362 @@
+package com.soukon.novelEditorAi.rag.versioned;
+
+import com.soukon.novelEditorAi.llm.CachingEmbeddingModel;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 版本化向量库
+ * <p>
+ * 每个向量模型的向量写入独立的集合。正常情况下读写同一个集合；向量模型变更后进入迁移状态：
+ * 读取仍使用当前集合，写入在当前集合完成后再异步写入目标模型的影子集合，写入方不等待影子集合，
+ * 同时由后台任务把已有内容重新向量化写入影子集合。影子集合覆盖全部内容后整体切换读取。
+ * <p>
+ * 影子集合的写入在单线程中按提交顺序执行。后台迁移读取数据库之前记下写入序号，
+ * 执行时跳过此后在本节点被写入或删除过的文档。写入序号只记录本节点的写入，
+ * 其他节点同时写入的文档由迁移任务按分块清单比对后补写，见 IndexMigrationService。
+ * 按过滤条件的删除同样转发给影子集合，但不参与这一检查。
+ * <p>
+ * 影子集合写入或删除失败时通知失败监听器，由 IndexMigrationService 记录到所有节点共享的索引状态中，
+ * 任一节点有失败时迁移不切换，而是重建一遍影子集合。
+ */
+@Slf4j
+public class VersionedVectorStore implements VectorStore {
+
+    /**
+     * 一个模型对应的集合
+     */
+    public record Generation(String modelId, String collection, VectorStore store) {
+    }
+
+    private final VectorStoreFactory factory;
+    private final CachingEmbeddingModel embeddingModel;
+
+    private volatile Generation active;
+    private volatile Generation shadow;
+
+    private final ExecutorService shadowWriter;
+
+    /**
+     * 迁移期间的写入序号，文档ID -> 最近一次写入或删除的序号
+     */
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final Map<String, Long> shadowWrites = new ConcurrentHashMap<>();
+
+    private final AtomicLong shadowWriteCount = new AtomicLong();
+    private final AtomicLong shadowFailureCount = new AtomicLong();
+    private final AtomicLong migratedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+
+    /**
+     * 影子集合写入或删除失败时调用，参数为影子集合名称
+     */
+    private volatile Consumer<String> failureListener = collection -> {
+    };
+
+    public VersionedVectorStore(VectorStoreFactory factory, CachingEmbeddingModel embeddingModel) {
+        this.factory = factory;
+        this.embeddingModel = embeddingModel;
+        AtomicInteger counter = new AtomicInteger();
+        this.shadowWriter = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "vector-shadow-writer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        shadowWriter.shutdown();
+        try {
+            if (!shadowWriter.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("影子集合仍有未完成的写入，迁移任务会在下次启动时重新覆盖");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Generation current = active;
+        Generation pending = shadow;
+        if (pending != null) {
+            factory.release(pending.store());
+        }
+        if (current != null) {
+            factory.release(current.store());
+        }
+    }
+
+    /**
+     * 设置读取使用的集合，与当前集合相同时忽略
+     */
+    public synchronized void activate(String modelId, String collection) {
+        Generation current = active;
+        if (current != null && current.collection().equals(collection)) {
+            return;
+        }
+        Generation pending = shadow;
+        if (pending != null && pending.collection().equals(collection)) {
+            promote();
+            return;
+        }
+        active = open(modelId, collection);
+        if (current != null) {
+            factory.release(current.store());
+        }
+        log.info("向量索引读取集合: {}，模型: {}", collection, modelId);
+    }
+
+    /**
+     * 开始向目标集合双写，与当前影子集合相同时忽略
+     */
+    public synchronized void beginShadow(String modelId, String collection) {
+        Generation pending = shadow;
+        if (pending != null && pending.collection().equals(collection)) {
+            return;
+        }
+        dropShadow();
+        shadowWrites.clear();
+        shadowFailureCount.set(0);
+        shadow = open(modelId, collection);
+        log.info("开始向影子集合 {} 双写，模型: {}", collection, modelId);
+    }
+
+    /**
+     * 停止双写，影子集合中的数据保留
+     */
+    public synchronized void dropShadow() {
+        Generation pending = shadow;
+        if (pending == null) {
+            return;
+        }
+        shadow = null;
+        awaitShadowWrites();
+        factory.release(pending.store());
+        shadowWrites.clear();
+        log.info("已停止向影子集合 {} 双写", pending.collection());
+    }
+
+    /**
+     * 影子集合成为读取集合，原集合的数据保留，可用于回退
+     */
+    public synchronized void promote() {
+        Generation pending = shadow;
+        if (pending == null) {
+            return;
+        }
+        Generation previous = active;
+        active = pending;
+        shadow = null;
+        shadowWrites.clear();
+        if (previous != null) {
+            factory.release(previous.store());
+        }
+        log.info("向量索引读取已切换到集合 {}，模型: {}", pending.collection(), pending.modelId());
+    }
+
+    public Generation getActive() {
+        return active;
+    }
+
+    public Generation getShadow() {
+        return shadow;
+    }
+
+    /**
+     * 当前写入序号，迁移读取数据库之前调用
+     */
+    public long writeSequence() {
+        return writeSequence.get();
+    }
+
+    /**
+     * 把后台迁移读到的文档写入影子集合，跳过序号之后在本节点被写入或删除过的文档
+     *
+     * @param documents 文档
+     * @param sinceSeq  读取这些文档之前的写入序号
+     * @return 实际写入的文档数
+     */
+    public CompletableFuture<Integer> migrate(List<Document> documents, long sinceSeq) {
+        Generation target = shadow;
+        if (target == null) {
+            return CompletableFuture.completedFuture(0);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            List<Document> fresh = new ArrayList<>(documents.size());
+            for (Document document : documents) {
+                Long seq = shadowWrites.get(document.getId());
+                if (seq == null || seq <= sinceSeq) {
+                    fresh.add(document);
+                }
+            }
+            skippedCount.addAndGet(documents.size() - fresh.size());
+            if (!fresh.isEmpty()) {
+                target.store().add(fresh);
+                migratedCount.addAndGet(fresh.size());
+            }
+            return fresh.size();
+        }, shadowWriter);
+    }
+
+    /**
+     * 从影子集合删除后台迁移可能写回的已删除文档，读取集合不受影响
+     */
+    public CompletableFuture<Void> removeFromShadow(List<String> ids) {
+        Generation target = shadow;
+        if (target == null || ids.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<String> copy = List.copyOf(ids);
+        return CompletableFuture.runAsync(() -> target.store().delete(copy), shadowWriter);
+    }
+
+    /**
+     * 从影子集合删除符合条件的文档，失败后重建影子集合时先清空一个范围的旧文档
+     */
+    public CompletableFuture<Void> purgeShadow(Filter.Expression filterExpression) {
+        Generation target = shadow;
+        if (target == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> target.store().delete(filterExpression), shadowWriter);
+    }
+
+    /**
+     * 设置影子集合写入或删除失败的监听器，在影子写入线程中调用
+     */
+    public void setFailureListener(Consumer<String> failureListener) {
+        this.failureListener = failureListener;
+    }
+
+    /**
+     * 等待已提交的影子集合写入全部完成
+     */
+    public void awaitShadowWrites() {
+        try {
+            CompletableFuture.runAsync(() -> {
+            }, shadowWriter).get(5, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            log.warn("等待影子集合写入完成失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "VersionedVectorStore";
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        Generation target = shadow;
+        current().store().add(documents);
+        if (target != null) {
+            long seq = writeSequence.incrementAndGet();
+            for (Document document : documents) {
+                shadowWrites.put(document.getId(), seq);
+            }
+            List<Document> copy = List.copyOf(documents);
+            submitShadow(target, "写入", () -> target.store().add(copy));
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        Generation target = shadow;
+        current().store().delete(idList);
+        if (target != null) {
+            long seq = writeSequence.incrementAndGet();
+            for (String id : idList) {
+                shadowWrites.put(id, seq);
+            }
+            List<String> copy = List.copyOf(idList);
+            submitShadow(target, "删除", () -> target.store().delete(copy));
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Generation target = shadow;
+        current().store().delete(filterExpression);
+        if (target != null) {
+            submitShadow(target, "条件删除", () -> target.store().delete(filterExpression));
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return current().store().similaritySearch(request);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        Generation current = active;
+        Generation pending = shadow;
+        stats.put("activeCollection", current == null ? null : current.collection());
+        stats.put("activeModelId", current == null ? null : current.modelId());
+        stats.put("shadowCollection", pending == null ? null : pending.collection());
+        stats.put("shadowModelId", pending == null ? null : pending.modelId());
+        stats.put("shadowQueue", ((ThreadPoolExecutor) shadowWriter).getQueue().size());
+        stats.put("shadowWrites", shadowWriteCount.get());
+        stats.put("shadowFailures", shadowFailureCount.get());
+        stats.put("migratedDocuments", migratedCount.get());
+        stats.put("skippedStaleDocuments", skippedCount.get());
+        return stats;
+    }
+
+    private Generation current() {
+        Generation current = active;
+        if (current == null) {
+            throw new IllegalStateException("版本化向量库尚未读取索引状态");
+        }
+        return current;
+    }
+
+    private Generation open(String modelId, String collection) {
+        return new Generation(modelId, collection, factory.create(collection, embeddingModel.forModel(modelId)));
+    }
+
+    private void submitShadow(Generation target, String action, Runnable write) {
+        try {
+            shadowWriter.execute(() -> {
+                try {
+                    write.run();
+                    shadowWriteCount.incrementAndGet();
+                } catch (Exception e) {
+                    log.warn("影子集合 {} {}失败: {}", target.collection(), action, e.getMessage());
+                    recordFailure(target);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("提交影子集合 {} {}失败: {}", target.collection(), action, e.getMessage());
+            recordFailure(target);
+        }
+    }
+
+    /**
+     * 迁移切换前会检查所有节点记录的失败次数，有失败时重建影子集合
+     */
+    private void recordFailure(Generation target) {
+        shadowFailureCount.incrementAndGet();
+        try {
+            failureListener.accept(target.collection());
+        } catch (Exception e) {
+            log.warn("记录影子集合 {} 写入失败出错: {}", target.collection(), e.getMessage());
+        }
+    }
+}
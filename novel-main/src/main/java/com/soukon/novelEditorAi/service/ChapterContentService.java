@@ -1,12 +1,12 @@
 package com.soukon.novelEditorAi.service;
 
+import com.soukon.novelEditorAi.agent.PlanRegistry;
 import com.soukon.novelEditorAi.common.Result;
 import com.soukon.novelEditorAi.model.chapter.ChapterContentRequest;
 import com.soukon.novelEditorAi.model.chapter.ChapterContentResponse;
-import com.soukon.novelEditorAi.model.chapter.PlanContext;
 import reactor.core.publisher.Flux;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
 
 /**
  * 章节内容生成服务接口
@@ -35,8 +35,14 @@ public interface ChapterContentService {
     Result<String> generateChapterContentExecute(ChapterContentRequest request);
     
     /**
-     * 获取计划上下文映射表
-     * @return 计划上下文映射表
+     * 获取计划注册表
+     * @return 计划注册表
      */
-    ConcurrentHashMap<String, PlanContext> getPlanContextMap();
+    PlanRegistry getPlanRegistry();
+
+    /**
+     * 获取章节上下文组装的统计信息
+     * @return 组装耗时直方图、项目快照缓存命中率，以及各查询分支的耗时和超时、失败次数
+     */
+    Map<String, Object> getContextStats();
 } 
\ No newline at end of file
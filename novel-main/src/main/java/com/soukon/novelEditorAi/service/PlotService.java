@@ -1,9 +1,11 @@
 package com.soukon.novelEditorAi.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.soukon.novelEditorAi.entities.Character;
 import com.soukon.novelEditorAi.entities.Plot;
 
 import java.util.List;
+import java.util.Map;
 
 public interface PlotService extends IService<Plot> {
     // MyBatis-Plus provides basic CRUD operations through IService
@@ -19,6 +21,14 @@ public interface PlotService extends IService<Plot> {
 
     String toCharacter(Plot plot);
 
+    /**
+     * 生成情节涉及角色的描述，角色从已加载的映射中查找，不查询数据库
+     *
+     * @param plot       情节实体
+     * @param characters 角色ID到角色的映射
+     */
+    String toCharacter(Plot plot, Map<Long, Character> characters);
+
     /**
      * 生成用于构建生成请求 Prompt 的情节信息部分。
      *
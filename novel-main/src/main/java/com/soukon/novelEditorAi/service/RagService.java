@@ -1,5 +1,9 @@
 package com.soukon.novelEditorAi.service;
 
+import com.soukon.novelEditorAi.entities.Chapter;
+import com.soukon.novelEditorAi.entities.Character;
+import com.soukon.novelEditorAi.model.rag.ProjectIndexSizeDTO;
+import com.soukon.novelEditorAi.rag.ChunkIndexResult;
 import org.springframework.ai.document.Document;
 
 import java.util.List;
@@ -30,6 +34,43 @@ public interface RagService {
      * @return 是否成功
      */
     boolean indexChapter(Long chapterId);
+
+    /**
+     * 按对象类型增量同步一个对象的索引，内容和模型都未变化的分块不重新写入
+     * @param ownerType 对象类型，见 ChunkIndexWriter 的 OWNER_ 常量（模板除外）
+     * @param ownerId 对象ID
+     * @return 增量索引结果
+     * @throws IllegalArgumentException 对象不存在或类型不支持时
+     */
+    ChunkIndexResult sync(String ownerType, Long ownerId);
+
+    /**
+     * 增量同步已读取的章节的索引，批量重建时按页读取章节后调用，不再逐个查询
+     * @param chapter 章节，需包含内容
+     * @return 增量索引结果
+     */
+    ChunkIndexResult sync(Chapter chapter);
+
+    /**
+     * 增量同步已读取的角色的索引，批量重建时按页读取角色后调用，不再逐个查询
+     * @param character 角色
+     * @return 增量索引结果
+     */
+    ChunkIndexResult sync(Character character);
+
+    /**
+     * 删除章节的全部索引分块
+     * @param chapterId 章节ID
+     * @return 是否成功
+     */
+    boolean removeChapterIndex(Long chapterId);
+
+    /**
+     * 按分块清单统计项目的索引规模
+     * @param projectId 项目ID
+     * @return 各类对象的分块数、模型分布等
+     */
+    ProjectIndexSizeDTO getProjectIndexSize(Long projectId);
     
     /**
      * 为角色创建或更新索引
@@ -46,7 +87,7 @@ public interface RagService {
     boolean indexWorld(Long worldId);
     
     /**
-     * 基于项目ID和查询文本检索相关文档
+     * 基于项目ID和查询文本检索相关文档，向量检索与词法检索结果按排名融合
      * @param projectId 项目ID
      * @param query 查询文本
      * @param maxResults 最大结果数
@@ -61,4 +102,27 @@ public interface RagService {
      * @return 相关文档列表
      */
     List<Document> retrieveRelevantForChapter(Long chapterId, int maxResults);
-} 
\ No newline at end of file
+
+    /**
+     * 基于模板ID和查询文本检索模板内容分块
+     * @param templateId 模板ID
+     * @param query 查询文本
+     * @param maxResults 最大结果数
+     * @return 相关文档列表
+     */
+    List<Document> retrieveByTemplateId(Long templateId, String query, int maxResults);
+
+    /**
+     * 按向量库中的文档ID和内容重建项目的全部文档：项目信息、章节分块、角色和世界观
+     * @param projectId 项目ID
+     * @return 文档列表
+     */
+    List<Document> exportProjectDocuments(Long projectId);
+
+    /**
+     * 按向量库中的文档ID和内容重建模板的全部分块
+     * @param templateId 模板ID
+     * @return 文档列表
+     */
+    List<Document> exportTemplateDocuments(Long templateId);
+}
@@ -1,6 +1,7 @@
 package com.soukon.novelEditorAi.service;
 
 import com.soukon.novelEditorAi.common.Result;
+import com.soukon.novelEditorAi.model.template.TemplateBatchVectorProgressDTO;
 import com.soukon.novelEditorAi.model.template.TemplateVectorProgressDTO;
 import reactor.core.publisher.Flux;
 
@@ -38,11 +39,25 @@ public interface TemplateVectorService {
     Result<Boolean> deleteTemplateIndex(Long templateId);
     
     /**
-     * 批量导入模板到向量数据库
+     * 批量导入模板到向量数据库，每个模板提交一个独立的向量化任务并行执行
      * @param templateIds 模板ID列表
-     * @return 导入结果
+     * @return 批量任务ID，用于查询整体进度
+     */
+    Result<String> batchIndexTemplates(java.util.List<Long> templateIds);
+
+    /**
+     * 查询批量向量化的整体进度
+     * @param batchId 批量任务ID
+     * @return 整体进度及各模板进度
+     */
+    Result<TemplateBatchVectorProgressDTO> getBatchProgress(String batchId);
+
+    /**
+     * 流式获取批量向量化的整体进度，批次内任务全部结束后完成
+     * @param batchId 批量任务ID
+     * @return 进度流
      */
-    Result<Boolean> batchIndexTemplates(java.util.List<Long> templateIds);
+    Flux<TemplateBatchVectorProgressDTO> getBatchProgressStream(String batchId);
     
     /**
      * 流式获取向量化进度
@@ -2,10 +2,12 @@ package com.soukon.novelEditorAi.service.impl;
 
 import com.alibaba.nacos.common.utils.UuidUtils;
 import com.soukon.novelEditorAi.agent.AgentState;
+import com.soukon.novelEditorAi.agent.PlanRegistry;
 import com.soukon.novelEditorAi.agent.WritingAgent;
 import com.soukon.novelEditorAi.agent.EnhancedWritingAgent;
 import com.soukon.novelEditorAi.agent.RagEnhancedWritingAgent;
 import com.soukon.novelEditorAi.agent.tool.WritingToolManager;
+import com.soukon.novelEditorAi.cache.ProjectSnapshotCache;
 import com.soukon.novelEditorAi.common.Result;
 import com.soukon.novelEditorAi.entities.Chapter;
 import com.soukon.novelEditorAi.entities.Project;
@@ -20,7 +22,13 @@ import com.soukon.novelEditorAi.mapper.PlotMapper;
 import com.soukon.novelEditorAi.mapper.ProjectMapper;
 import com.soukon.novelEditorAi.mapper.WorldMapper;
 import com.soukon.novelEditorAi.model.chapter.*;
+import com.soukon.novelEditorAi.rag.IndexJobQueue;
+import com.soukon.novelEditorAi.rag.IndexJobWorker;
+import com.soukon.novelEditorAi.rag.IndexingScheduler;
 import com.soukon.novelEditorAi.service.*;
+import com.soukon.novelEditorAi.utils.LatencyHistogram;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.Getter;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
@@ -28,6 +36,7 @@ import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.ai.document.Document;
 import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -39,9 +48,18 @@ import org.springframework.context.annotation.Lazy;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
-import java.time.LocalDateTime;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
@@ -76,7 +94,8 @@ public class ChapterContentServiceImpl implements ChapterContentService {
     private final OutlinePlotPointService outlinePlotPointService;
 
     @Getter
-    private ConcurrentHashMap<String, PlanContext> planContextMap = new ConcurrentHashMap<>();
+    @Autowired
+    private PlanRegistry planRegistry;
 
     @Autowired
     private ItemService itemService;
@@ -87,12 +106,57 @@ public class ChapterContentServiceImpl implements ChapterContentService {
     @Autowired
     private LlmService llmService;
 
+    @Autowired
+    private IndexingScheduler indexingScheduler;
+
+    @Autowired
+    private IndexJobQueue indexJobQueue;
+
+    @Autowired
+    private IndexJobWorker indexJobWorker;
+
+    @Autowired
+    private ProjectSnapshotCache projectSnapshotCache;
+
+    /**
+     * 章节上下文组装耗时
+     */
+    private final LatencyHistogram contextLatency = new LatencyHistogram();
+
+    /**
+     * 章节上下文各查询分支的耗时和降级次数
+     */
+    private final Map<String, BranchStats> branchStats = new ConcurrentHashMap<>();
+
+    /**
+     * 并发执行章节上下文查询分支的线程池
+     */
+    private ExecutorService contextExecutor;
+
+    @Value("${novel.context.fanout.threads:8}")
+    private int contextThreads = 8;
+
+    @Value("${novel.context.fanout.snapshot-timeout-ms:5000}")
+    private long snapshotTimeoutMs = 5000;
+
+    @Value("${novel.context.fanout.query-timeout-ms:2000}")
+    private long queryTimeoutMs = 2000;
+
+    @Value("${novel.context.fanout.rag-timeout-ms:1500}")
+    private long ragTimeoutMs = 1500;
+
+    @Value("${novel.rag.jobs.chapter-fallback-delay-ms:60000}")
+    private long chapterJobFallbackDelayMs;
+
     @Value("${novel.chapter.default-max-tokens:2000}")
     private Integer defaultMaxTokens;
 
     @Value("${novel.chapter.default-temperature:0.7}")
     private Float defaultTemperature;
 
+    @Value("${novel.plan.replay-buffer-size:4096}")
+    private Integer replayBufferSize;
+
     @Value("${novel.rag.max-results:5}")
     private Integer ragMaxResults;
 
@@ -141,6 +205,23 @@ public class ChapterContentServiceImpl implements ChapterContentService {
         this.outlinePlotPointService = outlinePlotPointService;
     }
 
+    @PostConstruct
+    public void startContextExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        contextExecutor = Executors.newFixedThreadPool(Math.max(1, contextThreads), r -> {
+            Thread thread = new Thread(r, "chapter-context-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stopContextExecutor() {
+        if (contextExecutor != null) {
+            contextExecutor.shutdownNow();
+        }
+    }
+
     @Override
     public boolean saveChapterContent(Long chapterId, String content, Boolean appendMode) {
         try {
@@ -182,17 +263,11 @@ public class ChapterContentServiceImpl implements ChapterContentService {
                 // 更新到数据库
                 chapterMapper.updateById(chapter);
 
-                // 更新索引，使用异步方式
+                // 更新索引：先写入持久化任务，本节点由索引调度器合并连续保存后立即执行；
+                // 本节点在此期间重启时，任务在兜底延迟后由其他节点领取
                 if (ragEnabled) {
-                    CompletableFuture.runAsync(() -> {
-                        try {
-                            ragService.indexChapter(chapterId);
-                        } catch (OutOfMemoryError e) {
-                            log.error("索引章节内容时发生内存溢出: {}", e.getMessage());
-                        } catch (Exception e) {
-                            log.warn("索引章节内容失败: {}", e.getMessage());
-                        }
-                    });
+                    Long jobId = indexJobQueue.submit(IndexJobQueue.TYPE_CHAPTER, chapterId, chapterJobFallbackDelayMs);
+                    indexingScheduler.submit("chapter-" + chapterId, () -> indexJobWorker.runNow(jobId));
                 }
 
                 return true;
@@ -209,23 +284,19 @@ public class ChapterContentServiceImpl implements ChapterContentService {
         String planId = UuidUtils.generateUuid();
 
         // 创建新的计划上下文
-        PlanContext planContext = new PlanContext(planId);
+        PlanContext planContext = new PlanContext(planId, replayBufferSize);
         planContext.setPlanState(PlanState.PLANNING);
         planContext.setMessage("正在执行章节内容生成计划");
         planContext.setProgress(0);
-        planContextMap.put(planId, planContext);
+        planRegistry.register(planContext);
         request.setPlanContext(planContext);
 
-        // 异步执行任务
+        // 异步执行任务，计划在内容流结束时标记为完成
         CompletableFuture.runAsync(() -> {
             try {
                 planContext.setPlanState(PlanState.PLANNING);
                 // 生成内容
                 generateChapterContentStreamFlux(request);
-                // 更新计划状态
-                planContext.setPlanState(PlanState.COMPLETED);
-                planContext.setMessage("执行计划结束");
-                planContext.setProgress(100);
             } catch (Exception e) {
                 log.error("执行计划失败", e);
                 planContext.setPlanState(PlanState.COMPLETED);  // 即使失败也标记为完成
@@ -245,75 +316,197 @@ public class ChapterContentServiceImpl implements ChapterContentService {
     }
 
     /**
-     * 构建章节上下文信息
+     * 构建章节上下文信息：项目级数据读取项目快照，只有章节本身、前后章节和章节情节按次查询
+     * <p>
+     * 读取章节后，项目快照、前后章节、章节情节和RAG检索在独立线程池中并发执行，各分支有各自的超时。
+     * 项目快照是必需的，超时或失败时生成失败；其余分支超时或失败时按缺失处理，
+     * 向量库变慢只会降低上下文的完整度，不会拖住生成。方法返回前未完成的分支全部取消。
      */
     private ChapterContext buildChapterContext(Long chapterId) {
-        // 获取章节信息
-        Chapter chapter = chapterMapper.selectById(chapterId);
-        if (chapter == null) {
-            throw new IllegalArgumentException("找不到指定的章节: " + chapterId);
-        }
+        long start = System.nanoTime();
+        List<Future<?>> forks = new ArrayList<>();
+        try {
+            // 获取章节信息
+            Chapter chapter = chapterMapper.selectById(chapterId);
+            if (chapter == null) {
+                throw new IllegalArgumentException("找不到指定的章节: " + chapterId);
+            }
 
-        Long projectId = chapter.getProjectId();
+            Long projectId = chapter.getProjectId();
+            Integer sortOrder = chapter.getSortOrder();
+
+            Future<ProjectSnapshotCache.Snapshot> snapshotFork =
+                    fork(forks, "snapshot", () -> projectSnapshotCache.get(projectId));
+            Future<Chapter> previousFork = sortOrder > 1
+                    ? fork(forks, "previousChapter", () -> chapterMapper.selectByProjectIdAndOrder(projectId, sortOrder - 1))
+                    : null;
+            Future<Chapter> nextFork =
+                    fork(forks, "nextChapter", () -> chapterMapper.selectByProjectIdAndOrder(projectId, sortOrder + 1));
+            Future<List<Plot>> plotsFork = fork(forks, "plots", () -> plotMapper.selectListByChapterId(chapterId));
+            Future<String> ragFork = ragEnabled ? fork(forks, "rag", () -> {
+                List<Document> relevantDocs = ragService.retrieveRelevantForChapter(chapterId, ragMaxResults);
+                return relevantDocs == null || relevantDocs.isEmpty()
+                        ? null
+                        : PromptServiceImpl.formatRelevantInfo(relevantDocs);
+            }) : null;
+
+            // 超时从分支提交时起算，各分支并发等待
+            long forkedAt = System.nanoTime();
+
+            // 项目、世界观、角色和角色关系
+            ProjectSnapshotCache.Snapshot snapshot = joinRequired("snapshot", snapshotFork, forkedAt + ms(snapshotTimeoutMs));
+            Project project = snapshot.project();
+
+            // 构建章节上下文
+            ChapterContext.ChapterContextBuilder contextBuilder = ChapterContext.builder()
+                    .project(project)
+                    .currentChapter(chapter)
+                    .projectId(projectId)
+                    .novelTitle(project.getTitle())
+                    .novelSummary(project.getSynopsis())
+                    .novelStyle(project.getStyle())
+                    .chapterSummary(chapter.getSummary())
+                    .world(snapshot.world())
+                    .charactersById(snapshot.charactersById());
+
+            if (!snapshot.characters().isEmpty()) {
+                contextBuilder.characters(snapshot.characters());
+            }
+            if (!snapshot.relationships().isEmpty()) {
+                contextBuilder.characterRelationships(snapshot.relationships());
+                contextBuilder.characterRelationshipPrompts(snapshot.relationshipPrompts());
+            }
 
-        // 获取项目信息
-        Project project = projectMapper.selectById(projectId);
-        if (project == null) {
-            throw new IllegalArgumentException("找不到指定的项目: " + projectId);
-        }
+            // 获取前一章节
+            if (previousFork != null) {
+                Chapter previousChapter = join("previousChapter", previousFork, forkedAt + ms(queryTimeoutMs));
+                if (previousChapter != null) {
+                    contextBuilder.previousChapter(previousChapter);
+                    contextBuilder.previousChapterSummary(previousChapter.getSummary());
+                }
+            }
 
-        // 构建章节上下文
-        ChapterContext.ChapterContextBuilder contextBuilder = ChapterContext.builder()
-                .project(project)
-                .currentChapter(chapter)
-                .projectId(projectId)
-                .novelTitle(project.getTitle())
-                .novelSummary(project.getSynopsis())
-                .novelStyle(project.getStyle())
-                .chapterSummary(chapter.getSummary());
-
-        // 获取世界观信息
-        World world = worldMapper.selectById(project.getWorldId());
-        if (world != null) {
-            contextBuilder.world(world);
-        }
+            // 获取下一章节
+            Chapter nextChapter = join("nextChapter", nextFork, forkedAt + ms(queryTimeoutMs));
+            if (nextChapter != null) {
+                contextBuilder.nextChapterSummary(nextChapter.getSummary());
+            }
 
-        // 获取角色信息
-        List<Character> characters = characterMapper.selectListByProjectId(projectId);
-        if (characters != null && !characters.isEmpty()) {
-            contextBuilder.characters(characters);
-        }
+            // 获取章节关联的情节（按排序返回），第一个未完成的即当前情节
+            List<Plot> plots = join("plots", plotsFork, forkedAt + ms(queryTimeoutMs));
+            if (plots != null && !plots.isEmpty()) {
+                contextBuilder.chapterPlots(plots);
+                plots.stream()
+                        .filter(plot -> plot.getCompletionPercentage() != null && plot.getCompletionPercentage() < 100)
+                        .findFirst()
+                        .ifPresent(contextBuilder::currentPlot);
+            }
 
-        // 获取角色关系
-        List<CharacterRelationship> relationships = characterRelationshipService.getByProjectId(projectId);
-        if (relationships != null && !relationships.isEmpty()) {
-            contextBuilder.characterRelationships(relationships);
-        }
+            // 相关背景信息
+            if (ragFork != null) {
+                contextBuilder.relevantInfo(join("rag", ragFork, forkedAt + ms(ragTimeoutMs)));
+            }
 
-        // 获取前一章节
-        if (chapter.getSortOrder() > 1) {
-            Chapter previousChapter = chapterMapper.selectByProjectIdAndOrder(
-                    projectId, chapter.getSortOrder() - 1);
-            if (previousChapter != null) {
-                contextBuilder.previousChapter(previousChapter);
-                contextBuilder.previousChapterSummary(previousChapter.getSummary());
+            return contextBuilder.build();
+        } finally {
+            for (Future<?> forked : forks) {
+                forked.cancel(true);
             }
+            contextLatency.record(System.nanoTime() - start);
         }
+    }
 
-        // 获取下一章节
-        Chapter nextChapter = chapterMapper.selectByProjectIdAndOrder(
-                projectId, chapter.getSortOrder() + 1);
-        if (nextChapter != null) {
-            contextBuilder.nextChapterSummary(nextChapter.getSummary());
+    /**
+     * 在上下文线程池中执行查询分支，分支自身的耗时在执行完成时记录，与调用方是否已放弃等待无关
+     */
+    private <T> Future<T> fork(List<Future<?>> forks, String branch, Callable<T> task) {
+        BranchStats stats = branchStats(branch);
+        Future<T> future = contextExecutor.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                return task.call();
+            } finally {
+                stats.latency.record(System.nanoTime() - start);
+            }
+        });
+        forks.add(future);
+        return future;
+    }
+
+    /**
+     * 等待可降级的分支，超时或失败时返回null
+     */
+    private <T> T join(String branch, Future<T> future, long deadlineNanos) {
+        BranchStats stats = branchStats(branch);
+        try {
+            return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            stats.timeouts.incrementAndGet();
+            log.warn("章节上下文分支 {} 超时，按缺失处理", branch);
+        } catch (ExecutionException e) {
+            stats.failures.incrementAndGet();
+            log.warn("章节上下文分支 {} 失败，按缺失处理: {}", branch, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            log.warn("等待章节上下文分支 {} 时被中断，按缺失处理", branch);
         }
+        return null;
+    }
 
-        // 获取章节关联的情节
-        List<Plot> plots = plotMapper.selectListByChapterId(chapterId);
-        if (plots != null && !plots.isEmpty()) {
-            contextBuilder.chapterPlots(plots);
+    /**
+     * 等待必需的分支，超时或失败时抛出异常
+     */
+    private <T> T joinRequired(String branch, Future<T> future, long deadlineNanos) {
+        BranchStats stats = branchStats(branch);
+        try {
+            return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            stats.timeouts.incrementAndGet();
+            throw new IllegalStateException("加载章节上下文超时: " + branch);
+        } catch (ExecutionException e) {
+            stats.failures.incrementAndGet();
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("加载章节上下文失败: " + branch, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IllegalStateException("加载章节上下文被中断: " + branch, e);
         }
+    }
 
-        return contextBuilder.build();
+    private BranchStats branchStats(String branch) {
+        return branchStats.computeIfAbsent(branch, key -> new BranchStats());
+    }
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static class BranchStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+    }
+
+    @Override
+    public Map<String, Object> getContextStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("assemblyLatency", contextLatency.getStats());
+        stats.put("projectSnapshots", projectSnapshotCache.getStats());
+        Map<String, Object> branches = new HashMap<>();
+        branchStats.forEach((branch, branchStat) -> {
+            Map<String, Object> item = new HashMap<>(branchStat.latency.getStats());
+            item.put("timeouts", branchStat.timeouts.get());
+            item.put("failures", branchStat.failures.get());
+            branches.put(branch, item);
+        });
+        stats.put("branches", branches);
+        return stats;
     }
 
     /**
@@ -352,10 +545,14 @@ public class ChapterContentServiceImpl implements ChapterContentService {
             request.setTemperature(defaultTemperature);
         }
 
-        // 生成计划ID
-        String planId = UuidUtils.generateUuid();
-        PlanContext planContext = new PlanContext(planId);
-        request.setPlanContext(planContext);
+        // 沿用已注册的计划上下文，直接调用时才新建
+        if (request.getPlanContext() == null) {
+            PlanContext newPlanContext = new PlanContext(UuidUtils.generateUuid(), replayBufferSize);
+            planRegistry.register(newPlanContext);
+            request.setPlanContext(newPlanContext);
+        }
+        PlanContext planContext = request.getPlanContext();
+        String planId = planContext.getPlanId();
 
         log.info("[RAG增强写作] 计划ID: {}", planId);
 
@@ -417,28 +614,24 @@ public class ChapterContentServiceImpl implements ChapterContentService {
                 reasoningMessages, 
                 planContext, 
                 planRes.getPlanList()
-            );
+            )
+                    .doOnNext(content -> {
+                        log.debug("[RAG增强写作] 生成内容片段: {}", content.length() > 50 ? content.substring(0, 50) + "..." : content);
+                    })
+                    .doOnError(error -> {
+                        log.error("[RAG增强写作] 内容生成失败", error);
+                        planContext.setMessage("生成失败: " + error.getMessage());
+                        planContext.setPlanState(PlanState.COMPLETED);
+                    })
+                    .doOnComplete(() -> {
+                        log.info("[RAG增强写作] 内容生成完成");
+                        planContext.setMessage("生成完成");
+                        planContext.setPlanState(PlanState.COMPLETED);
+                    });
 
-            // 设置流式响应并立即订阅以触发执行
-            planContext.setPlanStream(contentStream);
+            // 由计划的回放缓冲区订阅一次以触发执行，前端订阅者共享同一份输出，不会重复调用模型
             planContext.setPlanState(PlanState.GENERATING);
-            
-            // 立即订阅流以触发执行（冷流需要订阅才会执行）
-            contentStream.subscribe(
-                content -> {
-                    log.debug("[RAG增强写作] 生成内容片段: {}", content.length() > 50 ? content.substring(0, 50) + "..." : content);
-                },
-                error -> {
-                    log.error("[RAG增强写作] 内容生成失败", error);
-                    planContext.setPlanState(PlanState.COMPLETED);
-                    planContext.setMessage("生成失败: " + error.getMessage());
-                },
-                () -> {
-                    log.info("[RAG增强写作] 内容生成完成");
-                    planContext.setPlanState(PlanState.COMPLETED);
-                    planContext.setMessage("生成完成");
-                }
-            );
+            planContext.setPlanStream(contentStream);
 
             log.info("[RAG增强写作] 写作流程启动完成");
 
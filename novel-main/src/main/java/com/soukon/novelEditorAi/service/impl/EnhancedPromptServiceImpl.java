@@ -155,8 +155,13 @@ public class EnhancedPromptServiceImpl {
         // 5. 角色关系
         if (context.getCharacterRelationships() != null && !context.getCharacterRelationships().isEmpty()) {
             promptBuilder.append("## 角色关系\n");
-            context.getCharacterRelationships().forEach(rel -> 
-                promptBuilder.append(characterRelationshipService.toPrompt(rel)).append("\n"));
+            if (context.getCharacterRelationshipPrompts() != null) {
+                // 项目快照中已生成的提示词
+                context.getCharacterRelationshipPrompts().forEach(prompt -> promptBuilder.append(prompt).append("\n"));
+            } else {
+                context.getCharacterRelationships().forEach(rel -> 
+                    promptBuilder.append(characterRelationshipService.toPrompt(rel)).append("\n"));
+            }
         }
         
         // 6. 前文回顾
@@ -180,19 +185,31 @@ public class EnhancedPromptServiceImpl {
         }
         
         // 8. 当前情节要求
-        Plot currentPlot = plotService.getFirstIncompletePlot(currentChapter.getId());
+        // 由项目快照组装的上下文已带有当前情节和角色映射，无需再查询
+        boolean assembled = context.getCharactersById() != null;
+        Plot currentPlot = assembled
+                ? context.getCurrentPlot()
+                : plotService.getFirstIncompletePlot(currentChapter.getId());
         if (currentPlot != null) {
             request.setCurrentPlot(currentPlot);
             promptBuilder.append("## 当前情节要求\n");
             promptBuilder.append("**情节描述**：").append(currentPlot.getDescription()).append("\n");
             promptBuilder.append("**情节字数目标**：").append(currentPlot.getWordCountGoal()).append("字\n");
             if (currentPlot.getCharacterIds() != null && !currentPlot.getCharacterIds().isEmpty()) {
-                promptBuilder.append("**涉及角色**：").append(plotService.toCharacter(currentPlot)).append("\n");
+                promptBuilder.append("**涉及角色**：").append(assembled
+                        ? plotService.toCharacter(currentPlot, context.getCharactersById())
+                        : plotService.toCharacter(currentPlot)).append("\n");
             }
             promptBuilder.append("\n");
         }
         
-        // 9. 写作任务
+        // 9. 相关背景信息（组装上下文时预取，检索超时或失败时省略）
+        if (context.getRelevantInfo() != null && !context.getRelevantInfo().isEmpty()) {
+            promptBuilder.append("## 相关背景信息\n");
+            promptBuilder.append(context.getRelevantInfo()).append("\n");
+        }
+
+        // 10. 写作任务
         promptBuilder.append("## 写作任务\n");
         promptBuilder.append("请根据以上信息，制定一个高质量的写作计划。计划应该：\n");
         promptBuilder.append("1. 体现文学性和艺术性\n");
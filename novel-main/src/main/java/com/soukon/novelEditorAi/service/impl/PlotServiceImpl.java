@@ -25,6 +25,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -124,6 +125,15 @@ public class PlotServiceImpl extends ServiceImpl<PlotMapper, Plot> implements Pl
      */
     @Override
     public String toCharacter(Plot plot) {
+        return toCharacter(plot, cid -> characterService.getById(cid));
+    }
+
+    @Override
+    public String toCharacter(Plot plot, Map<Long, com.soukon.novelEditorAi.entities.Character> characters) {
+        return toCharacter(plot, characters::get);
+    }
+
+    private String toCharacter(Plot plot, Function<Long, com.soukon.novelEditorAi.entities.Character> characterLookup) {
         if (plot == null) {
             return "";
         }
@@ -132,7 +142,7 @@ public class PlotServiceImpl extends ServiceImpl<PlotMapper, Plot> implements Pl
             sb.append("涉及角色: ");
             for (Long cid : plot.getCharacterIds()) {
                 if (cid != null) {
-                    com.soukon.novelEditorAi.entities.Character character = characterService.getById(cid);
+                    com.soukon.novelEditorAi.entities.Character character = characterLookup.apply(cid);
                     sb.append(characterService.toPrompt(character)).append(", ");
                 }
             }
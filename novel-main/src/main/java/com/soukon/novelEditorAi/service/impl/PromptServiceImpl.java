@@ -193,7 +193,11 @@ public class PromptServiceImpl implements PromptService {
         // 角色关系信息
         if (context.getCharacterRelationships() != null && !context.getCharacterRelationships().isEmpty()) {
             userPromptBuilder.append("### 角色关系\n");
-            context.getCharacterRelationships().forEach(rel -> userPromptBuilder.append(characterRelationshipService.toPrompt(rel)));
+            if (context.getCharacterRelationshipPrompts() != null) {
+                context.getCharacterRelationshipPrompts().forEach(userPromptBuilder::append);
+            } else {
+                context.getCharacterRelationships().forEach(rel -> userPromptBuilder.append(characterRelationshipService.toPrompt(rel)));
+            }
             userPromptBuilder.append("\n");
         }
 
@@ -261,8 +265,10 @@ public class PromptServiceImpl implements PromptService {
             userPromptBuilder.append("已有内容为空\n");
         }
 
-        // 相关背景信息 (RAG)
-        String relevantInfo = retrieveRelevantInfo(context.getCurrentChapter().getId());
+        // 相关背景信息 (RAG)，组装上下文时已预取的直接使用
+        String relevantInfo = context.getRelevantInfo() != null
+                ? context.getRelevantInfo()
+                : retrieveRelevantInfo(context.getCurrentChapter().getId());
         if (relevantInfo != null && !relevantInfo.isEmpty()) {
             userPromptBuilder.append("### 相关背景信息\n").append(relevantInfo).append("\n");
         }
@@ -375,44 +381,50 @@ public class PromptServiceImpl implements PromptService {
                 return null;
             }
 
-            // 提取文档内容并格式化
-            StringBuilder relevantInfo = new StringBuilder();
-            for (Document doc : relevantDocs) {
-                String docType = doc.getMetadata().getOrDefault("type", "unknown").toString();
-
-                relevantInfo.append("- ");
-                switch (docType) {
-                    case "chapter":
-                        relevantInfo.append("章节「")
-                                .append(doc.getMetadata().getOrDefault("title", ""))
-                                .append("」: ");
-                        break;
-                    case "character":
-                        relevantInfo.append("角色「")
-                                .append(doc.getMetadata().getOrDefault("name", ""))
-                                .append("」: ");
-                        break;
-                    case "world":
-                        relevantInfo.append("世界观「")
-                                .append(doc.getMetadata().getOrDefault("name", ""))
-                                .append("」: ");
-                        break;
-                    default:
-                        relevantInfo.append(docType).append(": ");
-                }
-
-                // 添加文档内容的摘要
-                String content = doc.getText();
-                if (content.length() > 150) {
-                    content = content.substring(0, 150) + "...";
-                }
-                relevantInfo.append(content).append("\n\n");
-            }
-
-            return relevantInfo.toString();
+            return formatRelevantInfo(relevantDocs);
         } catch (Exception e) {
             log.warn("检索相关信息失败", e);
             return null;
         }
     }
+
+    /**
+     * 将检索到的文档格式化为提示词中的相关背景信息
+     */
+    static String formatRelevantInfo(List<Document> relevantDocs) {
+        StringBuilder relevantInfo = new StringBuilder();
+        for (Document doc : relevantDocs) {
+            String docType = doc.getMetadata().getOrDefault("type", "unknown").toString();
+
+            relevantInfo.append("- ");
+            switch (docType) {
+                case "chapter":
+                    relevantInfo.append("章节「")
+                            .append(doc.getMetadata().getOrDefault("title", ""))
+                            .append("」: ");
+                    break;
+                case "character":
+                    relevantInfo.append("角色「")
+                            .append(doc.getMetadata().getOrDefault("name", ""))
+                            .append("」: ");
+                    break;
+                case "world":
+                    relevantInfo.append("世界观「")
+                            .append(doc.getMetadata().getOrDefault("name", ""))
+                            .append("」: ");
+                    break;
+                default:
+                    relevantInfo.append(docType).append(": ");
+            }
+
+            // 添加文档内容的摘要
+            String content = doc.getText();
+            if (content.length() > 150) {
+                content = content.substring(0, 150) + "...";
+            }
+            relevantInfo.append(content).append("\n\n");
+        }
+
+        return relevantInfo.toString();
+    }
 }
@@ -1,5 +1,6 @@
 package com.soukon.novelEditorAi.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.soukon.novelEditorAi.entities.Chapter;
 import com.soukon.novelEditorAi.entities.Character;
 import com.soukon.novelEditorAi.entities.Project;
@@ -7,7 +8,17 @@ import com.soukon.novelEditorAi.entities.World;
 import com.soukon.novelEditorAi.mapper.ChapterMapper;
 import com.soukon.novelEditorAi.mapper.CharacterMapper;
 import com.soukon.novelEditorAi.mapper.ProjectMapper;
+import com.soukon.novelEditorAi.mapper.TemplateMapper;
 import com.soukon.novelEditorAi.mapper.WorldMapper;
+import com.soukon.novelEditorAi.model.rag.ProjectIndexSizeDTO;
+import com.soukon.novelEditorAi.rag.ChunkIndexResult;
+import com.soukon.novelEditorAi.rag.ChunkIndexWriter;
+import com.soukon.novelEditorAi.rag.LexicalIndex;
+import com.soukon.novelEditorAi.rag.RankFusion;
+import com.soukon.novelEditorAi.rag.RetrievalCache;
+import com.soukon.novelEditorAi.rag.TemplateContentReader;
+import com.soukon.novelEditorAi.rag.TextChunk;
+import com.soukon.novelEditorAi.rag.TextChunker;
 import com.soukon.novelEditorAi.service.RagService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -27,11 +38,17 @@ import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * RAG服务实现类
@@ -53,6 +70,41 @@ public class RagServiceImpl implements RagService {
     @Value("${novel.rag.chunk-overlap:50}")
     private int chunkOverlap;
 
+    /**
+     * 章节分块长度计量方式：characters 按字符数，tokens 按估算的token数
+     */
+    @Value("${novel.rag.chunk-mode:characters}")
+    private String chunkMode;
+
+    @Value("${novel.template.chunk-size:500}")
+    private int templateChunkSize;
+
+    @Value("${novel.template.chunk-overlap:100}")
+    private int templateChunkOverlap;
+
+    @Value("${novel.template.chunk-mode:characters}")
+    private String templateChunkMode;
+
+    /**
+     * 是否融合词法检索结果，关闭时只使用向量检索
+     */
+    @Value("${novel.rag.hybrid.enabled:true}")
+    private boolean hybridEnabled;
+
+    /**
+     * 每路检索取回的候选数为最终结果数的倍数
+     */
+    @Value("${novel.rag.hybrid.candidate-multiplier:3}")
+    private int candidateMultiplier;
+
+    /**
+     * 向量检索失败后，在这段时间内直接使用词法检索，避免每次查询都等待不可用的向量化服务
+     */
+    @Value("${novel.rag.hybrid.vector-cooldown-ms:30000}")
+    private long vectorCooldownMs;
+
+    private volatile long vectorUnavailableUntil = 0;
+
 
     @Autowired
     private ResourceLoader resourceLoader;
@@ -64,6 +116,18 @@ public class RagServiceImpl implements RagService {
     @Autowired
     private VectorStore vectorStore;
 
+    @Autowired
+    private ChunkIndexWriter chunkIndexWriter;
+
+    @Autowired
+    private LexicalIndex lexicalIndex;
+
+    @Autowired
+    private RetrievalCache retrievalCache;
+
+    @Autowired
+    private TemplateMapper templateMapper;
+
     @Autowired
     public RagServiceImpl(ProjectMapper projectMapper,
                           ChapterMapper chapterMapper,
@@ -215,22 +279,7 @@ public class RagServiceImpl implements RagService {
     @Override
     public boolean indexProject(Long projectId) {
         try {
-            Project project = projectMapper.selectById(projectId);
-            if (project == null) {
-                log.error("索引项目失败：找不到ID为 {} 的项目", projectId);
-                return false;
-            }
-
-            // 为项目信息创建文档
-            Document projectDoc = new Document(
-                    "project-" + projectId,
-                    createProjectContent(project),
-                    createProjectMetadata(project)
-            );
-
-            // 将文档添加到向量存储中
-            vectorStore.add(Collections.singletonList(projectDoc));
-
+            syncProject(projectId);
             log.info("已成功为项目 {} 创建索引", projectId);
             return true;
         } catch (Exception e) {
@@ -240,51 +289,52 @@ public class RagServiceImpl implements RagService {
     }
 
     @Override
-    public boolean indexChapter(Long chapterId) {
-        try {
-            Chapter chapter = chapterMapper.selectById(chapterId);
-            if (chapter == null) {
-                log.error("索引章节失败：找不到ID为 {} 的章节", chapterId);
-                return false;
-            }
+    public ChunkIndexResult sync(String ownerType, Long ownerId) {
+        return switch (ownerType) {
+            case ChunkIndexWriter.OWNER_PROJECT -> syncProject(ownerId);
+            case ChunkIndexWriter.OWNER_CHAPTER -> syncChapter(ownerId);
+            case ChunkIndexWriter.OWNER_CHARACTER -> syncCharacter(ownerId);
+            case ChunkIndexWriter.OWNER_WORLD -> syncWorld(ownerId);
+            default -> throw new IllegalArgumentException("不支持的索引对象类型: " + ownerType);
+        };
+    }
 
-            // 获取章节内容
-            String content = chapter.getContent();
-            if (content == null || content.isEmpty()) {
-                log.warn("章节 {} 没有内容，跳过索引", chapterId);
-                return true;
-            }
+    @Override
+    public ChunkIndexResult sync(Chapter chapter) {
+        return syncChapter(chapter);
+    }
 
-            // 限制处理的文本长度，避免内存溢出
-            final int MAX_INDEXABLE_LENGTH = 50000; // 设置最大可索引长度
-            if (content.length() > MAX_INDEXABLE_LENGTH) {
-                log.warn("章节 {} 内容过长 ({}字符)，将只索引前 {} 字符",
-                        chapterId, content.length(), MAX_INDEXABLE_LENGTH);
-                content = content.substring(0, MAX_INDEXABLE_LENGTH);
-            }
+    @Override
+    public ChunkIndexResult sync(Character character) {
+        return syncCharacter(character);
+    }
 
-            // 将章节内容分块
-            List<String> chunks = chunkText(content, chunkSize, chunkOverlap);
-            List<Document> documents = new ArrayList<>();
-
-            // 为每个块创建文档
-            for (int i = 0; i < chunks.size(); i++) {
-                Map<String, Object> metadata = createChapterMetadata(chapter);
-                metadata.put("chunkIndex", i);
-                metadata.put("totalChunks", chunks.size());
-
-                Document doc = new Document(
-                        "chapter-" + chapterId + "-chunk-" + i,
-                        chunks.get(i),
-                        metadata
-                );
-                documents.add(doc);
-            }
+    private ChunkIndexResult syncProject(Long projectId) {
+        Project project = projectMapper.selectById(projectId);
+        if (project == null) {
+            throw new IllegalArgumentException("找不到ID为 " + projectId + " 的项目");
+        }
+
+        // 为项目信息创建文档
+        Document projectDoc = new Document(
+                "project-" + projectId,
+                createProjectContent(project),
+                createProjectMetadata(project)
+        );
 
-            // 将文档添加到向量存储中
-            vectorStore.add(documents);
+        // 按分块清单写入向量存储，内容未变化时跳过
+        ChunkIndexResult result = chunkIndexWriter.syncDocument(ChunkIndexWriter.OWNER_PROJECT, projectId, projectId, projectDoc);
+        lexicalIndex.put(LexicalIndex.projectScope(projectId), List.of(projectDoc));
+        retrievalCache.invalidate(LexicalIndex.projectScope(projectId));
+        return result;
+    }
 
-            log.info("已成功为章节 {} 创建索引，共 {} 个块", chapterId, chunks.size());
+    @Override
+    public boolean indexChapter(Long chapterId) {
+        try {
+            ChunkIndexResult result = syncChapter(chapterId);
+            log.info("已成功为章节 {} 创建索引，写入 {} 个块，跳过 {} 个，删除 {} 个",
+                    chapterId, result.written(), result.unchanged(), result.removed());
             return true;
         } catch (Exception e) {
             log.error("索引章节时发生错误：", e);
@@ -292,25 +342,104 @@ public class RagServiceImpl implements RagService {
         }
     }
 
+    private ChunkIndexResult syncChapter(Long chapterId) {
+        Chapter chapter = chapterMapper.selectById(chapterId);
+        if (chapter == null) {
+            throw new IllegalArgumentException("找不到ID为 " + chapterId + " 的章节");
+        }
+        return syncChapter(chapter);
+    }
+
+    private ChunkIndexResult syncChapter(Chapter chapter) {
+        Long chapterId = chapter.getId();
+
+        // 获取章节内容
+        String content = indexableContent(chapter);
+        if (content == null) {
+            log.warn("章节 {} 没有内容，跳过索引", chapterId);
+            return new ChunkIndexResult(0, 0, 0, 0);
+        }
+
+        // 将章节内容分块，按分块清单增量写入向量库
+        List<TextChunk> chunks = chapterChunker().split(content);
+        Function<TextChunk, Document> documentFactory = chunk -> createChapterChunkDocument(chapter, chunk);
+        ChunkIndexResult result = chunkIndexWriter.sync(ChunkIndexWriter.OWNER_CHAPTER, chapterId,
+                chapter.getProjectId(), chunks,
+                documentFactory, "chapterId == " + chapterId);
+
+        // 词法索引整体替换该章节的分块
+        lexicalIndex.removeIf(isChapterDocument(chapterId));
+        lexicalIndex.put(LexicalIndex.projectScope(chapter.getProjectId()),
+                chunks.stream().map(documentFactory).toList());
+        retrievalCache.invalidate(LexicalIndex.projectScope(chapter.getProjectId()));
+        return result;
+    }
+
     @Override
-    public boolean indexCharacter(Long characterId) {
+    public boolean removeChapterIndex(Long chapterId) {
         try {
-            Character character = characterMapper.selectById(characterId);
-            if (character == null) {
-                log.error("索引角色失败：找不到ID为 {} 的角色", characterId);
-                return false;
-            }
+            chunkIndexWriter.remove(ChunkIndexWriter.OWNER_CHAPTER, chapterId, "chapterId == " + chapterId);
+            lexicalIndex.removeIf(isChapterDocument(chapterId));
+            // 章节记录可能已删除，无法确定所属项目
+            retrievalCache.invalidateAll();
+            return true;
+        } catch (Exception e) {
+            log.error("删除章节 {} 的索引时发生错误：", chapterId, e);
+            return false;
+        }
+    }
 
-            // 为角色信息创建文档
-            Document characterDoc = new Document(
-                    "character-" + characterId,
-                    createCharacterContent(character),
-                    createCharacterMetadata(character)
-            );
+    @Override
+    public ProjectIndexSizeDTO getProjectIndexSize(Long projectId) {
+        Map<String, Long> chunksByType = new TreeMap<>();
+        Map<String, Long> ownersByType = new TreeMap<>();
+        Map<String, Long> chunksByModel = new TreeMap<>();
+        String currentModelId = chunkIndexWriter.getModelId();
+        long total = 0;
+        long stale = 0;
+        LocalDateTime lastIndexedAt = null;
+        for (Map<String, Object> row : chunkIndexWriter.summarizeProject(projectId)) {
+            String ownerType = String.valueOf(row.get("ownerType"));
+            String modelId = row.get("modelId") == null ? "unknown" : String.valueOf(row.get("modelId"));
+            long chunks = ((Number) row.get("chunks")).longValue();
+            chunksByType.merge(ownerType, chunks, Long::sum);
+            ownersByType.merge(ownerType, ((Number) row.get("owners")).longValue(), Long::sum);
+            chunksByModel.merge(modelId, chunks, Long::sum);
+            total += chunks;
+            if (!currentModelId.equals(modelId)) {
+                stale += chunks;
+            }
+            LocalDateTime indexedAt = toLocalDateTime(row.get("lastIndexedAt"));
+            if (indexedAt != null && (lastIndexedAt == null || indexedAt.isAfter(lastIndexedAt))) {
+                lastIndexedAt = indexedAt;
+            }
+        }
+        return ProjectIndexSizeDTO.builder()
+                .projectId(projectId)
+                .totalChunks(total)
+                .chunksByType(chunksByType)
+                .ownersByType(ownersByType)
+                .chunksByModel(chunksByModel)
+                .currentModelId(currentModelId)
+                .staleChunks(stale)
+                .lastIndexedAt(lastIndexedAt)
+                .build();
+    }
 
-            // 将文档添加到向量存储中
-            vectorStore.add(Collections.singletonList(characterDoc));
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof LocalDateTime dateTime) {
+            return dateTime;
+        }
+        if (value instanceof java.sql.Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return null;
+    }
 
+    @Override
+    public boolean indexCharacter(Long characterId) {
+        try {
+            syncCharacter(characterId);
             log.info("已成功为角色 {} 创建索引", characterId);
             return true;
         } catch (Exception e) {
@@ -319,25 +448,32 @@ public class RagServiceImpl implements RagService {
         }
     }
 
-    @Override
-    public boolean indexWorld(Long worldId) {
-        try {
-            World world = worldMapper.selectById(worldId);
-            if (world == null) {
-                log.error("索引世界观失败：找不到ID为 {} 的世界观", worldId);
-                return false;
-            }
+    private ChunkIndexResult syncCharacter(Long characterId) {
+        Character character = characterMapper.selectById(characterId);
+        if (character == null) {
+            throw new IllegalArgumentException("找不到ID为 " + characterId + " 的角色");
+        }
+        return syncCharacter(character);
+    }
 
-            // 为世界观信息创建文档
-            Document worldDoc = new Document(
-                    "world-" + worldId,
-                    createWorldContent(world),
-                    createWorldMetadata(world)
-            );
+    private ChunkIndexResult syncCharacter(Character character) {
+        Long characterId = character.getId();
 
-            // 将文档添加到向量存储中
-            vectorStore.add(Collections.singletonList(worldDoc));
+        // 为角色信息创建文档
+        Document characterDoc = createCharacterDocument(character);
 
+        // 按分块清单写入向量存储，内容未变化时跳过
+        ChunkIndexResult result = chunkIndexWriter.syncDocument(ChunkIndexWriter.OWNER_CHARACTER, characterId,
+                character.getProjectId(), characterDoc);
+        lexicalIndex.put(LexicalIndex.projectScope(character.getProjectId()), List.of(characterDoc));
+        retrievalCache.invalidate(LexicalIndex.projectScope(character.getProjectId()));
+        return result;
+    }
+
+    @Override
+    public boolean indexWorld(Long worldId) {
+        try {
+            syncWorld(worldId);
             log.info("已成功为世界观 {} 创建索引", worldId);
             return true;
         } catch (Exception e) {
@@ -346,19 +482,37 @@ public class RagServiceImpl implements RagService {
         }
     }
 
+    private ChunkIndexResult syncWorld(Long worldId) {
+        World world = worldMapper.selectById(worldId);
+        if (world == null) {
+            throw new IllegalArgumentException("找不到ID为 " + worldId + " 的世界观");
+        }
+
+        // 为世界观信息创建文档
+        Document worldDoc = createWorldDocument(world);
+
+        // 按分块清单写入向量存储，世界观不属于单个项目
+        ChunkIndexResult result = chunkIndexWriter.syncDocument(ChunkIndexWriter.OWNER_WORLD, worldId, null, worldDoc);
+        // 世界观可被多个项目引用，更新所有已加载的项目
+        lexicalIndex.refresh(worldDoc);
+        retrievalCache.invalidateAll();
+        return result;
+    }
+
     @Override
     public List<Document> retrieveByProjectId(Long projectId, String query, int maxResults) {
         try {
             // 创建搜索请求
             SearchRequest request = SearchRequest.builder()
-                    .query(query)
-                    .topK(maxResults)
+                    .query(RetrievalCache.normalizeQuery(query))
+                    .topK(candidateCount(maxResults))
                     .similarityThreshold(0.7f)
                     .filterExpression("projectId == " + projectId)
                     .build();
 
-            // 执行相似度搜索
-            List<Document> results = vectorStore.similaritySearch(request);
+            // 向量检索与词法检索融合
+            List<Document> results = hybridSearch(request, LexicalIndex.projectScope(projectId),
+                    () -> loadProjectDocuments(projectId), maxResults, document -> true, "");
 
             log.info("查询 '{}' 返回了 {} 个相关文档", query, results.size());
             return results;
@@ -385,15 +539,19 @@ public class RagServiceImpl implements RagService {
 
             // 创建搜索请求
             SearchRequest request = SearchRequest.builder()
-                    .query(query)
-                    .topK(maxResults)
+                    .query(RetrievalCache.normalizeQuery(query))
+                    .topK(candidateCount(maxResults))
                     .similarityThreshold(0.7f)
                     .filterExpression("projectId == " + chapter.getProjectId() +
                                       " && id != " + "\"chapter-" + chapterId + "\"")
                     .build();
 
-            // 执行相似度搜索
-            List<Document> results = vectorStore.similaritySearch(request);
+            // 向量检索与词法检索融合，排除章节自身
+            Long projectId = chapter.getProjectId();
+            Predicate<String> self = isChapterDocument(chapterId);
+            List<Document> results = hybridSearch(request, LexicalIndex.projectScope(projectId),
+                    () -> loadProjectDocuments(projectId), maxResults, document -> !self.test(document.getId()),
+                    "exclude-chapter-" + chapterId);
 
             log.info("为章节 {} 检索到 {} 个相关文档", chapterId, results.size());
             return results;
@@ -403,105 +561,220 @@ public class RagServiceImpl implements RagService {
         }
     }
 
+    @Override
+    public List<Document> retrieveByTemplateId(Long templateId, String query, int maxResults) {
+        try {
+            SearchRequest request = SearchRequest.builder()
+                    .query(RetrievalCache.normalizeQuery(query))
+                    .topK(candidateCount(maxResults))
+                    .filterExpression("type == 'template' && templateId == '" + templateId + "'")
+                    .build();
+
+            List<Document> results = hybridSearch(request, LexicalIndex.templateScope(templateId),
+                    () -> loadTemplateDocuments(templateId), maxResults, document -> true, "");
+
+            log.info("模板 {} 的查询 '{}' 返回了 {} 个相关文档", templateId, query, results.size());
+            return results;
+        } catch (Exception e) {
+            log.error("检索模板相关文档时发生错误：", e);
+            return Collections.emptyList();
+        }
+    }
+
     /**
-     * 将文本分块，优化内存使用
+     * 混合检索：向量检索与词法检索各取若干候选，按倒数排名融合。
+     * 向量检索不可用时只返回词法检索结果，这种降级结果不写入缓存。
+     *
+     * @param vectorRequest 向量检索请求
+     * @param scope         词法索引范围
+     * @param loader        词法索引范围未加载时的文档加载器
+     * @param maxResults    最大结果数
+     * @param accept        词法检索结果的额外过滤条件
+     * @param condition     过滤条件在缓存键中的标识
      */
-    private List<String> chunkText(String text, int chunkSize, int overlap) {
-        List<String> chunks = new ArrayList<>();
-        if (text == null || text.isEmpty()) {
-            return chunks;
-        }
-
-        int textLength = text.length();
-        if (textLength <= chunkSize) {
-            chunks.add(text);
-            return chunks;
-        }
-
-        // 估计分块数量并预分配容量，减少动态扩容
-        int estimatedChunks = (textLength / (chunkSize - overlap)) + 1;
-        chunks = new ArrayList<>(estimatedChunks);
-
-        int start = 0;
-        while (start < textLength) {
-            // 计算结束位置，避免越界
-            int end = Math.min(start + chunkSize, textLength);
-
-            // 优化边界查找逻辑
-            if (end < textLength) {
-                // 限制搜索范围，避免过度搜索
-                int searchLimit = Math.min(50, end - start); // 最多向前/后搜索50个字符
-                int sentenceEnd = findOptimizedSentenceBoundary(text, end, searchLimit);
-                if (sentenceEnd > start) { // 确保边界有效
-                    end = sentenceEnd;
-                }
-            }
+    private List<Document> hybridSearch(SearchRequest vectorRequest, String scope, Supplier<List<Document>> loader,
+                                        int maxResults, Predicate<Document> accept, String condition) {
+        RetrievalCache.Key cacheKey = retrievalCache.key(scope, vectorRequest.getQuery(), maxResults, condition);
+        List<Document> cached = retrievalCache.lookup(cacheKey);
+        if (cached != null) {
+            log.debug("范围 {} 的检索命中缓存", scope);
+            return cached;
+        }
 
-            // 安全创建子字符串
-            String chunk = null;
-            try {
-                chunk = text.substring(start, end);
-            } catch (OutOfMemoryError e) {
-                log.error("创建文本块时内存溢出，位置: [{}, {}], 文本总长度: {}", start, end, textLength);
-                // 创建一个更小的块，或者放弃当前块
-                if (end - start > 1000) {
-                    end = start + 1000; // 尝试更小的块大小
-                    chunk = text.substring(start, end);
-                } else {
-                    // 如果即使很小的块也无法创建，则跳过
-                    break;
-                }
-            }
+        if (!hybridEnabled) {
+            List<Document> results = limit(vectorStore.similaritySearch(vectorRequest), maxResults);
+            retrievalCache.put(cacheKey, results);
+            return results;
+        }
 
-            if (chunk != null) {
-                chunks.add(chunk);
-            }
+        List<Document> vectorResults = searchVectors(vectorRequest);
+        List<Document> lexicalResults;
+        try {
+            lexicalResults = lexicalIndex.search(scope, loader, vectorRequest.getQuery(), vectorRequest.getTopK())
+                    .stream()
+                    .filter(accept)
+                    .toList();
+        } catch (Exception e) {
+            log.warn("词法检索失败，范围: {}，只使用向量检索结果: {}", scope, e.getMessage());
+            lexicalResults = List.of();
+        }
 
-            // 下一个块的起始位置，考虑重叠
-            start = end - overlap;
-            if (start < 0 || start >= end) { // 确保进度是向前的
-                start = end;
-            }
+        if (vectorResults == null) {
+            log.warn("向量检索不可用，范围 {} 只使用词法检索结果", scope);
+            return limit(lexicalResults, maxResults);
+        }
+        log.debug("范围 {} 向量检索 {} 个、词法检索 {} 个候选", scope, vectorResults.size(), lexicalResults.size());
+        List<Document> results = RankFusion.fuse(List.of(vectorResults, lexicalResults), RankFusion.DEFAULT_K, maxResults);
+        retrievalCache.put(cacheKey, results);
+        return results;
+    }
 
-            // 控制块数量，防止无限循环
-            if (chunks.size() >= 2 * estimatedChunks) {
-                log.warn("块数量超过预期，可能有循环问题，强制结束: {}/{}", chunks.size(), estimatedChunks);
-                break;
-            }
+    /**
+     * 执行向量检索，失败后在冷却时间内直接返回null
+     */
+    private List<Document> searchVectors(SearchRequest request) {
+        if (System.currentTimeMillis() < vectorUnavailableUntil) {
+            return null;
+        }
+        try {
+            return vectorStore.similaritySearch(request);
+        } catch (Exception e) {
+            vectorUnavailableUntil = System.currentTimeMillis() + vectorCooldownMs;
+            log.warn("向量检索失败，{} ms 内只使用词法检索: {}", vectorCooldownMs, e.getMessage());
+            return null;
         }
+    }
+
+    private int candidateCount(int maxResults) {
+        return hybridEnabled ? maxResults * Math.max(1, candidateMultiplier) : maxResults;
+    }
+
+    private static List<Document> limit(List<Document> documents, int maxResults) {
+        return documents.size() <= maxResults ? documents : documents.subList(0, maxResults);
+    }
+
+    @Override
+    public List<Document> exportProjectDocuments(Long projectId) {
+        return loadProjectDocuments(projectId);
+    }
+
+    @Override
+    public List<Document> exportTemplateDocuments(Long templateId) {
+        return loadTemplateDocuments(templateId);
+    }
 
-        return chunks;
+    private static Predicate<String> isChapterDocument(Long chapterId) {
+        String chunkPrefix = "chapter-" + chapterId + "-chunk-";
+        return id -> id.startsWith(chunkPrefix) || id.equals("chapter-" + chapterId);
     }
 
     /**
-     * 优化的句子边界查找方法
+     * 从数据库构建项目范围的全部词法索引文档：项目信息、章节分块、角色和项目引用的世界观
      */
-    private int findOptimizedSentenceBoundary(String text, int position, int searchLimit) {
-        // 向前查找指定范围内的句子结束符
-        int forward = Math.min(position + searchLimit, text.length());
-        for (int i = position; i < forward; i++) {
-            if (isSentenceEnd(text.charAt(i))) {
-                return i + 1;
+    private List<Document> loadProjectDocuments(Long projectId) {
+        List<Document> documents = new ArrayList<>();
+        Project project = projectMapper.selectById(projectId);
+        if (project == null) {
+            return documents;
+        }
+        documents.add(new Document("project-" + projectId, createProjectContent(project), createProjectMetadata(project)));
+
+        List<Chapter> chapters = chapterMapper.selectList(
+                new LambdaQueryWrapper<Chapter>().eq(Chapter::getProjectId, projectId));
+        for (Chapter chapter : chapters) {
+            String content = indexableContent(chapter);
+            if (content != null) {
+                for (TextChunk chunk : chapterChunker().split(content)) {
+                    documents.add(createChapterChunkDocument(chapter, chunk));
+                }
             }
         }
 
-        // 向后查找指定范围内的句子结束符
-        int backward = Math.max(position - searchLimit, 0);
-        for (int i = position; i > backward; i--) {
-            if (isSentenceEnd(text.charAt(i))) {
-                return i + 1;
+        List<Character> characters = characterMapper.selectList(
+                new LambdaQueryWrapper<Character>().eq(Character::getProjectId, projectId));
+        for (Character character : characters) {
+            documents.add(createCharacterDocument(character));
+        }
+
+        if (project.getWorldId() != null) {
+            World world = worldMapper.selectById(project.getWorldId());
+            if (world != null) {
+                documents.add(createWorldDocument(world));
             }
         }
+        return documents;
+    }
 
-        // 没找到句子边界，直接返回原位置
-        return position;
+    /**
+     * 从数据库分段读取模板内容，按向量化时相同的规则分块，文档ID与向量库一致
+     */
+    private List<Document> loadTemplateDocuments(Long templateId) {
+        List<Document> documents = new ArrayList<>();
+        Long contentLength = templateMapper.selectContentLength(templateId);
+        if (contentLength == null || contentLength == 0) {
+            return documents;
+        }
+        try (TemplateContentReader reader = new TemplateContentReader(templateMapper, templateId, contentLength)) {
+            TextChunker.Cursor cursor = TextChunker.of(templateChunkMode, templateChunkSize, templateChunkOverlap).open(reader);
+            for (TextChunk chunk = cursor.next(); chunk != null; chunk = cursor.next()) {
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put("id", "template-" + templateId);
+                metadata.put("templateId", templateId);
+                metadata.put("type", "template");
+                metadata.put("chunkIndex", chunk.index());
+                metadata.put("startOffset", chunk.start());
+                metadata.put("endOffset", chunk.end());
+                documents.add(new Document("template-" + templateId + "-chunk-" + chunk.index(), chunk.text(), metadata));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("读取模板 " + templateId + " 内容失败", e);
+        }
+        return documents;
     }
 
     /**
-     * 判断字符是否为句子结束符
+     * 章节的可索引内容，没有内容时返回null
      */
-    private boolean isSentenceEnd(char c) {
-        return c == '。' || c == '！' || c == '？' || c == '.' || c == '!' || c == '?';
+    private String indexableContent(Chapter chapter) {
+        String content = chapter.getContent();
+        if (content == null || content.isEmpty()) {
+            return null;
+        }
+
+        // 限制处理的文本长度，避免内存溢出
+        final int MAX_INDEXABLE_LENGTH = 50000; // 设置最大可索引长度
+        if (content.length() > MAX_INDEXABLE_LENGTH) {
+            log.warn("章节 {} 内容过长 ({}字符)，将只索引前 {} 字符",
+                    chapter.getId(), content.length(), MAX_INDEXABLE_LENGTH);
+            content = content.substring(0, MAX_INDEXABLE_LENGTH);
+        }
+        return content;
+    }
+
+    private Document createChapterChunkDocument(Chapter chapter, TextChunk chunk) {
+        Map<String, Object> metadata = createChapterMetadata(chapter);
+        metadata.put("chunkIndex", chunk.index());
+        return new Document("chapter-" + chapter.getId() + "-chunk-" + chunk.index(), chunk.text(), metadata);
+    }
+
+    private Document createCharacterDocument(Character character) {
+        return new Document(
+                "character-" + character.getId(),
+                createCharacterContent(character),
+                createCharacterMetadata(character)
+        );
+    }
+
+    private Document createWorldDocument(World world) {
+        return new Document(
+                "world-" + world.getId(),
+                createWorldContent(world),
+                createWorldMetadata(world)
+        );
+    }
+
+    private TextChunker chapterChunker() {
+        return TextChunker.of(chunkMode, chunkSize, chunkOverlap);
     }
 
     /**
@@ -7,6 +7,8 @@ import com.soukon.novelEditorAi.enums.VectorStatus;
 import com.soukon.novelEditorAi.mapper.TemplateMapper;
 import com.soukon.novelEditorAi.model.template.TemplateChatRequest;
 import com.soukon.novelEditorAi.model.template.TemplateChatContextVO;
+import com.soukon.novelEditorAi.rag.SemanticAnswerCache;
+import com.soukon.novelEditorAi.service.RagService;
 import com.soukon.novelEditorAi.service.TemplateChatService;
 import com.soukon.novelEditorAi.utils.QueryUtils;
 import com.soukon.novelEditorAi.utils.VectorStoreDebugUtil;
@@ -14,7 +16,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
-import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.openai.OpenAiChatOptions;
@@ -27,7 +31,6 @@ import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
 
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 模板对话服务实现类
@@ -42,34 +45,41 @@ public class TemplateChatServiceImpl implements TemplateChatService {
     @Autowired
     private VectorStore vectorStore;
 
+    @Autowired
+    private RagService ragService;
+
+    @Autowired
+    private SemanticAnswerCache answerCache;
+
     private final ChatClient chatClient;
 
+    /**
+     * 对话记忆，按对话ID分别保存，只在请求携带对话ID时使用
+     */
+    private final ChatMemory chatMemory;
+
+    private final MessageChatMemoryAdvisor memoryAdvisor;
+
+    /**
+     * 流式返回缓存答案时每段的字符数
+     */
+    private static final int REPLAY_SEGMENT_SIZE = 16;
+
     @Value("${novel.template.chat.max-results:5}")
     private int defaultMaxResults;
 
     @Value("${novel.template.chat.similarity-threshold:0.0}")
     private float defaultSimilarityThreshold;
 
-    @Value("${novel.template.chat.max-tokens:2000}")
-    private int maxTokens;
-
-    @Value("${novel.template.chat.temperature:0.7}")
-    private double temperature;
-
-    // 用于存储每个模板的对话上下文
-    private final ConcurrentHashMap<String, String> conversationContexts = new ConcurrentHashMap<>();
-
     @Autowired
-    public TemplateChatServiceImpl(ChatModel chatModel) {
-        MessageWindowChatMemory memory = MessageWindowChatMemory.builder()
-                .maxMessages(10)
-                .build();
-                
+    public TemplateChatServiceImpl(ChatModel chatModel, ChatMemory chatMemory,
+                                   @Value("${novel.template.chat.max-tokens:2000}") int maxTokens,
+                                   @Value("${novel.template.chat.temperature:0.7}") double temperature) {
+        this.chatMemory = chatMemory;
+        this.memoryAdvisor = MessageChatMemoryAdvisor.builder(chatMemory).build();
+
         this.chatClient = ChatClient.builder(chatModel)
-                .defaultAdvisors(
-                        MessageChatMemoryAdvisor.builder(memory).build(),
-                        new SimpleLoggerAdvisor()
-                )
+                .defaultAdvisors(new SimpleLoggerAdvisor())
                 .defaultOptions(
                         OpenAiChatOptions.builder()
                                 .maxTokens(maxTokens)
@@ -81,6 +91,7 @@ public class TemplateChatServiceImpl implements TemplateChatService {
 
     @Override
     public Result<String> chatWithTemplate(TemplateChatRequest request) {
+        long startTime = System.currentTimeMillis();
         try {
             // 验证请求参数
             Result<Boolean> validationResult = validateChatRequest(request);
@@ -101,6 +112,14 @@ public class TemplateChatServiceImpl implements TemplateChatService {
             
             Template template = templateMapper.selectOne(wrapper);
 
+            // 查找语义相近的已回答问题
+            String indexVersion = String.valueOf(template.getVectorEndTime());
+            SemanticAnswerCache.Lookup lookup = lookupAnswer(request, indexVersion);
+            if (lookup != null && lookup.hit() != null) {
+                rememberCachedAnswer(request, lookup.hit().answer());
+                return Result.success("对话成功", lookup.hit().answer());
+            }
+
             // 检索相关文档
             List<Document> relevantDocs = retrieveRelevantDocuments(request);
 
@@ -110,19 +129,14 @@ public class TemplateChatServiceImpl implements TemplateChatService {
             // 构建系统提示词
             String systemPrompt = buildSystemPrompt(template, context);
 
-            // 生成对话ID（如果没有提供）
-            String conversationId = StringUtils.hasText(request.getConversationId()) 
-                    ? request.getConversationId() 
-                    : "template-" + request.getTemplateId() + "-" + System.currentTimeMillis();
-
             // 进行对话
-            String response = chatClient.prompt()
-                    .system(systemPrompt)
-                    .user(request.getMessage())
+            String response = prompt(request, systemPrompt)
                     .call()
                     .content();
 
-            log.info("模板 {} 对话成功，对话ID: {}", request.getTemplateId(), conversationId);
+            answerCache.put(request.getTemplateId(), indexVersion, lookup, request.getMessage(), response,
+                    System.currentTimeMillis() - startTime);
+            log.info("模板 {} 对话成功，对话ID: {}", request.getTemplateId(), request.getConversationId());
             return Result.success("对话成功", response);
 
         } catch (Exception e) {
@@ -134,6 +148,7 @@ public class TemplateChatServiceImpl implements TemplateChatService {
     @Override
     public Flux<String> chatWithTemplateStream(TemplateChatRequest request) {
         return Flux.create(sink -> {
+            long startTime = System.currentTimeMillis();
             try {
                 // 验证请求参数
                 Result<Boolean> validationResult = validateChatRequest(request);
@@ -156,6 +171,25 @@ public class TemplateChatServiceImpl implements TemplateChatService {
                 
                 Template template = templateMapper.selectOne(wrapper);
 
+                // 命中缓存时按流式分段返回缓存的答案
+                String indexVersion = String.valueOf(template.getVectorEndTime());
+                SemanticAnswerCache.Lookup lookup = lookupAnswer(request, indexVersion);
+                if (lookup != null && lookup.hit() != null) {
+                    String answer = lookup.hit().answer();
+                    rememberCachedAnswer(request, answer);
+                    for (int start = 0; start < answer.length(); ) {
+                        int end = Math.min(start + REPLAY_SEGMENT_SIZE, answer.length());
+                        // 不在代理对中间切分
+                        if (end < answer.length() && Character.isHighSurrogate(answer.charAt(end - 1))) {
+                            end++;
+                        }
+                        sink.next(answer.substring(start, end));
+                        start = end;
+                    }
+                    sink.complete();
+                    return;
+                }
+
                 // 检索相关文档
                 List<Document> relevantDocs = retrieveRelevantDocuments(request);
 
@@ -165,25 +199,26 @@ public class TemplateChatServiceImpl implements TemplateChatService {
                 // 构建系统提示词
                 String systemPrompt = buildSystemPrompt(template, context);
 
-                // 生成对话ID（如果没有提供）
-                String conversationId = StringUtils.hasText(request.getConversationId()) 
-                        ? request.getConversationId() 
-                        : "template-" + request.getTemplateId() + "-" + System.currentTimeMillis();
-
                 // 进行流式对话
-                Flux<String> responseFlux = chatClient.prompt()
-                        .system(systemPrompt)
-                        .user(request.getMessage())
+                Flux<String> responseFlux = prompt(request, systemPrompt)
                         .stream()
                         .content();
 
+                StringBuilder answer = new StringBuilder();
                 responseFlux.subscribe(
-                        sink::next,
+                        content -> {
+                            answer.append(content);
+                            sink.next(content);
+                        },
                         sink::error,
-                        sink::complete
+                        () -> {
+                            answerCache.put(request.getTemplateId(), indexVersion, lookup, request.getMessage(),
+                                    answer.toString(), System.currentTimeMillis() - startTime);
+                            sink.complete();
+                        }
                 );
 
-                log.info("模板 {} 流式对话开始，对话ID: {}", request.getTemplateId(), conversationId);
+                log.info("模板 {} 流式对话开始，对话ID: {}", request.getTemplateId(), request.getConversationId());
 
             } catch (Exception e) {
                 log.error("模板流式对话失败: {}", e.getMessage(), e);
@@ -214,6 +249,47 @@ public class TemplateChatServiceImpl implements TemplateChatService {
         }
     }
 
+    /**
+     * 构建对话请求。携带对话ID时带入该对话的历史并记录本轮问答，
+     * 记忆按模板区分，同一对话ID用于不同模板时互不影响；未携带时为单轮对话，不占用记忆
+     */
+    private ChatClient.ChatClientRequestSpec prompt(TemplateChatRequest request, String systemPrompt) {
+        ChatClient.ChatClientRequestSpec spec = chatClient.prompt()
+                .system(systemPrompt)
+                .user(request.getMessage());
+        if (StringUtils.hasText(request.getConversationId())) {
+            spec.advisors(advisor -> advisor.advisors(memoryAdvisor)
+                    .param(ChatMemory.CONVERSATION_ID, memoryKey(request)));
+        }
+        return spec;
+    }
+
+    private static String memoryKey(TemplateChatRequest request) {
+        return "template-" + request.getTemplateId() + ":" + request.getConversationId();
+    }
+
+    /**
+     * 在答案缓存中查找。已有历史的对话中，同样的问题依赖上文，答案不能复用，不查找也不写入缓存
+     *
+     * @return 查找结果，不使用缓存时返回null
+     */
+    private SemanticAnswerCache.Lookup lookupAnswer(TemplateChatRequest request, String indexVersion) {
+        if (StringUtils.hasText(request.getConversationId()) && !chatMemory.get(memoryKey(request)).isEmpty()) {
+            return null;
+        }
+        return answerCache.lookup(request.getTemplateId(), indexVersion, request.getMessage());
+    }
+
+    /**
+     * 命中缓存时不经过大模型，本轮问答需要自行写入对话记忆，后续提问才能带上这一轮
+     */
+    private void rememberCachedAnswer(TemplateChatRequest request, String answer) {
+        if (StringUtils.hasText(request.getConversationId())) {
+            chatMemory.add(memoryKey(request), List.of(new UserMessage(request.getMessage()), new AssistantMessage(answer)));
+        }
+        log.info("模板 {} 使用缓存答案，对话ID: {}", request.getTemplateId(), request.getConversationId());
+    }
+
     /**
      * 验证对话请求参数
      */
@@ -241,44 +317,13 @@ public class TemplateChatServiceImpl implements TemplateChatService {
             int maxResults = request.getMaxResults() != null ? request.getMaxResults() : defaultMaxResults;
             float similarityThreshold = request.getSimilarityThreshold() != null ? request.getSimilarityThreshold() : defaultSimilarityThreshold;
 
-            // 尝试多种过滤策略，按成功率排序
-            String[] filterStrategies = {
-                "type == 'template' && templateId == '" + request.getTemplateId() + "'",
-            };
-
-            List<Document> documents = null;
-            String successfulFilter = null;
-
-            // 尝试每种过滤策略
-            for (String filterExpression : filterStrategies) {
-                try {
-                    log.debug("尝试过滤条件: {}", filterExpression);
-
-                    SearchRequest searchRequest = SearchRequest.builder()
-                            .query(request.getMessage())
-                            .topK(maxResults)
-//                            .similarityThreshold(similarityThreshold)
-                            .filterExpression(filterExpression)
-                            .build();
-
-                    documents = vectorStore.similaritySearch(searchRequest);
-
-                    if (!documents.isEmpty()) {
-                        successfulFilter = filterExpression;
-                        log.debug("过滤条件 '{}' 成功找到 {} 个文档", filterExpression, documents.size());
-                        break;
-                    } else {
-                        log.debug("过滤条件 '{}' 未找到文档", filterExpression);
-                    }
-
-                } catch (Exception e) {
-                    log.warn("过滤条件 '{}' 执行失败: {}", filterExpression, e.getMessage());
-                }
-            }
+            // 向量检索与词法检索融合，向量化服务不可用时只使用词法检索
+            List<Document> documents = ragService.retrieveByTemplateId(
+                    request.getTemplateId(), request.getMessage(), maxResults);
 
             // 如果所有过滤策略都失败，尝试无过滤器搜索并手动筛选
-            if (documents == null || documents.isEmpty()) {
-                log.warn("所有过滤策略都失败，尝试无过滤器搜索");
+            if (documents.isEmpty()) {
+                log.warn("按模板过滤未找到文档，尝试无过滤器搜索");
                 
                 try {
                     SearchRequest noFilterRequest = SearchRequest.builder()
@@ -318,8 +363,7 @@ public class TemplateChatServiceImpl implements TemplateChatService {
                 // 启动调试模式
                 VectorStoreDebugUtil.debugTemplateDocuments(vectorStore, request.getTemplateId());
             } else {
-                log.info("为模板 {} 检索到 {} 个相关文档，使用过滤条件: {}", 
-                        request.getTemplateId(), documents.size(), successfulFilter);
+                log.info("为模板 {} 检索到 {} 个相关文档", request.getTemplateId(), documents.size());
             }
 
             return documents;
@@ -9,23 +9,24 @@ import com.soukon.novelEditorAi.model.template.TemplateListDTO;
 import com.soukon.novelEditorAi.model.template.TemplateUploadRequest;
 import com.soukon.novelEditorAi.model.template.TemplateBasicVO;
 import com.soukon.novelEditorAi.model.template.TemplateExistenceVO;
+import com.soukon.novelEditorAi.rag.TemplateContentReader;
 import com.soukon.novelEditorAi.service.TemplateService;
 import com.soukon.novelEditorAi.service.TemplateVectorService;
+import com.soukon.novelEditorAi.utils.CharsetDetector;
 import com.soukon.novelEditorAi.utils.QueryUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * 模板服务实现类
@@ -40,6 +41,9 @@ public class TemplateServiceImpl implements TemplateService {
     @Autowired
     private TemplateVectorService templateVectorService;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     @Override
     public Result<Template> createTemplate(Template template) {
         try {
@@ -66,12 +70,14 @@ public class TemplateServiceImpl implements TemplateService {
             }
             
             // 获取内容 - 文件优先，其次是文本内容
+            MultipartFile file = null;
             String content = null;
             
-            // 如果有文件，优先读取文件内容
+            // 如果有文件，优先使用文件内容，插入后分段写入
             if (request.getFile() != null && !request.getFile().isEmpty()) {
-                content = readFile(request.getFile());
-                log.info("从文件读取模板内容，文件名: {}", request.getFile().getOriginalFilename());
+                file = request.getFile();
+                content = "";
+                log.info("从文件读取模板内容，文件名: {}", file.getOriginalFilename());
             } 
             // 如果没有文件但有文本内容
             else if (StringUtils.hasText(request.getContent())) {
@@ -90,7 +96,13 @@ public class TemplateServiceImpl implements TemplateService {
                     .content(content)
                     .build();
             
-            templateMapper.insert(template);
+            MultipartFile upload = file;
+            transactionTemplate.executeWithoutResult(status -> {
+                templateMapper.insert(template);
+                if (upload != null) {
+                    appendFile(template.getId(), upload);
+                }
+            });
             log.info("创建模板成功: {}", template.getId());
             return Result.success("创建成功", template);
         } catch (Exception e) {
@@ -168,28 +180,32 @@ public class TemplateServiceImpl implements TemplateService {
                 return Result.error("模板ID不能为空");
             }
             
-            // 检查模板是否存在
-            Template existingTemplate = templateMapper.selectById(request.getId());
+            // 检查模板是否存在，不加载模板内容
+            LambdaQueryWrapper<Template> wrapper = new LambdaQueryWrapper<>();
+            QueryUtils.fillSelect(wrapper, Template.class, TemplateBasicVO.class);
+            wrapper.eq(Template::getId, request.getId());
+            Template existingTemplate = templateMapper.selectOne(wrapper);
             if (existingTemplate == null) {
                 return Result.error("模板不存在");
             }
             
             // 获取内容 - 文件优先，其次是文本内容，如果都没有则保留原有内容
+            MultipartFile file = null;
             String content = null;
             
-            // 如果有文件，优先读取文件内容
+            // 如果有文件，优先使用文件内容：先清空原有内容再分段写入
             if (request.getFile() != null && !request.getFile().isEmpty()) {
-                content = readFile(request.getFile());
-                log.info("从文件读取模板内容，文件名: {}", request.getFile().getOriginalFilename());
+                file = request.getFile();
+                content = "";
+                log.info("从文件读取模板内容，文件名: {}", file.getOriginalFilename());
             } 
             // 如果没有文件但有文本内容
             else if (StringUtils.hasText(request.getContent())) {
                 content = request.getContent();
                 log.info("使用提供的文本内容更新模板");
             } 
-            // 如果既没有文件也没有文本内容，保持原有内容不变
+            // 如果既没有文件也没有文本内容，保持原有内容不变（content为null时不更新该字段）
             else {
-                content = existingTemplate.getContent();
                 log.info("保持原有内容不变");
             }
             
@@ -201,7 +217,13 @@ public class TemplateServiceImpl implements TemplateService {
                     .content(content)
                     .build();
             
-            templateMapper.updateById(template);
+            MultipartFile upload = file;
+            transactionTemplate.executeWithoutResult(status -> {
+                templateMapper.updateById(template);
+                if (upload != null) {
+                    appendFile(template.getId(), upload);
+                }
+            });
             log.info("更新模板成功: {}", template.getId());
             return Result.success("更新成功", true);
         } catch (Exception e) {
@@ -349,15 +371,35 @@ public class TemplateServiceImpl implements TemplateService {
     }
     
     /**
-     * 读取文件内容
+     * 把文件内容分段追加到模板内容末尾
+     * 自动识别UTF-8/UTF-16/GB18030编码，每次解码一段后立即写入数据库，不在内存中保留整个文件的内容
+     * @param templateId 模板ID
      * @param file 文件
-     * @return 文件内容
-     * @throws IOException IO异常
+     * @throws UncheckedIOException 读取文件失败
      */
-    private String readFile(MultipartFile file) throws IOException {
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
-            return reader.lines().collect(Collectors.joining("\n"));
+    private void appendFile(Long templateId, MultipartFile file) {
+        char[] slice = new char[TemplateContentReader.SLICE_SIZE];
+        int length = 0;
+        try (Reader reader = CharsetDetector.openReader(file.getInputStream())) {
+            int read;
+            while ((read = reader.read(slice, length, slice.length - length)) != -1) {
+                length += read;
+                if (length < slice.length) {
+                    continue;
+                }
+                // 不在代理对中间切分，末尾的高代理项留到下一段
+                int end = Character.isHighSurrogate(slice[length - 1]) ? length - 1 : length;
+                templateMapper.appendContent(templateId, new String(slice, 0, end));
+                length -= end;
+                if (length > 0) {
+                    slice[0] = slice[end];
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (length > 0) {
+            templateMapper.appendContent(templateId, new String(slice, 0, length));
         }
     }
 
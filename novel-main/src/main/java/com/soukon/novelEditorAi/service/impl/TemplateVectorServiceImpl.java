@@ -3,25 +3,38 @@ package com.soukon.novelEditorAi.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.soukon.novelEditorAi.common.Result;
 import com.soukon.novelEditorAi.entities.Template;
+import com.soukon.novelEditorAi.entities.VectorIndexJob;
+import com.soukon.novelEditorAi.enums.IndexJobStatus;
 import com.soukon.novelEditorAi.enums.VectorStatus;
 import com.soukon.novelEditorAi.mapper.TemplateMapper;
+import com.soukon.novelEditorAi.model.template.TemplateBatchVectorProgressDTO;
 import com.soukon.novelEditorAi.model.template.TemplateVectorProgressDTO;
 import com.soukon.novelEditorAi.model.template.TemplateBasicVO;
 import com.soukon.novelEditorAi.model.template.TemplateExistenceVO;
+import com.soukon.novelEditorAi.rag.ChunkIndexWriter;
+import com.soukon.novelEditorAi.rag.EmbeddingPipeline;
+import com.soukon.novelEditorAi.rag.IndexJobContext;
+import com.soukon.novelEditorAi.rag.IndexJobHandler;
+import com.soukon.novelEditorAi.rag.IndexJobQueue;
+import com.soukon.novelEditorAi.rag.LexicalIndex;
+import com.soukon.novelEditorAi.rag.RetrievalCache;
+import com.soukon.novelEditorAi.rag.SemanticAnswerCache;
+import com.soukon.novelEditorAi.rag.TemplateContentReader;
+import com.soukon.novelEditorAi.rag.TextChunker;
+import com.soukon.novelEditorAi.rag.VectorProgressPublisher;
 import com.soukon.novelEditorAi.service.TemplateVectorService;
 import com.soukon.novelEditorAi.utils.QueryUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.transformer.splitter.TokenTextSplitter;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.StringUtils;
+import org.springframework.transaction.support.TransactionTemplate;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
@@ -34,57 +47,71 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 @Service
 @Slf4j
-public class TemplateVectorServiceImpl implements TemplateVectorService {
+public class TemplateVectorServiceImpl implements TemplateVectorService, IndexJobHandler {
 
     @Autowired
     private TemplateMapper templateMapper;
 
-    @Autowired
-    private VectorStore vectorStore;
-
     @Value("${novel.template.chunk-size:500}")
     private int chunkSize;
 
     @Value("${novel.template.chunk-overlap:100}")
     private int chunkOverlap;
 
-    @Value("${novel.template.max-indexable-length:1000000}")
-    private int maxIndexableLength;
+    /**
+     * 分块长度计量方式：characters 按字符数，tokens 按估算的token数
+     */
+    @Value("${novel.template.chunk-mode:characters}")
+    private String chunkMode;
+
+    @Autowired
+    private EmbeddingPipeline embeddingPipeline;
+
+    @Autowired
+    private LexicalIndex lexicalIndex;
+
+    @Autowired
+    private RetrievalCache retrievalCache;
+
+    @Autowired
+    private SemanticAnswerCache answerCache;
+
+    @Autowired
+    private IndexJobQueue indexJobQueue;
 
-    // 用于存储向量化进度的内存缓存
-    private final Map<Long, TemplateVectorProgressDTO> progressCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private VectorProgressPublisher progressPublisher;
+
+    @Autowired
+    private ChunkIndexWriter chunkIndexWriter;
+
+    /**
+     * 进度流的心跳间隔，心跳时推送当前进度，任务在其他节点执行时也能看到变化
+     */
+    @Value("${novel.template.progress-heartbeat-seconds:15}")
+    private long progressHeartbeatSeconds;
+
+    /**
+     * 开始写入前的进度，其余进度按已写入的分块数计算
+     */
+    private static final int CHUNKED_PROGRESS = 5;
 
     @Override
     public Result<TemplateVectorProgressDTO> getVectorProgress(Long templateId) {
         try {
-            // 使用注解方案动态控制查询字段
-            LambdaQueryWrapper<Template> wrapper = new LambdaQueryWrapper<>();
-            QueryUtils.fillSelect(wrapper, Template.class, TemplateBasicVO.class);
-            wrapper.eq(Template::getId, templateId);
-            
-            Template template = templateMapper.selectOne(wrapper);
-            if (template == null) {
-                return Result.error("模板不存在");
+            // 本节点正在向量化时直接返回内存中的进度，不查询数据库
+            TemplateVectorProgressDTO localProgress = progressPublisher.latest(templateId);
+            if (localProgress != null) {
+                return Result.success("查询成功", localProgress);
             }
 
-            // 先从缓存中获取
-            TemplateVectorProgressDTO cachedProgress = progressCache.get(templateId);
-            if (cachedProgress != null && VectorStatus.INDEXING.getCode().equals(cachedProgress.getVectorStatus())) {
-                return Result.success("查询成功", cachedProgress);
+            TemplateVectorProgressDTO progress = loadProgress(templateId);
+            if (progress == null) {
+                return Result.error("模板不存在");
             }
-
-            // 从数据库获取最新状态
-            TemplateVectorProgressDTO progress = TemplateVectorProgressDTO.builder()
-                    .templateId(template.getId())
-                    .templateName(template.getName())
-                    .vectorStatus(template.getVectorStatus() != null ? template.getVectorStatus() : VectorStatus.NOT_INDEXED.getCode())
-                    .vectorProgress(template.getVectorProgress() != null ? template.getVectorProgress() : 0)
-                    .vectorStartTime(template.getVectorStartTime())
-                    .vectorEndTime(template.getVectorEndTime())
-                    .vectorErrorMessage(template.getVectorErrorMessage())
-                    .canChat(VectorStatus.INDEXED.getCode().equals(template.getVectorStatus()))
-                    .build();
-
             return Result.success("查询成功", progress);
         } catch (Exception e) {
             log.error("查询模板向量化进度失败: {}", e.getMessage(), e);
@@ -92,58 +119,140 @@ public class TemplateVectorServiceImpl implements TemplateVectorService {
         }
     }
 
+    /**
+     * 从数据库读取进度，执行中的任务在检查点更新数据库
+     *
+     * @return 模板不存在时返回null
+     */
+    private TemplateVectorProgressDTO loadProgress(Long templateId) {
+        // 使用注解方案动态控制查询字段
+        LambdaQueryWrapper<Template> wrapper = new LambdaQueryWrapper<>();
+        QueryUtils.fillSelect(wrapper, Template.class, TemplateBasicVO.class);
+        wrapper.eq(Template::getId, templateId);
+
+        Template template = templateMapper.selectOne(wrapper);
+        if (template == null) {
+            return null;
+        }
+        return TemplateVectorProgressDTO.builder()
+                .templateId(template.getId())
+                .templateName(template.getName())
+                .vectorStatus(template.getVectorStatus() != null ? template.getVectorStatus() : VectorStatus.NOT_INDEXED.getCode())
+                .vectorProgress(template.getVectorProgress() != null ? template.getVectorProgress() : 0)
+                .vectorStartTime(template.getVectorStartTime())
+                .vectorEndTime(template.getVectorEndTime())
+                .vectorErrorMessage(template.getVectorErrorMessage())
+                .canChat(VectorStatus.INDEXED.getCode().equals(template.getVectorStatus()))
+                .build();
+    }
+
     @Override
     @Transactional
     public Result<Boolean> indexTemplate(Long templateId) {
+        return submitIndexJob(templateId, null);
+    }
+
+    /**
+     * 校验模板并提交向量化任务
+     *
+     * @param templateId 模板ID
+     * @param batchId    批量任务ID，单个提交时为null
+     */
+    private Result<Boolean> submitIndexJob(Long templateId, String batchId) {
         try {
-            Template template = templateMapper.selectById(templateId);
+            // 只查询基本信息，模板内容在向量化时分段读取
+            LambdaQueryWrapper<Template> wrapper = new LambdaQueryWrapper<>();
+            QueryUtils.fillSelect(wrapper, Template.class, TemplateBasicVO.class);
+            wrapper.eq(Template::getId, templateId);
+
+            Template template = templateMapper.selectOne(wrapper);
             if (template == null) {
                 return Result.error("模板不存在");
             }
 
-            if (!StringUtils.hasText(template.getContent())) {
+            Long contentLength = templateMapper.selectContentLength(templateId);
+            if (contentLength == null || contentLength == 0) {
                 return Result.error("模板内容为空，无法进行向量化");
             }
 
-            // 检查是否正在索引中
-            if (VectorStatus.INDEXING.getCode().equals(template.getVectorStatus())) {
+            // 检查是否有未结束的向量化任务
+            if (indexJobQueue.findActive(IndexJobQueue.TYPE_TEMPLATE, templateId) != null) {
                 return Result.error("模板正在索引中，请稍后再试");
             }
+            if (VectorStatus.INDEXING.getCode().equals(template.getVectorStatus())) {
+                log.warn("模板 {} 处于索引中状态但没有对应的任务，重新提交向量化", templateId);
+            }
 
             // 更新状态为索引中
             updateTemplateVectorStatus(templateId, VectorStatus.INDEXING, 0, LocalDateTime.now(), null, null);
 
-            try {
-                // 先删除现有索引
-                deleteTemplateIndexInternal(templateId);
-
-                // 执行向量化
-                boolean success = performVectorization(template);
-
-                if (success) {
-                    // 更新状态为已索引
-                    updateTemplateVectorStatus(templateId, VectorStatus.INDEXED, 100, null, LocalDateTime.now(), null);
-                    progressCache.remove(templateId); // 清除缓存
-                    log.info("模板 {} 向量化成功", templateId);
-                    return Result.success("向量化成功", true);
-                } else {
-                    // 更新状态为失败
-                    updateTemplateVectorStatus(templateId, VectorStatus.FAILED, 0, null, LocalDateTime.now(), "向量化处理失败");
-                    progressCache.remove(templateId); // 清除缓存
-                    return Result.error("向量化失败");
-                }
-            } catch (Exception e) {
-                // 更新状态为失败
-                updateTemplateVectorStatus(templateId, VectorStatus.FAILED, 0, null, LocalDateTime.now(), e.getMessage());
-                progressCache.remove(templateId); // 清除缓存
-                throw e;
-            }
+            // 提交持久化的向量化任务，由任意节点领取执行；现有索引由任务首次执行时删除，
+            // 不在事务中删除向量库中的数据，事务回滚时模板状态和索引保持一致
+            Long jobId = indexJobQueue.submit(IndexJobQueue.TYPE_TEMPLATE, templateId, 0, batchId);
+            log.info("模板 {} 已提交向量化任务 {}", templateId, jobId);
+            return Result.success("已提交向量化任务", true);
         } catch (Exception e) {
             log.error("模板向量化失败: {}", e.getMessage(), e);
             return Result.error("向量化失败: " + e.getMessage());
         }
     }
 
+    @Override
+    public String jobType() {
+        return IndexJobQueue.TYPE_TEMPLATE;
+    }
+
+    @Override
+    public void execute(VectorIndexJob job, IndexJobContext context) {
+        Long templateId = job.getTargetId();
+        LambdaQueryWrapper<Template> wrapper = new LambdaQueryWrapper<>();
+        QueryUtils.fillSelect(wrapper, Template.class, TemplateBasicVO.class);
+        wrapper.eq(Template::getId, templateId);
+        Template template = templateMapper.selectOne(wrapper);
+        Long contentLength = templateMapper.selectContentLength(templateId);
+        if (template == null || contentLength == null || contentLength == 0) {
+            log.warn("模板 {} 不存在或内容为空，结束向量化任务 {}", templateId, job.getId());
+            return;
+        }
+
+        // 首次执行先删除现有索引，重试时从检查点继续，不再删除
+        if (job.getNextChunk() == null || job.getNextChunk() == 0) {
+            deleteTemplateIndexInternal(templateId);
+        }
+
+        // 检查点回调会更新任务的累计写入数，须在执行前取出此前已写入的数量
+        int previouslyStored = job.getStoredChunks() == null ? 0 : job.getStoredChunks();
+        try {
+            EmbeddingPipeline.PipelineResult result = performVectorization(template, contentLength, job, context);
+            if (context.isCancelled()) {
+                return;
+            }
+            if (!result.isSuccess()) {
+                // 交给任务执行器按退避策略重试，下次从检查点继续
+                throw new IllegalStateException(result.failed() + " 个分块向量化失败，已写入 " + job.getStoredChunks() + " 个");
+            }
+            // 按清单核对写入的分块数，不再通过向量检索验证
+            long expected = previouslyStored + result.stored();
+            long recorded = chunkIndexWriter.count(ChunkIndexWriter.OWNER_TEMPLATE, templateId);
+            if (recorded != expected) {
+                throw new IllegalStateException("分块清单记录 " + recorded + " 个，应为 " + expected + " 个");
+            }
+
+            updateTemplateVectorStatus(templateId, VectorStatus.INDEXED, 100, null, LocalDateTime.now(), null);
+            publishFinalProgress(templateId);
+            log.info("模板 {} 向量化成功", templateId);
+        } finally {
+            // 任务被接管或等待重试时不再由本节点提供进度，查询改为读取数据库
+            progressPublisher.forget(templateId);
+        }
+    }
+
+    @Override
+    public void onFailed(VectorIndexJob job, String errorMessage) {
+        updateTemplateVectorStatus(job.getTargetId(), VectorStatus.FAILED, 0, null, LocalDateTime.now(), errorMessage);
+        publishFinalProgress(job.getTargetId());
+    }
+
     @Override
     @Async
     public Result<Boolean> indexTemplateAsync(Long templateId) {
@@ -164,12 +273,13 @@ public class TemplateVectorServiceImpl implements TemplateVectorService {
                 return Result.error("模板不存在");
             }
 
-            // 删除向量索引
+            // 取消未结束的向量化任务，再删除向量索引
+            indexJobQueue.cancelActive(IndexJobQueue.TYPE_TEMPLATE, templateId, "向量索引已删除");
             deleteTemplateIndexInternal(templateId);
 
             // 重置向量化状态
             updateTemplateVectorStatus(templateId, VectorStatus.NOT_INDEXED, 0, null, null, null);
-            progressCache.remove(templateId); // 清除缓存
+            publishFinalProgress(templateId);
 
             log.info("模板 {} 向量索引删除成功", templateId);
             return Result.success("删除成功", true);
@@ -180,35 +290,45 @@ public class TemplateVectorServiceImpl implements TemplateVectorService {
     }
 
     @Override
-    @Transactional
-    public Result<Boolean> batchIndexTemplates(List<Long> templateIds) {
+    public Result<String> batchIndexTemplates(List<Long> templateIds) {
         try {
             if (templateIds == null || templateIds.isEmpty()) {
                 return Result.error("模板ID列表不能为空");
             }
 
+            String batchId = UUID.randomUUID().toString();
             List<Long> successIds = new ArrayList<>();
             List<String> errors = new ArrayList<>();
 
-            for (Long templateId : templateIds) {
+            // 每个模板在独立的事务中提交任务，单个模板失败不影响其他模板；
+            // 任务由执行器线程池并行处理，并发数受 novel.rag.jobs.max-concurrency 限制
+            for (Long templateId : new LinkedHashSet<>(templateIds)) {
                 try {
-                    Result<Boolean> result = indexTemplate(templateId);
-                    if (result.getCode() == 200) {
+                    Result<Boolean> result = transactionTemplate.execute(status -> {
+                        Result<Boolean> submitted = submitIndexJob(templateId, batchId);
+                        if (submitted.getCode() != 200) {
+                            status.setRollbackOnly();
+                        }
+                        return submitted;
+                    });
+                    if (result != null && result.getCode() == 200) {
                         successIds.add(templateId);
                     } else {
-                        errors.add("模板" + templateId + ": " + result.getMessage());
+                        errors.add("模板" + templateId + ": " + (result == null ? "提交失败" : result.getMessage()));
                     }
                 } catch (Exception e) {
                     errors.add("模板" + templateId + ": " + e.getMessage());
                 }
             }
 
+            log.info("批量向量化 {} 已提交 {} 个模板，失败 {} 个", batchId, successIds.size(), errors.size());
             if (errors.isEmpty()) {
-                return Result.success("批量向量化成功", true);
+                return Result.success("已提交批量向量化任务", batchId);
             } else if (successIds.isEmpty()) {
                 return Result.error("批量向量化失败: " + String.join("; ", errors));
             } else {
-                return Result.success("部分向量化成功，成功: " + successIds.size() + "个，失败: " + errors.size() + "个", true);
+                return Result.success("部分提交成功，成功: " + successIds.size() + "个，失败: " + errors.size() + "个（"
+                        + String.join("; ", errors) + "）", batchId);
             }
         } catch (Exception e) {
             log.error("批量模板向量化失败: {}", e.getMessage(), e);
@@ -217,117 +337,308 @@ public class TemplateVectorServiceImpl implements TemplateVectorService {
     }
 
     @Override
-    public Flux<TemplateVectorProgressDTO> getVectorProgressStream(Long templateId) {
-        return Flux.interval(Duration.ofSeconds(1))
-                .map(tick -> {
-                    Result<TemplateVectorProgressDTO> result = getVectorProgress(templateId);
-                    return result.getCode() == 200 ? result.getData() : null;
+    public Result<TemplateBatchVectorProgressDTO> getBatchProgress(String batchId) {
+        try {
+            List<VectorIndexJob> jobs = indexJobQueue.findByBatch(batchId);
+            if (jobs.isEmpty()) {
+                return Result.error("批量任务不存在");
+            }
+            BatchProgress batch = new BatchProgress(batchId);
+            batch.apply(loadBatchSnapshot(batch, jobs));
+            return Result.success("查询成功", batch.toDTO());
+        } catch (Exception e) {
+            log.error("查询批量向量化进度失败: {}", e.getMessage(), e);
+            return Result.error("查询失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Flux<TemplateBatchVectorProgressDTO> getBatchProgressStream(String batchId) {
+        Duration heartbeat = Duration.ofSeconds(Math.max(1, progressHeartbeatSeconds));
+        // 数据库查询都在弹性线程池中执行，不占用定时器所在的并行调度器
+        return Mono.fromCallable(() -> indexJobQueue.findByBatch(batchId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .filter(jobs -> !jobs.isEmpty())
+                .flatMapMany(jobs -> {
+                    BatchProgress batch = new BatchProgress(batchId);
+                    // 本节点执行的模板由进度推送驱动，先订阅推送再读取数据库进度，两者之间的变化不会丢失；
+                    // 心跳时重新读取任务状态，只为执行中和刚结束的模板读取进度，任务在其他节点执行时也能看到变化
+                    Flux<TemplateVectorProgressDTO> pushed = Flux.merge(jobs.stream()
+                            .map(job -> progressPublisher.subscribe(job.getTargetId()))
+                            .toList());
+                    Flux<BatchSnapshot> snapshots = Flux.concat(
+                                    Mono.just(jobs),
+                                    Flux.interval(heartbeat, heartbeat)
+                                            .onBackpressureDrop()
+                                            .concatMap(tick -> Mono.fromCallable(() -> indexJobQueue.findByBatch(batchId))
+                                                    .subscribeOn(Schedulers.boundedElastic())
+                                                    .onErrorResume(e -> {
+                                                        log.warn("读取批量向量化 {} 的任务状态失败: {}", batchId, e.getMessage());
+                                                        return Mono.empty();
+                                                    })))
+                            .concatMap(currentJobs -> Mono.fromCallable(() -> loadBatchSnapshot(batch, currentJobs))
+                                    .subscribeOn(Schedulers.boundedElastic()));
+                    // 合并后串行更新聚合状态
+                    return Flux.<Object>merge(pushed, snapshots)
+                            .map(signal -> {
+                                if (signal instanceof BatchSnapshot snapshot) {
+                                    batch.apply(snapshot);
+                                } else {
+                                    batch.apply((TemplateVectorProgressDTO) signal);
+                                }
+                                return batch.toDTO();
+                            });
                 })
-                .filter(Objects::nonNull)
-                .takeUntil(progress -> 
-                    !VectorStatus.INDEXING.getCode().equals(progress.getVectorStatus())
-                )
+                .takeUntil(TemplateBatchVectorProgressDTO::getFinished)
                 .distinctUntilChanged();
     }
 
     /**
-     * 执行向量化处理
+     * 读取批次的任务状态快照，只为尚无进度、执行中和刚结束的模板读取进度
      */
-    private boolean performVectorization(Template template) {
-        try {
-            String content = template.getContent();
-            
-            // 限制处理的文本长度
-            if (content.length() > maxIndexableLength) {
-                log.warn("模板 {} 内容过长 ({}字符)，将只索引前 {} 字符",
-                        template.getId(), content.length(), maxIndexableLength);
-                content = content.substring(0, maxIndexableLength);
+    private BatchSnapshot loadBatchSnapshot(BatchProgress batch, List<VectorIndexJob> jobs) {
+        Map<Long, TemplateVectorProgressDTO> templates = new HashMap<>();
+        for (VectorIndexJob job : jobs) {
+            Long templateId = job.getTargetId();
+            if (batch.needsRefresh(templateId, job.getStatus())) {
+                TemplateVectorProgressDTO progress = currentProgress(templateId);
+                if (progress != null) {
+                    templates.put(templateId, progress);
+                }
             }
+        }
+        return new BatchSnapshot(jobs, templates);
+    }
 
-            // 更新进度到20%
-            updateProgressInCache(template.getId(), 20);
+    private record BatchSnapshot(List<VectorIndexJob> jobs, Map<Long, TemplateVectorProgressDTO> templates) {
+    }
 
-            // 将模板内容分块
-            List<String> chunks = chunkText(content, chunkSize, chunkOverlap);
-            List<Document> documents = new ArrayList<>();
+    /**
+     * 批量向量化的聚合进度，按任务状态快照和模板进度推送更新。
+     * 任务状态和模板进度结束后不会回退，较早读取的快照不会覆盖推送带来的结束状态。
+     */
+    private static class BatchProgress {
 
-            // 更新进度到40%
-            updateProgressInCache(template.getId(), 40);
+        private final String batchId;
 
-            // 为每个块创建文档
-            for (int i = 0; i < chunks.size(); i++) {
-                Map<String, Object> metadata = createTemplateMetadata(template);
-                metadata.put("chunkIndex", i);
-                metadata.put("totalChunks", chunks.size());
+        /**
+         * 模板ID -> 任务状态，保持提交顺序
+         */
+        private final Map<Long, String> jobStatuses = new LinkedHashMap<>();
 
-                Document doc = new Document(
-                        "template-" + template.getId() + "-chunk-" + i,
-                        chunks.get(i),
-                        metadata
-                );
-                documents.add(doc);
+        /**
+         * 模板ID -> 进度，快照在弹性线程中读取时会访问
+         */
+        private final Map<Long, TemplateVectorProgressDTO> templates = new ConcurrentHashMap<>();
+
+        BatchProgress(String batchId) {
+            this.batchId = batchId;
+        }
 
-                // 更新进度 (40% - 80%)
-                int progress = 40 + (int) ((double) (i + 1) / chunks.size() * 40);
-                updateProgressInCache(template.getId(), progress);
+        boolean needsRefresh(Long templateId, String jobStatus) {
+            TemplateVectorProgressDTO known = templates.get(templateId);
+            if (known == null || IndexJobStatus.RUNNING.getCode().equals(jobStatus)) {
+                return true;
             }
+            return isFinished(jobStatus) && VectorStatus.INDEXING.getCode().equals(known.getVectorStatus());
+        }
 
-            // 将文档添加到向量存储中
-            vectorStore.add(documents);
+        void apply(BatchSnapshot snapshot) {
+            for (VectorIndexJob job : snapshot.jobs()) {
+                String current = jobStatuses.get(job.getTargetId());
+                if (!isFinished(current)) {
+                    jobStatuses.put(job.getTargetId(), job.getStatus());
+                }
+            }
+            snapshot.templates().forEach((templateId, progress) -> {
+                TemplateVectorProgressDTO known = templates.get(templateId);
+                if (known == null || VectorStatus.INDEXING.getCode().equals(known.getVectorStatus())) {
+                    templates.put(templateId, progress);
+                }
+            });
+        }
 
-            // 更新进度到100%
-            updateProgressInCache(template.getId(), 100);
+        void apply(TemplateVectorProgressDTO progress) {
+            Long templateId = progress.getTemplateId();
+            String current = jobStatuses.get(templateId);
+            if (current == null || isFinished(current)) {
+                return;
+            }
+            templates.put(templateId, progress);
+            if (VectorStatus.INDEXED.getCode().equals(progress.getVectorStatus())) {
+                jobStatuses.put(templateId, IndexJobStatus.COMPLETED.getCode());
+            } else if (VectorStatus.FAILED.getCode().equals(progress.getVectorStatus())) {
+                jobStatuses.put(templateId, IndexJobStatus.FAILED.getCode());
+            } else if (VectorStatus.INDEXING.getCode().equals(progress.getVectorStatus())) {
+                jobStatuses.put(templateId, IndexJobStatus.RUNNING.getCode());
+            }
+        }
 
-            log.info("已成功为模板 {} 创建索引，共 {} 个块", template.getId(), chunks.size());
-            
-            // 验证文档是否已正确存储
-            try {
-                String verifyFilter = "templateId == '" + template.getId() + "'";
-                SearchRequest verifyRequest = SearchRequest.builder()
-                        .query("test")
-                        .topK(1)
-                        .similarityThreshold(0.0f)
-                        .filterExpression(verifyFilter)
-                        .build();
-                List<Document> verifyResults = vectorStore.similaritySearch(verifyRequest);
-                log.debug("验证模板 {} 的文档存储，找到 {} 个文档", template.getId(), verifyResults.size());
-                
-                if (verifyResults.isEmpty()) {
-                    log.warn("警告：模板 {} 向量化完成但未找到存储的文档", template.getId());
+        TemplateBatchVectorProgressDTO toDTO() {
+            int pending = 0;
+            int running = 0;
+            int completed = 0;
+            int failed = 0;
+            long progressSum = 0;
+            List<TemplateVectorProgressDTO> templateProgress = new ArrayList<>(jobStatuses.size());
+            for (Map.Entry<Long, String> entry : jobStatuses.entrySet()) {
+                TemplateVectorProgressDTO progress = templates.get(entry.getKey());
+                String status = entry.getValue();
+                if (IndexJobStatus.COMPLETED.getCode().equals(status)) {
+                    completed++;
+                    progressSum += 100;
+                } else if (IndexJobStatus.FAILED.getCode().equals(status)) {
+                    failed++;
+                    progressSum += 100;
+                } else {
+                    if (IndexJobStatus.RUNNING.getCode().equals(status)) {
+                        running++;
+                    } else {
+                        pending++;
+                    }
+                    if (progress != null && progress.getVectorProgress() != null) {
+                        progressSum += progress.getVectorProgress();
+                    }
+                }
+                if (progress != null) {
+                    templateProgress.add(progress);
                 }
-            } catch (Exception verifyException) {
-                log.warn("验证模板 {} 文档存储时出现异常: {}", template.getId(), verifyException.getMessage());
             }
-            
-            return true;
-        } catch (Exception e) {
-            log.error("模板向量化处理失败: {}", e.getMessage(), e);
-            return false;
+
+            int total = jobStatuses.size();
+            return TemplateBatchVectorProgressDTO.builder()
+                    .batchId(batchId)
+                    .total(total)
+                    .pending(pending)
+                    .running(running)
+                    .completed(completed)
+                    .failed(failed)
+                    .progress(total == 0 ? 0 : (int) (progressSum / total))
+                    .finished(pending + running == 0)
+                    .templates(templateProgress)
+                    .build();
         }
+
+        private static boolean isFinished(String jobStatus) {
+            return IndexJobStatus.COMPLETED.getCode().equals(jobStatus)
+                    || IndexJobStatus.FAILED.getCode().equals(jobStatus);
+        }
+    }
+
+    @Override
+    public Flux<TemplateVectorProgressDTO> getVectorProgressStream(Long templateId) {
+        // 先订阅进度推送再读取当前进度，两者之间发生的变化不会丢失
+        Duration heartbeat = Duration.ofSeconds(Math.max(1, progressHeartbeatSeconds));
+        // 数据库查询都在弹性线程池中执行，不占用定时器所在的并行调度器
+        return Flux.merge(
+                        progressPublisher.subscribe(templateId),
+                        Mono.fromCallable(() -> currentProgress(templateId))
+                                .subscribeOn(Schedulers.boundedElastic()),
+                        Flux.interval(heartbeat, heartbeat)
+                                .onBackpressureDrop()
+                                .concatMap(tick -> Mono.fromCallable(() -> currentProgress(templateId))
+                                        .subscribeOn(Schedulers.boundedElastic())))
+                .takeUntil(progress ->
+                    !VectorStatus.INDEXING.getCode().equals(progress.getVectorStatus())
+                );
     }
 
     /**
-     * 删除模板的向量索引
+     * 当前进度，查询失败时返回null
      */
-    private void deleteTemplateIndexInternal(Long templateId) {
+    private TemplateVectorProgressDTO currentProgress(Long templateId) {
+        Result<TemplateVectorProgressDTO> result = getVectorProgress(templateId);
+        return result.getCode() == 200 ? result.getData() : null;
+    }
+
+    /**
+     * 向量化结束（完成、失败或索引被删除）后按数据库中的最终状态推送，结束该模板的进度流
+     */
+    private void publishFinalProgress(Long templateId) {
         try {
-            // 使用有效的过滤表达式（基于调试结果优化）
-            String filterExpression = "templateId == '" + templateId + "'";
-            vectorStore.delete(filterExpression);
-            log.debug("已删除模板 {} 的向量索引，过滤条件: {}", templateId, filterExpression);
-        } catch (Exception e) {
-            log.warn("删除模板 {} 向量索引时出现异常: {}", templateId, e.getMessage());
-            // 如果第一种方式失败，尝试双引号格式
-            try {
-                String fallbackFilter = "templateId == \"" + templateId + "\"";
-                vectorStore.delete(fallbackFilter);
-                log.debug("使用备用方式删除模板 {} 的向量索引", templateId);
-            } catch (Exception fallbackException) {
-                log.error("删除模板 {} 向量索引的备用方式也失败: {}", templateId, fallbackException.getMessage());
+            TemplateVectorProgressDTO progress = loadProgress(templateId);
+            if (progress != null) {
+                progressPublisher.publish(progress);
             }
+        } catch (Exception e) {
+            log.warn("推送模板 {} 最终向量化进度失败: {}", templateId, e.getMessage());
         }
     }
 
+    /**
+     * 执行向量化处理
+     * 模板内容从数据库分段读取，边分块边向量化，内存占用与模板大小无关。
+     * 分块规则是确定的，从任务检查点继续时跳过已写入的分块。
+     *
+     * @return 管道执行结果
+     */
+    private EmbeddingPipeline.PipelineResult performVectorization(Template template, long contentLength,
+                                                                  VectorIndexJob job, IndexJobContext context) {
+        Long templateId = template.getId();
+        int startChunk = job.getNextChunk() == null ? 0 : job.getNextChunk();
+        int previouslyStored = job.getStoredChunks() == null ? 0 : job.getStoredChunks();
+        LocalDateTime startTime = LocalDateTime.now();
+        publishProgress(template, CHUNKED_PROGRESS, startTime);
+        if (startChunk > 0) {
+            log.info("模板 {} 从分块 {} 继续向量化，此前已写入 {} 个", templateId, startChunk, previouslyStored);
+        }
+
+        // 分块总数只能估算，进度按已写入的分块数计算
+        int estimatedChunks = (int) Math.max(1, (contentLength - chunkOverlap + chunkSize - chunkOverlap - 1) / (chunkSize - chunkOverlap));
+        Flux<Document> documents = TextChunker.of(chunkMode, chunkSize, chunkOverlap)
+                .chunks(() -> new TemplateContentReader(templateMapper, templateId, contentLength))
+                .filter(chunk -> chunk.index() >= startChunk)
+                // 租约丢失后不再提交新的批次
+                .takeWhile(chunk -> !context.isCancelled())
+                .map(chunk -> {
+                    Map<String, Object> metadata = createTemplateMetadata(template);
+                    metadata.put("chunkIndex", chunk.index());
+                    metadata.put("startOffset", chunk.start());
+                    metadata.put("endOffset", chunk.end());
+                    return new Document("template-" + templateId + "-chunk-" + chunk.index(), chunk.text(), metadata);
+                });
+        EmbeddingPipeline.PipelineResult result = embeddingPipeline.process(documents,
+                (processed, stored) -> publishProgress(template, progressOf(previouslyStored + stored, estimatedChunks), startTime),
+                (lastStored, stored) -> {
+                    int nextChunk = ((Number) lastStored.getMetadata().get("chunkIndex")).intValue() + 1;
+                    if (context.checkpoint(nextChunk, previouslyStored + stored)) {
+                        // 进度写入数据库，其他节点查询进度时也能看到
+                        updateTemplateProgress(templateId, progressOf(previouslyStored + stored, estimatedChunks));
+                    }
+                },
+                // 先记录清单再推进检查点，从检查点重做的批次覆盖同序号的记录
+                batch -> chunkIndexWriter.record(ChunkIndexWriter.OWNER_TEMPLATE, templateId, null, batch));
+        retrievalCache.invalidate(LexicalIndex.templateScope(templateId));
+        // 其他节点上的答案缓存按向量化完成时间判断失效
+        answerCache.invalidate(templateId);
+
+        if (!result.isSuccess()) {
+            log.error("模板 {} 有 {} 个分块向量化失败", templateId, result.failed());
+            return result;
+        }
+        log.info("已成功为模板 {} 创建索引，共 {} 个字符，本次写入 {} 个块，耗时 {} ms",
+                templateId, contentLength, result.stored(), result.elapsedMs());
+        return result;
+    }
+
+    private static int progressOf(int stored, int estimatedChunks) {
+        return Math.min(99, CHUNKED_PROGRESS + (int) ((long) stored * (100 - CHUNKED_PROGRESS) / estimatedChunks));
+    }
+
+    /**
+     * 删除模板的向量索引
+     */
+    private void deleteTemplateIndexInternal(Long templateId) {
+        // 词法索引在下次查询时按最新内容重新加载
+        lexicalIndex.invalidate(LexicalIndex.templateScope(templateId));
+        retrievalCache.invalidate(LexicalIndex.templateScope(templateId));
+        answerCache.invalidate(templateId);
+        // 按分块清单中的文档ID删除；清单出现之前索引的模板按过滤条件清理一次
+        int removed = chunkIndexWriter.remove(ChunkIndexWriter.OWNER_TEMPLATE, templateId,
+                "templateId == '" + templateId + "'");
+        log.debug("已删除模板 {} 的向量索引，共 {} 个分块", templateId, removed);
+    }
+
     /**
      * 更新模板向量化状态
      */
@@ -345,64 +656,27 @@ public class TemplateVectorServiceImpl implements TemplateVectorService {
     }
 
     /**
-     * 更新缓存中的进度
+     * 只更新数据库中的进度
      */
-    private void updateProgressInCache(Long templateId, Integer progress) {
-        TemplateVectorProgressDTO cached = progressCache.get(templateId);
-        if (cached == null) {
-            // 使用注解方案获取模板基本信息
-            LambdaQueryWrapper<Template> wrapper = new LambdaQueryWrapper<>();
-            QueryUtils.fillSelect(wrapper, Template.class, TemplateBasicVO.class);
-            wrapper.eq(Template::getId, templateId);
-            
-            Template template = templateMapper.selectOne(wrapper);
-            if (template != null) {
-                cached = TemplateVectorProgressDTO.builder()
-                        .templateId(templateId)
-                        .templateName(template.getName())
-                        .vectorStatus(VectorStatus.INDEXING.getCode())
-                        .vectorProgress(progress)
-                        .vectorStartTime(LocalDateTime.now())
-                        .canChat(false)
-                        .build();
-            }
-        } else {
-            cached.setVectorProgress(progress);
-        }
-        
-        if (cached != null) {
-            progressCache.put(templateId, cached);
-        }
+    private void updateTemplateProgress(Long templateId, Integer progress) {
+        Template template = new Template();
+        template.setId(templateId);
+        template.setVectorProgress(progress);
+        templateMapper.updateById(template);
     }
 
     /**
-     * 将文本分块
+     * 推送执行中的进度，只写内存，数据库在检查点更新
      */
-    private List<String> chunkText(String text, int chunkSize, int overlap) {
-        List<String> chunks = new ArrayList<>();
-        if (text == null || text.isEmpty()) {
-            return chunks;
-        }
-
-        // 使用Spring AI的TokenTextSplitter进行分块
-        TokenTextSplitter splitter = new TokenTextSplitter(
-                chunkSize,
-                overlap,
-                overlap / 2,
-                Integer.MAX_VALUE,
-                true
-        );
-
-        // 创建临时文档进行分块
-        Document tempDoc = new Document(text);
-        List<Document> splitDocs = splitter.apply(Collections.singletonList(tempDoc));
-
-        // 提取分块后的文本
-        for (Document doc : splitDocs) {
-            chunks.add(doc.getText());
-        }
-
-        return chunks;
+    private void publishProgress(Template template, int progress, LocalDateTime startTime) {
+        progressPublisher.publish(TemplateVectorProgressDTO.builder()
+                .templateId(template.getId())
+                .templateName(template.getName())
+                .vectorStatus(VectorStatus.INDEXING.getCode())
+                .vectorProgress(progress)
+                .vectorStartTime(template.getVectorStartTime() != null ? template.getVectorStartTime() : startTime)
+                .canChat(false)
+                .build());
     }
 
     /**
@@ -0,0 +1,87 @@
+package com.soukon.novelEditorAi.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 文本编码检测工具类
+ * 用于读取用户上传的小说文本：优先识别BOM，其次校验是否为合法UTF-8，否则按GB18030读取
+ */
+public class CharsetDetector {
+
+    /**
+     * 用于校验UTF-8的采样字节数
+     */
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    private static final Charset GB18030 = Charset.forName("GB18030");
+
+    private CharsetDetector() {
+    }
+
+    /**
+     * 以检测到的编码打开文本流，BOM会被跳过
+     *
+     * @param inputStream 原始输入流
+     * @return 带缓冲的字符流
+     * @throws IOException IO异常
+     */
+    public static Reader openReader(InputStream inputStream) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(inputStream, SAMPLE_SIZE);
+        in.mark(SAMPLE_SIZE);
+        byte[] sample = in.readNBytes(SAMPLE_SIZE);
+        in.reset();
+
+        Charset charset;
+        int bomLength = 0;
+        if (startsWith(sample, 0xEF, 0xBB, 0xBF)) {
+            charset = StandardCharsets.UTF_8;
+            bomLength = 3;
+        } else if (startsWith(sample, 0xFE, 0xFF)) {
+            charset = StandardCharsets.UTF_16BE;
+            bomLength = 2;
+        } else if (startsWith(sample, 0xFF, 0xFE)) {
+            charset = StandardCharsets.UTF_16LE;
+            bomLength = 2;
+        } else {
+            charset = isValidUtf8(sample, sample.length < SAMPLE_SIZE) ? StandardCharsets.UTF_8 : GB18030;
+        }
+        in.skipNBytes(bomLength);
+        return new BufferedReader(new InputStreamReader(in, charset));
+    }
+
+    /**
+     * 采样是否为合法UTF-8；采样被截断时末尾不完整的字符不视为错误
+     */
+    private static boolean isValidUtf8(byte[] sample, boolean endOfInput) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer out = CharBuffer.allocate(sample.length);
+        CoderResult result = decoder.decode(ByteBuffer.wrap(sample), out, endOfInput);
+        return !result.isError();
+    }
+
+    private static boolean startsWith(byte[] data, int... prefix) {
+        if (data.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((data[i] & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
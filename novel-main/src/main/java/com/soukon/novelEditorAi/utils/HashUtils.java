@@ -0,0 +1,32 @@
+package com.soukon.novelEditorAi.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 哈希工具类
+ * 用于计算文本内容的摘要，作为缓存键和变更检测依据
+ */
+public class HashUtils {
+
+    private HashUtils() {
+    }
+
+    /**
+     * 计算文本的SHA-256摘要
+     *
+     * @param text 文本内容
+     * @return 64位十六进制摘要
+     */
+    public static String sha256Hex(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("当前JVM不支持SHA-256", e);
+        }
+    }
+}
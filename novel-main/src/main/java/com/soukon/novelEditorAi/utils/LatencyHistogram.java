@@ -0,0 +1,86 @@
+package com.soukon.novelEditorAi.utils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 延迟直方图
+ * 按固定的桶边界（0.1毫秒到2.5秒）计数，记录无锁，百分位数取所在桶的上界，超出最大边界时取最大值
+ */
+public class LatencyHistogram {
+
+    private static final long[] BOUNDS_MICROS = {
+            100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+            100_000, 250_000, 500_000, 1_000_000, 2_500_000};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MICROS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时（纳秒）
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        int bucket = 0;
+        while (bucket < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    public Map<String, Object> getStats() {
+        long[] counts = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        long max = maxMicros.get();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("count", total);
+        stats.put("meanMs", toMillis(totalMicros.get() / Math.max(1, count.get())));
+        stats.put("maxMs", toMillis(max));
+        stats.put("p50Ms", toMillis(percentile(counts, total, 0.50, max)));
+        stats.put("p90Ms", toMillis(percentile(counts, total, 0.90, max)));
+        stats.put("p99Ms", toMillis(percentile(counts, total, 0.99, max)));
+
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+            histogram.put("<=" + toMillis(BOUNDS_MICROS[i]) + "ms", counts[i]);
+        }
+        histogram.put(">" + toMillis(BOUNDS_MICROS[BOUNDS_MICROS.length - 1]) + "ms", counts[BOUNDS_MICROS.length]);
+        stats.put("buckets", histogram);
+        return stats;
+    }
+
+    private static long percentile(long[] counts, long total, double quantile, long max) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(BOUNDS_MICROS[i], max);
+            }
+        }
+        return max;
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -116,4 +116,87 @@ CREATE TABLE `plots` (
   `chapter_id` int NOT NULL COMMENT '所属章节',
   PRIMARY KEY (`id`),
   KEY `idx_plots_project_id` (`project_id`)
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='情节/大纲结构表';
\ No newline at end of file
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='情节/大纲结构表';
+
+-- 创建向量缓存表
+CREATE TABLE `embedding_cache` (
+  `id` bigint unsigned NOT NULL AUTO_INCREMENT COMMENT '缓存ID',
+  `content_hash` char(64) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '文本内容SHA-256摘要',
+  `model_id` varchar(128) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '向量模型ID',
+  `dimensions` int NOT NULL COMMENT '向量维度',
+  `embedding` mediumblob NOT NULL COMMENT '向量数据 (float32小端序)',
+  `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_embedding_cache_hash_model` (`content_hash`,`model_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='向量缓存表，按内容哈希和模型复用向量';
+
+
+-- 创建向量分块清单表
+CREATE TABLE `vector_chunks` (
+  `id` bigint unsigned NOT NULL AUTO_INCREMENT COMMENT '分块ID',
+  `owner_type` varchar(32) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '所属对象类型，如 chapter',
+  `owner_id` bigint NOT NULL COMMENT '所属对象ID',
+  `project_id` bigint DEFAULT NULL COMMENT '所属项目ID，模板、世界观等不属于单个项目的为NULL',
+  `chunk_index` int NOT NULL COMMENT '分块序号',
+  `start_offset` int NOT NULL COMMENT '分块在原文中的起始位置',
+  `end_offset` int NOT NULL COMMENT '分块在原文中的结束位置',
+  `content_hash` char(64) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '分块文本与元数据的SHA-256摘要',
+  `doc_id` varchar(128) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '向量库文档ID',
+  `model_id` varchar(128) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '生成向量的模型ID',
+  `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `updated_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_vector_chunks_owner_index` (`owner_type`,`owner_id`,`chunk_index`),
+  KEY `idx_vector_chunks_project` (`project_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='向量分块清单表，用于增量更新索引';
+
+
+-- 创建向量化任务表
+CREATE TABLE `vector_index_jobs` (
+  `id` bigint unsigned NOT NULL AUTO_INCREMENT COMMENT '任务ID',
+  `job_type` varchar(32) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '任务类型，如 TEMPLATE、CHAPTER',
+  `target_id` bigint NOT NULL COMMENT '被索引对象ID',
+  `batch_id` varchar(64) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '批量任务ID，同一批提交的任务相同',
+  `status` varchar(16) COLLATE utf8mb4_unicode_ci NOT NULL DEFAULT 'PENDING' COMMENT '状态：PENDING/RUNNING/COMPLETED/FAILED',
+  `next_chunk` int NOT NULL DEFAULT 0 COMMENT '检查点：序号小于该值的分块均已写入',
+  `stored_chunks` int NOT NULL DEFAULT 0 COMMENT '已写入的分块数',
+  `attempts` int NOT NULL DEFAULT 0 COMMENT '已执行次数',
+  `max_attempts` int NOT NULL DEFAULT 5 COMMENT '最大执行次数',
+  `owner` varchar(128) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '持有租约的节点',
+  `lease_until` datetime DEFAULT NULL COMMENT '租约到期时间',
+  `heartbeat_at` datetime DEFAULT NULL COMMENT '最近一次心跳时间',
+  `next_run_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '最早可执行时间，用于延迟和重试退避',
+  `error_message` text COLLATE utf8mb4_unicode_ci COMMENT '最近一次失败原因',
+  `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `updated_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  `finished_at` datetime DEFAULT NULL COMMENT '结束时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_vector_index_jobs_status_run` (`status`,`next_run_at`),
+  KEY `idx_vector_index_jobs_target` (`job_type`,`target_id`),
+  KEY `idx_vector_index_jobs_batch` (`batch_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='向量化任务表，支持租约、心跳、检查点和失败重试';
+
+
+-- 创建向量索引版本状态表
+CREATE TABLE `vector_index_state` (
+  `id` bigint unsigned NOT NULL AUTO_INCREMENT COMMENT '主键',
+  `index_name` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '索引名称',
+  `status` varchar(16) COLLATE utf8mb4_unicode_ci NOT NULL DEFAULT 'ACTIVE' COMMENT '状态：ACTIVE/MIGRATING',
+  `active_model_id` varchar(128) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '读取使用的向量模型ID',
+  `active_collection` varchar(128) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '读取使用的集合',
+  `target_model_id` varchar(128) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '迁移目标模型ID',
+  `target_collection` varchar(128) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '迁移目标集合（影子集合）',
+  `migration_phase` varchar(16) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '迁移阶段：PROJECT/TEMPLATE',
+  `migration_cursor` bigint NOT NULL DEFAULT 0 COMMENT '当前阶段已迁移的最大对象ID',
+  `total_scopes` int NOT NULL DEFAULT 0 COMMENT '需要迁移的范围数（项目与模板）',
+  `migrated_scopes` int NOT NULL DEFAULT 0 COMMENT '已迁移的范围数',
+  `migrated_documents` bigint NOT NULL DEFAULT 0 COMMENT '已迁移的文档数',
+  `shadow_failures` int NOT NULL DEFAULT 0 COMMENT '各节点影子集合写入或删除失败的次数，不为0时不切换',
+  `rebuild_pass` tinyint NOT NULL DEFAULT 0 COMMENT '是否为失败后的重建覆盖，重建时每个范围先清空影子集合中的旧文档',
+  `started_at` datetime DEFAULT NULL COMMENT '迁移开始时间',
+  `switched_at` datetime DEFAULT NULL COMMENT '最近一次切换读取集合的时间',
+  `error_message` text COLLATE utf8mb4_unicode_ci COMMENT '最近一次迁移失败原因',
+  `updated_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_vector_index_state_name` (`index_name`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='向量索引版本状态表，记录当前读取的模型集合和迁移进度';
@@ -0,0 +1,248 @@
+package com.soukon.novelEditorAi.agent;
+
+import com.soukon.novelEditorAi.llm.LlmService;
+import com.soukon.novelEditorAi.model.chapter.ChapterContentRequest;
+import com.soukon.novelEditorAi.model.chapter.PlanContext;
+import com.soukon.novelEditorAi.model.chapter.PlanState;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 非阻塞代理执行的负载测试
+ * <p>
+ * 在4个线程的调度器上并发执行500个计划，每步都要等待前端消费。
+ * 若每一步仍阻塞线程等待，整体耗时至少为 500 * 3 * 200ms / 4 = 75s。
+ * 写作代理的用例使用桩模型执行真实的思考和行动阶段，包括等待消费超时后继续执行。
+ */
+class ReActAgentLoadTest {
+
+    private static final int PLAN_COUNT = 500;
+    private static final int POOL_SIZE = 4;
+    private static final int STEPS_PER_PLAN = 3;
+    private static final Duration CONSUME_DELAY = Duration.ofMillis(200);
+
+    private static final int WRITING_PLAN_COUNT = 300;
+
+    /**
+     * 每次行动输出5个字，目标10字：每个计划行动两次后由思考阶段结束
+     */
+    private static final String[] ACT_CHUNKS = {"夜", "色", "渐", "深", "。"};
+    private static final int GOAL_WORD_COUNT = 10;
+    private static final String THINK_RESULT =
+            "{\"completed\": false, \"questions\": [{\"question\": \"氛围如何\", \"answer\": \"安静\"}]}";
+
+    @Test
+    void testConcurrentPlansOnSmallPool() throws InterruptedException {
+        Scheduler pool = Schedulers.newParallel("agent-load", POOL_SIZE);
+        try {
+            CountDownLatch finished = new CountDownLatch(PLAN_COUNT);
+            AtomicInteger failures = new AtomicInteger();
+            AtomicInteger completedSteps = new AtomicInteger();
+
+            for (int i = 0; i < PLAN_COUNT; i++) {
+                PlanContext planContext = new PlanContext("load-plan-" + i);
+                ChapterContentRequest request = ChapterContentRequest.builder().planContext(planContext).build();
+                // 一半的计划由前端主动确认，另一半通过消费完流自然结束
+                StubAgent agent = new StubAgent(request, pool, i % 2 == 0, completedSteps);
+                agent.setState(AgentState.IN_PROGRESS);
+                agent.run(new HashMap<>())
+                        .subscribeOn(pool)
+                        .subscribe(null, e -> {
+                            failures.incrementAndGet();
+                            finished.countDown();
+                        }, finished::countDown);
+            }
+
+            assertTrue(finished.await(30, TimeUnit.SECONDS), "计划未能在30秒内全部完成，执行过程仍在阻塞线程");
+            assertEquals(0, failures.get());
+            assertEquals(PLAN_COUNT * STEPS_PER_PLAN, completedSteps.get());
+        } finally {
+            pool.dispose();
+        }
+    }
+
+    @Test
+    void testWritingAgentOnSmallPool() throws InterruptedException {
+        Scheduler pool = Schedulers.newParallel("writing-load", POOL_SIZE);
+        try {
+            LlmService llmService = stubLlmService();
+            CountDownLatch finished = new CountDownLatch(WRITING_PLAN_COUNT);
+            AtomicInteger failures = new AtomicInteger();
+            AtomicInteger consumedSteps = new AtomicInteger();
+
+            for (int i = 0; i < WRITING_PLAN_COUNT; i++) {
+                PlanContext planContext = new PlanContext("writing-plan-" + i);
+                boolean acknowledge = i % 2 == 0;
+                // 行动阶段发布内容时模拟前端延迟消费
+                planContext.setStateListener(context -> {
+                    if (context.getPlanState() != PlanState.GENERATING) {
+                        return;
+                    }
+                    Mono.delay(CONSUME_DELAY, pool).subscribe(ignored -> {
+                        consumedSteps.incrementAndGet();
+                        if (acknowledge) {
+                            context.notifyConsumptionCompleted();
+                        } else {
+                            context.getPlanStream().subscribe();
+                        }
+                    });
+                });
+                WritingAgent agent = newWritingAgent(llmService, planContext);
+                agent.run(stepData())
+                        .subscribeOn(pool)
+                        .subscribe(null, e -> {
+                            failures.incrementAndGet();
+                            finished.countDown();
+                        }, finished::countDown);
+            }
+
+            // 阻塞等待时至少需要 300 * 2 * 200ms / 4 = 30s
+            assertTrue(finished.await(15, TimeUnit.SECONDS), "写作计划未能在15秒内全部完成，执行过程仍在阻塞线程");
+            assertEquals(0, failures.get());
+            assertEquals(WRITING_PLAN_COUNT * 2, consumedSteps.get());
+        } finally {
+            pool.dispose();
+        }
+    }
+
+    @Test
+    void testWritingAgentConsumptionTimeout() {
+        // 前端始终不消费，等待超时后代理按已生成的内容继续，直到达到目标字数
+        PlanContext planContext = new PlanContext("writing-timeout-plan");
+        WritingAgent agent = newWritingAgent(stubLlmService(), planContext);
+        agent.setConsumptionTimeout(Duration.ofMillis(100));
+
+        long start = System.nanoTime();
+        agent.run(stepData()).block(Duration.ofSeconds(5));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsed >= 200, "两次行动都应等待到超时");
+        assertEquals(AgentState.COMPLETED, agent.getState());
+        assertEquals(PlanState.IN_PROGRESS, planContext.getPlanState());
+        assertEquals(GOAL_WORD_COUNT, planContext.getStreamBuffer().getNextOffset());
+    }
+
+    /**
+     * 桩模型：行动提示词返回固定的正文片段，其余（思考）返回结构化的思考结果
+     */
+    private static LlmService stubLlmService() {
+        ChatClient.ChatClientRequestSpec thinkSpec = mock(ChatClient.ChatClientRequestSpec.class, RETURNS_DEEP_STUBS);
+        when(thinkSpec.stream().content()).thenAnswer(invocation -> Flux.just(THINK_RESULT));
+        ChatClient.ChatClientRequestSpec actSpec = mock(ChatClient.ChatClientRequestSpec.class, RETURNS_DEEP_STUBS);
+        when(actSpec.stream().content()).thenAnswer(invocation -> Flux.fromArray(ACT_CHUNKS));
+
+        ChatClient chatClient = mock(ChatClient.class);
+        when(chatClient.prompt(any(Prompt.class))).thenAnswer(invocation ->
+                invocation.<Prompt>getArgument(0).getContents().contains("现在撰写文本") ? actSpec : thinkSpec);
+
+        LlmService llmService = mock(LlmService.class);
+        when(llmService.getAgentChatClient(anyString()))
+                .thenReturn(new LlmService.AgentChatClientWrapper(chatClient, null));
+        return llmService;
+    }
+
+    private static WritingAgent newWritingAgent(LlmService llmService, PlanContext planContext) {
+        ChapterContentRequest request = ChapterContentRequest.builder()
+                .planContext(planContext)
+                .plan("第一步：夜景")
+                .build();
+        WritingAgent agent = new WritingAgent(llmService, request);
+        agent.setState(AgentState.IN_PROGRESS);
+        return agent;
+    }
+
+    private static Map<String, Object> stepData() {
+        Map<String, Object> stepData = new HashMap<>();
+        stepData.put("stepNumber", 1);
+        stepData.put("stepContent", "描写夜景");
+        stepData.put("goalWordCount", GOAL_WORD_COUNT);
+        stepData.put("promptSuggestion", "无");
+        stepData.put("goal", "完成夜景描写");
+        stepData.put("plot", "主角夜归");
+        stepData.put("itemsPrompt", "无");
+        stepData.put("character", "主角");
+        return stepData;
+    }
+
+    /**
+     * 模拟写作代理：每次行动发布一段流，并在前端消费后继续
+     */
+    private static class StubAgent extends ReActAgent {
+
+        private final Scheduler pool;
+        private final boolean acknowledge;
+        private final AtomicInteger completedSteps;
+        private int stepCount = 0;
+
+        StubAgent(ChapterContentRequest request, Scheduler pool, boolean acknowledge, AtomicInteger completedSteps) {
+            super(null, request);
+            this.pool = pool;
+            this.acknowledge = acknowledge;
+            this.completedSteps = completedSteps;
+        }
+
+        @Override
+        protected Mono<Boolean> think() {
+            return Mono.just(stepCount < STEPS_PER_PLAN);
+        }
+
+        @Override
+        protected Mono<AgentExecResult> act() {
+            PlanContext planContext = chapterContentRequest.getPlanContext();
+            planContext.setPlanState(PlanState.GENERATING);
+            planContext.setPlanStream(Flux.just("第", stepCount + "", "步"));
+            Mono<Void> consumed = planContext.awaitConsumption();
+
+            // 模拟前端延迟消费
+            if (acknowledge) {
+                Mono.delay(CONSUME_DELAY, pool).subscribe(ignored -> planContext.notifyConsumptionCompleted());
+            } else {
+                planContext.getPlanStream().delaySubscription(CONSUME_DELAY, pool).subscribe();
+            }
+
+            return consumed.then(Mono.fromCallable(() -> {
+                stepCount++;
+                completedSteps.incrementAndGet();
+                planContext.setPlanState(PlanState.IN_PROGRESS);
+                return new AgentExecResult("step-" + stepCount, AgentState.IN_PROGRESS);
+            }));
+        }
+
+        @Override
+        protected Message getNextStepWithEnvMessage() {
+            return new UserMessage("继续");
+        }
+
+        @Override
+        public String getName() {
+            return "StubAgent";
+        }
+
+        @Override
+        public String getDescription() {
+            return "负载测试用代理";
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.soukon.novelEditorAi.agent.tool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 写作代理每一步准备带工具请求的开销
+ * <p>
+ * legacyMutateWithTools 为原实现：每一步 mutate 基础 ChatClient 并传入工具对象，
+ * 每次都要反射扫描 @Tool 方法并生成参数结构；cachedToolEnabledClient 为
+ * WritingToolManager 启动时解析工具、按基础 ChatClient 缓存带工具 ChatClient 后的实现。
+ * 两者都只构建请求，不调用模型。
+ * <p>
+ * 运行 main 方法即可，结果中的 gc.alloc.rate.norm 为每一步的分配字节数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WritingToolSetupBenchmark {
+
+    private static final String PLAN_ID = "benchmark-plan";
+
+    private ChatClient chatClient;
+    private Object[] tools;
+    private WritingToolManager toolManager;
+    private List<Message> messages;
+
+    @Setup
+    public void setup() {
+        // 只构建请求，模型不会被调用
+        ChatModel chatModel = prompt -> {
+            throw new UnsupportedOperationException();
+        };
+        chatClient = ChatClient.builder(chatModel).build();
+        CharacterQueryTool characterQueryTool = new CharacterQueryTool(null);
+        PlotQueryTool plotQueryTool = new PlotQueryTool(null);
+        RagSearchTool ragSearchTool = new RagSearchTool(null);
+        tools = new Object[]{characterQueryTool, plotQueryTool, ragSearchTool};
+        toolManager = new WritingToolManager(characterQueryTool, plotQueryTool, ragSearchTool);
+        toolManager.initializeForPlan(PLAN_ID);
+        messages = List.of(new SystemMessage("你是一位专业的小说创作AI助手"), new UserMessage("请开始执行写作任务。"));
+    }
+
+    @Benchmark
+    public ChatClient.ChatClientRequestSpec legacyMutateWithTools() {
+        ChatClient toolEnabledClient = chatClient.mutate()
+                .defaultTools(tools)
+                .build();
+        return toolEnabledClient.prompt()
+                .messages(messages);
+    }
+
+    @Benchmark
+    public ChatClient.ChatClientRequestSpec cachedToolEnabledClient() {
+        toolManager.initializeForPlan(PLAN_ID);
+        return toolManager.toolEnabledClient(chatClient).prompt()
+                .messages(messages)
+                .toolContext(toolManager.toolContext(PLAN_ID));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(WritingToolSetupBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,66 @@
+package com.soukon.novelEditorAi.model.chapter;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 计划输出回放缓冲区测试
+ */
+class PlanStreamBufferTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Test
+    void testResumeWithinRetainedRange() {
+        PlanStreamBuffer buffer = new PlanStreamBuffer(16, null);
+        buffer.append(Flux.just("a", "b", "c", "d"));
+        buffer.complete();
+
+        assertEquals(List.of("c", "d"), buffer.currentStepView(2).collectList().block(TIMEOUT));
+        List<Long> offsets = buffer.planView(1).map(PlanStreamBuffer.StreamEvent::offset).collectList().block(TIMEOUT);
+        assertEquals(List.of(1L, 2L, 3L), offsets);
+    }
+
+    @Test
+    void testExpiredOffsetFails() {
+        // 容量为4：10个片段和结束标记之后只保留偏移量7之后的事件
+        PlanStreamBuffer buffer = new PlanStreamBuffer(4, null);
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            chunks.add("chunk-" + i);
+        }
+        buffer.append(Flux.fromIterable(chunks));
+        buffer.complete();
+
+        assertEquals(7, buffer.getOldestOffset());
+        assertThrows(PlanStreamBuffer.OffsetExpiredException.class,
+                () -> buffer.planView(3).collectList().block(TIMEOUT));
+        assertThrows(PlanStreamBuffer.OffsetExpiredException.class,
+                () -> buffer.currentStepView(3).collectList().block(TIMEOUT));
+        assertEquals(List.of("chunk-8", "chunk-9"), buffer.currentStepView(8).collectList().block(TIMEOUT));
+    }
+
+    @Test
+    void testCompleteWaitsForStepEnd() {
+        List<Integer> drained = new ArrayList<>();
+        PlanStreamBuffer buffer = new PlanStreamBuffer(16, drained::add);
+        Sinks.Many<String> model = Sinks.many().unicast().onBackpressureBuffer();
+        buffer.append(model.asFlux());
+        model.tryEmitNext("a");
+
+        // 计划先于模型流结束被标记完成，结束标记仍应写入缓冲区
+        buffer.complete();
+        model.tryEmitComplete();
+
+        List<PlanStreamBuffer.StreamEvent> events = buffer.planView(0).collectList().block(TIMEOUT);
+        assertEquals(1, events.size());
+        assertEquals(List.of(1), drained);
+    }
+}
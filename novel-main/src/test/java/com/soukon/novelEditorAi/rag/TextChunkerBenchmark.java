@@ -0,0 +1,164 @@
+package com.soukon.novelEditorAi.rag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分块器基准测试
+ * <p>
+ * 对比原章节索引的字符窗口分块、原模板向量化使用的 TokenTextSplitter 与 TextChunker 各模式的吞吐量和内存分配。
+ * 测试文本为带对话引号的中文段落，长度分别为10万和100万字符。
+ * <p>
+ * 运行 main 方法即可，结果中的 gc.alloc.rate.norm 为每次分块的分配字节数；
+ * 也可执行 {@code java -cp <测试类路径> org.openjdk.jmh.Main TextChunkerBenchmark -prof gc}。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextChunkerBenchmark {
+
+    private static final int CHUNK_SIZE = 500;
+    private static final int CHUNK_OVERLAP = 50;
+
+    private static final String[] SENTENCES = {
+            "夜色渐深，城门外的风裹着沙砾扑在脸上。",
+            "“你真的要走？”她低声问道，手里的灯笼晃了晃。",
+            "他没有回答，只是把缰绳又握紧了些……",
+            "远处传来更鼓声，一下，两下，三下！",
+            "「三日之内，必有消息。」信上只写了这一句。",
+            "The courier arrived at 3.15 a.m. with a sealed letter.",
+            "谁也不知道，那封信最后落到了谁的手里？",
+            "“别等我了。”他说完，转身没入了黑暗之中。"
+    };
+
+    @Param({"100000", "1000000"})
+    private int length;
+
+    private String text;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder(length + 100);
+        while (builder.length() < length) {
+            int sentences = 3 + random.nextInt(6);
+            for (int i = 0; i < sentences; i++) {
+                builder.append(SENTENCES[random.nextInt(SENTENCES.length)]);
+            }
+            builder.append('\n');
+        }
+        text = builder.substring(0, length);
+    }
+
+    @Benchmark
+    public void legacyCharacterWindow(Blackhole blackhole) {
+        blackhole.consume(legacyChunkText(text, CHUNK_SIZE, CHUNK_OVERLAP));
+    }
+
+    @Benchmark
+    public void legacyTokenTextSplitter(Blackhole blackhole) {
+        TokenTextSplitter splitter = new TokenTextSplitter(CHUNK_SIZE, 20, 5, Integer.MAX_VALUE, true);
+        blackhole.consume(splitter.apply(List.of(new Document(text))));
+    }
+
+    @Benchmark
+    public void chunkerCharacters(Blackhole blackhole) {
+        blackhole.consume(TextChunker.characters(CHUNK_SIZE, CHUNK_OVERLAP).split(text));
+    }
+
+    @Benchmark
+    public void chunkerCharactersStreaming(Blackhole blackhole) throws IOException {
+        TextChunker.Cursor cursor = TextChunker.characters(CHUNK_SIZE, CHUNK_OVERLAP).open(new StringReader(text));
+        for (TextChunk chunk = cursor.next(); chunk != null; chunk = cursor.next()) {
+            blackhole.consume(chunk);
+        }
+    }
+
+    @Benchmark
+    public void chunkerTokens(Blackhole blackhole) {
+        blackhole.consume(TextChunker.tokens(CHUNK_SIZE, CHUNK_OVERLAP).split(text));
+    }
+
+    /**
+     * 原 RagServiceImpl.chunkText 的实现，保留作为对比基线
+     */
+    private static List<TextChunk> legacyChunkText(String text, int chunkSize, int overlap) {
+        int textLength = text.length();
+        int estimatedChunks = (textLength / (chunkSize - overlap)) + 1;
+        List<TextChunk> chunks = new ArrayList<>(estimatedChunks);
+        int start = 0;
+        while (start < textLength) {
+            int end = Math.min(start + chunkSize, textLength);
+            if (end < textLength) {
+                int searchLimit = Math.min(50, end - start);
+                int sentenceEnd = legacySentenceBoundary(text, end, searchLimit);
+                if (sentenceEnd > start) {
+                    end = sentenceEnd;
+                }
+            }
+            chunks.add(new TextChunk(chunks.size(), start, end, text.substring(start, end)));
+            start = end - overlap;
+            if (start < 0 || start >= end) {
+                start = end;
+            }
+            if (chunks.size() >= 2 * estimatedChunks) {
+                break;
+            }
+        }
+        return chunks;
+    }
+
+    private static int legacySentenceBoundary(String text, int position, int searchLimit) {
+        int forward = Math.min(position + searchLimit, text.length());
+        for (int i = position; i < forward; i++) {
+            if (legacySentenceEnd(text.charAt(i))) {
+                return i + 1;
+            }
+        }
+        int backward = Math.max(position - searchLimit, 0);
+        for (int i = position; i > backward; i--) {
+            if (legacySentenceEnd(text.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return position;
+    }
+
+    private static boolean legacySentenceEnd(char c) {
+        return c == '。' || c == '！' || c == '？' || c == '.' || c == '!' || c == '?';
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(TextChunkerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,122 @@
+package com.soukon.novelEditorAi.rag.hnsw;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 嵌入式HNSW向量库测试
+ * <p>
+ * 使用按文本哈希生成固定向量的模型，同一文本总是得到同一向量，查询原文时该文档应排在第一位。
+ */
+class HnswVectorStoreTest {
+
+    private static final int DOCUMENT_COUNT = 600;
+    private static final int PROJECT_COUNT = 10;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSearchFilterDeleteAndReopen() throws Exception {
+        HnswVectorStore store = newStore();
+        store.open();
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < DOCUMENT_COUNT; i++) {
+            documents.add(Document.builder()
+                    .id("doc-" + i)
+                    .text("文本片段 " + i)
+                    .metadata(Map.of("projectId", (long) (i % PROJECT_COUNT), "type", "chapter"))
+                    .build());
+        }
+        store.add(documents);
+        assertEquals(DOCUMENT_COUNT, store.size());
+
+        // 查询原文，对应文档应排第一
+        List<Document> hits = store.similaritySearch(SearchRequest.builder().query("文本片段 42").topK(5).build());
+        assertEquals(5, hits.size());
+        assertEquals("doc-42", hits.get(0).getId());
+
+        // 过滤条件只返回匹配的文档
+        List<Document> filtered = store.similaritySearch(SearchRequest.builder()
+                .query("文本片段 42").topK(10).filterExpression("projectId == 3").build());
+        assertEquals(10, filtered.size());
+        for (Document document : filtered) {
+            assertEquals("3", MetadataIndex.normalize(document.getMetadata().get("projectId")));
+        }
+
+        // 删除的文档不再返回
+        store.delete(List.of("doc-42"));
+        hits = store.similaritySearch(SearchRequest.builder().query("文本片段 42").topK(5).build());
+        assertFalse(hits.stream().anyMatch(d -> d.getId().equals("doc-42")));
+        assertEquals(DOCUMENT_COUNT - 1, store.size());
+
+        List<String> before = store.similaritySearch(SearchRequest.builder().query("文本片段 7").topK(5).build())
+                .stream().map(Document::getId).toList();
+        store.close();
+
+        // 重新打开后结果一致
+        HnswVectorStore reopened = newStore();
+        reopened.open();
+        try {
+            assertEquals(DOCUMENT_COUNT - 1, reopened.size());
+            List<String> after = reopened.similaritySearch(SearchRequest.builder().query("文本片段 7").topK(5).build())
+                    .stream().map(Document::getId).toList();
+            assertEquals(before, after);
+            assertTrue(after.contains("doc-7"));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private HnswVectorStore newStore() {
+        return new HnswVectorStore(new HashEmbeddingModel(), directory, 16, 100, 64, 50, 3600);
+    }
+
+    /**
+     * 以文本哈希为随机种子生成向量的模型
+     */
+    private static class HashEmbeddingModel implements EmbeddingModel {
+
+        private static final int DIMENSIONS = 32;
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            List<String> texts = request.getInstructions();
+            for (int i = 0; i < texts.size(); i++) {
+                embeddings.add(new Embedding(vector(texts.get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return vector(document.getText());
+        }
+
+        private static float[] vector(String text) {
+            Random random = new Random(text.hashCode());
+            float[] vector = new float[DIMENSIONS];
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+            return vector;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.soukon.novelEditorAi.service.impl;
+
+import com.soukon.novelEditorAi.common.Result;
+import com.soukon.novelEditorAi.entities.Template;
+import com.soukon.novelEditorAi.mapper.TemplateMapper;
+import com.soukon.novelEditorAi.model.template.TemplateUploadRequest;
+import com.soukon.novelEditorAi.rag.TemplateContentReader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 模板上传分段写入测试
+ */
+@ExtendWith(MockitoExtension.class)
+class TemplateServiceImplTest {
+
+    private static final Long TEMPLATE_ID = 1L;
+
+    @Mock
+    private TemplateMapper templateMapper;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private TemplateServiceImpl service;
+
+    private final List<String> slices = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(invocation -> {
+            Consumer<TransactionStatus> action = invocation.getArgument(0);
+            action.accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(templateMapper.insert(any(Template.class))).thenAnswer(invocation -> {
+            invocation.<Template>getArgument(0).setId(TEMPLATE_ID);
+            return 1;
+        });
+        when(templateMapper.appendContent(eq(TEMPLATE_ID), anyString())).thenAnswer(invocation -> {
+            slices.add(invocation.getArgument(1));
+            return 1;
+        });
+    }
+
+    @Test
+    void testUploadIsWrittenInSlices() {
+        // 第一段的最后一个字符是代理对的前半个，应整体留到下一段
+        String content = "字".repeat(TemplateContentReader.SLICE_SIZE - 1) + "😀" + "尾".repeat(1000);
+
+        Result<Template> result = service.createTemplateWithFile(upload(content));
+
+        assertEquals(200, result.getCode());
+        assertEquals(2, slices.size());
+        assertEquals(TemplateContentReader.SLICE_SIZE - 1, slices.get(0).length());
+        assertEquals(content, String.join("", slices));
+    }
+
+    @Test
+    void testSmallUploadIsWrittenOnce() {
+        Result<Template> result = service.createTemplateWithFile(upload("很短的模板内容"));
+
+        assertEquals(200, result.getCode());
+        assertEquals(List.of("很短的模板内容"), slices);
+    }
+
+    private TemplateUploadRequest upload(String content) {
+        TemplateUploadRequest request = new TemplateUploadRequest();
+        request.setName("测试模板");
+        request.setFile(new MockMultipartFile("file", "template.txt", "text/plain",
+                content.getBytes(StandardCharsets.UTF_8)));
+        return request;
+    }
+}
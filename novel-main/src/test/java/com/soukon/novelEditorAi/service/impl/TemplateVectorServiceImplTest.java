@@ -0,0 +1,171 @@
+package com.soukon.novelEditorAi.service.impl;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.soukon.novelEditorAi.entities.Template;
+import com.soukon.novelEditorAi.entities.VectorIndexJob;
+import com.soukon.novelEditorAi.enums.VectorStatus;
+import com.soukon.novelEditorAi.mapper.TemplateMapper;
+import com.soukon.novelEditorAi.rag.ChunkIndexWriter;
+import com.soukon.novelEditorAi.rag.EmbeddingPipeline;
+import com.soukon.novelEditorAi.rag.IndexJobContext;
+import com.soukon.novelEditorAi.rag.LexicalIndex;
+import com.soukon.novelEditorAi.rag.RetrievalCache;
+import com.soukon.novelEditorAi.rag.SemanticAnswerCache;
+import com.soukon.novelEditorAi.rag.VectorProgressPublisher;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 模板向量化任务执行测试
+ */
+@ExtendWith(MockitoExtension.class)
+class TemplateVectorServiceImplTest {
+
+    private static final Long TEMPLATE_ID = 1L;
+
+    @Mock
+    private TemplateMapper templateMapper;
+
+    @Mock
+    private EmbeddingPipeline embeddingPipeline;
+
+    @Mock
+    private LexicalIndex lexicalIndex;
+
+    @Mock
+    private RetrievalCache retrievalCache;
+
+    @Mock
+    private SemanticAnswerCache answerCache;
+
+    @Mock
+    private VectorProgressPublisher progressPublisher;
+
+    @Mock
+    private ChunkIndexWriter chunkIndexWriter;
+
+    @Mock
+    private IndexJobContext context;
+
+    @InjectMocks
+    private TemplateVectorServiceImpl service;
+
+    @BeforeAll
+    static void initTableInfo() {
+        // 按VO动态选择字段需要实体的表信息
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), Template.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "chunkSize", 500);
+        ReflectionTestUtils.setField(service, "chunkOverlap", 100);
+        ReflectionTestUtils.setField(service, "chunkMode", "characters");
+
+        Template template = new Template();
+        template.setId(TEMPLATE_ID);
+        template.setName("测试模板");
+        when(templateMapper.selectOne(any())).thenReturn(template);
+        when(templateMapper.selectContentLength(TEMPLATE_ID)).thenReturn(1200L);
+    }
+
+    @Test
+    void testFirstAttemptCompletes() {
+        VectorIndexJob job = newJob(null, null);
+        bindCheckpoint(job);
+        stubPipeline(3);
+        when(chunkIndexWriter.count(ChunkIndexWriter.OWNER_TEMPLATE, TEMPLATE_ID)).thenReturn(3L);
+
+        assertDoesNotThrow(() -> service.execute(job, context));
+
+        assertEquals(3, job.getStoredChunks());
+        assertIndexed();
+        // 首次执行时删除现有索引
+        verify(chunkIndexWriter).remove(eq(ChunkIndexWriter.OWNER_TEMPLATE), eq(TEMPLATE_ID), any());
+    }
+
+    @Test
+    void testResumedAttemptCompletes() {
+        // 上次执行已写入2个分块，本次从检查点继续再写入3个
+        VectorIndexJob job = newJob(2, 2);
+        bindCheckpoint(job);
+        stubPipeline(3);
+        when(chunkIndexWriter.count(ChunkIndexWriter.OWNER_TEMPLATE, TEMPLATE_ID)).thenReturn(5L);
+
+        assertDoesNotThrow(() -> service.execute(job, context));
+
+        assertEquals(5, job.getStoredChunks());
+        assertIndexed();
+        // 从检查点继续时保留已写入的分块
+        verify(chunkIndexWriter, never()).remove(any(), any(), any());
+    }
+
+    @Test
+    void testMissingChunkRecordsFail() {
+        VectorIndexJob job = newJob(null, null);
+        bindCheckpoint(job);
+        stubPipeline(3);
+        when(chunkIndexWriter.count(ChunkIndexWriter.OWNER_TEMPLATE, TEMPLATE_ID)).thenReturn(2L);
+
+        assertThrows(IllegalStateException.class, () -> service.execute(job, context));
+    }
+
+    private VectorIndexJob newJob(Integer nextChunk, Integer storedChunks) {
+        VectorIndexJob job = new VectorIndexJob();
+        job.setId(10L);
+        job.setTargetId(TEMPLATE_ID);
+        job.setNextChunk(nextChunk);
+        job.setStoredChunks(storedChunks);
+        return job;
+    }
+
+    /**
+     * 与任务执行器的检查点一致：更新任务的检查点和累计写入数
+     */
+    private void bindCheckpoint(VectorIndexJob job) {
+        when(context.checkpoint(anyInt(), anyInt())).thenAnswer(invocation -> {
+            job.setNextChunk(invocation.getArgument(0));
+            job.setStoredChunks(invocation.getArgument(1));
+            return true;
+        });
+    }
+
+    /**
+     * 管道写入指定数量的分块，并在写入后回调一次检查点
+     */
+    private void stubPipeline(int stored) {
+        when(embeddingPipeline.process(any(), any(), any(), any())).thenAnswer(invocation -> {
+            EmbeddingPipeline.CheckpointListener checkpointListener = invocation.getArgument(2);
+            Document lastStored = new Document("template-1-chunk-" + (stored - 1), "内容",
+                    Map.of("chunkIndex", stored - 1));
+            checkpointListener.onCheckpoint(lastStored, stored);
+            return new EmbeddingPipeline.PipelineResult(stored, 0, 10);
+        });
+    }
+
+    private void assertIndexed() {
+        ArgumentCaptor<Template> captor = ArgumentCaptor.forClass(Template.class);
+        verify(templateMapper, atLeastOnce()).updateById(captor.capture());
+        List<Template> updates = captor.getAllValues();
+        assertEquals(VectorStatus.INDEXED.getCode(), updates.get(updates.size() - 1).getVectorStatus());
+    }
+}
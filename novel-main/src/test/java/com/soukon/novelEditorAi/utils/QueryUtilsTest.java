@@ -32,7 +32,7 @@ public class QueryUtilsTest {
         List<String> fields = QueryUtils.getSelectFields(TemplateChatContextVO.class);
         System.out.println("TemplateChatContextVO查询字段: " + fields);
         
-        // 预期结果：[id, name, tags, vector_status]
+        // 预期结果：[id, name, tags, vector_status, vector_end_time]
     }
     
     @Test